@@ -269,6 +269,22 @@ public class ArchiveSettings {
      */
     public static String CLASS_ARCREPOSITORY_BITPRESERVATION = "settings.archive.bitpreservation.class";
 
+    /**
+     * <b>settings.archive.bitpreservation.fullSyncInterval</b>: <br>
+     * The time in milliseconds between retrieving the checksums or filenames of all the files of a replica with the
+     * DatabaseBasedActiveBitPreservation. In between, only the entries changed since the last update are retrieved,
+     * and files are not found missing. The first update after a restart is always complete. 0 means that all the
+     * entries are retrieved every time.
+     */
+    public static String BITPRESERVATION_FULL_SYNC_INTERVAL = "settings.archive.bitpreservation.fullSyncInterval";
+
+    /**
+     * <b>settings.archive.bitpreservation.changesOverlap</b>: <br>
+     * The time in milliseconds before the last update, where changed entries are retrieved from. This allows for
+     * differences between the clocks of the machines.
+     */
+    public static String BITPRESERVATION_CHANGES_OVERLAP = "settings.archive.bitpreservation.changesOverlap";
+
     /**
      * <b>settings.archive.checksum.baseDir</b>: <br>
      * The directory for the checksum file.
@@ -287,6 +303,13 @@ public class ArchiveSettings {
      * default, it is stored in a file
      */
     public static String CHECKSUM_ARCHIVE_CLASS = "settings.archive.checksum.archive.class";
+
+    /**
+     * <b>settings.archive.checksum.compactionThreshold</b>: <br>
+     * The number of records appended to the checksum file of the FileChecksumArchive, before they are merged into the
+     * sorted file of compacted checksum records in the background.
+     */
+    public static String CHECKSUM_COMPACTION_THRESHOLD = "settings.archive.checksum.compactionThreshold";
     
     /**
      * <b>settings.archive.checksum.usePrecomputedChecksum</b>: This decides whether or not use the pre-computed checksum sent as part of the StoreMessage and UploadMessage
@@ -46,4 +46,9 @@ public class Constants {
      * Directory where "deleted" files are placed".
      */
     public static final String ATTIC_DIRECTORY_NAME = "atticdir";
+
+    /**
+     * File in each bitarchive directory where the catalogue of the files in directory FILE_DIRECTORY_NAME is kept.
+     */
+    public static final String FILE_CATALOGUE_NAME = "filedir.catalogue";
 }
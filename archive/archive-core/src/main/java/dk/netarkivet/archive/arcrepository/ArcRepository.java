@@ -457,7 +457,7 @@ public class ArcRepository implements CleanupIF {
         String repChannelName = resolveReplicaChannel(msg.getTo().getName());
 
         if (msg.isOk()) {
-            processDataUploaded(msg.getArcfileName(), repChannelName);
+            processDataUploaded(msg.getArcfileName(), repChannelName, msg.getChecksum());
         } else {
             processUploadFailed(msg.getArcfileName(), repChannelName);
         }
@@ -467,7 +467,8 @@ public class ArcRepository implements CleanupIF {
      * Process the report by a bitarchive that a file was correctly uploaded.
      * <ol>
      * <il>1. Update the upload, and store states appropriately.</il><br/>
-     * <il>2. Verify that data are correctly stored in the archive by running a batch job on the archived file to
+     * <il>2. Verify that data are correctly stored in the archive by comparing the MD5 checksum the replica calculated
+     * while storing the file, or, if the replica did not report one, by running a batch job on the archived file to
      * perform a MD5 checksum comparison.</il> <br/>
      * <il>3. Check if store operation is completed and update admin data if so.</il><br/>
      * </ol>
@@ -475,11 +476,20 @@ public class ArcRepository implements CleanupIF {
      * @param arcfileName The arcfile that was uploaded.
      * @param replicaChannelName The name of the identification channel for the replica that uploaded it (THE_BAMON for
      * bitarchive and THE_CR for checksum).
+     * @param storedChecksum The checksum of the stored file as reported in the upload reply, or null if not reported.
      */
-    private synchronized void processDataUploaded(String arcfileName, String replicaChannelName) {
+    private synchronized void processDataUploaded(String arcfileName, String replicaChannelName,
+            String storedChecksum) {
         log.debug("Data uploaded '{}' ,{}", arcfileName, replicaChannelName);
         ad.setState(arcfileName, replicaChannelName, ReplicaStoreState.DATA_UPLOADED);
 
+        String orgChecksum = ad.getCheckSum(arcfileName);
+        if (storedChecksum != null && orgChecksum != null) {
+            // The replica digested the file while storing it, no need to read it again.
+            processCheckSum(arcfileName, replicaChannelName, orgChecksum, storedChecksum, true);
+            return;
+        }
+
         // retrieve the replica
         Replica rep = Channels.retrieveReplicaFromIdentifierChannel(replicaChannelName);
         // Verify that the file has been correctly uploaded.
@@ -33,6 +33,7 @@ import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import dk.netarkivet.archive.ArchiveSettings;
 import dk.netarkivet.archive.arcrepositoryadmin.BitPreservationDAO;
 import dk.netarkivet.archive.arcrepositoryadmin.ReplicaCacheDatabase;
 import dk.netarkivet.archive.arcrepositoryadmin.ReplicaFileInfo;
@@ -45,11 +46,15 @@ import dk.netarkivet.common.exceptions.NotImplementedException;
 import dk.netarkivet.common.utils.CleanupHook;
 import dk.netarkivet.common.utils.CleanupIF;
 import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.common.utils.Settings;
 
 /**
  * The database based active bit preservation. This is the alternative to the FileBasedActiveBitPreservation.
  * <p>
  * A database is used to handle the bitpreservation.
+ * <p>
+ * Between complete updates of a replica, only the checksums or filenames of the files changed since the last update
+ * are retrieved, if the setting {@link ArchiveSettings#BITPRESERVATION_FULL_SYNC_INTERVAL} allows it.
  */
 public final class DatabaseBasedActiveBitPreservation implements ActiveBitPreservation, CleanupIF {
 
@@ -78,6 +83,12 @@ public final class DatabaseBasedActiveBitPreservation implements ActiveBitPreser
     /** The list of the replicas, which are having their checksums updated. */
     private List<Replica> updateChecksumReplicas = Collections.synchronizedList(new ArrayList<Replica>());
 
+    /** The time of the last complete checksum update of each replica by this instance. */
+    private Map<Replica, Long> completeChecksumUpdates = Collections.synchronizedMap(new HashMap<Replica, Long>());
+
+    /** The time of the last complete filelist update of each replica by this instance. */
+    private Map<Replica, Long> completeFilelistUpdates = Collections.synchronizedMap(new HashMap<Replica, Long>());
+
     /**
      * Constructor. Initialises the database and closeHook.
      */
@@ -107,10 +118,11 @@ public final class DatabaseBasedActiveBitPreservation implements ActiveBitPreser
      * replica.
      *
      * @param replica The replica to retrieve the filelist from.
+     * @param changedSince Only files changed since this time are required. 0 means all files.
      * @return The names of the files in a File.
      * @throws ArgumentNotValid If the replica is 'null'.
      */
-    private File getFilenamesAsFile(Replica replica) throws ArgumentNotValid {
+    private File getFilenamesAsFile(Replica replica, long changedSince) throws ArgumentNotValid {
         // validate
         ArgumentNotValid.checkNotNull(replica, "Replica replica");
 
@@ -118,7 +130,8 @@ public final class DatabaseBasedActiveBitPreservation implements ActiveBitPreser
         log.info("Retrieving filelist from replica '{}'.", replica);
 
         // Retrieve a file containing the list of filenames of the replica.
-        File result = ArcRepositoryClientFactory.getPreservationInstance().getAllFilenames(replica.getId());
+        File result = ArcRepositoryClientFactory.getPreservationInstance().getAllFilenames(replica.getId(),
+                changedSince);
         log.info("Retrieved filelist from replica '{}'.", replica);
         return result;
     }
@@ -128,10 +141,11 @@ public final class DatabaseBasedActiveBitPreservation implements ActiveBitPreser
      * replica.
      *
      * @param replica The replica to retrieve the checksums from.
+     * @param changedSince Only files changed since this time are required. 0 means all files.
      * @return A file containing the checksumjob results, i.e. a filename##checksum.
      * @throws ArgumentNotValid If the replica is null.
      */
-    private File getChecksumListAsFile(Replica replica) throws ArgumentNotValid {
+    private File getChecksumListAsFile(Replica replica, long changedSince) throws ArgumentNotValid {
         // validate
         ArgumentNotValid.checkNotNull(replica, "Replica replica");
 
@@ -139,7 +153,8 @@ public final class DatabaseBasedActiveBitPreservation implements ActiveBitPreser
 
         // Request and retrieve a file containing the checksums of the replica,
         // and return this
-        File outputFile = ArcRepositoryClientFactory.getPreservationInstance().getAllChecksums(replica.getId());
+        File outputFile = ArcRepositoryClientFactory.getPreservationInstance().getAllChecksums(replica.getId(),
+                changedSince);
 
         log.info("Retrieved checksum from replica '{}'.", replica);
 
@@ -232,8 +247,14 @@ public final class DatabaseBasedActiveBitPreservation implements ActiveBitPreser
     private void runChecksum(Replica replica) {
         File checksumlistFile = null;
         try {
-            checksumlistFile = getChecksumListAsFile(replica);
-            cache.addChecksumInformation(checksumlistFile, replica);
+            Date requested = new Date(System.currentTimeMillis());
+            long changedSince = getChangedSince(cache.getDateOfLastWrongFilesUpdate(replica),
+                    completeChecksumUpdates.get(replica));
+            checksumlistFile = getChecksumListAsFile(replica, changedSince);
+            cache.addChecksumInformation(checksumlistFile, replica, changedSince == 0L, requested);
+            if (changedSince == 0L) {
+                completeChecksumUpdates.put(replica, requested.getTime());
+            }
         } finally {
             if (checksumlistFile != null) {
                 FileUtils.remove(checksumlistFile);
@@ -241,6 +262,25 @@ public final class DatabaseBasedActiveBitPreservation implements ActiveBitPreser
         }
     }
 
+    /**
+     * Find the time since when the changed entries should be retrieved from a replica. All the entries are retrieved,
+     * if the replica has not been updated before, if it has not been completely updated by this instance, or if it is
+     * longer than the full synchronization interval since it was.
+     *
+     * @param lastUpdate The date of the last update of the replica, or null if it has never been updated.
+     * @param lastCompleteUpdate The time of the last complete update by this instance, or null if there has been none.
+     * @return The time in milliseconds since the epoch, or 0 if all the entries should be retrieved.
+     */
+    private long getChangedSince(Date lastUpdate, Long lastCompleteUpdate) {
+        long fullSyncInterval = Settings.getLong(ArchiveSettings.BITPRESERVATION_FULL_SYNC_INTERVAL);
+        if (fullSyncInterval <= 0L || lastUpdate == null || lastCompleteUpdate == null
+                || lastCompleteUpdate + fullSyncInterval < System.currentTimeMillis()) {
+            return 0L;
+        }
+        long overlap = Settings.getLong(ArchiveSettings.BITPRESERVATION_CHANGES_OVERLAP);
+        return Math.max(1L, lastUpdate.getTime() - overlap);
+    }
+
     /**
      * Retrieves and update the status of a file for a specific replica.
      *
@@ -436,10 +476,16 @@ public final class DatabaseBasedActiveBitPreservation implements ActiveBitPreser
         updateFilelistReplicas.add(replica);
         File filenamesFile = null;
         try {
+            Date requested = new Date(System.currentTimeMillis());
+            long changedSince = getChangedSince(cache.getDateOfLastMissingFilesUpdate(replica),
+                    completeFilelistUpdates.get(replica));
             // retrieve the filelist from the replica
-            filenamesFile = getFilenamesAsFile(replica);
+            filenamesFile = getFilenamesAsFile(replica, changedSince);
             // put them into the database.
-            cache.addFileListInformation(filenamesFile, replica);
+            cache.addFileListInformation(filenamesFile, replica, changedSince == 0L, requested);
+            if (changedSince == 0L) {
+                completeFilelistUpdates.put(replica, requested.getTime());
+            }
             log.info("Completed findMissingFiles for replica '{}'.", replica);
         } finally {
             updateFilelistReplicas.remove(replica);
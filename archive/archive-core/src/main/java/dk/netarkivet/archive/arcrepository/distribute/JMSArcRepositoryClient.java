@@ -24,12 +24,18 @@ package dk.netarkivet.archive.arcrepository.distribute;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.jms.Message;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import dk.netarkivet.archive.arcrepository.bitpreservation.AdminDataMessage;
 import dk.netarkivet.archive.bitarchive.distribute.BatchMessage;
+import dk.netarkivet.archive.bitarchive.distribute.BatchProgressMessage;
 import dk.netarkivet.archive.bitarchive.distribute.BatchReplyMessage;
 import dk.netarkivet.archive.bitarchive.distribute.GetFileMessage;
 import dk.netarkivet.archive.bitarchive.distribute.GetMessage;
@@ -40,6 +46,7 @@ import dk.netarkivet.archive.checksum.distribute.GetAllFilenamesMessage;
 import dk.netarkivet.archive.checksum.distribute.GetChecksumMessage;
 import dk.netarkivet.common.distribute.ChannelID;
 import dk.netarkivet.common.distribute.Channels;
+import dk.netarkivet.common.distribute.JMSConnection;
 import dk.netarkivet.common.distribute.JMSConnectionFactory;
 import dk.netarkivet.common.distribute.NetarkivetMessage;
 import dk.netarkivet.common.distribute.RemoteFile;
@@ -57,6 +64,7 @@ import dk.netarkivet.common.utils.FileUtils;
 import dk.netarkivet.common.utils.NotificationType;
 import dk.netarkivet.common.utils.NotificationsFactory;
 import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.common.utils.batch.BatchProgressListener;
 import dk.netarkivet.common.utils.batch.FileBatchJob;
 
 /**
@@ -97,6 +105,13 @@ public class JMSArcRepositoryClient extends Synchronizer implements ArcRepositor
     /** The length of time to wait for a get reply before giving up. */
     private long getTimeout;
 
+    /**
+     * The progress listeners of the running batch jobs, by their batch message. The messages are only given an ID when
+     * they are sent, so they are looked up by their ID when progress arrives.
+     */
+    private final Map<BatchMessage, BatchProgressListener> progressListeners = Collections
+            .synchronizedMap(new HashMap<BatchMessage, BatchProgressListener>());
+
     // NOTE: The constants defining setting names below are left non-final on
     // purpose! Otherwise, the static initialiser that loads default values
     // will not run.
@@ -297,6 +312,44 @@ public class JMSArcRepositoryClient extends Synchronizer implements ArcRepositor
         }
     }
 
+    /**
+     * Receives replies, and the progress of running batch jobs. Progress is handed to the progress listener of the
+     * batch job, if it has one; any partial result of progress nobody listens for is cleaned up.
+     *
+     * @param msg an ObjectMessage containing a NetarkivetMessage.
+     */
+    @Override
+    public void onMessage(Message msg) {
+        ArgumentNotValid.checkNotNull(msg, "msg");
+        NetarkivetMessage naMsg = JMSConnection.unpack(msg);
+        if (!(naMsg instanceof BatchProgressMessage)) {
+            super.onMessage(msg);
+            return;
+        }
+        BatchProgressMessage bpMsg = (BatchProgressMessage) naMsg;
+        BatchProgressListener listener = null;
+        synchronized (progressListeners) {
+            for (Map.Entry<BatchMessage, BatchProgressListener> entry : progressListeners.entrySet()) {
+                if (bpMsg.getOriginatingBatchMsgID().equals(entry.getKey().getID())) {
+                    listener = entry.getValue();
+                }
+            }
+        }
+        if (listener == null) {
+            log.debug("Ignoring progress for batch job '{}', which has no progress listener",
+                    bpMsg.getOriginatingBatchMsgID());
+            if (bpMsg.getProgress().getPartialResult() != null) {
+                bpMsg.getProgress().getPartialResult().cleanup();
+            }
+            return;
+        }
+        try {
+            listener.progress(bpMsg.getProgress());
+        } catch (Exception e) {
+            log.warn("Progress listener failed on progress for batch job '{}'", bpMsg.getOriginatingBatchMsgID(), e);
+        }
+    }
+
     /**
      * Runs a batch batch job on each file in the ArcRepository.
      * <p>
@@ -337,7 +390,15 @@ public class JMSArcRepositoryClient extends Synchronizer implements ArcRepositor
         log.debug("Starting batchjob '{}' running on replica '{}'", job, replicaId);
         BatchMessage bMsg = new BatchMessage(Channels.getTheRepos(), replyQ, job, replicaId, batchId, args);
         log.debug("Sending batchmessage to queue '{}' with replyqueue set to '{}'", Channels.getTheRepos(), replyQ);
-        BatchReplyMessage brMsg = (BatchReplyMessage) sendAndWaitForOneReply(bMsg, 0);
+        BatchReplyMessage brMsg;
+        if (job.getProgressListener() != null) {
+            progressListeners.put(bMsg, job.getProgressListener());
+        }
+        try {
+            brMsg = (BatchReplyMessage) sendAndWaitForOneReply(bMsg, 0);
+        } finally {
+            progressListeners.remove(bMsg);
+        }
         if (!brMsg.isOk()) {
             String msg = "The batch job '" + bMsg + "' resulted in the following " + "error: " + brMsg.getErrMsg();
             log.warn(msg);
@@ -347,7 +408,7 @@ public class JMSArcRepositoryClient extends Synchronizer implements ArcRepositor
             }
         }
         return new BatchStatus(brMsg.getFilesFailed(), brMsg.getNoOfFilesProcessed(), brMsg.getResultFile(),
-                job.getExceptions());
+                brMsg.getExceptions());
     }
 
     /**
@@ -452,12 +513,30 @@ public class JMSArcRepositoryClient extends Synchronizer implements ArcRepositor
      * @see dk.netarkivet.archive.checksum.distribute.GetAllChecksumsMessage
      */
     public File getAllChecksums(String replicaId) throws IOFailure, ArgumentNotValid {
+        return getAllChecksums(replicaId, 0L);
+    }
+
+    /**
+     * Retrieves the checksums of the files stored or corrected in the replica since a given time, through a
+     * GetAllChecksumMessage.
+     *
+     * @param replicaId The id of the replica from which the checksums should be retrieved.
+     * @param changedSince The time in milliseconds since the epoch. 0 means all files.
+     * @return A file containing filename and checksum of the files in the same format as a ChecksumJob.
+     * @throws IOFailure If the reply is not of type GetAllChecksumsMessage or if the file could not properly be
+     * retrieved from the reply message or if the message timed out.
+     * @throws ArgumentNotValid If the replicaId is null or empty, or changedSince is negative.
+     * @see dk.netarkivet.archive.checksum.distribute.GetAllChecksumsMessage
+     */
+    public File getAllChecksums(String replicaId, long changedSince) throws IOFailure, ArgumentNotValid {
         ArgumentNotValid.checkNotNullOrEmpty(replicaId, "String replicaId");
+        ArgumentNotValid.checkNotNegative(changedSince, "long changedSince");
         log.debug("Sending GetAllChecksumMessage to replica '{}'.", replicaId);
         // time this.
         long start = System.currentTimeMillis();
         // make and send the message to the replica.
-        GetAllChecksumsMessage gacMsg = new GetAllChecksumsMessage(Channels.getTheRepos(), replyQ, replicaId);
+        GetAllChecksumsMessage gacMsg = new GetAllChecksumsMessage(Channels.getTheRepos(), replyQ, replicaId,
+                changedSince);
         NetarkivetMessage replyNetMsg = sendAndWaitForOneReply(gacMsg, 0);
 
         // calculate and log the time spent on handling the message.
@@ -502,12 +581,30 @@ public class JMSArcRepositoryClient extends Synchronizer implements ArcRepositor
      * @see dk.netarkivet.archive.checksum.distribute.GetAllFilenamesMessage
      */
     public File getAllFilenames(String replicaId) throws ArgumentNotValid, IOFailure {
+        return getAllFilenames(replicaId, 0L);
+    }
+
+    /**
+     * Retrieves the names of the files stored or corrected in the replica since a given time, through a
+     * GetAllFilenamesMessage.
+     *
+     * @param replicaId The id of the replica from which the list of filenames should be retrieved.
+     * @param changedSince The time in milliseconds since the epoch. 0 means all files.
+     * @return A file with the filenames.
+     * @throws IOFailure If the reply is not of type GetAllFilenamesMessage or if the file could not properly be
+     * retrieved from the reply message
+     * @throws ArgumentNotValid If the replicaId is null or empty, or changedSince is negative.
+     * @see dk.netarkivet.archive.checksum.distribute.GetAllFilenamesMessage
+     */
+    public File getAllFilenames(String replicaId, long changedSince) throws ArgumentNotValid, IOFailure {
         ArgumentNotValid.checkNotNullOrEmpty(replicaId, "String replicaId");
+        ArgumentNotValid.checkNotNegative(changedSince, "long changedSince");
         log.debug("Sending GetAllFilenamesMessage to replica '{}'.", replicaId);
         // time this.
         long start = System.currentTimeMillis();
         // make and send the message to the replica.
-        GetAllFilenamesMessage gafMsg = new GetAllFilenamesMessage(Channels.getTheRepos(), replyQ, replicaId);
+        GetAllFilenamesMessage gafMsg = new GetAllFilenamesMessage(Channels.getTheRepos(), replyQ, replicaId,
+                changedSince);
         NetarkivetMessage replyNetMsg = sendAndWaitForOneReply(gafMsg, 0);
 
         // calculate and log the time spent on handling the message.
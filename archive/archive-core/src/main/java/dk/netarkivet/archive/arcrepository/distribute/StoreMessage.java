@@ -28,6 +28,7 @@ import dk.netarkivet.archive.distribute.ArchiveMessage;
 import dk.netarkivet.archive.distribute.ArchiveMessageVisitor;
 import dk.netarkivet.common.distribute.ChannelID;
 import dk.netarkivet.common.distribute.Channels;
+import dk.netarkivet.common.distribute.KeyedMessage;
 import dk.netarkivet.common.distribute.RemoteFile;
 import dk.netarkivet.common.distribute.RemoteFileFactory;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
@@ -38,7 +39,7 @@ import dk.netarkivet.common.utils.ChecksumCalculator;
  * bitarchives, and checks the result, and then responds to the sender.
  */
 @SuppressWarnings({"serial"})
-public class StoreMessage extends ArchiveMessage {
+public class StoreMessage extends ArchiveMessage implements KeyedMessage {
     /** The actual data. */
     private RemoteFile theRemoteFile;
     private String precomputedChecksum;
@@ -52,7 +53,11 @@ public class StoreMessage extends ArchiveMessage {
         super(Channels.getTheRepos(), replyTo);
         ArgumentNotValid.checkNotNull(arcfile, "arcfile");
         theRemoteFile = RemoteFileFactory.getDistributefileInstance(arcfile);
-        precomputedChecksum = ChecksumCalculator.calculateMd5(arcfile);
+        // Reuse the checksum the remote file calculated while preparing the transfer, if any.
+        precomputedChecksum = theRemoteFile.getChecksum();
+        if (precomputedChecksum == null) {
+            precomputedChecksum = ChecksumCalculator.calculateMd5(arcfile);
+        }
     }
 
     /**
@@ -64,6 +69,16 @@ public class StoreMessage extends ArchiveMessage {
         return theRemoteFile.getName();
     }
 
+    /**
+     * Requests to store the same file are processed in order.
+     *
+     * @return the name of the stored file.
+     */
+    @Override
+    public String getOrderingKey() {
+        return getArcfileName();
+    }
+
     public String getPrecomputedChecksum() {
         return precomputedChecksum;
     }
@@ -42,6 +42,19 @@ public interface BitPreservationDAO extends CleanupIF {
      */
     void addChecksumInformation(File checksumOutput, Replica replica);
 
+    /**
+     * Given the output of a checksum job, which may contain only the files changed since the last update, add the
+     * results to the database. Files missing from an incomplete output are not marked as missing.
+     *
+     * @param checksumOutput The parsed output of a GetAllChecksumMessage as a File with ChecksumJob lines, i.e.
+     * filename##checksum.
+     * @param replica The replica this checksum job is for.
+     * @param complete Whether the output contains all the files of the replica.
+     * @param updated The date to record as the date of this checksum update. This should be the time the checksums
+     * were requested, so changes while the job ran will be found by the next update.
+     */
+    void addChecksumInformation(File checksumOutput, Replica replica, boolean complete, Date updated);
+
     /**
      * Given the output of a file list job, add the results to the database. NOTE: the Checksum version of Replica must
      * be implemented with output in the same form as filelistJobOutput for implementation of bitArchive replicas
@@ -51,6 +64,18 @@ public interface BitPreservationDAO extends CleanupIF {
      */
     void addFileListInformation(File filelistOutput, Replica replica);
 
+    /**
+     * Given the output of a file list job, which may contain only the files changed since the last update, add the
+     * results to the database. Files missing from an incomplete output are not marked as missing.
+     *
+     * @param filelistOutput A file with a list of filenames for the given replica.
+     * @param replica The replica this filelist job is for.
+     * @param complete Whether the output contains all the files of the replica.
+     * @param updated The date to record as the date of this filelist update. This should be the time the filelist was
+     * requested, so changes while the job ran will be found by the next update.
+     */
+    void addFileListInformation(File filelistOutput, Replica replica, boolean complete, Date updated);
+
     /**
      * Return files with upload_status = COMPLETE for the replica, but the filelist_status = MISSING. This is done by
      * querying the database for files with no or different update date from the last known update date for bitarchive,
@@ -58,6 +58,8 @@ import dk.netarkivet.common.utils.FileUtils;
 import dk.netarkivet.common.utils.KeyValuePair;
 import dk.netarkivet.common.utils.NotificationType;
 import dk.netarkivet.common.utils.NotificationsFactory;
+import dk.netarkivet.common.utils.SortUtils;
+import dk.netarkivet.common.utils.SortedLongSet;
 import dk.netarkivet.common.utils.StringUtils;
 import dk.netarkivet.common.utils.TimeUtils;
 import dk.netarkivet.common.utils.batch.ChecksumJob;
@@ -717,16 +719,38 @@ public final class ReplicaCacheDatabase implements BitPreservationDAO {
      */
     @Override
     public void addChecksumInformation(File checksumOutputFile, Replica replica) {
+        addChecksumInformation(checksumOutputFile, replica, true, new Date(Calendar.getInstance().getTimeInMillis()));
+    }
+
+    /**
+     * Given the output of a checksum job, which may contain only the files changed since the last update, add the
+     * results to the database.
+     * <p>
+     * The fields are updated for each entry as by {@link #addChecksumInformation(File, Replica)}. If the output is
+     * complete, then the files, which are not in the output, are set to missing and both the checksum_updated and
+     * filelist_updated dates of the replica are set. Otherwise only the checksum_updated date is set.
+     *
+     * @param checksumOutputFile The output of a checksum job in a file
+     * @param replica The replica this checksum job is for.
+     * @param complete Whether the output contains all the files of the replica.
+     * @param updated The date to record as the date of this checksum update.
+     */
+    @Override
+    public void addChecksumInformation(File checksumOutputFile, Replica replica, boolean complete, Date updated) {
         // validate arguments
         ArgumentNotValid.checkNotNull(checksumOutputFile, "File checksumOutputFile");
         ArgumentNotValid.checkNotNull(replica, "Replica replica");
+        ArgumentNotValid.checkNotNull(updated, "Date updated");
 
-        // Sort the checksumOutputFile file.
-        File sortedResult = new File(checksumOutputFile.getParent(), checksumOutputFile.getName() + ".sorted");
-        FileUtils.sortFile(checksumOutputFile, sortedResult);
+        // Sort the checksumOutputFile file, unless it was merged from sorted bitarchive results.
+        File sortedResult = checksumOutputFile;
+        if (!SortUtils.isSorted(checksumOutputFile)) {
+            sortedResult = new File(checksumOutputFile.getParent(), checksumOutputFile.getName() + ".sorted");
+            FileUtils.sortFile(checksumOutputFile, sortedResult);
+        }
         final long datasize = FileUtils.countLines(sortedResult);
 
-        Set<Long> missingReplicaRFIs = null;
+        SortedLongSet missingReplicaRFIs = null;
         Connection con = ArchiveDBConnection.get();
         LineIterator lineIterator = null;
         try {
@@ -738,13 +762,17 @@ public final class ReplicaCacheDatabase implements BitPreservationDAO {
                 throw new IOFailure(msg);
             }
 
-            log.info("Starting processing of {} checksum entries for replica {}", datasize, replica.getId());
+            log.info("Starting processing of {} {} checksum entries for replica {}", datasize,
+                    complete ? "complete" : "changed", replica.getId());
 
-            // retrieve the list of files already known by this cache.
-            // TODO This does not scale! Should the datastructure
-            // (missingReplicaRFIs) be disk-bound in some way, or optimized
-            // in some way, e.g. using it.unimi.dsi.fastutil.longs.LongArrayList
-            missingReplicaRFIs = ReplicaCacheHelpers.retrieveReplicaFileInfoGuidsForReplica(replica.getId(), con);
+            // retrieve the list of files already known by this cache, as a
+            // primitive sorted set to keep it small for large replicas.
+            // Files cannot be found missing from only the changed entries.
+            if (complete) {
+                missingReplicaRFIs = ReplicaCacheHelpers.retrieveReplicaFileInfoGuidsForReplica(replica.getId(), con);
+            } else {
+                missingReplicaRFIs = new SortedLongSet();
+            }
 
             // Initialize the String iterator
             lineIterator = new LineIterator(new FileReader(sortedResult));
@@ -810,15 +838,15 @@ public final class ReplicaCacheDatabase implements BitPreservationDAO {
             // their filelist_status to missing.
             if (missingReplicaRFIs.size() > 0) {
                 log.warn("Found {} missing files for replica '{}'.", missingReplicaRFIs.size(), replica);
-                for (long rfi : missingReplicaRFIs) {
-                    // set the replicafileinfo in the database to missing.
-                    ReplicaCacheHelpers.updateReplicaFileInfoMissingFromFilelist(rfi, con);
-                }
+                // set the replicafileinfos in the database to missing.
+                ReplicaCacheHelpers.updateReplicaFileInfoMissingFromFilelist(missingReplicaRFIs, con);
             }
 
             // update the checksum updated date for this replica.
-            ReplicaCacheHelpers.updateChecksumDateForReplica(replica, con);
-            ReplicaCacheHelpers.updateFilelistDateForReplica(replica, con);
+            ReplicaCacheHelpers.setChecksumlistDateForReplica(replica, updated, con);
+            if (complete) {
+                ReplicaCacheHelpers.setFilelistDateForReplica(replica, updated, con);
+            }
 
             log.info("Finished processing of {} checksum entries for replica {}", datasize, replica.getId());
         } finally {
@@ -848,16 +876,39 @@ public final class ReplicaCacheDatabase implements BitPreservationDAO {
      */
     @Override
     public void addFileListInformation(File filelistFile, Replica replica) throws ArgumentNotValid, UnknownID {
+        addFileListInformation(filelistFile, replica, true, new Date(Calendar.getInstance().getTimeInMillis()));
+    }
+
+    /**
+     * Method for adding a list of filenames on a replica, which may contain only the files changed since the last
+     * update. The entries in the replicafileinfo table are updated as by {@link #addFileListInformation(File,
+     * Replica)}, except that the files, which are not in the list, are only set to missing if the list is complete.
+     *
+     * @param filelistFile The list of filenames either parsed from a FilelistJob or the result from a
+     * GetAllFilenamesMessage.
+     * @param replica The replica, which the FilelistBatchjob has run upon.
+     * @param complete Whether the list contains all the files of the replica.
+     * @param updated The date to record as the date of this filelist update.
+     * @throws ArgumentNotValid If the filelist, the replica or the date is null.
+     * @throws UnknownID If the replica does not already exist in the database.
+     */
+    @Override
+    public void addFileListInformation(File filelistFile, Replica replica, boolean complete, Date updated)
+            throws ArgumentNotValid, UnknownID {
         ArgumentNotValid.checkNotNull(filelistFile, "File filelistFile");
         ArgumentNotValid.checkNotNull(replica, "Replica replica");
+        ArgumentNotValid.checkNotNull(updated, "Date updated");
 
-        // Sort the filelist file.
-        File sortedResult = new File(filelistFile.getParent(), filelistFile.getName() + ".sorted");
-        FileUtils.sortFile(filelistFile, sortedResult);
+        // Sort the filelist file, unless it was merged from sorted bitarchive results.
+        File sortedResult = filelistFile;
+        if (!SortUtils.isSorted(filelistFile)) {
+            sortedResult = new File(filelistFile.getParent(), filelistFile.getName() + ".sorted");
+            FileUtils.sortFile(filelistFile, sortedResult);
+        }
         final long datasize = FileUtils.countLines(sortedResult);
 
         Connection con = ArchiveDBConnection.get();
-        Set<Long> missingReplicaRFIs = null;
+        SortedLongSet missingReplicaRFIs = null;
         LineIterator lineIterator = null;
         try {
             // Make sure, that the replica exists in the database.
@@ -868,12 +919,17 @@ public final class ReplicaCacheDatabase implements BitPreservationDAO {
                 throw new UnknownID(errorMsg);
             }
 
-            log.info("Starting processing of {} filelist entries for replica {}", datasize, replica.getId());
+            log.info("Starting processing of {} {} filelist entries for replica {}", datasize,
+                    complete ? "complete" : "changed", replica.getId());
 
-            // retrieve the list of files already known by this cache.
-            // TODO This does not scale! Should this datastructure
-            // (missingReplicaRFIs) be disk-bound in some way.
-            missingReplicaRFIs = ReplicaCacheHelpers.retrieveReplicaFileInfoGuidsForReplica(replica.getId(), con);
+            // retrieve the list of files already known by this cache, as a
+            // primitive sorted set to keep it small for large replicas.
+            // Files cannot be found missing from only the changed entries.
+            if (complete) {
+                missingReplicaRFIs = ReplicaCacheHelpers.retrieveReplicaFileInfoGuidsForReplica(replica.getId(), con);
+            } else {
+                missingReplicaRFIs = new SortedLongSet();
+            }
 
             // Initialize String iterator
             lineIterator = new LineIterator(new FileReader(sortedResult));
@@ -917,13 +973,11 @@ public final class ReplicaCacheDatabase implements BitPreservationDAO {
             // their filelist_status to missing.
             if (missingReplicaRFIs.size() > 0) {
                 log.warn("Found {} missing files for replica '{}'.", missingReplicaRFIs.size(), replica);
-                for (long rfi : missingReplicaRFIs) {
-                    // set the replicafileinfo in the database to missing.
-                    ReplicaCacheHelpers.updateReplicaFileInfoMissingFromFilelist(rfi, con);
-                }
+                // set the replicafileinfos in the database to missing.
+                ReplicaCacheHelpers.updateReplicaFileInfoMissingFromFilelist(missingReplicaRFIs, con);
             }
             // Update the date for filelist update for this replica.
-            ReplicaCacheHelpers.updateFilelistDateForReplica(replica, con);
+            ReplicaCacheHelpers.setFilelistDateForReplica(replica, updated, con);
         } finally {
             ArchiveDBConnection.release(con);
         }
@@ -28,6 +28,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashMap;
@@ -47,6 +48,7 @@ import dk.netarkivet.common.exceptions.IllegalState;
 import dk.netarkivet.common.utils.DBUtils;
 import dk.netarkivet.common.utils.NotificationType;
 import dk.netarkivet.common.utils.NotificationsFactory;
+import dk.netarkivet.common.utils.SortedLongSet;
 
 /**
  * Helper methods used by {@link ReplicaCacheDatabase}.
@@ -56,6 +58,11 @@ public final class ReplicaCacheHelpers {
     /** The log. */
     protected static Logger log = LoggerFactory.getLogger(ReplicaCacheHelpers.class);
 
+    /**
+     * The largest number of ids in the IN-list of one statement. Some databases, e.g. Oracle, allow no more than 1000.
+     */
+    private static final int MAX_IN_LIST_SIZE = 1000;
+
     /** Private constructor to avoid instantiation. */
     private ReplicaCacheHelpers() {
     }
@@ -305,13 +312,13 @@ public final class ReplicaCacheHelpers {
      *
      * @param replicaId The id for the replica to contain the files.
      * @param con An open connection to the archiveDatabase.
-     * @return The list of all the replicafileinfo_guid.
+     * @return The sorted set of all the replicafileinfo_guid.
      */
-    protected static Set<Long> retrieveReplicaFileInfoGuidsForReplica(String replicaId, Connection con) {
+    protected static SortedLongSet retrieveReplicaFileInfoGuidsForReplica(String replicaId, Connection con) {
         // sql for retrieving the replicafileinfo_guids for the replica.
         final String sql = "SELECT replicafileinfo_guid FROM replicafileinfo "
                 + "WHERE replica_id = ? ORDER BY replicafileinfo_guid";
-        return DBUtils.selectLongSet(con, sql, replicaId);
+        return DBUtils.selectSortedLongSet(con, sql, replicaId);
     }
 
     /**
@@ -485,6 +492,62 @@ public final class ReplicaCacheHelpers {
         }
     }
 
+    /**
+     * Method for updating the filelist of a set of replicafileinfo instances, as by
+     * {@link #updateReplicaFileInfoMissingFromFilelist(long, Connection)}. The entries are updated with one statement
+     * for each {@link #MAX_IN_LIST_SIZE} of them, and committed together.
+     *
+     * @param replicafileinfoIds The ids of the replicafileinfos.
+     * @param con An open connection to the archive database
+     */
+    protected static void updateReplicaFileInfoMissingFromFilelist(SortedLongSet replicafileinfoIds, Connection con) {
+        PreparedStatement statement = null;
+        try {
+            Timestamp now = new Timestamp(Calendar.getInstance().getTimeInMillis());
+            int statementSize = 0;
+            long[] ids = replicafileinfoIds.getValues(Long.MIN_VALUE, MAX_IN_LIST_SIZE);
+            while (ids.length > 0) {
+                // Reuse the statement as long as the chunks are of the same size, i.e. for all but the last one.
+                if (ids.length != statementSize) {
+                    DBUtils.closeStatementIfOpen(statement);
+                    statementSize = ids.length;
+                    statement = con.prepareStatement("UPDATE replicafileinfo "
+                            + "SET filelist_status = ?, filelist_checkdatetime = ?, upload_status = ? "
+                            + "WHERE replicafileinfo_guid IN (" + makeParameterList(ids.length) + ")");
+                }
+                statement.setInt(1, FileListStatus.MISSING.ordinal());
+                statement.setTimestamp(2, now);
+                statement.setInt(3, ReplicaStoreState.UPLOAD_FAILED.ordinal());
+                for (int i = 0; i < ids.length; i++) {
+                    statement.setLong(i + 4, ids[i]);
+                }
+                statement.executeUpdate();
+                ids = replicafileinfoIds.getValues(ids[ids.length - 1] + 1, MAX_IN_LIST_SIZE);
+            }
+            con.commit();
+        } catch (Exception e) {
+            String msg = "Problems updating the replicafileinfo.";
+            log.warn(msg);
+            throw new IOFailure(msg, e);
+        } finally {
+            DBUtils.closeStatementIfOpen(statement);
+        }
+    }
+
+    /**
+     * Make the list of parameter markers for an IN-list.
+     *
+     * @param count The number of parameters.
+     * @return The markers, e.g. "?, ?, ?" for three parameters.
+     */
+    private static String makeParameterList(int count) {
+        StringBuilder list = new StringBuilder("?");
+        for (int i = 1; i < count; i++) {
+            list.append(", ?");
+        }
+        return list.toString();
+    }
+
     /**
      * Method for updating the checksum status of a replicafileinfo instance. Updates the following fields for the entry
      * in the replicafileinfo: <br/>
@@ -611,63 +674,9 @@ public final class ReplicaCacheHelpers {
         }
     }
 
-    /**
-     * Method for updating the checksum_updated field for a given replica in the replica table. This is called when a
-     * checksum_job has been handled.
-     * <p>
-     * The following fields for the entry in the replica table: <br/>
-     * checksum_updated = now.
-     *
-     * @param rep The replica which has just been updated.
-     * @param con An open connection to the archive database
-     */
-    protected static void updateChecksumDateForReplica(Replica rep, Connection con) {
-        PreparedStatement statement = null;
-        try {
-            Date now = new Date(Calendar.getInstance().getTimeInMillis());
-            final String sql = "UPDATE replica SET checksum_updated = ? WHERE replica_id = ?";
-            statement = DBUtils.prepareStatement(con, sql, now, rep.getId());
-            statement.executeUpdate();
-            con.commit();
-        } catch (Exception e) {
-            String msg = "Cannot update the checksum_updated for replica '" + rep + "'.";
-            log.warn(msg);
-            throw new IOFailure(msg, e);
-        } finally {
-            DBUtils.closeStatementIfOpen(statement);
-        }
-    }
-
-    /**
-     * Method for updating the filelist_updated field for a given replica in the replica table. This is called when a
-     * filelist_job or a checksum_job has been handled.
-     * <p>
-     * The following fields for the entry in the replica table: <br/>
-     * filelist_updated = now.
-     *
-     * @param rep The replica which has just been updated.
-     * @param connection An open connection to the archive database
-     */
-    protected static void updateFilelistDateForReplica(Replica rep, Connection connection) {
-        PreparedStatement statement = null;
-        try {
-            Date now = new Date(Calendar.getInstance().getTimeInMillis());
-            final String sql = "UPDATE replica SET filelist_updated = ? WHERE replica_id = ?";
-            statement = DBUtils.prepareStatement(connection, sql, now, rep.getId());
-            statement.executeUpdate();
-            connection.commit();
-        } catch (Exception e) {
-            String msg = "Cannot update the filelist_updated for replica '" + rep + "'.";
-            log.warn(msg);
-            throw new IOFailure(msg, e);
-        } finally {
-            DBUtils.closeStatementIfOpen(statement);
-        }
-    }
-
     /**
      * Method for setting the filelist_updated field for a given replica in the replica table to a specified value. This
-     * is only called when the admin.data is converted.
+     * is called when a filelist_job or a checksum_job has been handled, and when the admin.data is converted.
      * <p>
      * The following fields for the entry in the replica table: <br/>
      * filelist_updated = date.
@@ -694,7 +703,7 @@ public final class ReplicaCacheHelpers {
 
     /**
      * Method for setting the checksum_updated field for a given replica in the replica table to a specified value. This
-     * is only called when the admin.data is converted.
+     * is called when a checksum_job has been handled, and when the admin.data is converted.
      * <p>
      * The following fields for the entry in the replica table: <br/>
      * checksum_updated = date.
@@ -23,17 +23,26 @@
 package dk.netarkivet.archive.bitarchive;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 import java.util.Date;
 
+import org.apache.commons.io.IOUtils;
 import org.archive.io.ArchiveReader;
 import org.archive.io.ArchiveReaderFactory;
 import org.archive.io.ArchiveRecord;
+import org.archive.io.arc.ARCRecord;
+import org.archive.io.warc.WARCRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import dk.netarkivet.common.CommonSettings;
+import dk.netarkivet.common.Constants;
+import dk.netarkivet.common.distribute.FileSectionRemoteFile;
 import dk.netarkivet.common.distribute.RemoteFile;
 import dk.netarkivet.common.distribute.RemoteFileFactory;
 import dk.netarkivet.common.distribute.arcrepository.BatchStatus;
@@ -42,8 +51,13 @@ import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.IOFailure;
 import dk.netarkivet.common.exceptions.PermissionDenied;
 import dk.netarkivet.common.exceptions.UnknownID;
+import dk.netarkivet.common.utils.DigestingCopy;
 import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.common.utils.SortUtils;
 import dk.netarkivet.common.utils.batch.BatchLocalFiles;
+import dk.netarkivet.common.utils.batch.BatchProgress;
+import dk.netarkivet.common.utils.batch.BatchProgressListener;
 import dk.netarkivet.common.utils.batch.FileBatchJob;
 
 /**
@@ -61,6 +75,9 @@ public class Bitarchive {
     /** The instance of the bitarchive. */
     private static Bitarchive instance;
 
+    /** The maximum length of an ARC header line searched for the start of a record served as a file section. */
+    private static final int MAX_ARC_HEADER_LINE_LENGTH = 64 * 1024;
+
     /**
      * Create a new Bitarchive with files stored on local disk in one or more directories. This can reopen an existing
      * bit archive or create a Bitarchive from scratch, with no files on disk.
@@ -112,7 +129,13 @@ public class Bitarchive {
             File in = barc.getFilePath();
             arcReader = ArchiveReaderFactory.get(in);
             arc = arcReader.get(index);
-            BitarchiveRecord result = new BitarchiveRecord(arc, arcfile);
+            BitarchiveRecord result = null;
+            if (!arcReader.isCompressed()) {
+                result = getRecordAsFileSection(in, arcfile, arc);
+            }
+            if (result == null) {
+                result = new BitarchiveRecord(arc, arcfile);
+            }
 
             // release resources locked
             log.info("GET: Got {} bytes of data from {}:{}", result.getLength(), arcfile, index);
@@ -144,16 +167,88 @@ public class Bitarchive {
         }
     }
 
+    /**
+     * Make a BitarchiveRecord for a large record in an uncompressed archive file, which serves the payload directly
+     * from the archive file as a {@link FileSectionRemoteFile}, if this is enabled by
+     * {@link CommonSettings#BITARCHIVE_STREAM_LARGE_RECORDS}. The payload is then neither read into memory nor copied
+     * to a temporary file, and the receiver streams it from this machine.
+     *
+     * @param in The uncompressed archive file.
+     * @param arcfile The name of the archive file.
+     * @param record The record, read no further than its header.
+     * @return the BitarchiveRecord, or null if the record should be read by {@link BitarchiveRecord} as usual.
+     * @throws IOException If the archive file cannot be read.
+     */
+    private BitarchiveRecord getRecordAsFileSection(File in, String arcfile, ArchiveRecord record) throws IOException {
+        if (!Settings.getBoolean(CommonSettings.BITARCHIVE_STREAM_LARGE_RECORDS)) {
+            return null;
+        }
+        long offset = record.getHeader().getOffset();
+        long start;
+        long length;
+        if (record instanceof WARCRecord) {
+            start = offset + record.getHeader().getContentBegin();
+            length = record.getHeader().getLength() - record.getHeader().getContentBegin();
+        } else if (record instanceof ARCRecord && offset > 0) {
+            // The length of the filedesc record at offset 0 is unreliable, so it is always read the usual way
+            start = findEndOfLine(in, offset);
+            length = record.getHeader().getLength();
+        } else {
+            return null;
+        }
+        if (length <= Settings.getLong(CommonSettings.BITARCHIVE_LIMIT_FOR_RECORD_DATATRANSFER_IN_FILE)) {
+            return null;
+        }
+        if (start < 0 || start + length > in.length()) {
+            log.debug("Could not locate payload of record {}:{} in the file. Reading it the usual way.", arcfile,
+                    offset);
+            return null;
+        }
+        log.info("Record exceeds limit. Serving {} bytes at {} of {} directly", length, start, arcfile);
+        return new BitarchiveRecord(arcfile, offset, new FileSectionRemoteFile(in, start, length,
+                Settings.getLong(CommonSettings.BITARCHIVE_RECORD_STREAM_TIMEOUT)));
+    }
+
+    /**
+     * Find the position after the end of the line starting at a given position in a file.
+     *
+     * @param file The file.
+     * @param position The position of the start of the line.
+     * @return the position after the newline ending the line, or -1 if it is not found.
+     * @throws IOException If the file cannot be read.
+     */
+    private static long findEndOfLine(File file, long position) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.seek(position);
+            byte[] buffer = new byte[Constants.IO_BUFFER_SIZE];
+            long searched = 0;
+            int bytesRead;
+            while (searched < MAX_ARC_HEADER_LINE_LENGTH && (bytesRead = raf.read(buffer)) > 0) {
+                for (int i = 0; i < bytesRead; i++) {
+                    if (buffer[i] == '\n') {
+                        return position + searched + i + 1;
+                    }
+                }
+                searched += bytesRead;
+            }
+            return -1;
+        } finally {
+            raf.close();
+        }
+    }
+
     /**
      * Upload an ARC file to this archive.
      *
      * @param arcfile A file to add to the archive.
      * @param fileName the arcfiles filename. The file will be identified in the archive by this filename
+     * @return The MD5 checksum of the stored file.
      * @throws PermissionDenied if arcfile already exists in the archive
      * @throws IOFailure if an IO failure occurs (e.g. running out of disk space)
      * @throws ArgumentNotValid if arcfile is null or the filename is null or empty.
      */
-    public void upload(RemoteFile arcfile, String fileName) throws PermissionDenied, ArgumentNotValid, IOFailure {
+    public String upload(RemoteFile arcfile, String fileName) throws PermissionDenied, ArgumentNotValid, IOFailure {
         log.info("Upload: {}", arcfile);
         // Verify input parameters
         ArgumentNotValid.checkNotNull(arcfile, "arcfile");
@@ -167,8 +262,9 @@ public class Bitarchive {
         }
 
         // Everything seems ok, initiate copy of file into archive
-        copyRemoteFileToArchive(arcfile, fileName);
-        log.info("Upload: completed uploading {}", fileName);
+        String checksum = copyRemoteFileToArchive(arcfile, fileName);
+        log.info("Upload: completed uploading {} with checksum {}", fileName, checksum);
+        return checksum;
     }
 
     /**
@@ -185,6 +281,24 @@ public class Bitarchive {
      * @throws IOFailure if there was problems writing to the RemoteFile
      */
     public BatchStatus batch(String bitarchiveAppId, final FileBatchJob job) throws ArgumentNotValid, IOFailure {
+        return batch(bitarchiveAppId, job, null);
+    }
+
+    /**
+     * Run a batch job on all ARC entries in the archive, reporting its progress while it runs.
+     * <p>
+     * If the job asks for partial results, each progress report carries the output written since the previous report.
+     *
+     * @param bitarchiveAppId A String representing the bitarchive AppId.
+     * @param job An object that implements the ARCBatchJob interface.
+     * @param listener The listener for the progress of the job, or null for none.
+     * @return A localBatchStatus
+     * @throws ArgumentNotValid if job or file is null.
+     * @throws IOFailure if there was problems writing to the RemoteFile
+     * @see FileBatchJob#setPublishPartialResults(boolean)
+     */
+    public BatchStatus batch(String bitarchiveAppId, final FileBatchJob job, BatchProgressListener listener)
+            throws ArgumentNotValid, IOFailure {
         ArgumentNotValid.checkNotNullOrEmpty(bitarchiveAppId, "String bitarchiveAppId");
         ArgumentNotValid.checkNotNull(job, "FileBatchJob job");
         log.info("Starting batch job on bitarchive application with id '{}': '{}', on filename-pattern: '{}'",
@@ -202,7 +316,11 @@ public class Bitarchive {
                 File[] processFiles = admin.getFilesMatching(job.getFilenamePattern());
 
                 final BatchLocalFiles localBatchRunner = new BatchLocalFiles(processFiles);
-                localBatchRunner.run(job, os);
+                BatchProgressListener progressListener = listener;
+                if (listener != null && job.isPublishPartialResults()) {
+                    progressListener = new PartialResultPublisher(tmpFile, listener);
+                }
+                localBatchRunner.run(job, os, progressListener);
                 log.debug("Batch: Job {} finished at {}", job, new Date());
             } finally { // Make sure the OutputStream is closed no matter what.
                 // This allows us to delete the file on Windows
@@ -214,6 +332,10 @@ public class Bitarchive {
                     log.warn("Failed to close outputstream in batch");
                 }
             }
+            if (job.hasSortedOutput()) {
+                // Sort here, so that the receiver only has to merge the results of the bitarchives
+                SortUtils.sortAndCombine(job, tmpFile);
+            }
             // write output from batch job back to remote file
             returnStatus = new BatchStatus(bitarchiveAppId, job.getFilesFailed(), job.getNoOfFilesProcessed(),
                     RemoteFileFactory.getMovefileInstance(tmpFile), job.getExceptions());
@@ -228,16 +350,17 @@ public class Bitarchive {
     }
 
     /**
-     * Copies a remote file into the bitarchive storage and returns the storage position of the file.
+     * Copies a remote file into the bitarchive storage and returns the checksum of the stored file. The file is
+     * transferred by the remote file itself, with its retries, and the checksum is calculated while it is copied. If the remote file carries a checksum, the copy is verified against it.
      *
      * @param arcfile The source file.
      * @param fileName the source files filename.
-     * @return the storage position of the file.
+     * @return the MD5 checksum of the stored file.
      * @throws IOFailure if an error occurs while copying into the archive.
      */
-    private File copyRemoteFileToArchive(RemoteFile arcfile, String fileName) throws IOFailure {
+    private String copyRemoteFileToArchive(RemoteFile arcfile, String fileName) throws IOFailure {
         File tempDestination = admin.getTemporaryPath(fileName, arcfile.getSize());
-        File destination = null;
+        String checksum;
         try {
             // The file is first copied to a temporary destination on the same
             // mount. The reason for this is to eliminate that there are files
@@ -246,18 +369,19 @@ public class Bitarchive {
             // the file is uploaded. It also means that we do not need to clean
             // up in the file directory, in case of failure - only the temporary
             // destination needs clean up.
-            arcfile.copyTo(tempDestination);
+            checksum = arcfile.copyToWithMd5(tempDestination);
+            DigestingCopy.checkMd5(arcfile.getChecksum(), checksum, fileName);
             // Note that the move operation is a constant time operation within
             // the same mount
-            destination = admin.moveToStorage(tempDestination);
+            admin.moveToStorage(tempDestination);
         } catch (Throwable e) {
-            // destination is known to be null here, so don't worry about it.
+            // The file never reached storage, so only the temporary copy needs cleaning up.
             if (tempDestination.exists()) {
                 tempDestination.delete();
             }
             throw new IOFailure("Can't copy file into archive: " + fileName, e);
         }
-        return destination;
+        return checksum;
     }
 
     /**
@@ -294,4 +418,64 @@ public class Bitarchive {
         return instance;
     }
 
+    /**
+     * Attaches the output written since the previous progress report to each report, before handing it on. The output
+     * is copied to a file of its own, since the output file is moved or rewritten when the job is done.
+     */
+    private static class PartialResultPublisher implements BatchProgressListener {
+        /** The file the job writes its output to. */
+        private final File outputFile;
+        /** The listener to hand the reports on to. */
+        private final BatchProgressListener listener;
+        /** The length of the output already published. */
+        private long published = 0L;
+
+        /**
+         * @param outputFile The file the job writes its output to.
+         * @param listener The listener to hand the reports on to.
+         */
+        PartialResultPublisher(File outputFile, BatchProgressListener listener) {
+            this.outputFile = outputFile;
+            this.listener = listener;
+        }
+
+        /**
+         * Attach the new output to the progress, if any, and hand it on.
+         *
+         * @param progress The progress of the job.
+         * @throws IOFailure If the new output could not be copied.
+         */
+        public void progress(BatchProgress progress) {
+            long length = outputFile.length();
+            if (length > published) {
+                File partFile = null;
+                FileInputStream in = null;
+                FileOutputStream out = null;
+                try {
+                    partFile = File.createTempFile("BatchPartialOutput", "", FileUtils.getTempDir());
+                    in = new FileInputStream(outputFile);
+                    out = new FileOutputStream(partFile);
+                    FileChannel inChannel = in.getChannel();
+                    long transferred = 0L;
+                    while (transferred < length - published) {
+                        transferred += inChannel.transferTo(published + transferred, length - published
+                                - transferred, out.getChannel());
+                    }
+                    out.close();
+                    out = null;
+                } catch (IOException e) {
+                    if (partFile != null) {
+                        FileUtils.remove(partFile);
+                    }
+                    throw new IOFailure("Could not copy the partial output of '" + outputFile + "'", e);
+                } finally {
+                    IOUtils.closeQuietly(in);
+                    IOUtils.closeQuietly(out);
+                }
+                progress.setPartialResult(RemoteFileFactory.getMovefileInstance(partFile));
+                published = length;
+            }
+            listener.progress(progress);
+        }
+    }
 }
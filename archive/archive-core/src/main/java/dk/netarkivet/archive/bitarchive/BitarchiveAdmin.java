@@ -27,7 +27,6 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -55,17 +54,11 @@ public final class BitarchiveAdmin {
     private static final Logger log = LoggerFactory.getLogger(BitarchiveAdmin.class);
 
     /**
-     * Map containing the archive directories and their files. The file must be the CanonicalFile (use
-     * getCanonicalFile() before access).
+     * Map containing the archive directories and the catalogues of their files. The file must be the CanonicalFile
+     * (use getCanonicalFile() before access).
      */
-    private Map<File, List<String>> archivedFiles = Collections
-            .synchronizedMap(new LinkedHashMap<File, List<String>>());
-
-    /**
-     * Map containing the time for the latest update of the filelist for each archive directory. The file must be the
-     * CanonicalFile (use getCanonicalFile() before access).
-     */
-    private Map<File, Long> archiveTime = Collections.synchronizedMap(new HashMap<File, Long>());
+    private Map<File, BitarchiveFileCatalogue> archivedFiles = Collections
+            .synchronizedMap(new LinkedHashMap<File, BitarchiveFileCatalogue>());
 
     /** Singleton instance. */
     private static BitarchiveAdmin instance;
@@ -120,10 +113,8 @@ public final class BitarchiveAdmin {
                 // Ensure that 'atticdir' exists. If it doesn't, it is created
                 ApplicationUtils.dirMustExist(atticdir);
 
-                // initialise the variables archivedFiles and archiveTime
-                archivedFiles.put(basedir, new ArrayList<String>());
-                archiveTime.put(basedir, 0L);
-                updateFileList(basedir);
+                // read the catalogue of the files, or list them if it is out of date
+                archivedFiles.put(basedir, new BitarchiveFileCatalogue(basedir));
 
                 final Long bytesUsedInDir = calculateBytesUsed(basedir);
                 log.info(
@@ -139,13 +130,12 @@ public final class BitarchiveAdmin {
 
     /**
      * Checks whether the filelist is up to date. If the modified timestamp for the a directory is larger than the last
-     * recorded timestamp, then the stored filelist is updated with the latest changes.
+     * recorded timestamp, then the stored filelist is updated with the latest changes. Files stored or removed by the
+     * bitarchive itself are recorded in the filelist directly, so this only happens if others change the directory.
      */
     public synchronized void verifyFilelistUpToDate() {
         for (File basedir : archivedFiles.keySet()) {
-            File filedir = new File(basedir, Constants.FILE_DIRECTORY_NAME);
-            long lastModified = filedir.lastModified();
-            if (archiveTime.get(basedir) < lastModified) {
+            if (archivedFiles.get(basedir).isOutdated()) {
                 // Update the list and the time.
                 updateFileList(basedir);
             }
@@ -157,7 +147,7 @@ public final class BitarchiveAdmin {
      *
      * @param basedir The basedir to update the filelist for.
      * @throws ArgumentNotValid If basedir is null or if it not a proper directory.
-     * @throws UnknownID If the basedir cannot be found both the archivedFiles map or the archiveTime map.
+     * @throws UnknownID If the basedir cannot be found in the archivedFiles map.
      * @throws IOFailure If it is not possible to retrieve the canonical file for the basedir.
      */
     public void updateFileList(File basedir) throws ArgumentNotValid, UnknownID, IOFailure {
@@ -171,7 +161,7 @@ public final class BitarchiveAdmin {
         if (!basedir.isDirectory()) {
             throw new ArgumentNotValid("The directory '" + basedir.getPath() + " is not a proper directory.");
         }
-        if (!archivedFiles.containsKey(basedir) || !archiveTime.containsKey(basedir)) {
+        if (!archivedFiles.containsKey(basedir)) {
             throw new UnknownID("The directory '" + basedir + "' is not known "
                     + "by the settings. Known directories are: " + archivedFiles.keySet());
         }
@@ -182,18 +172,7 @@ public final class BitarchiveAdmin {
             throw new UnknownID("The directory '" + filedir + "' is not an " + " archive directory.");
         }
 
-        String[] dirContent = filedir.list();
-        List<String> filenames = new ArrayList<String>(dirContent.length);
-        for (String file : dirContent) {
-            // ensure that only files are handled
-            if ((new File(filedir, file)).isFile()) {
-                filenames.add(file);
-            } else {
-                log.warn("The file '{}' in directory {} is not a proper file.", file, filedir.getPath());
-            }
-        }
-        archivedFiles.put(basedir, filenames);
-        archiveTime.put(basedir, filedir.lastModified());
+        archivedFiles.get(basedir).rebuild();
     }
 
     /**
@@ -292,6 +271,11 @@ public final class BitarchiveAdmin {
         if (!tempLocation.renameTo(storageFile)) {
             throw new IOFailure("Could not move '" + tempLocation.getPath() + "' to '" + storageFile.getPath() + "'");
         }
+        // The modification time marks when the file was stored, so batch jobs
+        // for the files changed since a given time will find it.
+        if (!storageFile.setLastModified(System.currentTimeMillis())) {
+            log.warn("Could not set the modification time of '{}'", storageFile);
+        }
         // Update the filelist for the directory with this new file.
         final File canonicalFile;
         try {
@@ -299,12 +283,11 @@ public final class BitarchiveAdmin {
         } catch (IOException e) {
             throw new IOFailure("Could not find canonical file for " + basedir.getAbsolutePath(), e);
         }
-        final List<String> fileList = archivedFiles.get(canonicalFile);
-        if (fileList == null) {
+        final BitarchiveFileCatalogue catalogue = archivedFiles.get(canonicalFile);
+        if (catalogue == null) {
             throw new UnknownID("The directory " + basedir.getAbsolutePath() + " was not found in the map of known directories and files.");
         }
-        fileList.add(arcFileName);
-        archiveTime.put(canonicalFile, storagePath.lastModified());
+        catalogue.add(arcFileName);
         return storageFile;
     }
 
@@ -362,7 +345,7 @@ public final class BitarchiveAdmin {
         for (File archivePath : archivedFiles.keySet()) {
             File archiveDir = new File(archivePath, Constants.FILE_DIRECTORY_NAME);
             if (checkArchiveDir(archiveDir)) {
-                List<String> filesHere = archivedFiles.get(archivePath);
+                List<String> filesHere = archivedFiles.get(archivePath).getFilenames();
                 for (String filename : filesHere) {
                     files.add(new File(archiveDir, filename));
                 }
@@ -372,7 +355,8 @@ public final class BitarchiveAdmin {
     }
 
     /**
-     * Return an array of all files in this archive that match a given regular expression on the filename.
+     * Return an array of all files in this archive that match a given regular expression on the filename. Expressions
+     * for the files of one job or for metadata files are only matched against those files.
      *
      * @param regexp A precompiled regular expression matching whole filenames. This will probably be given to a
      * FilenameFilter
@@ -387,10 +371,8 @@ public final class BitarchiveAdmin {
         for (File archivePath : archivedFiles.keySet()) {
             File archiveDir = new File(archivePath, Constants.FILE_DIRECTORY_NAME);
             if (checkArchiveDir(archiveDir)) {
-                for (String filename : archivedFiles.get(archivePath)) {
-                    if (regexp.matcher(filename).matches()) {
-                        files.add(new File(archiveDir, filename));
-                    }
+                for (String filename : archivedFiles.get(archivePath).getFilenamesMatching(regexp)) {
+                    files.add(new File(archiveDir, filename));
                 }
             }
         }
@@ -408,11 +390,8 @@ public final class BitarchiveAdmin {
         verifyFilelistUpToDate();
         for (File archivePath : archivedFiles.keySet()) {
             File archiveDir = new File(archivePath, Constants.FILE_DIRECTORY_NAME);
-            if (checkArchiveDir(archiveDir)) {
-                File archiveFile = new File(archiveDir, arcFileName);
-                if (archiveFile.exists()) {
-                    return new BitarchiveARCFile(arcFileName, archiveFile);
-                }
+            if (archivedFiles.get(archivePath).contains(arcFileName) && checkArchiveDir(archiveDir)) {
+                return new BitarchiveARCFile(arcFileName, new File(archiveDir, arcFileName));
             }
         }
         // the arcfile named "arcFileName" does not exist in this bitarchive.
@@ -486,11 +465,10 @@ public final class BitarchiveAdmin {
     }
 
     /**
-     * Close down the bitarchive admin. Currently has no data to store.
+     * Close down the bitarchive admin. The catalogues of the files are always up to date on disk.
      */
     public void close() {
         archivedFiles.clear();
-        archiveTime.clear();
         instance = null;
     }
 
@@ -520,4 +498,22 @@ public final class BitarchiveAdmin {
         return new File(atticdir, arcFileName);
     }
 
+    /**
+     * Move a file from the bitarchive to the attic, where files that are removed by RemoveAndGetFileMessage are kept.
+     *
+     * @param existingFile a File object for an existing file in the bitarchive
+     * @return The full path of the file in the attic dir
+     * @throws ArgumentNotValid If the file is null, or does not belong to a bitarchive dir.
+     * @throws IOFailure If the file cannot be moved.
+     */
+    public File moveToAttic(File existingFile) {
+        File moveTo = getAtticPath(existingFile);
+        if (!existingFile.renameTo(moveTo)) {
+            throw new IOFailure("Failed to move the file:" + existingFile + "to attic");
+        }
+        File basedir = moveTo.getParentFile().getParentFile();
+        archivedFiles.get(basedir).remove(moveTo.getName());
+        return moveTo;
+    }
+
 }
@@ -0,0 +1,432 @@
+/*
+ * #%L
+ * Netarchivesuite - archive
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.archive.bitarchive;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.archive.Constants;
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.utils.FileUtils;
+
+/**
+ * The catalogue of the files stored in the file directory of one bitarchive directory.
+ * <p>
+ * The catalogue is kept up to date by the bitarchive itself when files are stored or moved to the attic, so the file
+ * directory only needs to be listed again if it is changed by someone else. Changes are appended to a journal in the
+ * bitarchive directory, so the catalogue survives restarts without listing the file directory, unless the directory has
+ * been modified since the journal was last written.
+ * <p>
+ * Besides the set of filenames, the catalogue indexes files by the job ID that harvested files are prefixed with, and
+ * keeps the metadata files apart, so the common batch filename patterns "&lt;jobid&gt;-.*" and ".*-metadata-.*" are
+ * only matched against the files they can possibly match.
+ */
+final class BitarchiveFileCatalogue {
+
+    /** The class logger. */
+    private static final Logger log = LoggerFactory.getLogger(BitarchiveFileCatalogue.class);
+
+    /** Journal line prefix for a file added to the catalogue. */
+    private static final char ADDED = '+';
+    /** Journal line prefix for a file removed from the catalogue. */
+    private static final char REMOVED = '-';
+    /** Journal line prefix for the modification time of the file directory, after the preceding changes. */
+    private static final char MODIFIED = '@';
+
+    /** The job ID prefix of harvested filenames. */
+    private static final Pattern JOB_ID_PREFIX = Pattern.compile("(\\d+)-.*");
+    /**
+     * A regular expression that only matches filenames starting with a given job ID. The digits must be followed
+     * directly by the dash, so neither may have a quantifier.
+     */
+    private static final Pattern JOB_ID_REGEXP = Pattern.compile("\\^?(\\d+)-(.*)");
+    /** The characters that start a quantifier in a regular expression. */
+    private static final String QUANTIFIERS = "?*+{";
+    /** The part of the filename that identifies a metadata file. */
+    private static final String METADATA_INFIX = "-metadata-";
+
+    /** The file directory being catalogued. */
+    private final File filedir;
+    /** The journal the catalogue is persisted in. */
+    private final File journal;
+    /** The names of the files in the file directory. */
+    private final Set<String> filenames = new LinkedHashSet<String>();
+    /** The names of harvested files, by the job ID they are prefixed with. */
+    private final Map<String, Set<String>> filenamesByJobId = new HashMap<String, Set<String>>();
+    /** The names of metadata files. */
+    private final Set<String> metadataFilenames = new LinkedHashSet<String>();
+    /** The modification time of the file directory when the catalogue was last known to be complete. */
+    private long lastModified;
+    /** The number of lines in the journal. */
+    private long journalLines;
+
+    /**
+     * Open the catalogue of a bitarchive directory. The journal is read if it is up to date, and otherwise the file
+     * directory is listed.
+     *
+     * @param basedir The bitarchive directory, containing the file directory.
+     * @throws ArgumentNotValid If basedir is null.
+     * @throws IOFailure If the journal cannot be written.
+     */
+    BitarchiveFileCatalogue(File basedir) {
+        ArgumentNotValid.checkNotNull(basedir, "File basedir");
+        this.filedir = new File(basedir, Constants.FILE_DIRECTORY_NAME);
+        this.journal = new File(basedir, Constants.FILE_CATALOGUE_NAME);
+        if (!readJournal()) {
+            rebuild();
+        } else if (journalLines > 2 * filenames.size() + 1) {
+            writeJournal();
+        }
+    }
+
+    /**
+     * Tells whether the file directory has been modified by others since the catalogue was last updated.
+     *
+     * @return true if the file directory must be listed again.
+     */
+    synchronized boolean isOutdated() {
+        return lastModified < filedir.lastModified();
+    }
+
+    /**
+     * List the file directory and replace the catalogue with its contents.
+     *
+     * @throws IOFailure If the directory cannot be listed, or the journal cannot be written.
+     */
+    synchronized void rebuild() {
+        log.debug("Listing the files in '{}'.", filedir);
+        // Read the time first, so changes made while listing are found next time
+        long modified = filedir.lastModified();
+        String[] dirContent = filedir.list();
+        if (dirContent == null) {
+            throw new IOFailure("Could not list the files in '" + filedir + "'");
+        }
+        clear();
+        for (String file : dirContent) {
+            // ensure that only files are handled
+            if ((new File(filedir, file)).isFile()) {
+                index(file);
+            } else {
+                log.warn("The file '{}' in directory {} is not a proper file.", file, filedir.getPath());
+            }
+        }
+        lastModified = modified;
+        writeJournal();
+    }
+
+    /**
+     * Add a file that has been moved into the file directory by the bitarchive.
+     *
+     * @param filename The name of the file.
+     * @throws IOFailure If the journal cannot be written.
+     */
+    synchronized void add(String filename) {
+        ArgumentNotValid.checkNotNullOrEmpty(filename, "String filename");
+        index(filename);
+        changed(ADDED, filename);
+    }
+
+    /**
+     * Remove a file that has been moved out of the file directory by the bitarchive.
+     *
+     * @param filename The name of the file.
+     * @throws IOFailure If the journal cannot be written.
+     */
+    synchronized void remove(String filename) {
+        ArgumentNotValid.checkNotNullOrEmpty(filename, "String filename");
+        unindex(filename);
+        changed(REMOVED, filename);
+    }
+
+    /**
+     * Tells whether a file is in the catalogue.
+     *
+     * @param filename The name of the file.
+     * @return true if the file is in the file directory.
+     */
+    synchronized boolean contains(String filename) {
+        return filenames.contains(filename);
+    }
+
+    /**
+     * Get the names of all the files in the catalogue.
+     *
+     * @return a copy of the names of the files.
+     */
+    synchronized List<String> getFilenames() {
+        return new ArrayList<String>(filenames);
+    }
+
+    /**
+     * Get the names of the files in the catalogue that match a regular expression. Only the files that the expression
+     * can possibly match according to the indexes are tested.
+     *
+     * @param regexp A regular expression matching whole filenames.
+     * @return the names of the matching files.
+     */
+    synchronized List<String> getFilenamesMatching(Pattern regexp) {
+        Set<String> candidates = filenames;
+        String jobId = getRequiredJobId(regexp);
+        if (jobId != null) {
+            candidates = filenamesByJobId.containsKey(jobId) ? filenamesByJobId.get(jobId)
+                    : Collections.<String>emptySet();
+        } else if (requiresMetadataFile(regexp)) {
+            candidates = metadataFilenames;
+        }
+        List<String> result = new ArrayList<String>();
+        for (String filename : candidates) {
+            if (regexp.matcher(filename).matches()) {
+                result.add(filename);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the number of files in the catalogue.
+     *
+     * @return the number of files.
+     */
+    synchronized int size() {
+        return filenames.size();
+    }
+
+    /**
+     * Find the job ID that all filenames matched by a regular expression must start with, if the expression is simple
+     * enough to tell. That is the case if the expression starts with the digits of the job ID followed by a dash, and
+     * neither the digits nor the dash are followed by a quantifier.
+     *
+     * @param regexp A regular expression matching whole filenames.
+     * @return the job ID, or null if the expression may match files from any job.
+     */
+    static String getRequiredJobId(Pattern regexp) {
+        if (regexp.flags() != 0 || regexp.pattern().indexOf('|') >= 0) {
+            return null;
+        }
+        Matcher m = JOB_ID_REGEXP.matcher(regexp.pattern());
+        if (!m.matches() || (!m.group(2).isEmpty() && QUANTIFIERS.indexOf(m.group(2).charAt(0)) >= 0)) {
+            return null;
+        }
+        return m.group(1);
+    }
+
+    /**
+     * Tells whether all filenames matched by a regular expression must be metadata files, if the expression is simple
+     * enough to tell. That is the case if the expression contains "-metadata-" outside any group, character class or
+     * alternative, and not followed by a quantifier.
+     *
+     * @param regexp A regular expression matching whole filenames.
+     * @return true if the expression only matches metadata files.
+     */
+    static boolean requiresMetadataFile(Pattern regexp) {
+        String source = regexp.pattern();
+        int index = source.indexOf(METADATA_INFIX);
+        if (regexp.flags() != 0 || index < 0 || source.indexOf('|') >= 0) {
+            return false;
+        }
+        String before = source.substring(0, index);
+        if (before.indexOf('(') >= 0 || before.indexOf('[') >= 0 || before.endsWith("\\")) {
+            return false;
+        }
+        int after = index + METADATA_INFIX.length();
+        return after == source.length() || QUANTIFIERS.indexOf(source.charAt(after)) < 0;
+    }
+
+    /**
+     * Add a filename to the indexes.
+     *
+     * @param filename The name of the file.
+     */
+    private void index(String filename) {
+        if (!filenames.add(filename)) {
+            return;
+        }
+        Matcher m = JOB_ID_PREFIX.matcher(filename);
+        if (m.matches()) {
+            Set<String> jobFiles = filenamesByJobId.get(m.group(1));
+            if (jobFiles == null) {
+                jobFiles = new LinkedHashSet<String>();
+                filenamesByJobId.put(m.group(1), jobFiles);
+            }
+            jobFiles.add(filename);
+        }
+        if (filename.contains(METADATA_INFIX)) {
+            metadataFilenames.add(filename);
+        }
+    }
+
+    /**
+     * Remove a filename from the indexes.
+     *
+     * @param filename The name of the file.
+     */
+    private void unindex(String filename) {
+        if (!filenames.remove(filename)) {
+            return;
+        }
+        Matcher m = JOB_ID_PREFIX.matcher(filename);
+        if (m.matches()) {
+            Set<String> jobFiles = filenamesByJobId.get(m.group(1));
+            if (jobFiles != null) {
+                jobFiles.remove(filename);
+                if (jobFiles.isEmpty()) {
+                    filenamesByJobId.remove(m.group(1));
+                }
+            }
+        }
+        metadataFilenames.remove(filename);
+    }
+
+    /** Remove everything from the catalogue. */
+    private void clear() {
+        filenames.clear();
+        filenamesByJobId.clear();
+        metadataFilenames.clear();
+    }
+
+    /**
+     * Record a change made by the bitarchive in the journal, together with the resulting modification time of the file
+     * directory. If the journal cannot be written, the file directory will be listed at the next restart.
+     *
+     * @param change ADDED or REMOVED.
+     * @param filename The name of the file.
+     */
+    private void changed(char change, String filename) {
+        lastModified = filedir.lastModified();
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journal, true), "UTF-8"));
+            try {
+                writer.write(change + filename + "\n" + MODIFIED + lastModified + "\n");
+            } finally {
+                writer.close();
+            }
+            journalLines += 2;
+        } catch (IOException e) {
+            log.warn("Could not record change of '{}' in the catalogue '{}'", filename, journal, e);
+        }
+    }
+
+    /**
+     * Read the catalogue from the journal.
+     *
+     * @return true if the journal was read and is up to date with the file directory.
+     */
+    private boolean readJournal() {
+        if (!journal.isFile()) {
+            return false;
+        }
+        long modified = -1L;
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journal), "UTF-8"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    ++journalLines;
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    String value = line.substring(1);
+                    switch (line.charAt(0)) {
+                    case ADDED:
+                        index(value);
+                        break;
+                    case REMOVED:
+                        unindex(value);
+                        break;
+                    case MODIFIED:
+                        modified = Long.parseLong(value);
+                        break;
+                    default:
+                        log.warn("Ignoring unknown line '{}' in catalogue '{}'", line, journal);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            log.warn("Could not read the catalogue '{}'. The files will be listed instead.", journal, e);
+            clear();
+            return false;
+        } catch (NumberFormatException e) {
+            log.warn("Corrupt catalogue '{}'. The files will be listed instead.", journal, e);
+            clear();
+            return false;
+        }
+        if (modified != filedir.lastModified()) {
+            log.info("The catalogue '{}' is out of date. The files will be listed instead.", journal);
+            clear();
+            return false;
+        }
+        lastModified = modified;
+        log.debug("Read {} filenames from the catalogue '{}'.", filenames.size(), journal);
+        return true;
+    }
+
+    /**
+     * Replace the journal with one containing the current catalogue only.
+     *
+     * @throws IOFailure If the journal cannot be written.
+     */
+    private void writeJournal() {
+        File newJournal = new File(journal.getPath() + ".new");
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(newJournal), "UTF-8"));
+            try {
+                for (String filename : filenames) {
+                    writer.write(ADDED + filename + "\n");
+                }
+                writer.write(MODIFIED + Long.toString(lastModified) + "\n");
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            FileUtils.remove(newJournal);
+            throw new IOFailure("Could not write the catalogue '" + newJournal + "'", e);
+        }
+        if (journal.exists() && !journal.delete() || !newJournal.renameTo(journal)) {
+            throw new IOFailure("Could not replace the catalogue '" + journal + "' with '" + newJournal + "'");
+        }
+        journalLines = filenames.size() + 1;
+    }
+
+}
@@ -23,9 +23,6 @@
 package dk.netarkivet.archive.bitarchive;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -43,19 +40,19 @@ import org.slf4j.LoggerFactory;
 
 import dk.netarkivet.archive.ArchiveSettings;
 import dk.netarkivet.common.distribute.ChannelID;
+import dk.netarkivet.common.distribute.ConcatenatedRemoteFile;
 import dk.netarkivet.common.distribute.RemoteFile;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
-import dk.netarkivet.common.exceptions.IOFailure;
 import dk.netarkivet.common.utils.CleanupIF;
-import dk.netarkivet.common.utils.ExceptionUtils;
-import dk.netarkivet.common.utils.FileUtils;
 import dk.netarkivet.common.utils.Settings;
 import dk.netarkivet.common.utils.StringUtils;
+import dk.netarkivet.common.utils.batch.BatchProgress;
 import dk.netarkivet.common.utils.batch.FileBatchJob;
 
 /**
  * Class representing the monitor for bitarchives. The monitor is used for sending out and combining the results of
- * executing batch jobs.
+ * executing batch jobs. The results themselves are not copied through the monitor: it keeps a handle to the results
+ * of each bitarchive, which are handed on to the requester.
  * <p>
  * Registers outgoing batchjobs to bitarchives, and handles replies from bitarchives, finally notifying observers when
  * all bitarchives have replied, or when the batch times out, after a time specified in settings.
@@ -185,8 +182,6 @@ public class BitarchiveMonitor extends Observable implements CleanupIF {
      * logs and quits).
      * <p>
      * If this is the last bitarchive we were missing replies from, notify observers with the batch status for this job.
-     * <p>
-     * TODO why are the 'exceptions' argument not used?
      *
      * @param bitarchiveBatchID The ID of the batch job sent on to the bit archives.
      * @param bitarchiveID The ID of the replying bitarchive.
@@ -195,7 +190,7 @@ public class BitarchiveMonitor extends Observable implements CleanupIF {
      * failed.
      * @param remoteFile A remote pointer to a file with results from that bitarchive. Might be null if job was not OK.
      * @param errMsg An error message, if the job was not successful on the bitarchive, or null for none.
-     * @param exceptions A list of exceptions caught during batch processing.
+     * @param exceptions A list of exceptions caught during batch processing. Might be null if none were reported.
      * @throws ArgumentNotValid If either ID is null.
      */
     public void bitarchiveReply(String bitarchiveBatchID, String bitarchiveID, int noOfFilesProcessed,
@@ -218,8 +213,39 @@ public class BitarchiveMonitor extends Observable implements CleanupIF {
                 remoteFile.cleanup();
             }
         } else {
-            bjs.updateWithBitarchiveReply(bitarchiveID, noOfFilesProcessed, filesFailed, remoteFile, errMsg);
+            bjs.updateWithBitarchiveReply(bitarchiveID, noOfFilesProcessed, filesFailed, remoteFile, errMsg,
+                    exceptions);
+        }
+    }
+
+    /**
+     * Handle a progress report received from a bitarchive.
+     * <p>
+     * The progress is registered in the batch status for this job, if the job is still running. Otherwise the report
+     * is logged and ignored, and its partial result, if any, is cleaned up.
+     *
+     * @param bitarchiveBatchID The ID of the batch job sent on to the bit archives.
+     * @param bitarchiveID The ID of the reporting bitarchive.
+     * @param progress The progress of the job on that bitarchive.
+     * @return The status of the batch job, or null if the job is no longer running.
+     * @throws ArgumentNotValid If either ID is null or empty, or if the progress is null.
+     */
+    public BatchJobStatus bitarchiveProgress(String bitarchiveBatchID, String bitarchiveID, BatchProgress progress)
+            throws ArgumentNotValid {
+        ArgumentNotValid.checkNotNullOrEmpty(bitarchiveBatchID, "String bitarchiveBatchID");
+        ArgumentNotValid.checkNotNullOrEmpty(bitarchiveID, "String bitarchiveID");
+        ArgumentNotValid.checkNotNull(progress, "BatchProgress progress");
+
+        BatchJobStatus bjs = runningBatchJobs.get(bitarchiveBatchID);
+        if (bjs == null || !bjs.updateWithBitarchiveProgress(bitarchiveID, progress)) {
+            log.debug("The batch ID '{}' of the progress from bitarchive '{}' does not correspond to any running "
+                    + "batch job. Ignoring it.", bitarchiveBatchID, bitarchiveID);
+            if (progress.getPartialResult() != null) {
+                progress.getPartialResult().cleanup();
+            }
+            return null;
         }
+        return bjs;
     }
 
     /**
@@ -276,8 +302,8 @@ public class BitarchiveMonitor extends Observable implements CleanupIF {
         /** A string with a concatenation of errors. This error message is null, if the job is successful. */
         public String errorMessages;
 
-        /** A File with a concatenation of results from replies received so far. */
-        public final File batchResultFile;
+        /** The result files of the replies received so far, in the order they were received. */
+        public final List<RemoteFile> batchResults;
 
         /** A list of the exceptions that occurred during processing. */
         public final List<FileBatchJob.ExceptionOccurrence> exceptions;
@@ -285,19 +311,20 @@ public class BitarchiveMonitor extends Observable implements CleanupIF {
         /** The timeout for batch jobs in milliseconds. */
         private long batchTimeout;
 
+        /** The latest progress reported by each bitarchive. */
+        private final Map<String, BatchProgress> progress = new HashMap<String, BatchProgress>();
+
         /**
-         * Initialise the status on a fresh batch request. Apart from the given values, a file is created to store batch
-         * results in. <b>Sideeffect</b>: BatchTimeout is started here
+         * Initialise the status on a fresh batch request. <b>Sideeffect</b>: BatchTimeout is started here
          *
          * @param originalRequestID The ID of the originating request.
          * @param originalRequestReplyTo The reply channel for the originating request.
          * @param bitarchiveBatchID The ID of the job sent to bitarchives.
          * @param missingRespondents List of all live bitarchives, used to know which bitarchives to await reply from.
          * @param timeout Timeout for Batch job
-         * @throws IOFailure if a file for batch results cannot be made.
          */
         private BatchJobStatus(String originalRequestID, ChannelID originalRequestReplyTo, String bitarchiveBatchID,
-                Set<String> missingRespondents, long timeout) throws IOFailure {
+                Set<String> missingRespondents, long timeout) {
             this.originalRequestID = originalRequestID;
             this.originalRequestReplyTo = originalRequestReplyTo;
             this.bitarchiveBatchID = bitarchiveBatchID;
@@ -306,13 +333,7 @@ public class BitarchiveMonitor extends Observable implements CleanupIF {
             batchTimeout = timeout;
             batchTimer.schedule(batchTimeoutTask, batchTimeout);
             this.noOfFilesProcessed = 0;
-            try {
-                this.batchResultFile = File.createTempFile(bitarchiveBatchID, "batch_aggregation",
-                        FileUtils.getTempDir());
-            } catch (IOException e) {
-                log.warn("Unable to create file for batch output");
-                throw new IOFailure("Unable to create file for batch output", e);
-            }
+            this.batchResults = new ArrayList<RemoteFile>();
             this.filesFailed = new ArrayList<File>();
             // Null indicates no error
             this.errorMessages = null;
@@ -334,6 +355,54 @@ public class BitarchiveMonitor extends Observable implements CleanupIF {
             }
         }
 
+        /**
+         * Get the results of all the replies as one remote file. The results of each bitarchive can be read
+         * independently through {@link ConcatenatedRemoteFile#getParts()}, and are only transferred when they are
+         * read.
+         *
+         * @return The results received so far.
+         */
+        public synchronized ConcatenatedRemoteFile getResults() {
+            return getResults(false);
+        }
+
+        /**
+         * Get the results of all the replies as one remote file, whose merged view is a merge of the results if they
+         * have been sorted by the bitarchives.
+         *
+         * @param sortedResults Whether the bitarchives sorted their results.
+         * @return The results received so far.
+         * @see FileBatchJob#hasSortedOutput()
+         */
+        public synchronized ConcatenatedRemoteFile getResults(boolean sortedResults) {
+            return new ConcatenatedRemoteFile(batchResults, sortedResults);
+        }
+
+        /**
+         * Get the progress of the job on all the bitarchives, as reported so far.
+         *
+         * @return The sum of the latest progress reported by each bitarchive.
+         */
+        public synchronized BatchProgress getProgress() {
+            return BatchProgress.sum(progress.values());
+        }
+
+        /**
+         * Updates the status with a progress report from a bitarchive.
+         *
+         * @param bitarchiveID The ID of the bitarchive that reported the progress.
+         * @param bitarchiveProgress The progress of the job on that bitarchive.
+         * @return false if we have already started replying, so the progress is no longer of interest.
+         */
+        private synchronized boolean updateWithBitarchiveProgress(String bitarchiveID,
+                BatchProgress bitarchiveProgress) {
+            if (notifyInitiated) {
+                return false;
+            }
+            progress.put(bitarchiveID, bitarchiveProgress);
+            return true;
+        }
+
         /**
          * Updates the status with info from a bitarchive reply.
          * <p>
@@ -345,13 +414,17 @@ public class BitarchiveMonitor extends Observable implements CleanupIF {
          * @param failedFiles List of files failed in that bit archive.
          * @param remoteFile A pointer to a remote file with results from the bitarchive.
          * @param errMsg An error message with errors from that bit archive.
+         * @param exceptions The exceptions caught in that bit archive. Might be null.
          */
         private synchronized void updateWithBitarchiveReply(String bitarchiveID, int numberOfFilesProcessed,
-                Collection<File> failedFiles, RemoteFile remoteFile, String errMsg) {
+                Collection<File> failedFiles, RemoteFile remoteFile, String errMsg,
+                List<FileBatchJob.ExceptionOccurrence> exceptions) {
             if (notifyInitiated) {
                 log.debug("The reply for batch job: '{}' from bitarchive '{}' arrived after we had started replying. "
                         + "Ignoring this reply.", bitarchiveBatchID, bitarchiveID);
-                remoteFile.cleanup();
+                if (remoteFile != null) {
+                    remoteFile.cleanup();
+                }
                 return;
             }
             // found is set to true, if bitarchiveID was among
@@ -369,8 +442,12 @@ public class BitarchiveMonitor extends Observable implements CleanupIF {
                 this.filesFailed.addAll(failedFiles);
             }
 
-            appendRemoteFileToAggregateFile(remoteFile);
-            this.exceptions.addAll(this.exceptions);
+            if (remoteFile != null) {
+                this.batchResults.add(remoteFile);
+            }
+            if (exceptions != null) {
+                this.exceptions.addAll(exceptions);
+            }
 
             // In case the batch reply contains an error, the final
             // we append this error.
@@ -386,47 +463,6 @@ public class BitarchiveMonitor extends Observable implements CleanupIF {
             }
         }
 
-        /**
-         * Append a remotefile to the batch result aggregate file. Adds info on errors while concatenating to the batch
-         * status.
-         *
-         * @param rf A remotefile to read from
-         */
-        private void appendRemoteFileToAggregateFile(RemoteFile rf) {
-            if (rf != null) {
-                OutputStream aggregateStream = null;
-                try {
-                    aggregateStream = new FileOutputStream(batchResultFile, true);
-                    rf.appendTo(aggregateStream);
-
-                    try {
-                        rf.cleanup();
-                    } catch (IOFailure e) {
-                        log.warn("Could not remove remotefile '{}'", rf, e);
-                        // Harmless, though. Continue
-                    }
-                } catch (IOFailure e) {
-                    String errMsg = "Exception while aggregating batch output for " + rf.getName() + ": "
-                            + ExceptionUtils.getStackTrace(e);
-                    appendError(errMsg);
-                } catch (IOException e) {
-                    String errMsg = "Exception while aggregating batch output for " + rf.getName() + ": "
-                            + ExceptionUtils.getStackTrace(e);
-                    appendError(errMsg);
-                } finally {
-                    if (aggregateStream != null) {
-                        try {
-                            aggregateStream.close();
-                        } catch (IOException e) {
-                            String errMsg = "Exception while aggregating batch output for " + rf.getName() + ": "
-                                    + ExceptionUtils.getStackTrace(e);
-                            appendError(errMsg);
-                        }
-                    }
-                }
-            }
-        }
-
         /**
          * Checks whether this batch job is already being notified about. If not, it notifies observers with this batch
          * status.
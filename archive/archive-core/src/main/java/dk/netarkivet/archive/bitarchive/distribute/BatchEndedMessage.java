@@ -30,6 +30,7 @@ import dk.netarkivet.archive.distribute.ArchiveMessage;
 import dk.netarkivet.archive.distribute.ArchiveMessageVisitor;
 import dk.netarkivet.common.distribute.ChannelID;
 import dk.netarkivet.common.distribute.Channels;
+import dk.netarkivet.common.distribute.KeyedMessage;
 import dk.netarkivet.common.distribute.RemoteFile;
 import dk.netarkivet.common.distribute.arcrepository.BatchStatus;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
@@ -40,7 +41,7 @@ import dk.netarkivet.common.utils.batch.FileBatchJob;
  * that that single machine has finished processing a batch job.
  */
 @SuppressWarnings({"serial"})
-public class BatchEndedMessage extends ArchiveMessage {
+public class BatchEndedMessage extends ArchiveMessage implements KeyedMessage {
     /**
      * The identifier for the bitarchive application, that performed the batch-job.
      */
@@ -127,6 +128,16 @@ public class BatchEndedMessage extends ArchiveMessage {
         return originatingBatchMsgId;
     }
 
+    /**
+     * The replies from the bitarchives to the same batch job are processed in order.
+     *
+     * @return the Id of the BatchMessage which originated this message.
+     */
+    @Override
+    public String getOrderingKey() {
+        return originatingBatchMsgId;
+    }
+
     /**
      * Returns the number of files processed by this batch job on this machine.
      *
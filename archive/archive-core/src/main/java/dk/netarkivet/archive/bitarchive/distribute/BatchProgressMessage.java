@@ -0,0 +1,126 @@
+/*
+ * #%L
+ * Netarchivesuite - archive
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.archive.bitarchive.distribute;
+
+import dk.netarkivet.archive.distribute.ArchiveMessage;
+import dk.netarkivet.archive.distribute.ArchiveMessageVisitor;
+import dk.netarkivet.common.distribute.ChannelID;
+import dk.netarkivet.common.distribute.Channels;
+import dk.netarkivet.common.distribute.KeyedMessage;
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.utils.batch.BatchProgress;
+
+/**
+ * A report of the progress of a running batch job. It is sent by a bitarchive to the BitarchiveMonitorServer with the
+ * progress on that bitarchive, and from the BitarchiveMonitorServer to the requester of the batch job with the
+ * progress on all the bitarchives.
+ */
+@SuppressWarnings({"serial"})
+public class BatchProgressMessage extends ArchiveMessage implements KeyedMessage {
+    /** The identifier for the bitarchive application the progress is from, or null for all bitarchives. */
+    private String baApplicationId;
+    /** The identifier for the batch message the progress is for. */
+    private String originatingBatchMsgId;
+    /** The progress of the batch job. */
+    private BatchProgress progress;
+
+    /**
+     * Create a progress report for a batch job.
+     *
+     * @param to the channel to which this message is to be sent
+     * @param baAppId Identifier for the bitarchive the progress is from, or null if it is the progress on all
+     * bitarchives
+     * @param originatingBatchMsgId the Id field from the batch message the progress is for
+     * @param progress The progress of the batch job
+     * @throws ArgumentNotValid If the channel or the progress is null, or if originatingBatchMsgId is null or empty.
+     */
+    public BatchProgressMessage(ChannelID to, String baAppId, String originatingBatchMsgId, BatchProgress progress)
+            throws ArgumentNotValid {
+        super(to, Channels.getError());
+        ArgumentNotValid.checkNotNull(to, "ChannelID to");
+        ArgumentNotValid.checkNotNullOrEmpty(originatingBatchMsgId, "String originatingBatchMsgId");
+        ArgumentNotValid.checkNotNull(progress, "BatchProgress progress");
+
+        this.baApplicationId = baAppId;
+        this.originatingBatchMsgId = originatingBatchMsgId;
+        this.progress = progress;
+    }
+
+    /**
+     * Returns id information for the bitarchive which generated this message.
+     *
+     * @return the id information, or null if the progress is on all bitarchives
+     */
+    public String getBitarchiveID() {
+        return baApplicationId;
+    }
+
+    /**
+     * Returns the Id of the BatchMessage the progress is for.
+     *
+     * @return the Id
+     */
+    public String getOriginatingBatchMsgID() {
+        return originatingBatchMsgId;
+    }
+
+    /**
+     * The progress reports for the same batch job are processed in order.
+     *
+     * @return the Id of the BatchMessage the progress is for.
+     */
+    @Override
+    public String getOrderingKey() {
+        return originatingBatchMsgId;
+    }
+
+    /**
+     * Returns the progress of the batch job.
+     *
+     * @return the progress
+     */
+    public BatchProgress getProgress() {
+        return progress;
+    }
+
+    /**
+     * Should be implemented as a part of the visitor pattern. fx.: public void accept(ArchiveMessageVisitor v) {
+     * v.visit(this); }
+     *
+     * @param v A message visitor
+     */
+    public void accept(ArchiveMessageVisitor v) {
+        v.visit(this);
+    }
+
+    /**
+     * Human readable version of this object.
+     *
+     * @return A human readable version of this object
+     */
+    public String toString() {
+        return "\nBatchProgressMessage for batch job " + originatingBatchMsgId
+                + (baApplicationId == null ? "" : "\nFrom Bitarchive " + baApplicationId) + "\nProgress = "
+                + progress + "\n" + super.toString();
+    }
+}
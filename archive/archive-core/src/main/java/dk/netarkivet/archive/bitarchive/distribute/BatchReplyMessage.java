@@ -24,14 +24,17 @@
 package dk.netarkivet.archive.bitarchive.distribute;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 
 import dk.netarkivet.archive.distribute.ArchiveMessage;
 import dk.netarkivet.archive.distribute.ArchiveMessageVisitor;
 import dk.netarkivet.common.distribute.ChannelID;
 import dk.netarkivet.common.distribute.RemoteFile;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.utils.batch.FileBatchJob;
 
 /**
  * Message class used by the bit archive monitor to notify the ArcRepository of a completed batch job.
@@ -44,6 +47,8 @@ public class BatchReplyMessage extends ArchiveMessage {
     private HashSet<File> filesFailed;
     /** The result of the BatchJob. */
     private RemoteFile resultFile;
+    /** The exceptions caught by the BatchJob in the bitarchives. */
+    private ArrayList<FileBatchJob.ExceptionOccurrence> exceptions;
 
     /**
      * Message to signal from BitarchiveMonitorServer that the batch job identified by originatingBatchMsgId is
@@ -61,6 +66,27 @@ public class BatchReplyMessage extends ArchiveMessage {
      */
     public BatchReplyMessage(ChannelID to, ChannelID replyTo, String originatingBatchMsgId, int filesProcessed,
             Collection<File> failedFiles, RemoteFile resultFile) throws ArgumentNotValid {
+        this(to, replyTo, originatingBatchMsgId, filesProcessed, failedFiles, resultFile, null);
+    }
+
+    /**
+     * Message to signal from BitarchiveMonitorServer that the batch job identified by originatingBatchMsgId is
+     * completed, including the exceptions caught by the batch job in the bitarchives.
+     *
+     * @param to The queue to which this message is to be sent. This will normally be the ARCREPOS queue
+     * @param replyTo The queue that should receive replies.
+     * @param originatingBatchMsgId The Id of the BathMessage which gave rise to this reply
+     * @param filesProcessed The total number of file processed in this batch job
+     * @param failedFiles A Collection of strings with the names of files on which this batch job failed. May be null or
+     * empty for no errors.
+     * @param resultFile The RemoteFile containing the output from the batch job, or null if an error occurred that
+     * prevented the creation of the file.
+     * @param exceptions The exceptions caught during the batch job. May be null or empty for no exceptions.
+     * @throws ArgumentNotValid if the input parameters are not meaningful
+     */
+    public BatchReplyMessage(ChannelID to, ChannelID replyTo, String originatingBatchMsgId, int filesProcessed,
+            Collection<File> failedFiles, RemoteFile resultFile, List<FileBatchJob.ExceptionOccurrence> exceptions)
+            throws ArgumentNotValid {
         // replyTo must be set here because it is used by AdminData to work
         // out which bitarchive the batch job operated on
         super(to, replyTo);
@@ -75,6 +101,11 @@ public class BatchReplyMessage extends ArchiveMessage {
             this.filesFailed = new HashSet<File>();
         }
         this.resultFile = resultFile;
+        if (exceptions != null) {
+            this.exceptions = new ArrayList<FileBatchJob.ExceptionOccurrence>(exceptions);
+        } else {
+            this.exceptions = new ArrayList<FileBatchJob.ExceptionOccurrence>();
+        }
     }
 
     /**
@@ -104,6 +135,15 @@ public class BatchReplyMessage extends ArchiveMessage {
         return resultFile;
     }
 
+    /**
+     * Returns the exceptions caught by the batch job in the bitarchives.
+     *
+     * @return The list of exceptions. Empty if none were reported.
+     */
+    public List<FileBatchJob.ExceptionOccurrence> getExceptions() {
+        return exceptions;
+    }
+
     /**
      * Should be implemented as a part of the visitor pattern. fx.: public void accept(ArchiveMessageVisitor v) {
      * v.visit(this); }
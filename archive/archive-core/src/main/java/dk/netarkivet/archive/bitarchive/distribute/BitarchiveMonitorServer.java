@@ -22,15 +22,20 @@
  */
 package dk.netarkivet.archive.bitarchive.distribute;
 
+import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
 
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,6 +48,7 @@ import dk.netarkivet.archive.checksum.distribute.GetChecksumMessage;
 import dk.netarkivet.archive.distribute.ArchiveMessageHandler;
 import dk.netarkivet.common.CommonSettings;
 import dk.netarkivet.common.distribute.Channels;
+import dk.netarkivet.common.distribute.ConcatenatedRemoteFile;
 import dk.netarkivet.common.distribute.JMSConnection;
 import dk.netarkivet.common.distribute.JMSConnectionFactory;
 import dk.netarkivet.common.distribute.NetarkivetMessage;
@@ -57,6 +63,7 @@ import dk.netarkivet.common.utils.KeyValuePair;
 import dk.netarkivet.common.utils.NotificationType;
 import dk.netarkivet.common.utils.NotificationsFactory;
 import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.common.utils.batch.BatchProgress;
 import dk.netarkivet.common.utils.batch.ChecksumJob;
 import dk.netarkivet.common.utils.batch.FileBatchJob;
 import dk.netarkivet.common.utils.batch.FileListJob;
@@ -200,6 +207,43 @@ public class BitarchiveMonitorServer extends ArchiveMessageHandler implements Ob
         }
     }
 
+    /**
+     * This is the message handling method for BatchProgressMessages.
+     * <p>
+     * Registers the progress from the bitarchive in the bitarchive monitor, and sends the progress of the batch job on
+     * all the bitarchives on to the requester, along with the partial result from the bitarchive, if any. Batch jobs
+     * made by the monitor itself, e.g. for a GetAllChecksumsMessage, have no requester waiting for progress, so their
+     * progress is only registered.
+     *
+     * @param bpMsg The BatchProgressMessage to be handled.
+     * @throws ArgumentNotValid If the BatchProgressMessage is null.
+     */
+    public void visit(BatchProgressMessage bpMsg) throws ArgumentNotValid {
+        ArgumentNotValid.checkNotNull(bpMsg, "BatchProgressMessage bpMsg");
+
+        log.debug("Received batch progress from bitarchive '{}': {}", bpMsg.getBitarchiveID(), bpMsg.getProgress());
+        try {
+            bamon.signOfLife(bpMsg.getBitarchiveID());
+            BatchProgress bitarchiveProgress = bpMsg.getProgress();
+            BitarchiveMonitor.BatchJobStatus bjs = bamon.bitarchiveProgress(bpMsg.getOriginatingBatchMsgID(),
+                    bpMsg.getBitarchiveID(), bitarchiveProgress);
+            if (bjs == null) {
+                return;
+            }
+            if (batchConversions.containsKey(bjs.originalRequestID)) {
+                if (bitarchiveProgress.getPartialResult() != null) {
+                    bitarchiveProgress.getPartialResult().cleanup();
+                }
+                return;
+            }
+            BatchProgress progress = bjs.getProgress();
+            progress.setPartialResult(bitarchiveProgress.getPartialResult());
+            con.send(new BatchProgressMessage(bjs.originalRequestReplyTo, null, bjs.originalRequestID, progress));
+        } catch (Exception e) {
+            log.warn("Trouble while handling bitarchive progress '{}'", bpMsg, e);
+        }
+    }
+
     /**
      * This is the message handling method for HeartBeatMessages.
      * <p>
@@ -347,6 +391,7 @@ public class BitarchiveMonitorServer extends ArchiveMessageHandler implements Ob
 
         // Create batchjob for the GetAllChecksumsMessage.
         ChecksumJob cj = new ChecksumJob();
+        cj.processOnlyFilesChangedSince(msg.getChangedSince());
 
         // Execute the batchjob.
         executeConvertedBatch(cj, msg);
@@ -367,6 +412,7 @@ public class BitarchiveMonitorServer extends ArchiveMessageHandler implements Ob
 
         // Create batchjob for the GetAllChecksumsMessage.
         FileListJob flj = new FileListJob();
+        flj.processOnlyFilesChangedSince(msg.getChangedSince());
 
         // Execute the batchjob.
         executeConvertedBatch(flj, msg);
@@ -467,48 +513,67 @@ public class BitarchiveMonitorServer extends ArchiveMessageHandler implements Ob
      * This method sends a reply based on the information from bitarchives received and stored in the given batch job
      * status.
      * <p>
-     * It will concatenate the results from all the bitarchives in one file, and construct a reply to the originating
-     * requester with all information.
+     * If the batch job post processes its results, they are read as one concatenated stream and the post processed file
+     * is sent. Otherwise the reply carries the result files of each bitarchive as they are, so the requester reads them
+     * directly from the bitarchives, and the monitor only accounts for the replies.
      *
      * @param bjs Status of received messages from bitarchives.
      */
     private void doBatchReply(BitarchiveMonitor.BatchJobStatus bjs) {
-        RemoteFile resultsFile = null;
+        // retrieve the batchjob
+        FileBatchJob bj = batchjobs.remove(bjs.originalRequestID);
+        ConcatenatedRemoteFile results = bjs.getResults(hasSortedOutput(bj));
+        RemoteFile resultsFile = results;
+        ConcatenatedRemoteFile.ConcatenatingInputStream input = results.getConcatenatedInputStream();
+        File postFile = null;
         try {
-            // Post process the file.
-            File postFile = File.createTempFile("post", "batch", FileUtils.getTempDir());
+            if (bj == null) {
+                throw new UnknownID("Only knows: " + batchjobs.keySet());
+            }
+            log.info("Post processing batchjob results for '{}' with id '{}'", bj.getClass().getName(),
+                    bjs.originalRequestID);
+            postFile = File.createTempFile("post", "batch", FileUtils.getTempDir());
+            OutputStream output = new FileOutputStream(postFile);
+            boolean postProcessed;
             try {
-                // retrieve the batchjob
-                FileBatchJob bj = batchjobs.remove(bjs.originalRequestID);
-                if (bj == null) {
-                    throw new UnknownID("Only knows: " + batchjobs.keySet());
-                }
-                log.info("Post processing batchjob results for '{}' with id '{}'", bj.getClass().getName(),
-                        bjs.originalRequestID);
-                // perform the post process, and handle whether it succeeded.
-                if (bj.postProcess(new FileInputStream(bjs.batchResultFile), new FileOutputStream(postFile))) {
-                    log.debug("Post processing finished.");
-                } else {
-                    log.debug("No post processing. Using concatenated file.");
-                    tryAndDeleteTemporaryFile(postFile);
-                    postFile = bjs.batchResultFile;
-                }
-            } catch (Exception e) {
-                log.warn("Exception caught during post processing batchjob. Concatenated file used instead.", e);
+                // perform the post process on the lazily concatenated results.
+                postProcessed = bj.postProcess(input, output);
+            } finally {
+                output.close();
+            }
+            // handle whether it succeeded.
+            if (postProcessed) {
+                log.debug("Post processing finished.");
+                resultsFile = RemoteFileFactory.getMovefileInstance(postFile);
+                postFile = null;
+                results.cleanup();
+            } else {
+                log.debug("No post processing. Handing on the results from {} bitarchives.", results.getParts()
+                        .size());
+            }
+        } catch (Exception e) {
+            log.warn("Exception caught during post processing batchjob. Results from the bitarchives used instead.",
+                    e);
+        } finally {
+            IOUtils.closeQuietly(input);
+            if (postFile != null) {
                 tryAndDeleteTemporaryFile(postFile);
-                postFile = bjs.batchResultFile;
             }
+        }
 
-            // Get remote file for batch result
-            resultsFile = RemoteFileFactory.getMovefileInstance(postFile);
-        } catch (Exception e) {
-            log.warn("Make remote file from {}", bjs.batchResultFile, e);
-            bjs.appendError("Could not append batch results: " + e);
+        // The results from the bitarchives can only be transferred once.
+        if (resultsFile == results && input.isStarted()) {
+            log.warn("The results of batchjob '{}' were read by the post processing, but no post processed results "
+                    + "were made", bjs.originalRequestID);
+            bjs.appendError("Could not post process batch results: the results from the bitarchives have been "
+                    + "consumed");
+            results.cleanup();
+            resultsFile = null;
         }
 
         // Make batch reply message
         BatchReplyMessage brMsg = new BatchReplyMessage(bjs.originalRequestReplyTo, Channels.getTheBamon(),
-                bjs.originalRequestID, bjs.noOfFilesProcessed, bjs.filesFailed, resultsFile);
+                bjs.originalRequestID, bjs.noOfFilesProcessed, bjs.filesFailed, resultsFile, bjs.exceptions);
         if (bjs.errorMessages != null) {
             brMsg.setNotOk(bjs.errorMessages);
         }
@@ -519,6 +584,24 @@ public class BitarchiveMonitorServer extends ArchiveMessageHandler implements Ob
         log.info("BatchReplyMessage: '{}' sent from BA monitor to queue: '{}'", brMsg, brMsg.getTo());
     }
 
+    /**
+     * Tells whether the bitarchives have sorted their output of a batch job, so their results should be merged.
+     *
+     * @param bj The batch job, or null if it is unknown.
+     * @return Whether the job has sorted output. False if the job is unknown or cannot tell.
+     */
+    private boolean hasSortedOutput(FileBatchJob bj) {
+        if (bj == null) {
+            return false;
+        }
+        try {
+            return bj.hasSortedOutput();
+        } catch (Exception e) {
+            log.warn("Could not tell whether batchjob '{}' has sorted output. Its results are concatenated.", bj, e);
+            return false;
+        }
+    }
+
     /**
      * Helper method to delete temporary files. Logs at level debug, if it couldn't delete the file.
      *
@@ -566,7 +649,7 @@ public class BitarchiveMonitorServer extends ArchiveMessageHandler implements Ob
     private void replyToGetAllChecksumsMessage(BitarchiveMonitor.BatchJobStatus bjs, GetAllChecksumsMessage msg) {
         try {
             // Set the resulting file.
-            msg.setFile(bjs.batchResultFile);
+            msg.setRemoteFile(bjs.getResults(true));
 
             // record any errors.
             if (bjs.errorMessages != null) {
@@ -592,7 +675,7 @@ public class BitarchiveMonitorServer extends ArchiveMessageHandler implements Ob
     private void replyToGetAllFilenamesMessage(BitarchiveMonitor.BatchJobStatus bjs, GetAllFilenamesMessage msg) {
         try {
             // Set the resulting file.
-            msg.setFile(bjs.batchResultFile);
+            msg.setRemoteFile(bjs.getResults(true));
 
             // record any errors.
             if (bjs.errorMessages != null) {
@@ -617,8 +700,8 @@ public class BitarchiveMonitorServer extends ArchiveMessageHandler implements Ob
      */
     private void replyToGetChecksumMessage(BitarchiveMonitor.BatchJobStatus bjs, GetChecksumMessage msg) {
         try {
-            // Fetch the content of the batchresultfile.
-            List<String> output = FileUtils.readListFromFile(bjs.batchResultFile);
+            // Fetch the content of the batch results.
+            List<String> output = readResultLines(bjs);
 
             if (output.size() < 1) {
                 String errMsg = "The batchjob did not find the file '" + msg.getArcfileName() + "' within the "
@@ -660,9 +743,6 @@ public class BitarchiveMonitorServer extends ArchiveMessageHandler implements Ob
 
             // Put the checksum into the reply message, and reply.
             msg.setChecksum(firstResult.getValue());
-
-            // cleanup batchjob file
-            FileUtils.remove(bjs.batchResultFile);
         } catch (Throwable t) {
             msg.setNotOk(t);
             log.warn("An error occurred during the handling of the GetChecksumMessage", t);
@@ -675,6 +755,32 @@ public class BitarchiveMonitorServer extends ArchiveMessageHandler implements Ob
         }
     }
 
+    /**
+     * Reads the results of a batch job as lines. The results are cleaned up afterwards.
+     *
+     * @param bjs The status of the batch job.
+     * @return The lines of the results from all the bitarchives.
+     * @throws IOFailure If the results cannot be read.
+     */
+    private List<String> readResultLines(BitarchiveMonitor.BatchJobStatus bjs) throws IOFailure {
+        ConcatenatedRemoteFile results = bjs.getResults();
+        List<String> lines = new ArrayList<String>();
+        BufferedReader in = null;
+        try {
+            in = new BufferedReader(new InputStreamReader(results.getInputStream()));
+            String line;
+            while ((line = in.readLine()) != null) {
+                lines.add(line);
+            }
+        } catch (IOException e) {
+            throw new IOFailure("Could not read the batch results from " + results, e);
+        } finally {
+            IOUtils.closeQuietly(in);
+            results.cleanup();
+        }
+        return lines;
+    }
+
     /**
      * Close down this BitarchiveMonitor.
      */
@@ -45,6 +45,7 @@ import dk.netarkivet.common.distribute.NullRemoteFile;
 import dk.netarkivet.common.distribute.arcrepository.BatchStatus;
 import dk.netarkivet.common.distribute.arcrepository.BitarchiveRecord;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
 import dk.netarkivet.common.exceptions.PermissionDenied;
 import dk.netarkivet.common.exceptions.UnknownID;
 import dk.netarkivet.common.utils.ChecksumCalculator;
@@ -55,6 +56,8 @@ import dk.netarkivet.common.utils.NotificationType;
 import dk.netarkivet.common.utils.NotificationsFactory;
 import dk.netarkivet.common.utils.Settings;
 import dk.netarkivet.common.utils.SystemUtils;
+import dk.netarkivet.common.utils.batch.BatchProgress;
+import dk.netarkivet.common.utils.batch.BatchProgressListener;
 
 /**
  * Bitarchive container responsible for processing the different classes of message which can be received by a
@@ -251,7 +254,7 @@ public class BitarchiveServer extends ArchiveMessageHandler implements CleanupIF
                 synchronized (this) {
                     // Important when two identical files are uploaded
                     // simultanously.
-                    ba.upload(msg.getRemoteFile(), msg.getArcfileName());
+                    msg.setChecksum(ba.upload(msg.getRemoteFile(), msg.getArcfileName()));
                 }
             } catch (Throwable t) {
                 log.warn("Error while processing upload message '{}'", msg, t);
@@ -327,11 +330,12 @@ public class BitarchiveServer extends ArchiveMessageHandler implements CleanupIF
             }
 
             log.debug("Checksums matched - preparing to move and return file");
-            File moveTo = baa.getAtticPath(foundFile);
-            if (!foundFile.renameTo(moveTo)) {
-                final String message = "Failed to move the file:" + foundFile + "to attic";
-                log.warn(message);
-                msg.setNotOk(message);
+            File moveTo;
+            try {
+                moveTo = baa.moveToAttic(foundFile);
+            } catch (IOFailure e) {
+                log.warn(e.getMessage());
+                msg.setNotOk(e.getMessage());
                 return;
             }
             msg.setFile(moveTo);
@@ -347,7 +351,8 @@ public class BitarchiveServer extends ArchiveMessageHandler implements CleanupIF
     }
 
     /**
-     * Process a batch job and send the result back to the client.
+     * Process a batch job and send the result back to the client. The progress of the job is sent to the monitor while
+     * it runs.
      *
      * @param msg a container for batch jobs
      * @throws ArgumentNotValid If the BatchMessage is null.
@@ -362,7 +367,11 @@ public class BitarchiveServer extends ArchiveMessageHandler implements CleanupIF
                     // TODO Possibly tell batch something that will let
                     // it create more comprehensible file names.
                     // Run the batch job on all files on this machine
-                    BatchStatus batchStatus = ba.batch(bitarchiveAppId, msg.getJob());
+                    BatchStatus batchStatus = ba.batch(bitarchiveAppId, msg.getJob(), new BatchProgressListener() {
+                        public void progress(BatchProgress progress) {
+                            con.send(new BatchProgressMessage(baMon, bitarchiveAppId, msg.getID(), progress));
+                        }
+                    });
 
                     // Create the message which will contain the reply
                     BatchEndedMessage resultMessage = new BatchEndedMessage(baMon, msg.getID(), batchStatus);
@@ -25,6 +25,7 @@ package dk.netarkivet.archive.bitarchive.distribute;
 import dk.netarkivet.archive.distribute.ArchiveMessage;
 import dk.netarkivet.archive.distribute.ArchiveMessageVisitor;
 import dk.netarkivet.common.distribute.ChannelID;
+import dk.netarkivet.common.distribute.KeyedMessage;
 import dk.netarkivet.common.distribute.RemoteFile;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 
@@ -32,7 +33,7 @@ import dk.netarkivet.common.exceptions.ArgumentNotValid;
  * Container for upload request.
  */
 @SuppressWarnings({"serial"})
-public class UploadMessage extends ArchiveMessage {
+public class UploadMessage extends ArchiveMessage implements KeyedMessage {
     /** the name of the file to upload. */
     private String arcfileName;
 
@@ -41,6 +42,9 @@ public class UploadMessage extends ArchiveMessage {
 
     /** precomputed checksum  */
     private String precomputedChecksum;
+
+    /** The checksum of the stored file, calculated by the replica while storing it. */
+    private String checksum;
     
     /**
      * Construct UploadMessage.
@@ -65,6 +69,16 @@ public class UploadMessage extends ArchiveMessage {
         return arcfileName;
     }
 
+    /**
+     * Uploads of the same file are processed in order.
+     *
+     * @return the name of the uploaded file.
+     */
+    @Override
+    public String getOrderingKey() {
+        return arcfileName;
+    }
+
     /**
      * Get method for field theRemoteFile.
      *
@@ -101,4 +115,22 @@ public class UploadMessage extends ArchiveMessage {
 		return this.precomputedChecksum;
 	}
 
+    /**
+     * Set the checksum of the stored file, as calculated by the replica while storing it.
+     *
+     * @param checksum The checksum of the stored file.
+     */
+    public void setChecksum(String checksum) {
+        this.checksum = checksum;
+    }
+
+    /**
+     * Get the checksum of the stored file, as calculated by the replica while storing it.
+     *
+     * @return The checksum of the stored file, or null if the replica did not report it.
+     */
+    public String getChecksum() {
+        return checksum;
+    }
+
 }
@@ -115,6 +115,15 @@ public interface ChecksumArchive {
      */
     public File getArchiveAsFile();
 
+    /**
+     * Method for retrieving the entries, which have been uploaded or corrected since a given time, as a temporary file
+     * containing the checksum entries. More entries than these may be returned, but never fewer.
+     *
+     * @param changedSince The time in milliseconds since the epoch. 0 means all entries.
+     * @return A temporary checksum file.
+     */
+    public File getArchiveAsFile(long changedSince);
+
     /**
      * Method for retrieving the names of all the files within the archive as a temporary file.
      *
@@ -122,6 +131,15 @@ public interface ChecksumArchive {
      */
     public File getAllFilenames();
 
+    /**
+     * Method for retrieving the names of the files, which have been uploaded or corrected since a given time, as a
+     * temporary file. More filenames than these may be returned, but never fewer.
+     *
+     * @param changedSince The time in milliseconds since the epoch. 0 means all files.
+     * @return A temporary file containing the list of filenames. This file has one filename per line.
+     */
+    public File getAllFilenames(long changedSince);
+
     /**
      * Method for cleaning up when closing down.
      */
@@ -0,0 +1,372 @@
+/*
+ * #%L
+ * Netarchivesuite - archive
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.archive.checksum;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import dk.netarkivet.common.exceptions.IllegalState;
+
+/**
+ * A compact map from filenames to checksums, used by the {@link FileChecksumArchive} to keep the whole archive in
+ * memory.
+ * <p>
+ * The filenames are stored as UTF-8 in one large byte array, and MD5 checksums in their binary form of 16 bytes in
+ * another, so an entry costs little more than the length of its filename plus 40 bytes, instead of the several hundred
+ * bytes of strings and map entries in a HashMap. Checksums that are not lower case hexadecimal MD5 checksums are kept
+ * as they are on the side. The entries are found through an open addressing hash table of entry numbers. Entries
+ * cannot be removed, only given a new checksum. The time each entry was last changed is kept too, so the entries
+ * changed since a given time can be found.
+ * <p>
+ * All methods are synchronized.
+ */
+final class ChecksumIndex {
+
+    /** The charset of the stored filenames. */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /** The number of bytes in a binary MD5 checksum. */
+    private static final int DIGEST_LENGTH = 16;
+    /** The number of characters in a hexadecimal MD5 checksum. */
+    private static final int HEX_DIGEST_LENGTH = 2 * DIGEST_LENGTH;
+    /** The hexadecimal digits. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    /** The initial number of entries there is room for. */
+    private static final int INITIAL_CAPACITY = 1024;
+    /** The largest array length that can safely be allocated. */
+    static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+    /** The largest number of entries, limited by the length of the array of binary checksums. */
+    static final int MAX_ENTRIES = MAX_ARRAY_LENGTH / DIGEST_LENGTH;
+
+    /** The filenames of all entries, one after the other. */
+    private byte[] names;
+    /** The number of bytes used in names. */
+    private int namesLength;
+    /** For each entry, the position of its filename in names. */
+    private int[] nameOffsets;
+    /** For each entry, the length of its filename in names. */
+    private int[] nameLengths;
+    /** For each entry, the binary MD5 checksum. */
+    private byte[] digests;
+    /** For each entry, the time it was last changed, in milliseconds since the epoch. */
+    private long[] changed;
+    /** The checksums of the entries whose checksum is not a hexadecimal MD5 checksum, by entry number. */
+    private final Map<Integer, String> otherChecksums = new HashMap<Integer, String>();
+    /** The hash table, holding entry number plus one, or zero for unused slots. The length is a power of two. */
+    private int[] table;
+    /** The number of entries. */
+    private int size;
+
+    /** Create an empty index. */
+    ChecksumIndex() {
+        clear();
+    }
+
+    /**
+     * Get the number of entries.
+     *
+     * @return the number of filenames in the index.
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Tells whether the index is empty.
+     *
+     * @return true if there are no entries.
+     */
+    synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Remove all entries. */
+    synchronized void clear() {
+        names = new byte[INITIAL_CAPACITY * 32];
+        namesLength = 0;
+        nameOffsets = new int[INITIAL_CAPACITY];
+        nameLengths = new int[INITIAL_CAPACITY];
+        digests = new byte[INITIAL_CAPACITY * DIGEST_LENGTH];
+        changed = new long[INITIAL_CAPACITY];
+        otherChecksums.clear();
+        table = new int[2 * INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    /**
+     * Tells whether there is an entry for a file.
+     *
+     * @param filename The name of the file.
+     * @return true if the file has an entry.
+     */
+    synchronized boolean containsKey(String filename) {
+        return find(filename.getBytes(UTF8)) >= 0;
+    }
+
+    /**
+     * Get the checksum of a file.
+     *
+     * @param filename The name of the file.
+     * @return the checksum, or null if the file has no entry.
+     */
+    synchronized String get(String filename) {
+        int entry = find(filename.getBytes(UTF8));
+        return entry < 0 ? null : getChecksum(entry);
+    }
+
+    /**
+     * Set the checksum of a file, adding an entry for it if there is none. The entry is marked as changed now.
+     *
+     * @param filename The name of the file.
+     * @param checksum The checksum of the file.
+     * @return the previous checksum of the file, or null if the file had no entry.
+     */
+    synchronized String put(String filename, String checksum) {
+        return put(filename, checksum, System.currentTimeMillis());
+    }
+
+    /**
+     * Set the checksum of a file, adding an entry for it if there is none.
+     *
+     * @param filename The name of the file.
+     * @param checksum The checksum of the file.
+     * @param changedTime The time the entry was changed, in milliseconds since the epoch.
+     * @return the previous checksum of the file, or null if the file had no entry.
+     */
+    synchronized String put(String filename, String checksum, long changedTime) {
+        byte[] name = filename.getBytes(UTF8);
+        int entry = find(name);
+        if (entry >= 0) {
+            String previous = getChecksum(entry);
+            setChecksum(entry, checksum);
+            changed[entry] = changedTime;
+            return previous;
+        }
+        entry = size;
+        ensureCapacity(name.length);
+        System.arraycopy(name, 0, names, namesLength, name.length);
+        nameOffsets[entry] = namesLength;
+        nameLengths[entry] = name.length;
+        namesLength += name.length;
+        setChecksum(entry, checksum);
+        changed[entry] = changedTime;
+        ++size;
+        insert(entry, hash(names, nameOffsets[entry], name.length));
+        return null;
+    }
+
+    /**
+     * Get the filename of an entry.
+     *
+     * @param entry The entry number, between 0 and size() - 1. Entries are numbered in the order they were added.
+     * @return the filename.
+     */
+    synchronized String getFilename(int entry) {
+        return new String(names, nameOffsets[entry], nameLengths[entry], UTF8);
+    }
+
+    /**
+     * Get the checksum of an entry.
+     *
+     * @param entry The entry number, between 0 and size() - 1.
+     * @return the checksum.
+     */
+    synchronized String getChecksum(int entry) {
+        String other = otherChecksums.get(entry);
+        if (other != null) {
+            return other;
+        }
+        char[] hex = new char[HEX_DIGEST_LENGTH];
+        for (int i = 0; i < DIGEST_LENGTH; i++) {
+            int b = digests[entry * DIGEST_LENGTH + i] & 0xff;
+            hex[2 * i] = HEX_DIGITS[b >>> 4];
+            hex[2 * i + 1] = HEX_DIGITS[b & 0xf];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Get the time an entry was last changed.
+     *
+     * @param entry The entry number, between 0 and size() - 1.
+     * @return the time in milliseconds since the epoch.
+     */
+    synchronized long getChanged(int entry) {
+        return changed[entry];
+    }
+
+    /**
+     * Store the checksum of an entry, in binary form if possible.
+     *
+     * @param entry The entry number.
+     * @param checksum The checksum.
+     */
+    private void setChecksum(int entry, String checksum) {
+        if (!isHexDigest(checksum)) {
+            otherChecksums.put(entry, checksum);
+            return;
+        }
+        otherChecksums.remove(entry);
+        for (int i = 0; i < DIGEST_LENGTH; i++) {
+            digests[entry * DIGEST_LENGTH + i] = (byte) ((Character.digit(checksum.charAt(2 * i), 16) << 4) | Character
+                    .digit(checksum.charAt(2 * i + 1), 16));
+        }
+    }
+
+    /**
+     * Tells whether a checksum is a lower case hexadecimal MD5 checksum, which can be stored in binary form and
+     * converted back to the same string.
+     *
+     * @param checksum The checksum.
+     * @return true if the checksum can be stored in binary form.
+     */
+    static boolean isHexDigest(String checksum) {
+        if (checksum.length() != HEX_DIGEST_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < HEX_DIGEST_LENGTH; i++) {
+            char c = checksum.charAt(i);
+            if (!(c >= '0' && c <= '9') && !(c >= 'a' && c <= 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the entry for a filename.
+     *
+     * @param name The filename as UTF-8.
+     * @return the entry number, or -1 if there is no entry.
+     */
+    private int find(byte[] name) {
+        int mask = table.length - 1;
+        for (int slot = hash(name, 0, name.length) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int entry = table[slot] - 1;
+            if (nameEquals(entry, name)) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Tells whether an entry has a given filename.
+     *
+     * @param entry The entry number.
+     * @param name The filename as UTF-8.
+     * @return true if the filenames are the same.
+     */
+    private boolean nameEquals(int entry, byte[] name) {
+        if (nameLengths[entry] != name.length) {
+            return false;
+        }
+        int offset = nameOffsets[entry];
+        for (int i = 0; i < name.length; i++) {
+            if (names[offset + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Put an entry in the first free slot of the hash table for its hash value.
+     *
+     * @param entry The entry number.
+     * @param hash The hash value of the filename of the entry.
+     */
+    private void insert(int entry, int hash) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = entry + 1;
+    }
+
+    /**
+     * Make room for one more entry with a filename of a given length. The hash table is kept at most half full.
+     *
+     * @param nameLength The length of the filename as UTF-8.
+     * @throws IllegalState If the index cannot hold any more entries or filenames.
+     */
+    private void ensureCapacity(int nameLength) {
+        long neededNamesLength = (long) namesLength + nameLength;
+        if (neededNamesLength > names.length) {
+            int length = grow(names.length, neededNamesLength, MAX_ARRAY_LENGTH, "bytes of filenames");
+            names = Arrays.copyOf(names, length);
+        }
+        if (size == nameOffsets.length) {
+            int capacity = grow(size, size + 1L, MAX_ENTRIES, "entries");
+            nameOffsets = Arrays.copyOf(nameOffsets, capacity);
+            nameLengths = Arrays.copyOf(nameLengths, capacity);
+            digests = Arrays.copyOf(digests, capacity * DIGEST_LENGTH);
+            changed = Arrays.copyOf(changed, capacity);
+        }
+        // With at most MAX_ENTRIES entries, the length stays below 2^29
+        if (2L * (size + 1) > table.length) {
+            table = new int[2 * table.length];
+            for (int entry = 0; entry < size; entry++) {
+                insert(entry, hash(names, nameOffsets[entry], nameLengths[entry]));
+            }
+        }
+    }
+
+    /**
+     * Calculate the new length of an array that is full, doubling it where possible.
+     *
+     * @param length The current length.
+     * @param needed The length needed.
+     * @param max The largest length allowed.
+     * @param unit What the array holds, for the error message.
+     * @return the new length, at least needed and at most max.
+     * @throws IllegalState If the length needed is larger than max.
+     */
+    static int grow(int length, long needed, int max, String unit) {
+        if (needed > max) {
+            throw new IllegalState("The checksum index cannot hold more than " + max + " " + unit);
+        }
+        return (int) Math.min(Math.max(2L * length, needed), max);
+    }
+
+    /**
+     * Calculate the hash value of a filename, using the FNV-1a algorithm.
+     *
+     * @param bytes The array containing the filename as UTF-8.
+     * @param offset The position of the filename in the array.
+     * @param length The length of the filename.
+     * @return the hash value.
+     */
+    private static int hash(byte[] bytes, int offset, int length) {
+        int hash = 0x811c9dc5;
+        for (int i = offset; i < offset + length; i++) {
+            hash ^= bytes[i];
+            hash *= 0x01000193;
+        }
+        // Spread the high bits to the low bits used for the slot
+        return hash ^ (hash >>> 16);
+    }
+
+}
@@ -29,6 +29,7 @@ import java.io.InputStream;
 import java.util.Date;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,6 +55,7 @@ import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.IOFailure;
 import dk.netarkivet.common.exceptions.IllegalState;
 import dk.netarkivet.common.utils.ChecksumCalculator;
+import dk.netarkivet.common.utils.DigestingCopy;
 import dk.netarkivet.common.utils.FileUtils;
 import dk.netarkivet.common.utils.Settings;
 import dk.netarkivet.common.utils.batch.ChecksumJob;
@@ -330,7 +332,8 @@ public class DatabaseChecksumArchive implements ChecksumArchive {
 
         try {
             input = file.getInputStream();
-            String newChecksum = calculateChecksum(input);
+            String newChecksum = DigestingCopy.copy(input, new NullOutputStream(), ChecksumCalculator.MD5)[0];
+            DigestingCopy.checkMd5(file.getChecksum(), newChecksum, filename);
             if (hasEntry(filename)) {
                 // fetch already stored checksum
                 String oldChecksum = getChecksum(filename);
@@ -475,6 +478,17 @@ public class DatabaseChecksumArchive implements ChecksumArchive {
         }
     }
 
+    /**
+     * The database does not record when the entries were changed, so all the entries are returned.
+     *
+     * @param changedSince Not used.
+     * @return A temporary checksum file with all the entries.
+     */
+    @Override
+    public File getArchiveAsFile(long changedSince) {
+        return getArchiveAsFile();
+    }
+
     @Override
     public File getAllFilenames() {
         File tempFile = null;
@@ -493,6 +507,17 @@ public class DatabaseChecksumArchive implements ChecksumArchive {
         return tempFile;
     }
 
+    /**
+     * The database does not record when the entries were changed, so all the filenames are returned.
+     *
+     * @param changedSince Not used.
+     * @return A temporary file with all the filenames.
+     */
+    @Override
+    public File getAllFilenames(long changedSince) {
+        return getAllFilenames();
+    }
+
     @Override
     public void cleanup() {
         if (checksumDB != null) {
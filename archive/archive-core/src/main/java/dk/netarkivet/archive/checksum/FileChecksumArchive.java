@@ -23,18 +23,25 @@
 package dk.netarkivet.archive.checksum;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Iterator;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -47,18 +54,28 @@ import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.IOFailure;
 import dk.netarkivet.common.exceptions.IllegalState;
 import dk.netarkivet.common.utils.ChecksumCalculator;
+import dk.netarkivet.common.utils.DigestingCopy;
 import dk.netarkivet.common.utils.FileUtils;
-import dk.netarkivet.common.utils.KeyValuePair;
 import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.common.utils.SortUtils;
 import dk.netarkivet.common.utils.batch.ChecksumJob;
 
 /**
- * A checksum archive in the form of a file (as alternative to a database).<br>
+ * A checksum archive in the form of files (as alternative to a database).<br>
  * <p>
- * Each entry in the file is on its own line, thus the number of lines is the number of entries.<br>
- * The entries on a line is in the format of a ChecksumJob: <br>
- * <b>'filename' + ## + 'checksum'</b> <br>
- * The lines are not sorted.
+ * Each entry in the files is on its own line, in the format of a ChecksumJob followed by the time the entry was
+ * changed in milliseconds since the epoch: <br>
+ * <b>'filename' + ## + 'checksum' + ## + 'change time'</b> <br>
+ * Lines written by earlier versions have no change time, and are considered changed when their file was last modified.
+ * The change times are kept when the files are compacted, but left out of the files given to others, which are in the
+ * format of a ChecksumJob. New entries, and corrections of existing entries, are appended to the checksum file, where a later line for a file
+ * overrides earlier ones. When the number of lines appended exceeds the setting
+ * {@link ArchiveSettings#CHECKSUM_COMPACTION_THRESHOLD}, the checksum file is renamed to a compacting file, a new
+ * checksum file is started, and the compacting file is merged into the compacted file in the background. The compacted
+ * file has one line per file, sorted by filename. A checksum file in the format of earlier versions is thus simply
+ * compacted the first time.
+ * <p>
+ * The entire archive is kept in memory in a compact {@link ChecksumIndex}.
  * <p>
  * If no file exists when the class is instantiated then it will be created, and if an 'admin.data' file exists, then it
  * will be loaded and put into the archive file.
@@ -73,10 +90,17 @@ public final class FileChecksumArchive implements ChecksumArchive {
     private static final String FILENAME_PREFIX = "checksum_";
     /** The suffix to the filename. */
     private static final String FILENAME_SUFFIX = ".md5";
-    /** The suffix of the filename of the recreation file. */
-    private static final String RECREATE_PREFIX = "recreate_";
-    /** The suffix of the filename of the recreation file. */
-    private static final String RECREATE_SUFFIX = ".checksum";
+    /** The suffix of the checksum file while it is being merged into the compacted file. */
+    private static final String COMPACTING_SUFFIX = ".compacting";
+    /** The prefix to the filename of the compacted file. */
+    private static final String COMPACTED_PREFIX = "compacted_";
+    /** The suffix of the compacted file while it is being written. */
+    private static final String NEW_SUFFIX = ".new";
+    /**
+     * The number of entries appended since the last compaction, relative to the compaction threshold, which are sorted
+     * in memory. More entries, e.g. from a checksum file of an earlier version, are sorted on disk.
+     */
+    private static final int MAX_UPDATES_IN_MEMORY_FACTOR = 2;
     /** The prefix to the removedEntryFile. */
     private static final String WRONG_FILENAME_PREFIX = "removed_";
     /** The suffix to the removedEntryFile. */
@@ -89,10 +113,38 @@ public final class FileChecksumArchive implements ChecksumArchive {
     private static FileChecksumArchive instance;
 
     /**
-     * The file to store the checksum. Each line should contain the following: arc-filename + ## + checksum.
+     * The file new checksum entries are appended to. Each line should contain the following: arc-filename + ## +
+     * checksum.
      */
     private File checksumFile;
 
+    /** The earlier checksum file, while it is being merged into the compacted file. */
+    private File compactingFile;
+
+    /** The compacted entries, with one line per file sorted by filename. */
+    private File compactedFile;
+
+    /** Lock held while the compacted file is read or replaced. */
+    private final Object compactionLock = new Object();
+
+    /** The number of lines in the checksum file. */
+    private long checksumFileLines;
+
+    /** The number of lines in the checksum file, which causes it to be compacted. */
+    private long compactionThreshold;
+
+    /** Whether the compacting file is being merged into the compacted file. */
+    private boolean compacting;
+
+    /** The thread that merges the compacting file into the compacted file. */
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "FileChecksumArchive-compactor");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
     /**
      * The file for storing all the deleted entries. Each entry should be: 'date :' + 'wrongEntry'.
      */
@@ -110,7 +162,7 @@ public final class FileChecksumArchive implements ChecksumArchive {
      * <p>
      * Map(file -> checksum).
      */
-    private Map<String, String> checksumArchive = Collections.synchronizedMap(new HashMap<String, String>());
+    private ChecksumIndex checksumArchive = new ChecksumIndex();
 
     /** The minimum space left. */
     private long minSpaceLeft;
@@ -146,6 +198,7 @@ public final class FileChecksumArchive implements ChecksumArchive {
             log.warn(msg);
             throw new ArgumentNotValid(msg);
         }
+        compactionThreshold = Settings.getLong(ArchiveSettings.CHECKSUM_COMPACTION_THRESHOLD);
 
         // Initialize the archive and bad-entry files.
         initializeFiles();
@@ -183,14 +236,15 @@ public final class FileChecksumArchive implements ChecksumArchive {
     }
 
     /**
-     * Method for testing whether there is enough left on the local drive for recreating the checksum file.
+     * Method for testing whether there is enough left on the local drive for writing a new compacted file.
      *
      * @return False only if there is not enough space left.
      */
-    private boolean hasEnoughSpaceForRecreate() {
-        // check if the checksum file is larger than space left and the minimum
-        // space left.
-        if (checksumFile.length() + minSpaceLeft > FileUtils.getBytesFree(checksumFile)) {
+    private boolean hasEnoughSpaceForCompaction() {
+        // check if the new compacted file may be larger than space left and
+        // the minimum space left.
+        if (compactedFile.length() + compactingFile.length() + minSpaceLeft > FileUtils.getBytesFree(compactedFile
+                .getAbsoluteFile().getParentFile())) {
             return false;
         }
 
@@ -224,23 +278,22 @@ public final class FileChecksumArchive implements ChecksumArchive {
 
         // get the name of the file and initialise it.
         checksumFile = new File(checksumDir, makeChecksumFileName());
+        compactingFile = new File(checksumDir, makeChecksumFileName() + COMPACTING_SUFFIX);
+        compactedFile = new File(checksumDir, COMPACTED_PREFIX + makeChecksumFileName());
 
         // Create file is checksumFile does not exist.
         if (!checksumFile.exists()) {
             try {
                 checksumFile.createNewFile();
-                lastModifiedChecksumFile = checksumFile.lastModified();
             } catch (IOException e) {
                 String msg = "Cannot create checksum archive file!";
                 log.error(msg);
                 throw new IOFailure(msg, e);
             }
-        } else {
-            // If the archive file already exists, then it must consist of the
-            // archive for this replica. It must therefore be loaded into the
-            // memory.
-            loadFile();
         }
+        // Any existing files must consist of the archive for this replica.
+        // They must therefore be loaded into the memory.
+        loadFile();
 
         // If the archive is new or otherwise empty, then try to load admin.data
         if (checksumArchive.isEmpty()) {
@@ -249,58 +302,83 @@ public final class FileChecksumArchive implements ChecksumArchive {
     }
 
     /**
-     * Loads an existing checksum archive file into the memory. This will go through every line, and if the line is
-     * valid, then it is loaded into the checksumArchive map in the memory. If the line is invalid then a warning is
-     * issued and the line is put into the wrongEntryFile.
+     * Loads the existing checksum archive files into the memory: first the compacted file, then a compacting file left
+     * by an interrupted compaction, and then the checksum file, so later entries override earlier ones. This will go
+     * through every line, and if the line is valid, then it is loaded into the checksumArchive in the memory. If the
+     * line is invalid then a warning is issued and the line is put into the wrongEntryFile.
      * <p>
-     * If a bad entry is found, then the archive file has to be recreated afterwards, since the bad entry otherwise
-     * still would be in the archive file.
+     * If a bad entry is found, then the checksum file is compacted afterwards, since the bad entry otherwise still
+     * would be in the checksum file.
      */
     private void loadFile() {
-        // Checks whether a bad entry was found, to decide whether the archive
-        // file should be recreated.
-        boolean recreate = false;
-
-        // extract all the data from the file.
-        List<String> entries;
-
-        // This should be synchronized to prevent reading the file while it is
-        // being written.
-        synchronized (checksumFile) {
-            entries = FileUtils.readListFromFile(checksumFile);
-        }
-
-        String filename;
-        String checksum;
-
-        // go through all entries and extract their filename and checksum.
-        for (String record : entries) {
-            try {
-                KeyValuePair<String, String> entry = ChecksumJob.parseLine(record);
-                // extract the filename and checksum
-                filename = entry.getKey();
-                checksum = entry.getValue();
-                // If their are extracted correct, then they will be put
-                // into the archive.
-                checksumArchive.put(filename, checksum);
-            } catch (IllegalState e) {
-                log.warn("An invalid entry in the loaded file: '{}' This will be put in the wrong entry file.", record,
-                        e);
-                // put into wrongEntryFile!
-                appendWrongRecordToWrongEntryFile(record);
-                recreate = true;
+        boolean badEntries;
+        // This should be synchronized to prevent reading the files while they
+        // are being written or replaced.
+        synchronized (compactionLock) {
+            synchronized (checksumFile) {
+                loadEntries(compactedFile);
+                badEntries = loadEntries(compactingFile) > 0;
+                checksumFileLines = 0;
+                badEntries |= loadEntries(checksumFile) > 0;
+                // retrieve the 'last modified' from the checksum file.
+                lastModifiedChecksumFile = checksumFile.lastModified();
             }
         }
+        log.info("Loaded {} checksum entries.", checksumArchive.size());
 
-        // If a bad entry is found, then the archive file should be recreated.
+        // If a bad entry is found, then the archive file should be compacted.
         // Otherwise the bad entries might still be in the archive file next
         // time the FileChecksumArchive is initialized/restarted.
-        if (recreate) {
-            recreateArchiveFile();
+        if (badEntries || compactingFile.exists() || checksumFileLines >= compactionThreshold) {
+            startCompaction();
         }
+    }
 
-        // retrieve the 'last modified' from the checksum file.
-        lastModifiedChecksumFile = checksumFile.lastModified();
+    /**
+     * Load the entries of one of the checksum archive files into the memory, and count the lines of the checksum file.
+     *
+     * @param file The file to load. Nothing is loaded if it does not exist.
+     * @return The number of invalid entries, which have been put into the wrongEntryFile.
+     * @throws IOFailure If the file cannot be read.
+     */
+    private int loadEntries(File file) {
+        if (!file.exists()) {
+            return 0;
+        }
+        int badEntries = 0;
+        // Entries without a change time were changed at the latest when the file was.
+        long fileChangedTime = file.lastModified();
+        try {
+            BufferedReader in = new BufferedReader(new FileReader(file));
+            try {
+                String record;
+                while ((record = in.readLine()) != null) {
+                    if (file == checksumFile) {
+                        ++checksumFileLines;
+                    }
+                    if (record.isEmpty()) {
+                        continue;
+                    }
+                    try {
+                        Entry entry = parseEntry(record, fileChangedTime);
+                        // If their are extracted correct, then they will be put
+                        // into the archive.
+                        checksumArchive.put(entry.filename, entry.checksum, entry.changedTime);
+                    } catch (IllegalState e) {
+                        log.warn("An invalid entry in the loaded file: '{}' This will be put in the wrong entry file.",
+                                record, e);
+                        // put into wrongEntryFile!
+                        appendWrongRecordToWrongEntryFile(record);
+                        ++badEntries;
+                    }
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new IOFailure("Could not read the checksum archive file '" + file + "'", e);
+        }
+        return badEntries;
     }
 
     /**
@@ -323,7 +401,6 @@ public final class FileChecksumArchive implements ChecksumArchive {
 
         // line length;
         final int lineLength = 4;
-        boolean recreate = false;
 
         BufferedReader in = null;
         try {
@@ -356,11 +433,10 @@ public final class FileChecksumArchive implements ChecksumArchive {
                     String uploadState = entryData[2];
 
                     if (uploadState.equals(ReplicaStoreState.UPLOAD_COMPLETED.toString())) {
-                        if (checksumArchive.containsKey(filename)) {
-                            recreate = true;
-                        }
-                        checksumArchive.put(filename, checksum);
-                        appendEntryToFile(filename, checksum);
+                        // An entry written twice is overridden by the last one.
+                        long changedTime = System.currentTimeMillis();
+                        checksumArchive.put(filename, checksum, changedTime);
+                        appendEntryToFile(filename, checksum, changedTime);
                         log.debug("AdminData line inserted: {}", line);
                     } else {
                         log.trace("AdminData line ignored: {}", line);
@@ -376,78 +452,186 @@ public final class FileChecksumArchive implements ChecksumArchive {
             throw new IOFailure(msg, e);
         }
 
-        // If a entry have been written twice, then recreate the archive file.
-        if (recreate) {
-            recreateArchiveFile();
-        }
-
         log.info("Finished loading admin data.");
     }
 
     /**
-     * Recreates the archive file from the memory. Makes a new file which contains the entire archive, and then move the
-     * new archive file on top of the old one. This is used when to recreate the archive file, when an record has been
-     * removed.
-     *
-     * @throws IOFailure If a problem occur when writing the new file.
+     * Start merging the checksum file into the compacted file in the background, unless it is already being done. The
+     * checksum file is renamed to the compacting file, and a new checksum file is started, so new entries can be
+     * appended while the compaction runs. If an earlier compaction did not finish, then the compacting file from that
+     * is merged instead, and the checksum file is left for the next compaction.
      */
-    private void recreateArchiveFile() throws IOFailure {
-        try {
-            // Handle the case, when there is not enough space left for
-            // recreating the
-            if (!hasEnoughSpaceForRecreate()) {
-                log.error("Not enough space left to recreate the checksum file.");
-                throw new IOFailure("Not enough space left to recreate the checksum file.");
+    private void startCompaction() {
+        synchronized (checksumFile) {
+            if (compacting) {
+                return;
             }
-
-            // This should be synchronized, so no new entries can be made
-            // while recreating the archive file.
-            synchronized (checksumFile) {
-                // initialize and create the file.
-                File recreateFile = new File(checksumFile.getParentFile(), makeRecreateFileName());
-                if (!recreateFile.createNewFile()) {
-                    log.warn("Cannot create new file. The recreate checksum file did already exist.");
+            if (!compactingFile.exists()) {
+                if (!checksumFile.renameTo(compactingFile)) {
+                    log.warn("Could not rename '{}' to '{}'. The checksum file is not compacted.", checksumFile,
+                            compactingFile);
+                    return;
                 }
-
-                // put the archive into the file.
-                FileWriter fw = new FileWriter(recreateFile);
                 try {
-                    for (Map.Entry<String, String> entry : checksumArchive.entrySet()) {
-                        String record = entry.getKey() + CHECKSUM_SEPARATOR + entry.getValue();
-                        fw.append(record + "\n");
-                    }
+                    checksumFile.createNewFile();
+                } catch (IOException e) {
+                    throw new IOFailure("Cannot create checksum archive file!", e);
+                }
+                checksumFileLines = 0;
+                lastModifiedChecksumFile = checksumFile.lastModified();
+            }
+            compacting = true;
+        }
+        compactor.execute(new Runnable() {
+            public void run() {
+                try {
+                    compact();
+                } catch (Exception e) {
+                    log.warn("Compaction of the checksum archive failed. It will be tried again later.", e);
                 } finally {
-                    fw.flush();
-                    fw.close();
+                    synchronized (checksumFile) {
+                        compacting = false;
+                    }
                 }
+            }
+        });
+    }
 
-                // Move the file.
-                FileUtils.moveFile(recreateFile, checksumFile);
+    /**
+     * Merge the compacting file into the compacted file. The entries of the compacting file are sorted, while the
+     * compacted file is streamed. The entries appended since the last compaction are sorted in memory, but a larger
+     * compacting file, like the checksum file of an earlier version the first time it is compacted, is sorted on disk.
+     * Invalid entries have been put into the wrongEntryFile when loaded, and are left out.
+     *
+     * @throws IOFailure If a problem occurs when writing the new compacted file.
+     */
+    private void compact() throws IOFailure {
+        if (!hasEnoughSpaceForCompaction()) {
+            log.error("Not enough space left to compact the checksum file.");
+            throw new IOFailure("Not enough space left to compact the checksum file.");
+        }
+        long start = System.currentTimeMillis();
+        File newCompactedFile = new File(compactedFile.getPath() + NEW_SUFFIX);
+        try {
+            BufferedWriter out = new BufferedWriter(new FileWriter(newCompactedFile));
+            try {
+                SortedUpdates updates = new SortedUpdates(new File[] {compactingFile}, maxUpdatesInMemory());
+                try {
+                    writeMerged(compactedFile, updates, out, true);
+                } finally {
+                    updates.close();
+                }
+            } finally {
+                out.close();
+            }
+            synchronized (compactionLock) {
+                // The compacted file is replaced, before the entries it now
+                // contains are removed from the compacting file.
+                FileUtils.moveFile(newCompactedFile, compactedFile);
+                FileUtils.remove(compactingFile);
             }
         } catch (IOException e) {
-            String errMsg = "The checksum file has not been recreated as attempted. "
-                    + "The archive in memory and the one on file are no longer identical.";
+            FileUtils.remove(newCompactedFile);
+            String errMsg = "The checksum file has not been compacted as attempted.";
             log.error(errMsg, e);
             throw new IOFailure(errMsg, e);
         }
+        log.info("Compacted '{}' into '{}' in {} ms.", compactingFile, compactedFile, System.currentTimeMillis()
+                - start);
     }
 
     /**
-     * Creates the string for the name of the checksum file. E.g. checksum_REPLICA.md5.
+     * @return The number of entries, which are sorted in memory when they are merged into the compacted file.
+     */
+    private long maxUpdatesInMemory() {
+        return MAX_UPDATES_IN_MEMORY_FACTOR * compactionThreshold;
+    }
+
+    /**
+     * Write the entries of a sorted file merged with sorted entries, which override the entries of the file. Both are
+     * streamed, and the result is sorted by filename.
      *
-     * @return The name of the file.
+     * @param sortedFile A file with one entry per filename, sorted by filename. Ignored if it does not exist.
+     * @param updates The entries that override those of the file, with one entry per filename sorted by filename.
+     * @param out The writer to write the merged entries to.
+     * @param withChangedTimes Whether to write the change times of the entries, or only the ChecksumJob format.
+     * @throws IOException If the file cannot be read, or the entries cannot be written.
      */
-    private String makeChecksumFileName() {
-        return FILENAME_PREFIX + Settings.get(CommonSettings.USE_REPLICA_ID) + FILENAME_SUFFIX;
+    private static void writeMerged(File sortedFile, SortedUpdates updates, BufferedWriter out,
+            boolean withChangedTimes) throws IOException {
+        Entry update = updates.next();
+        if (sortedFile.exists()) {
+            long fileChangedTime = sortedFile.lastModified();
+            BufferedReader in = new BufferedReader(new FileReader(sortedFile));
+            try {
+                String record;
+                while ((record = in.readLine()) != null) {
+                    Entry entry = parseEntry(record, fileChangedTime);
+                    // write the updates for the filenames before this one.
+                    while (update != null && update.filename.compareTo(entry.filename) < 0) {
+                        writeEntry(out, update, withChangedTimes);
+                        update = updates.next();
+                    }
+                    if (update != null && update.filename.equals(entry.filename)) {
+                        writeEntry(out, update, withChangedTimes);
+                        update = updates.next();
+                    } else {
+                        writeEntry(out, entry, withChangedTimes);
+                    }
+                }
+            } finally {
+                in.close();
+            }
+        }
+        while (update != null) {
+            writeEntry(out, update, withChangedTimes);
+            update = updates.next();
+        }
     }
 
     /**
-     * Creates the string for the name of the recreate file. E.g. recreate_REPLICA.checksum.
+     * Write a checksum entry as a line.
      *
-     * @return The name of the file for recreating the checksum file.
+     * @param out The writer to write to.
+     * @param entry The entry to write.
+     * @param withChangedTime Whether to write the change time of the entry, or only the ChecksumJob format.
+     * @throws IOException If the entry cannot be written.
      */
-    private String makeRecreateFileName() {
-        return RECREATE_PREFIX + Settings.get(CommonSettings.USE_REPLICA_ID) + RECREATE_SUFFIX;
+    private static void writeEntry(BufferedWriter out, Entry entry, boolean withChangedTime) throws IOException {
+        out.write(withChangedTime ? entry.toRecord() : ChecksumJob.makeLine(entry.filename, entry.checksum));
+        out.newLine();
+    }
+
+    /**
+     * Parse a line of a checksum archive file.
+     *
+     * @param record The line.
+     * @param fileChangedTime The change time of the entry, if the line has none.
+     * @return The entry of the line.
+     * @throws IllegalState If the line is not a valid entry.
+     */
+    private static Entry parseEntry(String record, long fileChangedTime) throws IllegalState {
+        String[] parts = record.split(CHECKSUM_SEPARATOR);
+        if (parts.length == 2) {
+            return new Entry(parts[0], parts[1], fileChangedTime);
+        }
+        if (parts.length == 3) {
+            try {
+                return new Entry(parts[0], parts[1], Long.parseLong(parts[2]));
+            } catch (NumberFormatException e) {
+                throw new IllegalState("The change time of the checksum entry '" + record + "' is not a number", e);
+            }
+        }
+        throw new IllegalState("The line '" + record + "' is not a checksum entry");
+    }
+
+    /**
+     * Creates the string for the name of the checksum file. E.g. checksum_REPLICA.md5.
+     *
+     * @return The name of the file.
+     */
+    private String makeChecksumFileName() {
+        return FILENAME_PREFIX + Settings.get(CommonSettings.USE_REPLICA_ID) + FILENAME_SUFFIX;
     }
 
     /**
@@ -487,11 +671,12 @@ public final class FileChecksumArchive implements ChecksumArchive {
      *
      * @param filename The name of the file to add.
      * @param checksum The checksum of the file to add.
+     * @param changedTime The time the entry was changed, in milliseconds since the epoch.
      * @throws IOFailure If something is wrong when writing to the file.
      */
-    private synchronized void appendEntryToFile(String filename, String checksum) throws IOFailure {
+    private synchronized void appendEntryToFile(String filename, String checksum, long changedTime) throws IOFailure {
         // initialise the record.
-        String record = filename + CHECKSUM_SEPARATOR + checksum + "\n";
+        String record = new Entry(filename, checksum, changedTime).toRecord() + "\n";
 
         // get a filewriter for the checksum file, and append the record.
         boolean appendToFile = true;
@@ -515,6 +700,10 @@ public final class FileChecksumArchive implements ChecksumArchive {
             // The checksum file has been updated and so has its timestamp.
             // Thus update the last modified date for the checksum file.
             lastModifiedChecksumFile = checksumFile.lastModified();
+            ++checksumFileLines;
+        }
+        if (checksumFileLines >= compactionThreshold) {
+            startCompaction();
         }
     }
 
@@ -551,6 +740,7 @@ public final class FileChecksumArchive implements ChecksumArchive {
      * @param filename The name of the arcFile.
      * @throws ArgumentNotValid If the RemoteFile is null or if the filename is not valid.
      * @throws IllegalState If the file already within the archive but with a different checksum.
+     * @throws IOFailure If the file cannot be read, or its checksum differs from the checksum of the remote file.
      */
     public void upload(RemoteFile file, String filename) throws ArgumentNotValid, IllegalState {
         // Validate arguments.
@@ -562,7 +752,8 @@ public final class FileChecksumArchive implements ChecksumArchive {
         try {
             input = file.getInputStream();
             synchronizeMemoryWithFile();
-            String checksum = calculateChecksum(input);
+            String checksum = DigestingCopy.copy(input, new NullOutputStream(), ChecksumCalculator.MD5)[0];
+            DigestingCopy.checkMd5(file.getChecksum(), checksum, filename);
 
             if (checksumArchive.containsKey(filename)) {
                 if (checksumArchive.get(filename).equals(checksum)) {
@@ -580,8 +771,9 @@ public final class FileChecksumArchive implements ChecksumArchive {
             }
 
             // otherwise put the file into memory and file.
-            appendEntryToFile(filename, checksum);
-            checksumArchive.put(filename, checksum);
+            long changedTime = System.currentTimeMillis();
+            appendEntryToFile(filename, checksum, changedTime);
+            checksumArchive.put(filename, checksum, changedTime);
         } finally {
             if (input != null) {
                 IOUtils.closeQuietly(input);
@@ -612,8 +804,9 @@ public final class FileChecksumArchive implements ChecksumArchive {
         }
 
         // otherwise put the file into memory and file.
-        appendEntryToFile(filename, checksum);
-        checksumArchive.put(filename, checksum);
+        long changedTime = System.currentTimeMillis();
+        appendEntryToFile(filename, checksum, changedTime);
+        checksumArchive.put(filename, checksum, changedTime);
     }
 
     /**
@@ -674,8 +867,8 @@ public final class FileChecksumArchive implements ChecksumArchive {
 
     /**
      * Method for correcting a bad entry from the archive. The current incorrect entry is put into the wrongEntryFile.
-     * Then it calculates the checksum and corrects the entry for the file, and then the checksum file is recreated from
-     * the archive in the memory.
+     * Then it calculates the checksum and corrects the entry for the file, by appending the corrected entry to the
+     * checksum file, where it overrides the incorrect one.
      *
      * @param filename The name of the file whose record should be removed.
      * @param correctFile The file that should replace the current entry
@@ -716,13 +909,12 @@ public final class FileChecksumArchive implements ChecksumArchive {
         String badEntry = ChecksumJob.makeLine(filename, currentChecksum);
         appendWrongRecordToWrongEntryFile(badEntry);
 
-        // Correct the bad entry, by changing the value to the newChecksum.'
-        // Since the checksumArchive is a hashmap, then putting an existing
-        // entry with a new value will override the existing one.
-        checksumArchive.put(filename, newChecksum);
-
-        // Recreate the archive file.
-        recreateArchiveFile();
+        // Correct the bad entry, by changing the value to the newChecksum.
+        // Putting an existing entry with a new value will override the
+        // existing one, both in memory and when the files are loaded.
+        long changedTime = System.currentTimeMillis();
+        appendEntryToFile(filename, newChecksum, changedTime);
+        checksumArchive.put(filename, newChecksum, changedTime);
 
         // Make the file containing the bad entry be returned in the
         // CorrectMessage.
@@ -748,9 +940,10 @@ public final class FileChecksumArchive implements ChecksumArchive {
 
     /**
      * Method for retrieving the archive as a temporary file containing the checksum entries. Each line should contain
-     * one checksum entry in the format produced by the ChecksumJob.
+     * one checksum entry in the format produced by the ChecksumJob. The compacted file is streamed and merged with the
+     * sorted entries that have not been compacted yet, so the entries are sorted by filename, with one entry per file.
      *
-     * @return A temporary checksum file, which is a copy of the archive file.
+     * @return A temporary checksum file, with the entries of the archive files.
      * @throws IOFailure If problems occurs during the creation of the file.
      */
     @Override
@@ -760,8 +953,21 @@ public final class FileChecksumArchive implements ChecksumArchive {
         try {
             // create new temporary file of the archive.
             File tempFile = File.createTempFile("tmp", "tmp", FileUtils.getTempDir());
-            synchronized (checksumFile) {
-                FileUtils.copyFile(checksumFile, tempFile);
+            BufferedWriter out = new BufferedWriter(new FileWriter(tempFile));
+            try {
+                synchronized (compactionLock) {
+                    SortedUpdates updates;
+                    synchronized (checksumFile) {
+                        updates = new SortedUpdates(new File[] {compactingFile, checksumFile}, maxUpdatesInMemory());
+                    }
+                    try {
+                        writeMerged(compactedFile, updates, out, false);
+                    } finally {
+                        updates.close();
+                    }
+                }
+            } finally {
+                out.close();
             }
 
             return tempFile;
@@ -772,6 +978,44 @@ public final class FileChecksumArchive implements ChecksumArchive {
         }
     }
 
+    /**
+     * Method for retrieving the entries, which have been uploaded or corrected since a given time, as a temporary file
+     * containing the checksum entries. The entries are found in the memory, by the change times stored with them in
+     * the files.
+     *
+     * @param changedSince The time in milliseconds since the epoch. 0 means all entries.
+     * @return A temporary checksum file with the changed entries.
+     * @throws IOFailure If problems occurs during the creation of the file.
+     */
+    @Override
+    public File getArchiveAsFile(long changedSince) throws IOFailure {
+        if (changedSince == 0L) {
+            return getArchiveAsFile();
+        }
+        synchronizeMemoryWithFile();
+
+        try {
+            File tempFile = File.createTempFile("tmp", "tmp", FileUtils.getTempDir());
+            BufferedWriter out = new BufferedWriter(new FileWriter(tempFile));
+            try {
+                for (int entry = 0; entry < checksumArchive.size(); entry++) {
+                    if (checksumArchive.getChanged(entry) >= changedSince) {
+                        out.write(ChecksumJob.makeLine(checksumArchive.getFilename(entry),
+                                checksumArchive.getChecksum(entry)));
+                        out.newLine();
+                    }
+                }
+            } finally {
+                out.close();
+            }
+            return tempFile;
+        } catch (IOException e) {
+            String msg = "Cannot create the output file containing the changed entries of this archive.";
+            log.warn(msg);
+            throw new IOFailure(msg, e);
+        }
+    }
+
     /**
      * Method for retrieving the names of all the files within the archive as a temporary file.
      *
@@ -780,6 +1024,19 @@ public final class FileChecksumArchive implements ChecksumArchive {
      */
     @Override
     public File getAllFilenames() throws IOFailure {
+        return getAllFilenames(0L);
+    }
+
+    /**
+     * Method for retrieving the names of the files, which have been uploaded or corrected since a given time, as a
+     * temporary file.
+     *
+     * @param changedSince The time in milliseconds since the epoch. 0 means all files.
+     * @return A temporary file containing the list of filenames. This file has one filename per line.
+     * @throws IOFailure If problems occurs during the creation of the file.
+     */
+    @Override
+    public File getAllFilenames(long changedSince) throws IOFailure {
         synchronizeMemoryWithFile();
 
         try {
@@ -788,9 +1045,11 @@ public final class FileChecksumArchive implements ChecksumArchive {
 
             try {
                 // put the content into the file.
-                for (String filename : checksumArchive.keySet()) {
-                    fw.append(filename);
-                    fw.append("\n");
+                for (int entry = 0; entry < checksumArchive.size(); entry++) {
+                    if (checksumArchive.getChanged(entry) >= changedSince) {
+                        fw.append(checksumArchive.getFilename(entry));
+                        fw.append("\n");
+                    }
                 }
 
             } finally {
@@ -828,10 +1087,19 @@ public final class FileChecksumArchive implements ChecksumArchive {
     }
 
     /**
-     * The method for cleaning up when done. It sets the checksum file and the instance to null.
+     * The method for cleaning up when done. It waits for a running compaction to finish, and sets the checksum file and
+     * the instance to null.
      */
     @Override
     public void cleanup() {
+        compactor.shutdown();
+        try {
+            if (!compactor.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.warn("Compaction of the checksum archive is still running.");
+            }
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while waiting for compaction of the checksum archive to finish.", e);
+        }
         checksumFile = null;
         instance = null;
         if (checksumArchive != null) {
@@ -839,4 +1107,228 @@ public final class FileChecksumArchive implements ChecksumArchive {
         }
     }
 
+    /**
+     * The valid entries of checksum archive files sorted by filename, with the last entry for each filename, so later
+     * entries override earlier ones. Up to a given number of entries are sorted in memory. If the files have more, the
+     * entries are numbered in the order they are read, and sorted on disk by filename and number.
+     */
+    private static final class SortedUpdates implements Closeable {
+        /** Orders numbered entries by filename, and entries for the same filename by their number. */
+        private static final Comparator<byte[]> NUMBERED_ENTRY_ORDER = new Comparator<byte[]>() {
+            public int compare(byte[] line1, byte[] line2) {
+                int diff = numberedFilename(line1).compareTo(numberedFilename(line2));
+                if (diff != 0) {
+                    return diff;
+                }
+                return Long.compare(entryNumber(line1), entryNumber(line2));
+            }
+        };
+
+        /** The entries, if they are sorted in memory. */
+        private Iterator<Entry> entries;
+        /** The numbered entries sorted on disk, if there are too many to sort in memory. */
+        private File sortedFile;
+        /** The reader of the sorted file. */
+        private BufferedReader sortedReader;
+        /** The next numbered entry read from the sorted file, or null. */
+        private Entry nextSorted;
+
+        /**
+         * Read the entries of the files, and sort them.
+         *
+         * @param files The files, with later entries overriding earlier ones. Files that do not exist are ignored.
+         * @param maxInMemory The number of entries sorted in memory.
+         * @throws IOException If the files cannot be read, or sorted.
+         */
+        SortedUpdates(File[] files, long maxInMemory) throws IOException {
+            TreeMap<String, Entry> sorted = new TreeMap<String, Entry>();
+            long count = 0;
+            for (File file : files) {
+                if (!file.exists()) {
+                    continue;
+                }
+                long fileChangedTime = file.lastModified();
+                BufferedReader in = new BufferedReader(new FileReader(file));
+                try {
+                    String record;
+                    while (count <= maxInMemory && (record = in.readLine()) != null) {
+                        try {
+                            Entry entry = parseEntry(record, fileChangedTime);
+                            sorted.put(entry.filename, entry);
+                            ++count;
+                        } catch (IllegalState e) {
+                            log.trace("Leaving out invalid entry '{}'", record);
+                        }
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+            if (count <= maxInMemory) {
+                entries = sorted.values().iterator();
+                return;
+            }
+            sorted = null;
+            sortOnDisk(files);
+        }
+
+        /**
+         * Number the entries of the files in the order they are read, and sort them by filename and number on disk.
+         *
+         * @param files The files to sort the entries of.
+         * @throws IOException If the files cannot be read, or sorted.
+         */
+        private void sortOnDisk(File[] files) throws IOException {
+            long start = System.currentTimeMillis();
+            File numberedFile = File.createTempFile("checksums", ".numbered", FileUtils.getTempDir());
+            boolean success = false;
+            try {
+                long number = 0;
+                BufferedWriter out = new BufferedWriter(new FileWriter(numberedFile));
+                try {
+                    for (File file : files) {
+                        if (!file.exists()) {
+                            continue;
+                        }
+                        long fileChangedTime = file.lastModified();
+                        BufferedReader in = new BufferedReader(new FileReader(file));
+                        try {
+                            String record;
+                            while ((record = in.readLine()) != null) {
+                                try {
+                                    Entry entry = parseEntry(record, fileChangedTime);
+                                    // SortUtils reads lines ending with a newline only.
+                                    out.write(entry.toRecord() + CHECKSUM_SEPARATOR + number++ + "\n");
+                                } catch (IllegalState e) {
+                                    log.trace("Leaving out invalid entry '{}'", record);
+                                }
+                            }
+                        } finally {
+                            in.close();
+                        }
+                    }
+                } finally {
+                    out.close();
+                }
+                sortedFile = File.createTempFile("checksums", ".sorted", FileUtils.getTempDir());
+                SortUtils.sortFile(numberedFile, sortedFile, NUMBERED_ENTRY_ORDER);
+                sortedReader = new BufferedReader(new FileReader(sortedFile));
+                nextSorted = readNumbered();
+                success = true;
+                log.info("Sorted {} checksum entries on disk in {} ms.", number, System.currentTimeMillis() - start);
+            } catch (IOFailure e) {
+                throw new IOException("Could not sort the checksum entries of " + Arrays.asList(files), e);
+            } finally {
+                FileUtils.remove(numberedFile);
+                if (!success) {
+                    close();
+                }
+            }
+        }
+
+        /**
+         * @return The next entry, with the last entry read for its filename, or null when there are no more.
+         * @throws IOException If the entries sorted on disk cannot be read.
+         */
+        Entry next() throws IOException {
+            if (entries != null) {
+                return entries.hasNext() ? entries.next() : null;
+            }
+            Entry entry = nextSorted;
+            if (entry == null) {
+                return null;
+            }
+            nextSorted = readNumbered();
+            while (nextSorted != null && nextSorted.filename.equals(entry.filename)) {
+                entry = nextSorted;
+                nextSorted = readNumbered();
+            }
+            return entry;
+        }
+
+        /**
+         * @return The next numbered entry of the sorted file, or null at the end of it.
+         * @throws IOException If the sorted file cannot be read.
+         */
+        private Entry readNumbered() throws IOException {
+            String record = sortedReader.readLine();
+            if (record == null) {
+                return null;
+            }
+            String[] parts = record.split(CHECKSUM_SEPARATOR);
+            return new Entry(parts[0], parts[1], Long.parseLong(parts[2]));
+        }
+
+        /**
+         * Delete the entries sorted on disk.
+         */
+        public void close() {
+            IOUtils.closeQuietly(sortedReader);
+            sortedReader = null;
+            if (sortedFile != null) {
+                FileUtils.remove(sortedFile);
+                sortedFile = null;
+            }
+        }
+
+        /**
+         * @param line A numbered entry.
+         * @return The filename of the entry.
+         */
+        private static String numberedFilename(byte[] line) {
+            for (int i = 0; i + 1 < line.length; i++) {
+                if (line[i] == '#' && line[i + 1] == '#') {
+                    return new String(line, 0, i);
+                }
+            }
+            return new String(line);
+        }
+
+        /**
+         * @param line A numbered entry.
+         * @return The number of the entry, which is after the last separator.
+         */
+        private static long entryNumber(byte[] line) {
+            int start = line.length;
+            while (start > 0 && line[start - 1] != '#') {
+                start--;
+            }
+            return Long.parseLong(new String(line, start, line.length - start));
+        }
+    }
+
+    /**
+     * An entry of the checksum archive files.
+     */
+    private static final class Entry {
+        /** The name of the file. */
+        final String filename;
+        /** The checksum of the file. */
+        final String checksum;
+        /** The time the entry was changed, in milliseconds since the epoch. */
+        final long changedTime;
+
+        /**
+         * Constructor.
+         *
+         * @param filename The name of the file.
+         * @param checksum The checksum of the file.
+         * @param changedTime The time the entry was changed, in milliseconds since the epoch.
+         */
+        Entry(String filename, String checksum, long changedTime) {
+            this.filename = filename;
+            this.checksum = checksum;
+            this.changedTime = changedTime;
+        }
+
+        /**
+         * Make the line of this entry in the checksum archive files.
+         *
+         * @return The line, without a line separator.
+         */
+        String toRecord() {
+            return ChecksumJob.makeLine(filename, checksum) + CHECKSUM_SEPARATOR + changedTime;
+        }
+    }
+
 }
@@ -183,6 +183,7 @@ public class ChecksumFileServer extends ChecksumArchiveServer {
             	} else {
             		cs.upload(msg.getRemoteFile(), msg.getArcfileName());
             	}
+                msg.setChecksum(cs.getChecksum(msg.getArcfileName()));
             } catch (Throwable e) {
                 log.warn("Cannot process upload message '{}'", msg, e);
                 msg.setNotOk(e);
@@ -328,7 +329,7 @@ public class ChecksumFileServer extends ChecksumArchiveServer {
 
         try {
             // get all the file names
-            msg.setFile(cs.getAllFilenames());
+            msg.setFile(cs.getAllFilenames(msg.getChangedSince()));
         } catch (Throwable e) {
             log.warn("Cannot retrieve the filenames to reply on the {} : {}", msg.getClass().getName(), msg, e);
             msg.setNotOk(e);
@@ -350,7 +351,7 @@ public class ChecksumFileServer extends ChecksumArchiveServer {
         log.debug("Receiving GetAllChecksumsMessage: {}", msg.toString());
 
         try {
-            msg.setFile(cs.getArchiveAsFile());
+            msg.setFile(cs.getArchiveAsFile(msg.getChangedSince()));
         } catch (Throwable e) {
             log.warn("Cannot retrieve all the checksums.", e);
             msg.setNotOk(e);
@@ -33,6 +33,7 @@ import dk.netarkivet.common.distribute.ChannelID;
 import dk.netarkivet.common.distribute.RemoteFile;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.utils.DigestingCopy;
 
 /**
  * The message to correct a bad entry in an archive. <li>In a bitarchive it should replace a corrupted file.</li> <li>In
@@ -95,10 +96,12 @@ public class CorrectMessage extends ArchiveMessage {
 
     /**
      * Retrieves the content of the remoteFile and writes it into the local file. Note: This is transferred through a
-     * remote file handle, and then the handle is invalidated. This method may only be called once.
+     * remote file handle, and then the handle is invalidated. This method may only be called once. The checksum of the
+     * content is calculated while it is written, and verified against the checksum of the remote file, if it has one.
      *
      * @param toFile where to write the content
-     * @throws IOFailure on error reading the remote file or writing the local file
+     * @throws IOFailure on error reading the remote file or writing the local file, or if the checksum of the written
+     * file differs from the checksum of the remote file.
      * @throws ArgumentNotValid If <b>toFile</b> is null.
      */
     public void getData(File toFile) throws IOFailure, ArgumentNotValid {
@@ -109,7 +112,8 @@ public class CorrectMessage extends ArchiveMessage {
             throw new IOFailure("No remoteFile in this message.");
         }
         // retrieve the data.
-        theRemoteFile.copyTo(toFile);
+        String checksum = theRemoteFile.copyToWithMd5(toFile);
+        DigestingCopy.checkMd5(theRemoteFile.getChecksum(), checksum, theRemoteFile.getName());
         try {
             // cleanup afterwards.
             theRemoteFile.cleanup();
@@ -40,6 +40,9 @@ import dk.netarkivet.common.exceptions.IOFailure;
  * corresponding to the reply file of a ChecksumJob.
  * <p>
  * This is checksum replica alternative to sending a ChecksumBatchJob.
+ * <p>
+ * If a time is given, then only the checksums of the files which have been stored or corrected since that time are
+ * required. The replica may return more entries than that, but never fewer.
  */
 @SuppressWarnings({"serial"})
 public class GetAllChecksumsMessage extends ArchiveMessage {
@@ -50,6 +53,8 @@ public class GetAllChecksumsMessage extends ArchiveMessage {
     private RemoteFile rf;
     /** The id for the replica where this message should be sent. */
     private String replicaId;
+    /** Only the checksums of files changed at or after this time are required. 0 means all files. */
+    private long changedSince;
 
     /**
      * Constructor.
@@ -59,8 +64,24 @@ public class GetAllChecksumsMessage extends ArchiveMessage {
      * @param repId The replica where the job involved in this message is to be performed.
      */
     public GetAllChecksumsMessage(ChannelID to, ChannelID replyTo, String repId) {
+        this(to, replyTo, repId, 0L);
+    }
+
+    /**
+     * Constructor for retrieving only the checksums of the files changed since a given time.
+     *
+     * @param to Where this message is headed.
+     * @param replyTo Where the reply on this message is sent.
+     * @param repId The replica where the job involved in this message is to be performed.
+     * @param changedSince The time in milliseconds since the epoch. 0 means all files.
+     * @throws ArgumentNotValid If <b>changedSince</b> is negative.
+     */
+    public GetAllChecksumsMessage(ChannelID to, ChannelID replyTo, String repId, long changedSince)
+            throws ArgumentNotValid {
         super(to, replyTo);
+        ArgumentNotValid.checkNotNegative(changedSince, "long changedSince");
         this.replicaId = repId;
+        this.changedSince = changedSince;
     }
 
     /**
@@ -78,6 +99,19 @@ public class GetAllChecksumsMessage extends ArchiveMessage {
         rf = RemoteFileFactory.getMovefileInstance(file);
     }
 
+    /**
+     * Method for setting the resulting file directly as a remote file, e.g. the results of a batch job as they were
+     * left by the bitarchives. This remote file will be retrieved from the caller of this message.
+     *
+     * @param remoteFile The remote file with the result.
+     * @throws ArgumentNotValid If <b>remoteFile</b> is null.
+     */
+    public void setRemoteFile(RemoteFile remoteFile) throws ArgumentNotValid {
+        ArgumentNotValid.checkNotNull(remoteFile, "RemoteFile remoteFile");
+
+        rf = remoteFile;
+    }
+
     /**
      * Method for retrieving the resulting file. This method can only be called once, since the remoteFile is cleaned up
      * and set to null.
@@ -111,13 +145,23 @@ public class GetAllChecksumsMessage extends ArchiveMessage {
         return replicaId;
     }
 
+    /**
+     * Method for retrieving the time, where only the checksums of files changed since then are required.
+     *
+     * @return The time in milliseconds since the epoch. 0 means all files.
+     */
+    public long getChangedSince() {
+        return changedSince;
+    }
+
     /**
      * Generate String representation of this object.
      *
      * @return String representation of this object
      */
     public String toString() {
-        return super.toString() + " replicaid: " + replicaId;
+        return super.toString() + " replicaid: " + replicaId
+                + (changedSince > 0 ? ", changed since: " + changedSince : "");
     }
 
     /**
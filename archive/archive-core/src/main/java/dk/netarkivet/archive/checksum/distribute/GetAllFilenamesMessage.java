@@ -38,6 +38,9 @@ import dk.netarkivet.common.exceptions.IOFailure;
 /**
  * The GetAllFilenamesMessage is sent to retrieve all the filenames in a specific replica. The result is a file in the
  * same format as a FilelistJob.
+ * <p>
+ * If a time is given, then only the names of the files which have been stored or corrected since that time are
+ * required. The replica may return more filenames than that, but never fewer.
  */
 @SuppressWarnings({"serial"})
 public class GetAllFilenamesMessage extends ArchiveMessage {
@@ -48,6 +51,8 @@ public class GetAllFilenamesMessage extends ArchiveMessage {
     private RemoteFile remoteFile;
     /** The id for the replica where this message should be sent. */
     private String replicaId;
+    /** Only the names of files changed at or after this time are required. 0 means all files. */
+    private long changedSince;
 
     /**
      * Constructor.
@@ -57,9 +62,25 @@ public class GetAllFilenamesMessage extends ArchiveMessage {
      * @param repId The id of the replica.
      */
     public GetAllFilenamesMessage(ChannelID to, ChannelID replyTo, String repId) {
+        this(to, replyTo, repId, 0L);
+    }
+
+    /**
+     * Constructor for retrieving only the names of the files changed since a given time.
+     *
+     * @param to The channel the message is sent to.
+     * @param replyTo The channel the reply is sent to.
+     * @param repId The id of the replica.
+     * @param changedSince The time in milliseconds since the epoch. 0 means all files.
+     * @throws ArgumentNotValid If <b>changedSince</b> is negative.
+     */
+    public GetAllFilenamesMessage(ChannelID to, ChannelID replyTo, String repId, long changedSince)
+            throws ArgumentNotValid {
         super(to, replyTo);
+        ArgumentNotValid.checkNotNegative(changedSince, "long changedSince");
 
         this.replicaId = repId;
+        this.changedSince = changedSince;
     }
 
     /**
@@ -73,6 +94,19 @@ public class GetAllFilenamesMessage extends ArchiveMessage {
         remoteFile = RemoteFileFactory.getMovefileInstance(file);
     }
 
+    /**
+     * Method for setting the resulting file directly as a remote file, e.g. the results of a batch job as they were
+     * left by the bitarchives. This remote file will be retrieved from the caller of this message.
+     *
+     * @param remoteFile The remote file with the result.
+     * @throws ArgumentNotValid If <b>remoteFile</b> is null.
+     */
+    public void setRemoteFile(RemoteFile remoteFile) throws ArgumentNotValid {
+        ArgumentNotValid.checkNotNull(remoteFile, "RemoteFile remoteFile");
+
+        this.remoteFile = remoteFile;
+    }
+
     /**
      * Method for retrieving the resulting file.
      *
@@ -104,13 +138,23 @@ public class GetAllFilenamesMessage extends ArchiveMessage {
         return replicaId;
     }
 
+    /**
+     * Method for retrieving the time, where only the names of files changed since then are required.
+     *
+     * @return The time in milliseconds since the epoch. 0 means all files.
+     */
+    public long getChangedSince() {
+        return changedSince;
+    }
+
     /**
      * Retrieval of a string representation of this instance.
      *
      * @return A string representation of this instance.
      */
     public String toString() {
-        return super.toString() + ", replicaId: " + replicaId;
+        return super.toString() + ", replicaId: " + replicaId
+                + (changedSince > 0 ? ", changed since: " + changedSince : "");
     }
 
     /**
@@ -32,6 +32,7 @@ import dk.netarkivet.archive.arcrepository.bitpreservation.AdminDataMessage;
 import dk.netarkivet.archive.arcrepository.distribute.StoreMessage;
 import dk.netarkivet.archive.bitarchive.distribute.BatchEndedMessage;
 import dk.netarkivet.archive.bitarchive.distribute.BatchMessage;
+import dk.netarkivet.archive.bitarchive.distribute.BatchProgressMessage;
 import dk.netarkivet.archive.bitarchive.distribute.BatchReplyMessage;
 import dk.netarkivet.archive.bitarchive.distribute.GetFileMessage;
 import dk.netarkivet.archive.bitarchive.distribute.GetMessage;
@@ -116,6 +117,17 @@ public abstract class ArchiveMessageHandler implements ArchiveMessageVisitor, Me
         deny(msg);
     }
 
+    /**
+     * This method should be overridden and implemented by a sub class if message handling is wanted.
+     *
+     * @param msg a BatchProgressMessage
+     * @throws PermissionDenied when invoked
+     */
+    public void visit(BatchProgressMessage msg) throws PermissionDenied {
+        ArgumentNotValid.checkNotNull(msg, "msg");
+        deny(msg);
+    }
+
     /**
      * This method should be overridden and implemented by a sub class if message handling is wanted.
      *
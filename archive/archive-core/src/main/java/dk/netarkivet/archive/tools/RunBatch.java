@@ -50,6 +50,8 @@ import dk.netarkivet.common.distribute.arcrepository.ViewerArcRepositoryClient;
 import dk.netarkivet.common.tools.SimpleCmdlineTool;
 import dk.netarkivet.common.tools.ToolRunnerBase;
 import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.common.utils.batch.BatchProgress;
+import dk.netarkivet.common.utils.batch.BatchProgressListener;
 import dk.netarkivet.common.utils.batch.FileBatchJob;
 import dk.netarkivet.common.utils.batch.FileBatchJob.ExceptionOccurrence;
 import dk.netarkivet.common.utils.batch.LoadableFileBatchJob;
@@ -543,6 +545,11 @@ public class RunBatch extends ToolRunnerBase {
                     + "output written to " + ((oFile == null) ? "stdout " : "file '" + oFile + "', ")
                     + "errors written to " + ((eFile == null) ? "stderr " : "file '" + eFile + "' "));
 
+            job.setProgressListener(new BatchProgressListener() {
+                public void progress(BatchProgress progress) {
+                    System.out.println("Progress: " + progress);
+                }
+            });
             BatchStatus status = arcrep.batch(job, batchReplica.getId());
             final Collection<File> failedFiles = status.getFilesFailed();
             Collection<ExceptionOccurrence> exceptions = status.getExceptions();
@@ -23,8 +23,10 @@
 package dk.netarkivet.archive.webinterface;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -35,6 +37,7 @@ import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import dk.netarkivet.common.distribute.RemoteFile;
 import dk.netarkivet.common.distribute.arcrepository.ArcRepositoryClientFactory;
 import dk.netarkivet.common.distribute.arcrepository.BatchStatus;
 import dk.netarkivet.common.distribute.arcrepository.Replica;
@@ -42,6 +45,8 @@ import dk.netarkivet.common.distribute.arcrepository.ViewerArcRepositoryClient;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.IOFailure;
 import dk.netarkivet.common.utils.StreamUtils;
+import dk.netarkivet.common.utils.batch.BatchProgress;
+import dk.netarkivet.common.utils.batch.BatchProgressListener;
 import dk.netarkivet.common.utils.batch.FileBatchJob;
 import dk.netarkivet.common.utils.batch.FileBatchJob.ExceptionOccurrence;
 import dk.netarkivet.common.utils.batch.LoadableJarBatchJob;
@@ -130,7 +135,13 @@ public class BatchExecuter extends Thread {
             log.info(processInfo);
             fw.write(processInfo + "\n");
 
+            // log the progress, and show the output while the batchjob runs.
+            ProgressWriter progressWriter = new ProgressWriter(fw, outputFile);
+            batchJob.setProgressListener(progressWriter);
+            batchJob.setPublishPartialResults(true);
+
             BatchStatus status = arcrep.batch(batchJob, rep.getId());
+            progressWriter.stop();
             final Collection<File> failedFiles = status.getFilesFailed();
             Collection<ExceptionOccurrence> exceptions = status.getExceptions();
 
@@ -145,7 +156,7 @@ public class BatchExecuter extends Thread {
             log.info(processInfo);
             fw.write(processInfo + "\n");
 
-            // copy results to outputfile, or log if problems with outputfile.
+            // copy results to outputfile, replacing the partial results, or log if problems with outputfile.
             if (outputFile != null && outputFile.exists()) {
                 status.copyResults(outputFile);
             } else {
@@ -192,4 +203,62 @@ public class BatchExecuter extends Thread {
     public static Set<Map.Entry<String, String>> getRunningBatchjobs() {
         return batchjobs.entrySet();
     }
+
+    /**
+     * Writes the progress of a batchjob to its event log, and appends the partial results to its output file.
+     */
+    private static class ProgressWriter implements BatchProgressListener {
+        /** The event log of the batchjob. */
+        private final FileWriter eventLog;
+        /** The output file of the batchjob. */
+        private final File outputFile;
+        /** Whether the batchjob has ended, so no more progress should be written. */
+        private boolean stopped = false;
+
+        /**
+         * @param eventLog The event log of the batchjob.
+         * @param outputFile The output file of the batchjob.
+         */
+        ProgressWriter(FileWriter eventLog, File outputFile) {
+            this.eventLog = eventLog;
+            this.outputFile = outputFile;
+        }
+
+        /**
+         * Stop writing progress, since the batchjob has ended and its final results are about to be written.
+         */
+        synchronized void stop() {
+            stopped = true;
+        }
+
+        /**
+         * Write the progress to the event log, and append the partial result to the output file.
+         *
+         * @param progress The progress of the batchjob.
+         */
+        public synchronized void progress(BatchProgress progress) {
+            RemoteFile partialResult = progress.getPartialResult();
+            try {
+                if (stopped) {
+                    return;
+                }
+                eventLog.write("Progress: " + progress + "\n");
+                eventLog.flush();
+                if (partialResult != null) {
+                    OutputStream out = new FileOutputStream(outputFile, APPEND);
+                    try {
+                        partialResult.appendTo(out);
+                    } finally {
+                        out.close();
+                    }
+                }
+            } catch (IOException e) {
+                throw new IOFailure("Could not write the progress of the batchjob", e);
+            } finally {
+                if (partialResult != null) {
+                    partialResult.cleanup();
+                }
+            }
+        }
+    }
 }
@@ -537,6 +537,16 @@ public class DatabaseBasedActiveBitPreservationTester {
             }
         }
 
+        @Override
+        public File getAllChecksums(String replicaId, long changedSince) {
+            return getAllChecksums(replicaId);
+        }
+
+        @Override
+        public File getAllFilenames(String replicaId, long changedSince) {
+            return getAllFilenames(replicaId);
+        }
+
         @Override
         public File getAllFilenames(String replicaId) {
             try {
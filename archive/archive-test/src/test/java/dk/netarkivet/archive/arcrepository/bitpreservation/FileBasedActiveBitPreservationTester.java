@@ -691,6 +691,14 @@ public class FileBasedActiveBitPreservationTester {
             return null;
         }
 
+        public File getAllChecksums(String replicaId, long changedSince) {
+            return getAllChecksums(replicaId);
+        }
+
+        public File getAllFilenames(String replicaId, long changedSince) {
+            return getAllFilenames(replicaId);
+        }
+
         public File getAllFilenames(String replicaId) {
             try {
                 BatchStatus bs = batch(new FileListJob(), replicaId);
@@ -0,0 +1,140 @@
+/*
+ * #%L
+ * Netarchivesuite - archive - test
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.archive.bitarchive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dk.netarkivet.archive.Constants;
+import dk.netarkivet.common.utils.FileUtils;
+
+/**
+ * Unit tests for the {@link BitarchiveFileCatalogue} class.
+ */
+public class BitarchiveFileCatalogueTester {
+
+    private File basedir;
+    private File filedir;
+
+    @Before
+    public void setUp() throws IOException {
+        basedir = File.createTempFile("catalogue-", "");
+        basedir.delete();
+        filedir = new File(basedir, Constants.FILE_DIRECTORY_NAME);
+        filedir.mkdirs();
+        for (String name : new String[] {"42-1-20150101-00001.warc", "42-metadata-1.warc", "43-2-20150101-00001.arc"}) {
+            new File(filedir, name).createNewFile();
+        }
+        new File(filedir, "subdir").mkdir();
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.removeRecursively(basedir);
+    }
+
+    @Test
+    public void testListsFilesOnly() {
+        BitarchiveFileCatalogue catalogue = new BitarchiveFileCatalogue(basedir);
+        assertEquals(3, catalogue.size());
+        assertTrue(catalogue.contains("42-metadata-1.warc"));
+        assertFalse("Directories are not files", catalogue.contains("subdir"));
+        assertFalse(catalogue.isOutdated());
+        assertTrue("The catalogue should be persisted", new File(basedir, Constants.FILE_CATALOGUE_NAME).isFile());
+    }
+
+    @Test
+    public void testJournalIsReadOnRestart() throws IOException {
+        BitarchiveFileCatalogue catalogue = new BitarchiveFileCatalogue(basedir);
+        new File(filedir, "44-3-20150101-00001.warc").createNewFile();
+        catalogue.add("44-3-20150101-00001.warc");
+        new File(filedir, "43-2-20150101-00001.arc").delete();
+        catalogue.remove("43-2-20150101-00001.arc");
+        assertFalse("Changes made through the catalogue are known", catalogue.isOutdated());
+
+        // A file the catalogue does not know about, hidden by resetting the modification time of the directory
+        long lastModified = filedir.lastModified();
+        new File(filedir, "unknown").createNewFile();
+        filedir.setLastModified(lastModified);
+
+        catalogue = new BitarchiveFileCatalogue(basedir);
+        assertEquals("Should read the files from the journal, not list them",
+                new HashSet<String>(Arrays.asList("42-1-20150101-00001.warc", "42-metadata-1.warc",
+                        "44-3-20150101-00001.warc")), new HashSet<String>(catalogue.getFilenames()));
+
+        filedir.setLastModified(lastModified + 10000);
+        assertTrue("Changes made by others should be noticed", catalogue.isOutdated());
+        catalogue = new BitarchiveFileCatalogue(basedir);
+        assertTrue("An outdated journal should not be used", catalogue.contains("unknown"));
+    }
+
+    @Test
+    public void testGetFilenamesMatching() {
+        BitarchiveFileCatalogue catalogue = new BitarchiveFileCatalogue(basedir);
+        assertEquals(new HashSet<String>(Arrays.asList("42-1-20150101-00001.warc", "42-metadata-1.warc")),
+                new HashSet<String>(catalogue.getFilenamesMatching(Pattern.compile("42-.*"))));
+        assertEquals(Arrays.asList("42-metadata-1.warc"),
+                catalogue.getFilenamesMatching(Pattern.compile(".*-metadata-.*")));
+        assertEquals(Arrays.asList("42-metadata-1.warc"),
+                catalogue.getFilenamesMatching(Pattern.compile("42-metadata-.*")));
+        assertEquals(0, catalogue.getFilenamesMatching(Pattern.compile("4-.*")).size());
+        assertEquals(3, catalogue.getFilenamesMatching(Pattern.compile(".*")).size());
+        assertEquals(3, catalogue.getFilenamesMatching(Pattern.compile("42-.*|43-.*")).size());
+    }
+
+    @Test
+    public void testPatternAnalysis() {
+        assertEquals("42", BitarchiveFileCatalogue.getRequiredJobId(Pattern.compile("42-.*")));
+        assertEquals("42", BitarchiveFileCatalogue.getRequiredJobId(Pattern.compile("42-metadata-[0-9]+.warc")));
+        assertNull(BitarchiveFileCatalogue.getRequiredJobId(Pattern.compile("42-.*|43-.*")));
+        assertNull(BitarchiveFileCatalogue.getRequiredJobId(Pattern.compile("4?2-.*")));
+        assertNull(BitarchiveFileCatalogue.getRequiredJobId(Pattern.compile("42?-.*")));
+        assertNull(BitarchiveFileCatalogue.getRequiredJobId(Pattern.compile("42{1,2}-.*")));
+        assertNull(BitarchiveFileCatalogue.getRequiredJobId(Pattern.compile("42-?.*")));
+        assertNull(BitarchiveFileCatalogue.getRequiredJobId(Pattern.compile("42-*.*")));
+        assertNull(BitarchiveFileCatalogue.getRequiredJobId(Pattern.compile("^42-+.*")));
+        assertNull(BitarchiveFileCatalogue.getRequiredJobId(Pattern.compile("42-{0,1}.*")));
+        assertNull(BitarchiveFileCatalogue.getRequiredJobId(Pattern.compile(".*")));
+
+        assertTrue(BitarchiveFileCatalogue.requiresMetadataFile(Pattern.compile(".*-metadata-.*")));
+        assertTrue(BitarchiveFileCatalogue.requiresMetadataFile(Pattern.compile(".*-metadata-[0-9]+.warc")));
+        assertFalse(BitarchiveFileCatalogue.requiresMetadataFile(Pattern.compile(".*-metadata-?.*")));
+        assertFalse(BitarchiveFileCatalogue.requiresMetadataFile(Pattern.compile("(.*-metadata-.*)?")));
+        assertFalse(BitarchiveFileCatalogue.requiresMetadataFile(Pattern.compile(".*-metadata-.*|.*")));
+        assertFalse(BitarchiveFileCatalogue.requiresMetadataFile(Pattern.compile(".*-metadata-.*",
+                Pattern.CASE_INSENSITIVE)));
+    }
+
+}
@@ -24,6 +24,7 @@ package dk.netarkivet.archive.bitarchive;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.lang.reflect.Field;
@@ -42,6 +43,7 @@ import dk.netarkivet.common.CommonSettings;
 import dk.netarkivet.common.distribute.Channels;
 import dk.netarkivet.common.distribute.arcrepository.Replica;
 import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.common.utils.batch.BatchProgress;
 import dk.netarkivet.testutils.ClassAsserts;
 import dk.netarkivet.testutils.preconfigured.MockupJMS;
 import dk.netarkivet.testutils.preconfigured.ReloadSettings;
@@ -145,4 +147,34 @@ public class BitarchiveMonitorTester {
         assertTrue("The map should have been cleaned.", bl.isEmpty());
         bamon.cleanup();
     }
+
+    /**
+     * Checks that the progress of a batch job is added up over the bitarchives, and only kept while the job runs.
+     */
+    @Test
+    public void testBitarchiveProgress() {
+        BitarchiveMonitor bamon = BitarchiveMonitor.getInstance();
+        bamon.signOfLife("BA1");
+        bamon.signOfLife("BA2");
+        bamon.registerBatch("request", Channels.getError(), "batch", TestInfo.BITARCHIVE_BATCH_JOB_TIMEOUT);
+
+        bamon.bitarchiveProgress("batch", "BA1", new BatchProgress(1, 4, 10L, 40L, 1000L));
+        bamon.bitarchiveProgress("batch", "BA2", new BatchProgress(2, 2, 30L, 30L, 3000L));
+        BitarchiveMonitor.BatchJobStatus bjs = bamon.bitarchiveProgress("batch", "BA1", new BatchProgress(2, 4,
+                20L, 40L, 2000L));
+        BatchProgress progress = bjs.getProgress();
+        assertEquals("The latest progress of each bitarchive should be added up", 4, progress.getFilesProcessed());
+        assertEquals(6, progress.getFilesTotal());
+        assertEquals(50L, progress.getBytesProcessed());
+        assertEquals(70L, progress.getBytesTotal());
+        assertEquals("The longest running bitarchive should give the elapsed time", 3000L, progress.getElapsed());
+
+        assertNull("Progress on unknown batch jobs should be ignored",
+                bamon.bitarchiveProgress("unknown", "BA1", new BatchProgress(0, 0, 0L, 0L, 0L)));
+        bamon.bitarchiveReply("batch", "BA1", 4, null, null, null, null);
+        bamon.bitarchiveReply("batch", "BA2", 2, null, null, null, null);
+        assertNull("Progress after the job has ended should be ignored",
+                bamon.bitarchiveProgress("batch", "BA1", new BatchProgress(4, 4, 40L, 40L, 4000L)));
+        bamon.cleanup();
+    }
 }
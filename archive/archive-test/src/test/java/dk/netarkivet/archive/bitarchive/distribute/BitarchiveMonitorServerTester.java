@@ -147,8 +147,8 @@ public class BitarchiveMonitorServerTester {
     }
 
     /**
-     * Verify that batch jobs do not have to wait for each other. In particular, check that the postprocessing of one
-     * job can overtake the postprocessing of another.
+     * Verify that batch jobs do not have to wait for each other. In particular, check that the results of one job are
+     * handed on without being read by the monitor, so a slow result never holds up the reply to another job.
      */
     @Test
     public void testParallelBatchJobs() throws InterruptedException {
@@ -195,8 +195,25 @@ public class BitarchiveMonitorServerTester {
         assertEquals("Should have gotten 2 messages", 2, client.getNumReceived());
         assertEquals("Should have gotten 0 Not OK messages, but got " + client.getNumNotOk(), 0, client.getNumNotOk());
         assertEquals("Should have gotten 2 OK messages", 2, client.getNumOk());
-        assertBatchResultIs(client, 0, "job2", BlockingRF.WAKER_CONTENT);
-        assertBatchResultIs(client, 1, "job1", BlockingRF.STD_CONTENT);
+
+        // Reading the result of job1 blocks until the result of job2 has been read
+        final BatchReplyMessage brm1 = (BatchReplyMessage) client.getAllReceived().get(0);
+        assertEquals("Batch-reply no. 0 should be response to job 'job1'", "job1", brm1.getReplyOfId());
+        final File job1File = new File(TestInfo.BAMON_WORKING, "job1_result.txt");
+        Thread reader = new Thread() {
+            public void run() {
+                brm1.getResultFile().copyTo(job1File);
+            }
+        };
+        reader.start();
+        synchronized (this) {
+            wait(50);
+        }
+        assertBatchResultIs(client, 1, "job2", BlockingRF.WAKER_CONTENT);
+        reader.join();
+        assertEquals("Should list no failed jobs", null, brf.failed);
+        assertEquals("Should forward batch reply unmodified", BlockingRF.STD_CONTENT,
+                new String(FileUtils.readBinaryFile(job1File)));
     }
 
     /**
@@ -943,6 +960,10 @@ public class BitarchiveMonitorServerTester {
         public void copyTo(File destFile) {
         }
 
+        public String copyToWithMd5(File destFile) {
+            return null;
+        }
+
         public void appendTo(OutputStream out) {
         }
 
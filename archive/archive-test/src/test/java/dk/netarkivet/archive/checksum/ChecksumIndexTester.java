@@ -0,0 +1,131 @@
+/*
+ * #%L
+ * Netarchivesuite - archive - test
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.archive.checksum;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import dk.netarkivet.common.exceptions.IllegalState;
+
+/**
+ * Unit tests for the {@link ChecksumIndex} class.
+ */
+public class ChecksumIndexTester {
+
+    @Test
+    public void testPutAndGet() {
+        ChecksumIndex index = new ChecksumIndex();
+        assertTrue(index.isEmpty());
+        assertNull(index.put("1-1-20150101-00001.warc.gz", "d41d8cd98f00b204e9800998ecf8427e"));
+        assertEquals(1, index.size());
+        assertTrue(index.containsKey("1-1-20150101-00001.warc.gz"));
+        assertFalse(index.containsKey("1-1-20150101-00002.warc.gz"));
+        assertEquals("d41d8cd98f00b204e9800998ecf8427e", index.get("1-1-20150101-00001.warc.gz"));
+        assertNull(index.get("1-1-20150101-00002.warc.gz"));
+
+        assertEquals("d41d8cd98f00b204e9800998ecf8427e",
+                index.put("1-1-20150101-00001.warc.gz", "0cc175b9c0f1b6a831c399e269772661"));
+        assertEquals(1, index.size());
+        assertEquals("0cc175b9c0f1b6a831c399e269772661", index.get("1-1-20150101-00001.warc.gz"));
+        assertEquals("1-1-20150101-00001.warc.gz", index.getFilename(0));
+        assertEquals("0cc175b9c0f1b6a831c399e269772661", index.getChecksum(0));
+
+        index.clear();
+        assertTrue(index.isEmpty());
+        assertFalse(index.containsKey("1-1-20150101-00001.warc.gz"));
+    }
+
+    @Test
+    public void testChecksumsThatAreNotHexDigests() {
+        ChecksumIndex index = new ChecksumIndex();
+        index.put("a.arc", "NOT-A-CHECKSUM");
+        index.put("b.arc", "D41D8CD98F00B204E9800998ECF8427E");
+        index.put("c.arc", "");
+        assertEquals("NOT-A-CHECKSUM", index.get("a.arc"));
+        assertEquals("D41D8CD98F00B204E9800998ECF8427E", index.get("b.arc"));
+        assertEquals("", index.get("c.arc"));
+        index.put("a.arc", "d41d8cd98f00b204e9800998ecf8427e");
+        assertEquals("d41d8cd98f00b204e9800998ecf8427e", index.get("a.arc"));
+        assertTrue(ChecksumIndex.isHexDigest("d41d8cd98f00b204e9800998ecf8427e"));
+        assertFalse(ChecksumIndex.isHexDigest("D41D8CD98F00B204E9800998ECF8427E"));
+    }
+
+    @Test
+    public void testChangedTime() {
+        ChecksumIndex index = new ChecksumIndex();
+        index.put("a.arc", "d41d8cd98f00b204e9800998ecf8427e", 1000L);
+        index.put("b.arc", "0cc175b9c0f1b6a831c399e269772661", 2000L);
+        assertEquals(1000L, index.getChanged(0));
+        assertEquals(2000L, index.getChanged(1));
+        index.put("a.arc", "0cc175b9c0f1b6a831c399e269772661", 3000L);
+        assertEquals(3000L, index.getChanged(0));
+        long before = System.currentTimeMillis();
+        index.put("c.arc", "d41d8cd98f00b204e9800998ecf8427e");
+        assertTrue(index.getChanged(2) >= before);
+    }
+
+    @Test
+    public void testManyEntries() {
+        ChecksumIndex index = new ChecksumIndex();
+        Map<String, String> expected = new HashMap<String, String>();
+        for (int i = 0; i < 50000; i++) {
+            String filename = i + "-metadata-1-æøå.warc";
+            String checksum = String.format("%032x", i * 7919L);
+            index.put(filename, checksum);
+            expected.put(filename, checksum);
+        }
+        assertEquals(expected.size(), index.size());
+        for (Map.Entry<String, String> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), index.get(entry.getKey()));
+        }
+        for (int entry = 0; entry < index.size(); entry++) {
+            assertEquals(expected.get(index.getFilename(entry)), index.getChecksum(entry));
+        }
+    }
+
+    @Test
+    public void testGrowDoesNotOverflow() {
+        assertEquals(2048, ChecksumIndex.grow(1024, 1025, ChecksumIndex.MAX_ARRAY_LENGTH, "bytes"));
+        assertEquals(5000, ChecksumIndex.grow(1024, 5000, ChecksumIndex.MAX_ARRAY_LENGTH, "bytes"));
+        assertEquals("Doubling beyond the maximum should give the maximum", ChecksumIndex.MAX_ARRAY_LENGTH,
+                ChecksumIndex.grow(1500000000, 1500000001L, ChecksumIndex.MAX_ARRAY_LENGTH, "bytes"));
+        assertEquals(ChecksumIndex.MAX_ENTRIES, ChecksumIndex.grow(100000000, 100000001L, ChecksumIndex.MAX_ENTRIES,
+                "entries"));
+        try {
+            ChecksumIndex.grow(ChecksumIndex.MAX_ARRAY_LENGTH, ChecksumIndex.MAX_ARRAY_LENGTH + 1L,
+                    ChecksumIndex.MAX_ARRAY_LENGTH, "bytes");
+            fail("Growing beyond the maximum should fail");
+        } catch (IllegalState expected) {
+            assertTrue(expected.getMessage().contains(Integer.toString(ChecksumIndex.MAX_ARRAY_LENGTH)));
+        }
+    }
+
+}
@@ -30,6 +30,7 @@ import static org.junit.Assert.fail;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -199,6 +200,76 @@ public class FileChecksumArchiveTester {
                 wrongEntryContent.contains("TEST2.arc" + "##" + TestInfo.TEST2_CHECKSUM));
     }
 
+    /**
+     * Checks that the entries changed since a given time are found after the archive has been compacted and reloaded,
+     * and that the change times are not in the files given to others.
+     *
+     * @throws Exception If the test is interrupted.
+     */
+    @Test
+    public void testChangedSinceAfterReload() throws Exception {
+        fca.cleanup();
+        Settings.set(ArchiveSettings.CHECKSUM_COMPACTION_THRESHOLD, "2");
+        fca = FileChecksumArchive.getInstance();
+
+        fca.upload(TestInfo.TEST1_CHECKSUM, "TEST1.arc");
+        fca.upload(TestInfo.TEST2_CHECKSUM, "TEST2.arc");
+        Thread.sleep(10);
+        long changedSince = System.currentTimeMillis();
+        Thread.sleep(10);
+        fca.upload(TestInfo.TEST2_CHECKSUM, "TEST3.arc");
+        fca.upload(TestInfo.TEST1_CHECKSUM, "TEST4.arc");
+
+        // Wait for the compactions to finish, and load the archive again.
+        fca.cleanup();
+        fca = FileChecksumArchive.getInstance();
+
+        List<String> changed = FileUtils.readListFromFile(fca.getArchiveAsFile(changedSince));
+        assertEquals("Only the entries uploaded after the time should be changed",
+                Arrays.asList("TEST3.arc##" + TestInfo.TEST2_CHECKSUM, "TEST4.arc##" + TestInfo.TEST1_CHECKSUM),
+                changed);
+        assertEquals("Only the files uploaded after the time should be changed", Arrays.asList("TEST3.arc",
+                "TEST4.arc"), FileUtils.readListFromFile(fca.getAllFilenames(changedSince)));
+
+        List<String> all = FileUtils.readListFromFile(fca.getArchiveAsFile());
+        assertEquals("All entries should be in the archive, in the format of a ChecksumJob", Arrays.asList(
+                "TEST1.arc##" + TestInfo.TEST1_CHECKSUM, "TEST2.arc##" + TestInfo.TEST2_CHECKSUM, "TEST3.arc##"
+                        + TestInfo.TEST2_CHECKSUM, "TEST4.arc##" + TestInfo.TEST1_CHECKSUM), all);
+    }
+
+    /**
+     * Checks that a checksum file of an earlier version, with more entries than are sorted in memory, is compacted
+     * into one sorted entry per file, where later entries override earlier ones.
+     *
+     * @throws Exception If the test is interrupted.
+     */
+    @Test
+    public void testCompactLargeLegacyFile() throws Exception {
+        fca.cleanup();
+        Settings.set(ArchiveSettings.CHECKSUM_COMPACTION_THRESHOLD, "1");
+        File checksumFile = new File(TestInfo.CHECKSUM_DIR, "checksum_THREE.md5");
+        FileWriter fw = new FileWriter(checksumFile);
+        fw.append("TEST3.arc##checksum1\n");
+        fw.append("TEST1.arc##checksum2\n");
+        fw.append("TEST3.arc##checksum3\n");
+        fw.append("TEST2.arc##checksum4\n");
+        fw.append("TEST1.arc##checksum5\n");
+        fw.close();
+        fca = FileChecksumArchive.getInstance();
+
+        // Wait for the compaction to finish, and load the archive again.
+        fca.cleanup();
+        fca = FileChecksumArchive.getInstance();
+
+        List<String> compacted = FileUtils.readListFromFile(new File(TestInfo.CHECKSUM_DIR,
+                "compacted_checksum_THREE.md5"));
+        assertEquals("The compacted file should have one entry per file", 3, compacted.size());
+        assertEquals("The last entries should be in the archive, sorted by filename", Arrays.asList(
+                "TEST1.arc##checksum5", "TEST2.arc##checksum4", "TEST3.arc##checksum3"),
+                FileUtils.readListFromFile(fca.getArchiveAsFile()));
+        assertEquals("The last checksum should be loaded", "checksum3", fca.getChecksum("TEST3.arc"));
+    }
+
     /**
      * Checks how the archive handles it, when there is an admin.data file.
      *
@@ -37,6 +37,7 @@ import dk.netarkivet.archive.arcrepository.bitpreservation.AdminDataMessage;
 import dk.netarkivet.archive.arcrepository.distribute.StoreMessage;
 import dk.netarkivet.archive.bitarchive.distribute.BatchEndedMessage;
 import dk.netarkivet.archive.bitarchive.distribute.BatchMessage;
+import dk.netarkivet.archive.bitarchive.distribute.BatchProgressMessage;
 import dk.netarkivet.archive.bitarchive.distribute.BatchReplyMessage;
 import dk.netarkivet.archive.bitarchive.distribute.GetFileMessage;
 import dk.netarkivet.archive.bitarchive.distribute.GetMessage;
@@ -55,6 +56,7 @@ import dk.netarkivet.common.distribute.RemoteFileFactory;
 import dk.netarkivet.common.exceptions.PermissionDenied;
 import dk.netarkivet.common.utils.ApplicationUtils;
 import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.common.utils.batch.BatchProgress;
 import dk.netarkivet.common.utils.batch.ChecksumJob;
 import dk.netarkivet.testutils.preconfigured.ReloadSettings;
 import dk.netarkivet.testutils.preconfigured.UseTestRemoteFile;
@@ -119,6 +121,19 @@ public class ArchiveMessageHandlerTester {
         }
     }
 
+    /*
+     * Class under test for void visit(BatchProgressMessage)
+     */
+    @Test
+    public final void testVisitBatchProgressMessage() {
+        try {
+            tmh.visit(new BatchProgressMessage(Channels.getTheBamon(), "x", "x", new BatchProgress(0, 0, 0L, 0L, 0L)));
+            fail("Should have thrown a permission denied.");
+        } catch (PermissionDenied e) {
+            // Expected
+        }
+    }
+
     /*
      * Class under test for void visit(BatchReplyMessage)
      */
@@ -79,6 +79,79 @@ public class CommonSettings {
      */
     public static String JMS_BROKER_RETRIES = "settings.common.jms.retries";
 
+    /**
+     * <b>settings.common.jms.codecs.class</b>: <br>
+     * The classes of the codecs used to send messages in a compact binary form instead of using Java serialization.
+     * Each must implement dk.netarkivet.common.distribute.JMSMessageCodec. Codec classes that are not in the classpath
+     * of an application are ignored.
+     */
+    public static String JMS_CODEC_CLASSES = "settings.common.jms.codecs.class";
+
+    /**
+     * <b>settings.common.jms.codecs.channel</b>: <br>
+     * The channels on which messages with a codec are sent in binary form. Each value is matched against the
+     * underscore separated parts of the channel names, e.g. HARVEST_MONITOR or INDEX_SERVER; the value * matches all
+     * channels. All applications can receive both forms, so a channel should only be listed once all applications
+     * sending to it use a version that knows the codecs. By default no channels are listed, and all messages are sent
+     * using Java serialization.
+     */
+    public static String JMS_CODEC_CHANNELS = "settings.common.jms.codecs.channel";
+
+    /**
+     * <b>settings.common.jms.codecs.compressionThreshold</b>: <br>
+     * Binary encoded messages larger than this number of bytes are compressed before they are sent. A value of 0 or
+     * less disables compression.
+     */
+    public static String JMS_CODEC_COMPRESSION_THRESHOLD = "settings.common.jms.codecs.compressionThreshold";
+
+    /**
+     * <b>settings.common.jms.asyncSend.threads</b>: <br>
+     * The number of threads used by a JMS connection to send messages that are sent asynchronously, like crawl
+     * progress reports. Messages to the same channel are always sent by one thread at a time, in order.
+     */
+    public static String JMS_ASYNC_SEND_THREADS = "settings.common.jms.asyncSend.threads";
+
+    /**
+     * <b>settings.common.jms.asyncSend.batchSize</b>: <br>
+     * The largest number of asynchronously sent messages to the same channel that are sent in one transaction. The
+     * value 1 sends each message on its own.
+     */
+    public static String JMS_ASYNC_SEND_BATCH_SIZE = "settings.common.jms.asyncSend.batchSize";
+
+    /**
+     * <b>settings.common.jms.senderSessions</b>: <br>
+     * The largest number of JMS sessions a JMS connection opens for sending messages. A sending thread borrows a session
+     * for the duration of a send, and waits if all the sessions are in use.
+     */
+    public static String JMS_SENDER_SESSIONS = "settings.common.jms.senderSessions";
+
+    /**
+     * <b>settings.common.jms.consumers.channel</b>: <br>
+     * The channels on which received messages are processed by several threads instead of by the single thread
+     * delivering messages from the broker. Each value is matched against the underscore separated parts of the
+     * channel names, e.g. THE_BAMON, THE_REPOS or HARVEST_MONITOR. Messages about the same file or job are still
+     * processed in the order they were received. The listeners of the listed channels must be thread-safe. Messages
+     * are acknowledged once all messages received before them have been processed, so messages waiting to be processed
+     * when the application stops are delivered again, as may messages processed shortly before. By default no channels
+     * are listed.
+     */
+    public static String JMS_CONSUMER_CHANNELS = "settings.common.jms.consumers.channel";
+
+    /**
+     * <b>settings.common.jms.consumers.threads</b>: <br>
+     * The number of threads processing the messages received on each channel listed in
+     * {@link #JMS_CONSUMER_CHANNELS}.
+     */
+    public static String JMS_CONSUMER_THREADS = "settings.common.jms.consumers.threads";
+
+    /**
+     * <b>settings.common.jms.consumers.highWaterMark</b>: <br>
+     * The number of received messages that may wait for each of the threads given by {@link #JMS_CONSUMER_THREADS}.
+     * When this is reached, no more messages are received from the broker until there is room again. The messages
+     * received are acknowledged each time the number of threads times this number of messages have been received.
+     */
+    public static String JMS_CONSUMER_HIGH_WATER_MARK = "settings.common.jms.consumers.highWaterMark";
+
     /**
      * <b>settings.common.http.port</b>: <br>
      * The *unique* (per host) port number that may or may not be used to serve http.
@@ -112,6 +185,20 @@ public class CommonSettings {
      */
     public static String BATCH_DEFAULT_TIMEOUT = "settings.common.batch.defaultBatchTimeout";
 
+    /**
+     * <b>settings.common.batch.recordRanges.threads</b>: <br/>
+     * The number of threads used by an archive batch job to process ranges of records of a single compressed ARC or
+     * WARC file in parallel. Only used for batch jobs that declare that they support it. The value 1 disables the
+     * parallel processing.
+     */
+    public static String BATCH_RECORD_RANGE_THREADS = "settings.common.batch.recordRanges.threads";
+
+    /**
+     * <b>settings.common.batch.recordRanges.minFileSize</b>: <br/>
+     * Compressed ARC or WARC files smaller than this number of bytes are always processed by a single thread.
+     */
+    public static String BATCH_RECORD_RANGE_MIN_FILE_SIZE = "settings.common.batch.recordRanges.minFileSize";
+
     /**
      * <b>settings.common.monitorregistryClient.class</b>: <br>
      * Which class to use for monitor registry. Must implement the interface
@@ -144,6 +231,15 @@ public class CommonSettings {
      */
     public static String UNIX_SORT_USE_COMMON_TEMP_DIR = "settings.common.unixSort.useCommonTempDir";
 
+    /**
+     * <b>settings.common.gzip.threads</b>: <br>
+     * The number of threads used to gzip and gunzip directories of files, e.g. Lucene indices. Files are compressed in
+     * blocks of 1 MB, each of which becomes a separate gzip member, so a single large file can be compressed by several
+     * threads. The threads are shared by everything gzipped or gunzipped at the same time. If 0, the number of
+     * processors is used. The default is 0.
+     */
+    public static String GZIP_THREADS = "settings.common.gzip.threads";
+
     /**
      * <b>settings.common.cacheDir</b>: <br>
      * The name of the directory where cache data global to the entire machine can be stored. Various kinds of caches
@@ -405,6 +501,22 @@ public class CommonSettings {
      */
     public static String BITARCHIVE_LIMIT_FOR_RECORD_DATATRANSFER_IN_FILE = "settings.common.repository.limitForRecordDatatransferInFile";
 
+    /**
+     * <b>settings.common.repository.streamLargeRecords</b>: <br>
+     * If true, records in uncompressed archive files that exceed the limit for record datatransfer in file are not
+     * copied to a temporary file. Instead, the byte range of the record is served directly from the archive file by
+     * the HTTP remote file registry of the bitarchive application, and only a reference to it is sent in the reply.
+     * This requires that the receivers can reach the bitarchive application on the http port.
+     */
+    public static String BITARCHIVE_STREAM_LARGE_RECORDS = "settings.common.repository.streamLargeRecords";
+
+    /**
+     * <b>settings.common.repository.recordStreamTimeout</b>: <br>
+     * The time in milliseconds a record served directly from an archive file stays available, if the receiver never
+     * fetches it.
+     */
+    public static String BITARCHIVE_RECORD_STREAM_TIMEOUT = "settings.common.repository.recordStreamTimeout";
+
     /**
      * <b>settings.common.replicas</b>: <br>
      * The entire settings for all replicas in the environment. NOTE: settings for checksum replicas are not use yet
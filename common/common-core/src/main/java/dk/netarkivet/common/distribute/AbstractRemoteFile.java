@@ -27,6 +27,8 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.util.Calendar;
 
 import org.slf4j.Logger;
@@ -34,6 +36,7 @@ import org.slf4j.LoggerFactory;
 
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.utils.ChecksumCalculator;
 import dk.netarkivet.common.utils.FileUtils;
 import dk.netarkivet.common.utils.StreamUtils;
 import dk.netarkivet.common.utils.TimeUtils;
@@ -95,6 +98,36 @@ public abstract class AbstractRemoteFile implements RemoteFile {
      * @throws IOFailure on I/O trouble writing remote file to destination.
      */
     public void copyTo(File destFile) {
+        copyTo(destFile, null);
+    }
+
+    /**
+     * Copy this remote file to the given file as {@link #copyTo(File)} does, calculating the MD5 checksum of the data
+     * while it is written.
+     *
+     * @param destFile The file to write the remote file to.
+     * @return the MD5 checksum of the copy.
+     * @throws ArgumentNotValid on null destFile, or parent to destfile is not a writeable directory, or destfile exists
+     * and cannot be overwritten.
+     * @throws IOFailure on I/O trouble writing remote file to destination.
+     */
+    public String copyToWithMd5(File destFile) {
+        MessageDigest digest = ChecksumCalculator.getMessageDigest(ChecksumCalculator.MD5);
+        copyTo(destFile, digest);
+        return ChecksumCalculator.toHex(digest.digest());
+    }
+
+    /**
+     * Copy this remote file to the given file, retrying if it fails. This method will make a fileoutputstream, and use
+     * appendTo to write the remote file to this stream.
+     *
+     * @param destFile The file to write the remote file to.
+     * @param digest The digest to update with the data written, or null. It is reset before each attempt.
+     * @throws ArgumentNotValid on null destFile, or parent to destfile is not a writeable directory, or destfile exists
+     * and cannot be overwritten.
+     * @throws IOFailure on I/O trouble writing remote file to destination.
+     */
+    private void copyTo(File destFile, MessageDigest digest) {
         ArgumentNotValid.checkNotNull(destFile, "File destFile");
         destFile = destFile.getAbsoluteFile();
         if ((!destFile.isFile() || !destFile.canWrite())
@@ -112,7 +145,12 @@ public abstract class AbstractRemoteFile implements RemoteFile {
                 try {
                     try {
                         fos = new FileOutputStream(destFile);
-                        appendTo(fos);
+                        if (digest == null) {
+                            appendTo(fos);
+                        } else {
+                            digest.reset();
+                            appendTo(new DigestOutputStream(fos, digest));
+                        }
                         success = true;
                     } finally {
                         if (fos != null) {
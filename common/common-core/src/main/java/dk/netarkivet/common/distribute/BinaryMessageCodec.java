@@ -0,0 +1,335 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.distribute;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+
+/**
+ * Base class for codecs that write the fields of a message one by one. The fields common to all messages (channels,
+ * ids and error state) are handled here, so subclasses only write and read the fields of their own message class.
+ * <p>
+ * The helper methods write strings as length prefixed UTF-8 without the 64K limit of {@link DataOutput#writeUTF},
+ * non-negative numbers as variable length integers, and sets of IDs as sorted deltas, which is what makes the
+ * encoding compact.
+ *
+ * @param <T> The class of messages handled by the codec.
+ */
+public abstract class BinaryMessageCodec<T extends NetarkivetMessage> implements JMSMessageCodec {
+
+    /** The charset used for strings. */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** The name of the codec. */
+    private final String name;
+
+    /** The class of messages handled by the codec. */
+    private final Class<T> messageClass;
+
+    /**
+     * Create a codec.
+     *
+     * @param name The name of the codec. See {@link JMSMessageCodec#getName()}.
+     * @param messageClass The class of messages handled by the codec.
+     * @throws ArgumentNotValid if either argument is null or empty.
+     */
+    protected BinaryMessageCodec(String name, Class<T> messageClass) {
+        ArgumentNotValid.checkNotNullOrEmpty(name, "String name");
+        ArgumentNotValid.checkNotNull(messageClass, "Class<T> messageClass");
+        this.name = name;
+        this.messageClass = messageClass;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Class<T> getMessageClass() {
+        return messageClass;
+    }
+
+    @Override
+    public final void encode(NetarkivetMessage msg, DataOutputStream out) throws IOException {
+        ArgumentNotValid.checkNotNull(msg, "NetarkivetMessage msg");
+        ArgumentNotValid.checkTrue(msg.getClass() == messageClass, "Codec " + name + " cannot encode messages of "
+                + msg.getClass());
+        writeBody(messageClass.cast(msg), out);
+        msg.writeHeader(out);
+    }
+
+    @Override
+    public final NetarkivetMessage decode(DataInputStream in) throws IOException {
+        T msg = readBody(in);
+        msg.readHeader(in);
+        return msg;
+    }
+
+    /**
+     * Write the fields specific to the message class.
+     *
+     * @param msg The message.
+     * @param out The stream to write to.
+     * @throws IOException If writing fails.
+     */
+    protected abstract void writeBody(T msg, DataOutput out) throws IOException;
+
+    /**
+     * Create a message from the fields written by {@link #writeBody(NetarkivetMessage, DataOutput)}. The channels, ids
+     * and error state of the returned message are overwritten with the values of the original message afterwards, so
+     * any valid channels may be given to its constructor.
+     *
+     * @param in The stream to read from.
+     * @return a new message.
+     * @throws IOException If reading fails.
+     */
+    protected abstract T readBody(DataInput in) throws IOException;
+
+    /**
+     * Write a non-negative number using 7 bits per byte.
+     *
+     * @param out The stream to write to.
+     * @param value The number.
+     * @throws IOException If writing fails.
+     * @throws ArgumentNotValid If the number is negative.
+     */
+    public static void writeVarLong(DataOutput out, long value) throws IOException {
+        ArgumentNotValid.checkNotNegative(value, "long value");
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * Read a number written by {@link #writeVarLong(DataOutput, long)}.
+     *
+     * @param in The stream to read from.
+     * @return the number.
+     * @throws IOException If reading fails, or the data is not a valid number.
+     */
+    public static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length number");
+    }
+
+    /**
+     * Write a string that may be null.
+     *
+     * @param out The stream to write to.
+     * @param s The string, or null.
+     * @throws IOException If writing fails.
+     */
+    public static void writeString(DataOutput out, String s) throws IOException {
+        if (s == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        byte[] bytes = s.getBytes(UTF8);
+        writeVarLong(out, bytes.length + 1L);
+        out.write(bytes);
+    }
+
+    /**
+     * Read a string written by {@link #writeString(DataOutput, String)}.
+     *
+     * @param in The stream to read from.
+     * @return the string, or null.
+     * @throws IOException If reading fails.
+     */
+    public static String readString(DataInput in) throws IOException {
+        int length = readLength(in);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * Write a Long that may be null.
+     *
+     * @param out The stream to write to.
+     * @param value The value, or null.
+     * @throws IOException If writing fails.
+     */
+    public static void writeNullableLong(DataOutput out, Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+
+    /**
+     * Read a Long written by {@link #writeNullableLong(DataOutput, Long)}.
+     *
+     * @param in The stream to read from.
+     * @return the value, or null.
+     * @throws IOException If reading fails.
+     */
+    public static Long readNullableLong(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+
+    /**
+     * Write a collection of non-negative IDs, like job IDs. The IDs are sorted and written as differences between
+     * neighbours, so a set of thousands of consecutive job IDs takes about a byte per ID.
+     *
+     * @param out The stream to write to.
+     * @param ids The IDs, or null.
+     * @throws IOException If writing fails.
+     * @throws ArgumentNotValid If the collection contains null or negative values.
+     */
+    public static void writeIdSet(DataOutput out, Collection<Long> ids) throws IOException {
+        if (ids == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        long[] sorted = new long[ids.size()];
+        int i = 0;
+        for (Long id : ids) {
+            ArgumentNotValid.checkNotNull(id, "Long id");
+            ArgumentNotValid.checkNotNegative(id, "Long id");
+            sorted[i++] = id;
+        }
+        Arrays.sort(sorted);
+        writeVarLong(out, sorted.length + 1L);
+        long previous = 0;
+        for (long id : sorted) {
+            writeVarLong(out, id - previous);
+            previous = id;
+        }
+    }
+
+    /**
+     * Read IDs written by {@link #writeIdSet(DataOutput, Collection)}.
+     *
+     * @param in The stream to read from.
+     * @return a new set holding the IDs, or null.
+     * @throws IOException If reading fails.
+     */
+    public static Set<Long> readIdSet(DataInput in) throws IOException {
+        int size = readLength(in);
+        if (size < 0) {
+            return null;
+        }
+        Set<Long> ids = new HashSet<Long>(Math.max(16, (int) (size / .75f) + 1));
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            previous += readVarLong(in);
+            ids.add(previous);
+        }
+        return ids;
+    }
+
+    /**
+     * Write an object using Java serialization. Meant for fields whose classes have no compact encoding, or which may
+     * be of any class, like {@link RemoteFile}.
+     *
+     * @param out The stream to write to.
+     * @param o The object, or null.
+     * @throws IOException If writing fails.
+     */
+    public static void writeSerializable(DataOutput out, Serializable o) throws IOException {
+        if (o == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(bytes);
+        oos.writeObject(o);
+        oos.close();
+        writeVarLong(out, bytes.size() + 1L);
+        out.write(bytes.toByteArray());
+    }
+
+    /**
+     * Read an object written by {@link #writeSerializable(DataOutput, Serializable)}.
+     *
+     * @param in The stream to read from.
+     * @param type The expected class of the object.
+     * @param <S> The expected class of the object.
+     * @return the object, or null.
+     * @throws IOException If reading fails, or the object is not of the expected class.
+     */
+    public static <S> S readSerializable(DataInput in, Class<S> type) throws IOException {
+        int length = readLength(in);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        try {
+            return type.cast(ois.readObject());
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unknown class of serialized object", e);
+        } catch (ClassCastException e) {
+            throw new IOException("Serialized object is not a " + type.getName(), e);
+        } finally {
+            ois.close();
+        }
+    }
+
+    /**
+     * Read a length written as length + 1, where 0 means null.
+     *
+     * @param in The stream to read from.
+     * @return the length, or -1 for null.
+     * @throws IOException If reading fails, or the length is unreasonable.
+     */
+    private static int readLength(DataInput in) throws IOException {
+        long length = readVarLong(in) - 1;
+        if (length < -1 || length > Integer.MAX_VALUE - 8) {
+            throw new EOFException("Invalid length " + length);
+        }
+        return (int) length;
+    }
+
+}
@@ -91,6 +91,27 @@ public class ChannelID implements Serializable {
         this.name = constructName(appPref, replicaId, useNodeId, useAppInstId, isTopic);
     }
 
+    /**
+     * Constructor used when decoding messages, where the full name of the channel is already known.
+     *
+     * @param name The name of the channel.
+     */
+    private ChannelID(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Recreate a channel from its name, as found in a decoded message.
+     *
+     * @param name The name of the channel, as returned by {@link #getName()}.
+     * @return a channel with that name.
+     * @throws ArgumentNotValid if name is null or empty.
+     */
+    static ChannelID forName(String name) {
+        ArgumentNotValid.checkNotNullOrEmpty(name, "String name");
+        return new ChannelID(name);
+    }
+
     /**
      * Constructs a channel name according to the specifications of channels in the NetarchiveSuite Developer Manual.
      *
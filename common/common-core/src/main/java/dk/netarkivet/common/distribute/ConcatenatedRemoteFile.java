@@ -0,0 +1,379 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.distribute;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.utils.ChecksumCalculator;
+import dk.netarkivet.common.utils.LineMergingInputStream;
+import dk.netarkivet.common.utils.StreamUtils;
+
+/**
+ * A remote file made of a list of other remote files, whose contents are presented as one concatenated file.
+ * <p>
+ * This is used as a manifest of the results of a batch job from each bitarchive: the results stay where they were
+ * produced until the receiver reads them. The receiver can either fetch the parts one by one (or in parallel) through
+ * {@link #getParts()}, or read the concatenation through the normal RemoteFile methods. Nothing is copied to make the
+ * concatenation; each part is only opened when the previous one has been read to the end.
+ * <p>
+ * If the parts are known to be sorted files of lines, the merged view is a merge of the parts rather than a
+ * concatenation, so the result is sorted without being sorted again.
+ * <p>
+ * Checksums are not supported on the concatenation. The parts keep their own checksum handling.
+ */
+@SuppressWarnings({"serial"})
+public class ConcatenatedRemoteFile implements RemoteFile {
+
+    /** The logger for this class. */
+    private static final transient Logger log = LoggerFactory.getLogger(ConcatenatedRemoteFile.class);
+
+    /** The parts of this file, in order. */
+    private final ArrayList<RemoteFile> parts;
+    /** Whether each part is a sorted file of lines, which should be merged rather than concatenated. */
+    private final boolean sortedParts;
+
+    /**
+     * Create a concatenation of the given remote files.
+     *
+     * @param parts The remote files to concatenate, in order. The list may be empty, but must not contain null.
+     * @throws ArgumentNotValid If the list is null or contains null.
+     */
+    public ConcatenatedRemoteFile(List<RemoteFile> parts) {
+        this(parts, false);
+    }
+
+    /**
+     * Create a concatenation or a merge of the given remote files.
+     *
+     * @param parts The remote files to combine, in order. The list may be empty, but must not contain null.
+     * @param sortedParts Whether each part is a sorted file of lines. If so, the parts are merged into one sorted file
+     * rather than concatenated.
+     * @throws ArgumentNotValid If the list is null or contains null.
+     */
+    public ConcatenatedRemoteFile(List<RemoteFile> parts, boolean sortedParts) {
+        ArgumentNotValid.checkNotNull(parts, "List<RemoteFile> parts");
+        for (RemoteFile part : parts) {
+            ArgumentNotValid.checkNotNull(part, "RemoteFile part");
+        }
+        this.parts = new ArrayList<RemoteFile>(parts);
+        this.sortedParts = sortedParts;
+    }
+
+    /**
+     * Tells whether the parts are sorted files of lines, which are merged rather than concatenated.
+     *
+     * @return Whether the parts are sorted.
+     */
+    public boolean hasSortedParts() {
+        return sortedParts;
+    }
+
+    /**
+     * Get the remote files that make up this file, so that they may be read independently.
+     *
+     * @return An unmodifiable list of the parts, in order.
+     */
+    public List<RemoteFile> getParts() {
+        return Collections.unmodifiableList(parts);
+    }
+
+    /**
+     * Copy the data of the parts to a local file, concatenated or merged as by {@link #appendTo(OutputStream)}.
+     *
+     * @param destFile The file to write to. It is overwritten.
+     * @throws IOFailure If any of the parts cannot be copied.
+     * @see RemoteFile#copyTo(File)
+     */
+    public void copyTo(File destFile) {
+        ArgumentNotValid.checkNotNull(destFile, "File destFile");
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(destFile);
+            appendTo(out);
+            out.close();
+            out = null;
+        } catch (IOException e) {
+            throw new IOFailure("Unable to copy concatenated remote file to '" + destFile + "'", e);
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * Copy the data of the parts to the given file, and calculate the MD5 checksum of the copy by reading it.
+     *
+     * @param destFile The file to write to.
+     * @return the MD5 checksum of the copy.
+     * @throws IOFailure on I/O trouble writing the copy or reading it.
+     * @see RemoteFile#copyToWithMd5(File)
+     */
+    public String copyToWithMd5(File destFile) {
+        copyTo(destFile);
+        return ChecksumCalculator.calculateMd5(destFile);
+    }
+
+    /**
+     * Write each part in turn to the stream, or the merge of the parts if they are sorted.
+     *
+     * @see RemoteFile#appendTo(OutputStream)
+     */
+    public void appendTo(OutputStream out) {
+        ArgumentNotValid.checkNotNull(out, "OutputStream out");
+        if (!sortedParts) {
+            for (RemoteFile part : parts) {
+                part.appendTo(out);
+            }
+            return;
+        }
+        InputStream in = getInputStream();
+        try {
+            StreamUtils.copyInputStreamToOutputStream(in, out);
+            in.close();
+            in = null;
+        } catch (IOException e) {
+            throw new IOFailure("Unable to merge the parts of " + this, e);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Get a stream of the data of the parts: their merge if the parts are sorted, otherwise their concatenation as
+     * given by {@link #getConcatenatedInputStream()}. A merge reads from all the parts at once.
+     *
+     * @return A stream with the data of all the parts.
+     * @see RemoteFile#getInputStream()
+     */
+    public InputStream getInputStream() {
+        if (!sortedParts) {
+            return getConcatenatedInputStream();
+        }
+        List<InputStream> inputs = new ArrayList<InputStream>(parts.size());
+        try {
+            for (RemoteFile part : parts) {
+                inputs.add(part.getInputStream());
+            }
+        } catch (IOFailure e) {
+            for (InputStream in : inputs) {
+                IOUtils.closeQuietly(in);
+            }
+            throw e;
+        }
+        return new LineMergingInputStream(inputs);
+    }
+
+    /**
+     * Get a stream of the concatenation of the parts. No part is opened before the first read of the stream, and each
+     * part is closed as soon as it has been read to the end.
+     *
+     * @return A stream with the data of all the parts, one part after the other.
+     */
+    public ConcatenatingInputStream getConcatenatedInputStream() {
+        return new ConcatenatingInputStream(parts);
+    }
+
+    /**
+     * @return The names of the parts, separated by commas.
+     * @see RemoteFile#getName()
+     */
+    public String getName() {
+        StringBuilder name = new StringBuilder();
+        for (RemoteFile part : parts) {
+            if (name.length() > 0) {
+                name.append(',');
+            }
+            name.append(part.getName());
+        }
+        return name.toString();
+    }
+
+    /**
+     * Checksums are not supported on a concatenation.
+     *
+     * @return null
+     * @see RemoteFile#getChecksum()
+     */
+    public String getChecksum() {
+        return null;
+    }
+
+    /**
+     * Clean up all the parts. Failure to clean up one part does not prevent the cleanup of the others.
+     *
+     * @see RemoteFile#cleanup()
+     */
+    public void cleanup() {
+        for (RemoteFile part : parts) {
+            try {
+                part.cleanup();
+            } catch (IOFailure e) {
+                log.warn("Could not clean up remote file '{}'", part.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * @return The sum of the sizes of the parts.
+     * @see RemoteFile#getSize()
+     */
+    public long getSize() {
+        long size = 0L;
+        for (RemoteFile part : parts) {
+            size += part.getSize();
+        }
+        return size;
+    }
+
+    /**
+     * Retrieval of a string representing the instance.
+     *
+     * @return A string representing this instance.
+     */
+    public String toString() {
+        return "ConcatenatedRemoteFile of " + parts.size() + (sortedParts ? " sorted" : "") + " parts: " + parts;
+    }
+
+    /**
+     * An input stream reading a list of remote files one after the other, opening each of them only when it is
+     * needed.
+     */
+    public static class ConcatenatingInputStream extends InputStream {
+        /** The remote files to read. */
+        private final List<RemoteFile> parts;
+        /** The index of the next part to open. */
+        private int next;
+        /** The stream of the part currently being read, or null if none is open. */
+        private InputStream current;
+        /** Whether this stream has been closed. */
+        private boolean closed;
+
+        /**
+         * Create a stream reading the given remote files in order.
+         *
+         * @param parts The remote files to read.
+         */
+        ConcatenatingInputStream(List<RemoteFile> parts) {
+            this.parts = parts;
+        }
+
+        /**
+         * Tells whether any of the parts has been opened. As parts may only allow a single transfer, the parts can only
+         * be read by others as long as this is false.
+         *
+         * @return true if reading has begun.
+         */
+        public boolean isStarted() {
+            return next > 0;
+        }
+
+        /**
+         * Make sure a part with data left is open, opening the following parts as needed.
+         *
+         * @return false if all parts have been read.
+         * @throws IOException If this stream has been closed.
+         */
+        private boolean nextPart() throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (current == null) {
+                if (next >= parts.size()) {
+                    return false;
+                }
+                current = parts.get(next++).getInputStream();
+            }
+            return true;
+        }
+
+        /**
+         * Close the part currently being read.
+         *
+         * @throws IOException If closing it fails, e.g. because a transmission error is detected.
+         */
+        private void endPart() throws IOException {
+            InputStream in = current;
+            current = null;
+            in.close();
+        }
+
+        @Override
+        public int read() throws IOException {
+            while (nextPart()) {
+                int b = current.read();
+                if (b != -1) {
+                    return b;
+                }
+                endPart();
+            }
+            return -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (nextPart()) {
+                int n = current.read(b, off, len);
+                if (n > 0) {
+                    return n;
+                }
+                if (n == -1) {
+                    endPart();
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int available() throws IOException {
+            if (closed || current == null) {
+                return 0;
+            }
+            return current.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                if (current != null) {
+                    endPart();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.distribute;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+
+/**
+ * A MessageListener that hands the messages it receives to another listener using a number of worker threads, so
+ * messages received on one channel can be processed concurrently. Messages with the same ordering key, see
+ * {@link KeyedMessage}, are always processed by the same worker, so they are processed in the order they were
+ * received. Messages without a key are spread over the workers.
+ * <p>
+ * Each worker has a bounded queue. When the queue of a worker reaches its high-water mark, the JMS thread delivering
+ * messages is blocked until there is room again, so unprocessed messages are kept by the broker rather than in memory.
+ * {@link JMSConnection} creates the consumer of each dispatcher in a session of its own, so only the delivery of
+ * messages on this channel is held up.
+ * <p>
+ * The consumer must be created in a session using {@link javax.jms.Session#CLIENT_ACKNOWLEDGE}. Acknowledging a
+ * message acknowledges every message the session has delivered before it, so messages are only acknowledged when all
+ * messages delivered so far have been processed: each time {@link #getAcknowledgeInterval()} messages have been
+ * received, and when the dispatcher is closed. Messages that are queued or being processed when the application dies
+ * are delivered again, together with messages processed since the last acknowledgement. The listener must be
+ * thread-safe.
+ */
+public class ConcurrentMessageDispatcher implements MessageListener {
+
+    /** The log. */
+    private static final Logger log = LoggerFactory.getLogger(ConcurrentMessageDispatcher.class);
+
+    /** The message property holding the ordering key of a {@link KeyedMessage}. */
+    public static final String ORDERING_KEY_PROPERTY = "nasOrderingKey";
+
+    /** The time to wait for queued messages to be processed when the dispatcher is closed, in seconds. */
+    private static final int SHUTDOWN_TIMEOUT = 60;
+
+    /** The listener processing the messages. */
+    private final MessageListener listener;
+
+    /** The name of the channel the messages are received from. */
+    private final String channelName;
+
+    /** The workers, each a single thread with a bounded queue. */
+    private final ThreadPoolExecutor[] workers;
+
+    /** The size of the queue of each worker. */
+    private final int highWaterMark;
+
+    /** The number of messages received between acknowledgements. */
+    private final int acknowledgeInterval;
+
+    /** Guards the counters below, and is notified when the last message being processed is done. */
+    private final Object processingLock = new Object();
+
+    /** The number of messages received, but not yet processed. */
+    private int inFlight;
+
+    /** The number of messages received since the last acknowledgement. */
+    private int unacknowledged;
+
+    /** The last message received, or null if it has been acknowledged. */
+    private Message lastReceived;
+
+    /** Whether the dispatcher has been closed. */
+    private boolean closed;
+
+    /** Used to spread messages without an ordering key over the workers. */
+    private final AtomicInteger nextWorker = new AtomicInteger();
+
+    /** The number of times a message had to wait for room in the queue of a worker. */
+    private final AtomicLong blockedCount = new AtomicLong();
+
+    /**
+     * Create a dispatcher and start its worker threads.
+     *
+     * @param channelName The name of the channel the messages are received from. Used for naming threads and logging.
+     * @param listener The listener processing the messages. Must be thread-safe.
+     * @param threads The number of worker threads.
+     * @param highWaterMark The number of messages that may wait for each worker before the JMS thread is blocked.
+     * @throws ArgumentNotValid if channelName is null or empty, listener is null, or threads or highWaterMark is not
+     * positive.
+     */
+    public ConcurrentMessageDispatcher(String channelName, MessageListener listener, int threads, int highWaterMark) {
+        ArgumentNotValid.checkNotNullOrEmpty(channelName, "String channelName");
+        ArgumentNotValid.checkNotNull(listener, "MessageListener listener");
+        ArgumentNotValid.checkPositive(threads, "int threads");
+        ArgumentNotValid.checkPositive(highWaterMark, "int highWaterMark");
+        this.channelName = channelName;
+        this.listener = listener;
+        this.highWaterMark = highWaterMark;
+        this.acknowledgeInterval = threads * highWaterMark;
+        this.workers = new ThreadPoolExecutor[threads];
+        final String threadNamePrefix = "ConcurrentMessageDispatcher-" + channelName + "-";
+        final AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, threadNamePrefix + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        RejectedExecutionHandler waitForRoom = new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                waitForRoom(r, executor);
+            }
+        };
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+                    highWaterMark), threadFactory, waitForRoom);
+            workers[i].prestartCoreThread();
+        }
+        log.info("Processing messages from {} with {} threads, each queueing at most {} messages", channelName, threads,
+                highWaterMark);
+    }
+
+    /**
+     * Hand a message to the worker responsible for its ordering key. Blocks while the queue of that worker is full, and
+     * when the messages received are to be acknowledged, until they have all been processed.
+     *
+     * @param msg The message received.
+     * @throws ArgumentNotValid if msg is null.
+     */
+    @Override
+    public void onMessage(final Message msg) {
+        ArgumentNotValid.checkNotNull(msg, "Message msg");
+        ThreadPoolExecutor worker = workers[getWorkerIndex(getOrderingKey(msg))];
+        boolean acknowledge;
+        synchronized (processingLock) {
+            inFlight++;
+            lastReceived = msg;
+            acknowledge = ++unacknowledged >= acknowledgeInterval;
+        }
+        try {
+            worker.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        listener.onMessage(msg);
+                    } catch (Throwable t) {
+                        log.warn("Listener {} failed to process message from {}", listener, channelName, t);
+                    } finally {
+                        processed();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Dispatcher for {} is closed. Processing message in the JMS thread", channelName);
+            try {
+                listener.onMessage(msg);
+            } finally {
+                processed();
+            }
+            return;
+        }
+        if (acknowledge) {
+            acknowledgeProcessed();
+        }
+    }
+
+    /**
+     * Stop the workers, waiting a while for the queued messages to be processed, and acknowledge the messages received
+     * if they have all been processed. The consumer delivering messages to this dispatcher should be closed first, and
+     * its session after this. Closing the dispatcher again has no effect.
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (ThreadPoolExecutor worker : workers) {
+            worker.shutdown();
+        }
+        boolean allProcessed = true;
+        try {
+            for (ThreadPoolExecutor worker : workers) {
+                if (!worker.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                    log.warn("Messages from {} were not processed within {} seconds", channelName, SHUTDOWN_TIMEOUT);
+                    worker.shutdownNow();
+                    allProcessed = false;
+                }
+            }
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while waiting for messages from {} to be processed", channelName, e);
+            for (ThreadPoolExecutor worker : workers) {
+                worker.shutdownNow();
+            }
+            allProcessed = false;
+        }
+        if (allProcessed) {
+            acknowledgeProcessed();
+        } else {
+            log.warn("Messages from {} received since the last acknowledgement will be delivered again", channelName);
+        }
+        log.info("Closed dispatcher for {}. Receiving waited for room in a queue {} times", channelName,
+                blockedCount.get());
+    }
+
+    /**
+     * @return the name of the channel the messages are received from.
+     */
+    public String getChannelName() {
+        return channelName;
+    }
+
+    /**
+     * @return the number of messages received between acknowledgements.
+     */
+    public int getAcknowledgeInterval() {
+        return acknowledgeInterval;
+    }
+
+    /**
+     * @return the listener processing the messages.
+     */
+    public MessageListener getListener() {
+        return listener;
+    }
+
+    /**
+     * @return the number of messages waiting to be processed.
+     */
+    public int getQueuedMessageCount() {
+        int count = 0;
+        for (ThreadPoolExecutor worker : workers) {
+            count += worker.getQueue().size();
+        }
+        return count;
+    }
+
+    /**
+     * Choose the worker for a message.
+     *
+     * @param key The ordering key of the message, or null.
+     * @return the index of the worker.
+     */
+    int getWorkerIndex(String key) {
+        int hash = (key == null) ? nextWorker.getAndIncrement() : key.hashCode();
+        return (hash & Integer.MAX_VALUE) % workers.length;
+    }
+
+    /**
+     * Get the ordering key sent with a message.
+     *
+     * @param msg The message.
+     * @return the key, or null if the message has none.
+     */
+    static String getOrderingKey(Message msg) {
+        try {
+            return msg.getStringProperty(ORDERING_KEY_PROPERTY);
+        } catch (JMSException e) {
+            log.debug("Unable to read the ordering key of message", e);
+            return null;
+        }
+    }
+
+    /**
+     * Send the ordering key of a message along with the JMS message wrapping it.
+     *
+     * @param message The JMS message.
+     * @param msg The message it wraps.
+     * @throws JMSException If the property cannot be set.
+     */
+    static void setOrderingKey(Message message, NetarkivetMessage msg) throws JMSException {
+        if (msg instanceof KeyedMessage) {
+            String key = ((KeyedMessage) msg).getOrderingKey();
+            if (key != null) {
+                message.setStringProperty(ORDERING_KEY_PROPERTY, key);
+            }
+        }
+    }
+
+    /**
+     * Called when a message has been processed, successfully or not.
+     */
+    private void processed() {
+        synchronized (processingLock) {
+            if (--inFlight == 0) {
+                processingLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Wait until all messages received have been processed, and acknowledge them. Since the consumer session delivers
+     * messages from a single thread, no messages are received while waiting, except when called from {@link #close()}
+     * after the consumer has been closed.
+     */
+    private void acknowledgeProcessed() {
+        Message toAcknowledge;
+        synchronized (processingLock) {
+            try {
+                while (inFlight > 0) {
+                    processingLock.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Interrupted while waiting to acknowledge messages from {}", channelName);
+                return;
+            }
+            toAcknowledge = lastReceived;
+            lastReceived = null;
+            unacknowledged = 0;
+        }
+        if (toAcknowledge != null) {
+            try {
+                toAcknowledge.acknowledge();
+            } catch (JMSException e) {
+                log.warn("Could not acknowledge messages from {}. They may be received again", channelName, e);
+            }
+        }
+    }
+
+    /**
+     * Called when the queue of a worker is full. Blocks until there is room for the task.
+     *
+     * @param task The task to queue.
+     * @param worker The worker.
+     * @throws RejectedExecutionException if the worker is shut down, or the thread is interrupted while waiting.
+     */
+    private void waitForRoom(Runnable task, ThreadPoolExecutor worker) {
+        if (worker.isShutdown()) {
+            throw new RejectedExecutionException("Dispatcher for " + channelName + " is closed");
+        }
+        long count = blockedCount.incrementAndGet();
+        log.debug("Queue for {} reached its high-water mark of {} messages ({} times in all)", channelName,
+                highWaterMark, count);
+        try {
+            worker.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for room in queue for " + channelName, e);
+        }
+    }
+
+}
@@ -48,6 +48,7 @@ import org.slf4j.LoggerFactory;
 
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.utils.ChecksumCalculator;
 import dk.netarkivet.common.utils.FileUtils;
 import dk.netarkivet.common.utils.NotificationType;
 import dk.netarkivet.common.utils.NotificationsFactory;
@@ -187,6 +188,19 @@ public class ExtendedFTPRemoteFile implements RemoteFile {
         }
     }
 
+    /**
+     * Copy the remote file to the given file, and calculate the MD5 checksum of the copy by reading it.
+     *
+     * @param destFile The file to write to.
+     * @return the MD5 checksum of the copy.
+     * @throws IOFailure on I/O trouble writing the copy or reading it.
+     * @see RemoteFile#copyToWithMd5(File)
+     */
+    public String copyToWithMd5(File destFile) {
+        copyTo(destFile);
+        return ChecksumCalculator.calculateMd5(destFile);
+    }
+
     @Override
     public void appendTo(OutputStream out) {
         ArgumentNotValid.checkNotNull(out, "OutputStream out");
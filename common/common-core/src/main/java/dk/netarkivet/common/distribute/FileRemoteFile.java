@@ -35,6 +35,7 @@ import org.slf4j.LoggerFactory;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.IOFailure;
 import dk.netarkivet.common.utils.ChecksumCalculator;
+import dk.netarkivet.common.utils.DigestingCopy;
 import dk.netarkivet.common.utils.FileUtils;
 import dk.netarkivet.common.utils.StreamUtils;
 
@@ -63,6 +64,11 @@ public class FileRemoteFile implements RemoteFile {
         FileUtils.copyFile(dataFile, destFile);
     }
 
+    @Override
+    public String copyToWithMd5(File destFile) {
+        return DigestingCopy.copy(dataFile, destFile, ChecksumCalculator.MD5)[0];
+    }
+
     @Override
     public void appendTo(OutputStream out) {
         InputStream in = null;
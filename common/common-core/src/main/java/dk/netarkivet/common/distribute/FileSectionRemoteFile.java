@@ -0,0 +1,256 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.distribute;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+
+import org.apache.commons.io.input.BoundedInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.utils.ChecksumCalculator;
+import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.common.utils.StreamUtils;
+import dk.netarkivet.common.utils.SystemUtils;
+
+/**
+ * A remote file for a section of a file, served directly from the producing host by the
+ * {@link HTTPRemoteFileRegistry}. It is used to hand out a record of an archive file without copying the record
+ * anywhere first: only this small reference is sent to the receiver, which streams the bytes of the section from the
+ * archive file.
+ * <p>
+ * The file itself is never deleted. The section can only be transferred once; it is unregistered when it has been
+ * read, or when the registry finds that it has not been fetched within its time to live. Checksums are not used.
+ */
+@SuppressWarnings({"serial"})
+public class FileSectionRemoteFile implements RemoteFile {
+
+    /** The logger for this class. */
+    private static final transient Logger log = LoggerFactory.getLogger(FileSectionRemoteFile.class);
+
+    /** The file containing the section. */
+    private final File file;
+    /** The position in the file of the first byte of the section. */
+    private final long offset;
+    /** The number of bytes in the section. */
+    private final long length;
+    /** The name of the host this file originated on. */
+    private final String hostname;
+    /** The url that exposes the section, or null if it is empty. */
+    protected final URL url;
+
+    /**
+     * Register a section of a file for serving to one receiver.
+     *
+     * @param file The file containing the section.
+     * @param offset The position in the file of the first byte of the section.
+     * @param length The number of bytes in the section.
+     * @param timeToLive The time in milliseconds the section stays available if it is not fetched.
+     * @throws ArgumentNotValid on null or unreadable file, or if the section is not within the file.
+     */
+    public FileSectionRemoteFile(File file, long offset, long length, long timeToLive) {
+        ArgumentNotValid.checkNotNull(file, "File file");
+        this.file = file.getAbsoluteFile();
+        this.offset = offset;
+        this.length = length;
+        this.hostname = SystemUtils.getLocalHostName();
+        if (length > 0) {
+            this.url = getRegistry().registerFileSection(this.file, offset, length, timeToLive);
+        } else {
+            this.url = null;
+        }
+    }
+
+    /**
+     * Get the webserver registry serving the section.
+     *
+     * @return The registry.
+     */
+    protected HTTPRemoteFileRegistry getRegistry() {
+        return HTTPRemoteFileRegistry.getInstance();
+    }
+
+    /**
+     * Copy the section to the given file.
+     *
+     * @param destFile The file to write the section to.
+     * @throws ArgumentNotValid on null destFile.
+     * @throws IOFailure on I/O trouble writing the section to the file.
+     */
+    public void copyTo(File destFile) {
+        ArgumentNotValid.checkNotNull(destFile, "File destFile");
+        try {
+            OutputStream out = new FileOutputStream(destFile);
+            try {
+                appendTo(out);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            FileUtils.remove(destFile);
+            throw new IOFailure("Unable to copy section of '" + file + "' to '" + destFile + "'", e);
+        } catch (IOFailure e) {
+            FileUtils.remove(destFile);
+            throw e;
+        }
+    }
+
+    /**
+     * Copy the section to the given file, and calculate the MD5 checksum of the copy by reading it.
+     *
+     * @param destFile The file to write to.
+     * @return the MD5 checksum of the copy.
+     * @throws IOFailure on I/O trouble writing the copy or reading it.
+     * @see RemoteFile#copyToWithMd5(File)
+     */
+    public String copyToWithMd5(File destFile) {
+        copyTo(destFile);
+        return ChecksumCalculator.calculateMd5(destFile);
+    }
+
+    /**
+     * Append the section to the given output stream.
+     *
+     * @param out The stream to write the section to.
+     * @throws ArgumentNotValid if outputstream is null.
+     * @throws IOFailure on I/O trouble writing the section to the stream.
+     */
+    public void appendTo(OutputStream out) {
+        ArgumentNotValid.checkNotNull(out, "OutputStream out");
+        StreamUtils.copyInputStreamToOutputStream(getInputStream(), out);
+    }
+
+    /**
+     * Get an input stream of the section. If the file resides on the current machine, the section is read from the
+     * file directly. Otherwise, it is streamed over http. The section is cleaned up when the stream is closed.
+     *
+     * @return An input stream of the bytes of the section.
+     * @throws IOFailure on I/O trouble opening the stream.
+     */
+    public InputStream getInputStream() {
+        if (length == 0) {
+            return new ByteArrayInputStream(new byte[] {});
+        }
+        try {
+            InputStream in;
+            if (isLocal()) {
+                FileInputStream fileIn = new FileInputStream(file);
+                fileIn.getChannel().position(offset);
+                in = new BoundedInputStream(fileIn, length);
+            } else {
+                URLConnection urlConnection = getRegistry().openConnection(url);
+                urlConnection.setUseCaches(false);
+                if (urlConnection instanceof HttpURLConnection
+                        && ((HttpURLConnection) urlConnection).getResponseCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+                    throw new FileNotFoundException("No section registered as '" + url + "'. It may have expired.");
+                }
+                in = urlConnection.getInputStream();
+            }
+            return new FilterInputStream(in) {
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        cleanup();
+                    }
+                }
+            };
+        } catch (IOException e) {
+            throw new IOFailure("Unable to get inputstream for " + length + " bytes at " + offset + " of '" + file
+                    + "' from '" + url + "'", e);
+        }
+    }
+
+    /**
+     * Get the name of the file containing the section.
+     *
+     * @return The name of the file.
+     */
+    public String getName() {
+        return file.getName();
+    }
+
+    /**
+     * Checksums are not used for file sections.
+     *
+     * @return null.
+     */
+    public String getChecksum() {
+        return null;
+    }
+
+    /**
+     * Unregister the section from the registry serving it. The file is not deleted. This method does not throw
+     * exceptions, but will warn on errors.
+     */
+    public void cleanup() {
+        if (length == 0) {
+            return;
+        }
+        try {
+            URLConnection urlConnection = getRegistry().openConnection(getRegistry().getCleanupUrl(url));
+            urlConnection.setUseCaches(false);
+            urlConnection.connect();
+            urlConnection.getInputStream().close();
+        } catch (IOException e) {
+            log.warn("Unable to cleanup section of file '{}' with URL '{}'", file.getAbsolutePath(), url, e);
+        }
+    }
+
+    /**
+     * Get the number of bytes in the section.
+     *
+     * @return The length of the section.
+     */
+    public long getSize() {
+        return length;
+    }
+
+    /**
+     * Helper method to determine if the file resides on local machine.
+     *
+     * @return true if the file is on the local machine, false otherwise.
+     */
+    protected boolean isLocal() {
+        return SystemUtils.getLocalHostName().equals(hostname) && file.isFile() && file.canRead();
+    }
+
+    @Override
+    public String toString() {
+        return "File= " + file.getName() + ", offset=" + offset + ", length=" + length + ", url=" + url;
+    }
+
+}
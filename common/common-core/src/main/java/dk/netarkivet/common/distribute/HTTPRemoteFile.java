@@ -140,6 +140,37 @@ public class HTTPRemoteFile extends AbstractRemoteFile {
      * @throws IOFailure on I/O trouble writing remote file to destination.
      */
     public void copyTo(File destFile) {
+        if (!moveLocally(destFile)) {
+            super.copyTo(destFile);
+        }
+    }
+
+    /**
+     * Copy this remote file to the given file as {@link #copyTo(File)} does, and calculate the MD5 checksum of the
+     * copy. The checksum is calculated while the file is transferred, or by reading the file if it was moved locally.
+     *
+     * @param destFile The file to write the remote file to.
+     * @return the MD5 checksum of the copy.
+     * @throws ArgumentNotValid on null destFile, or parent to destfile is not a writeable directory, or destfile exists
+     * and cannot be overwritten.
+     * @throws IOFailure on I/O trouble writing remote file to destination.
+     */
+    public String copyToWithMd5(File destFile) {
+        if (moveLocally(destFile)) {
+            return ChecksumCalculator.calculateMd5(destFile);
+        }
+        return super.copyToWithMd5(destFile);
+    }
+
+    /**
+     * Move the file to the given file, if it resides on the current machine and is only to be transferred once.
+     *
+     * @param destFile The file to move the file to.
+     * @return true if the file was moved, false if it must be transferred.
+     * @throws ArgumentNotValid on null destFile, or parent to destfile is not a writeable directory, or destfile exists
+     * and cannot be overwritten.
+     */
+    private boolean moveLocally(File destFile) {
         ArgumentNotValid.checkNotNull(destFile, "File destFile");
         destFile = destFile.getAbsoluteFile();
         if ((!destFile.isFile() || !destFile.canWrite())
@@ -150,11 +181,11 @@ public class HTTPRemoteFile extends AbstractRemoteFile {
         if (isLocal() && fileDeletable && !multipleDownloads && !useChecksums) {
             if (file.renameTo(destFile)) {
                 cleanup();
-                return;
+                return true;
             }
             // if rename fails we fall back to normal usage.
         }
-        super.copyTo(destFile);
+        return false;
     }
 
     /**
@@ -23,19 +23,31 @@
 package dk.netarkivet.common.distribute;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.io.input.BoundedInputStream;
 import org.mortbay.jetty.Request;
 import org.mortbay.jetty.Server;
 
@@ -46,6 +58,7 @@ import org.slf4j.LoggerFactory;
 
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.utils.ChecksumCalculator;
 import dk.netarkivet.common.utils.CleanupHook;
 import dk.netarkivet.common.utils.CleanupIF;
 import dk.netarkivet.common.utils.FileUtils;
@@ -86,6 +99,12 @@ public class HTTPRemoteFileRegistry implements CleanupIF {
      */
     private static final String UNREGISTER_URL_POSTFIX = "/unregister";
 
+    /** Postfix to add to an URL to get the URL of the MD5 checksum of the file. */
+    private static final String CHECKSUM_URL_POSTFIX = "/checksum";
+
+    /** A single byte range request: bytes=first-last, bytes=first- or bytes=-suffixLength. */
+    private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
     /** The embedded webserver. */
     protected Server server;
     /** The shutdown hook. */
@@ -161,6 +180,50 @@ public class HTTPRemoteFileRegistry implements CleanupIF {
         if (!file.isFile() && file.canRead()) {
             throw new ArgumentNotValid("File '" + file + "' is not a readable file");
         }
+        URL url = register(new FileInfo(file, deletable));
+        log.debug("Registered file '{}' with URL '{}'", file.getPath(), url);
+        return url;
+    }
+
+    /**
+     * Register a section of a file for serving to an endpoint. The section is served as if it was a file of its own,
+     * and the file itself is never deleted. The section is unregistered when it is cleaned up, or when it has not been
+     * cleaned up within the given time, whichever comes first.
+     *
+     * @param file The file containing the section.
+     * @param offset The position in the file of the first byte of the section.
+     * @param length The number of bytes in the section.
+     * @param timeToLive The time in milliseconds the section stays registered, if it is not cleaned up.
+     * @return The URL it will be served as. It will be uniquely generated.
+     * @throws ArgumentNotValid on null or unreadable file, or if the section is not within the file.
+     * @throws IOFailure on any trouble registerring the file
+     */
+    public URL registerFileSection(File file, long offset, long length, long timeToLive) {
+        ArgumentNotValid.checkNotNull(file, "File file");
+        ArgumentNotValid.checkNotNegative(offset, "long offset");
+        ArgumentNotValid.checkNotNegative(length, "long length");
+        ArgumentNotValid.checkPositive(timeToLive, "long timeToLive");
+        if (!file.isFile() || !file.canRead()) {
+            throw new ArgumentNotValid("File '" + file + "' is not a readable file");
+        }
+        if (offset + length > file.length()) {
+            throw new ArgumentNotValid("Section of " + length + " bytes at " + offset + " is not within file '" + file
+                    + "' of " + file.length() + " bytes");
+        }
+        removeExpiredSections();
+        URL url = register(new FileInfo(file, offset, length, System.currentTimeMillis() + timeToLive));
+        log.debug("Registered {} bytes at {} of file '{}' with URL '{}'", length, offset, file.getPath(), url);
+        return url;
+    }
+
+    /**
+     * Register information about something to serve under a new random URL.
+     *
+     * @param fileInfo The information to register.
+     * @return The URL it will be served as.
+     * @throws IOFailure if no URL could be generated.
+     */
+    private URL register(FileInfo fileInfo) {
         String path;
         URL url;
         // ensure we get a random and unique URL.
@@ -169,15 +232,32 @@ public class HTTPRemoteFileRegistry implements CleanupIF {
             try {
                 url = new URL(getProtocol(), localHostName, port, path);
             } catch (MalformedURLException e) {
-                throw new IOFailure("Unable to create URL for file '" + file + "'." + " '" + getProtocol() + "', '"
-                        + localHostName + "', '" + port + "', '" + path + "''", e);
+                throw new IOFailure("Unable to create URL for file '" + fileInfo.file + "'." + " '" + getProtocol()
+                        + "', '" + localHostName + "', '" + port + "', '" + path + "''", e);
             }
         } while (registeredFiles.containsKey(url));
-        registeredFiles.put(url, new FileInfo(file, deletable));
-        log.debug("Registered file '{}' with URL '{}'", file.getPath(), url);
+        registeredFiles.put(url, fileInfo);
         return url;
     }
 
+    /**
+     * Unregister all file sections that have not been cleaned up in time.
+     */
+    private void removeExpiredSections() {
+        long now = System.currentTimeMillis();
+        synchronized (registeredFiles) {
+            Iterator<Map.Entry<URL, FileInfo>> entries = registeredFiles.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<URL, FileInfo> entry = entries.next();
+                if (entry.getValue().expires < now) {
+                    entries.remove();
+                    log.debug("Unregistered expired section of file '{}' with URL '{}'",
+                            entry.getValue().file.getPath(), entry.getKey());
+                }
+            }
+        }
+    }
+
     /**
      * Get the url for cleaning up after a remote file registered under some URL.
      *
@@ -189,6 +269,17 @@ public class HTTPRemoteFileRegistry implements CleanupIF {
         return new URL(url.getProtocol(), url.getHost(), url.getPort(), url.getPath() + UNREGISTER_URL_POSTFIX);
     }
 
+    /**
+     * Get the url for the MD5 checksum of a remote file registered under some URL.
+     *
+     * @param url some URL
+     * @return the checksum url.
+     * @throws MalformedURLException If unable to construct the checksum url
+     */
+    URL getChecksumUrl(URL url) throws MalformedURLException {
+        return new URL(url.getProtocol(), url.getHost(), url.getPort(), url.getPath() + CHECKSUM_URL_POSTFIX);
+    }
+
     /**
      * Open a connection to an URL in a registry.
      *
@@ -200,15 +291,23 @@ public class HTTPRemoteFileRegistry implements CleanupIF {
         return url.openConnection();
     }
 
-    /** Pair of information registered. */
+    /** Information registered about a file, or a section of a file. */
     private class FileInfo {
         /** The file. */
         final File file;
         /** Whether it should be deleted on cleanup. */
         final boolean deletable;
+        /** The position of the first byte served. */
+        final long offset;
+        /** The number of bytes served, or -1 if the whole file is served. */
+        final long length;
+        /** The time at which the registration expires. */
+        final long expires;
+        /** The MD5 checksum of the served bytes, once it has been calculated. */
+        volatile String checksum;
 
         /**
-         * Initialise pair.
+         * Initialise information about a whole file.
          *
          * @param file The file.
          * @param deletable Whether it should be deleted on cleanup.
@@ -216,6 +315,64 @@ public class HTTPRemoteFileRegistry implements CleanupIF {
         FileInfo(File file, boolean deletable) {
             this.file = file;
             this.deletable = deletable;
+            this.offset = 0L;
+            this.length = -1L;
+            this.expires = Long.MAX_VALUE;
+        }
+
+        /**
+         * Initialise information about a section of a file, which is never deleted.
+         *
+         * @param file The file.
+         * @param offset The position of the first byte of the section.
+         * @param length The number of bytes in the section.
+         * @param expires The time at which the registration expires.
+         */
+        FileInfo(File file, long offset, long length, long expires) {
+            this.file = file;
+            this.deletable = false;
+            this.offset = offset;
+            this.length = length;
+            this.expires = expires;
+        }
+
+        /**
+         * Get the number of bytes served.
+         *
+         * @return the length of the section, or of the whole file.
+         */
+        long getLength() {
+            return length < 0 ? file.length() : length;
+        }
+
+        /**
+         * Get the MD5 checksum of the served bytes. It is normally calculated while serving them the first time, and
+         * only calculated separately if it is requested before that.
+         *
+         * @return the checksum.
+         * @throws IOFailure if the file cannot be read.
+         */
+        String getChecksum() {
+            if (checksum == null) {
+                if (length < 0) {
+                    checksum = ChecksumCalculator.calculateMd5(file);
+                } else {
+                    try {
+                        FileInputStream in = new FileInputStream(file);
+                        try {
+                            in.getChannel().position(offset);
+                            InputStream section = new BoundedInputStream(in, length);
+                            checksum = ChecksumCalculator.calculateMd5(section);
+                        } finally {
+                            in.close();
+                        }
+                    } catch (IOException e) {
+                        throw new IOFailure("Unable to read " + length + " bytes at " + offset + " of '" + file
+                                + "'", e);
+                    }
+                }
+            }
+            return checksum;
         }
     }
 
@@ -239,8 +396,9 @@ public class HTTPRemoteFileRegistry implements CleanupIF {
     /**
      * A handler for the registry.
      * <p>
-     * It has three ways to behave: Serve registered files, return 404 on unknown files, and unregister registered
-     * files, depending on the URL.
+     * It has four ways to behave: Serve registered files, serve the MD5 checksum of registered files, return 404 on
+     * unknown files, and unregister registered files, depending on the URL. Registered files are served with support
+     * for single byte range requests, so transfers can be resumed or split into parallel streams.
      */
     protected class HTTPRemoteFileRegistryHandler extends AbstractHandler {
         /**
@@ -271,12 +429,23 @@ public class HTTPRemoteFileRegistry implements CleanupIF {
                 }
                 httpServletResponse.setStatus(200);
                 request.setHandled(true);
+            } else if (urlString.endsWith(CHECKSUM_URL_POSTFIX)) {
+                URL url = new URL(urlString.substring(0, urlString.length() - CHECKSUM_URL_POSTFIX.length()));
+                FileInfo fileInfo = registeredFiles.get(url);
+                if (fileInfo != null) {
+                    httpServletResponse.setStatus(200);
+                    httpServletResponse.setContentType("text/plain");
+                    httpServletResponse.getOutputStream().write(fileInfo.getChecksum().getBytes("US-ASCII"));
+                    request.setHandled(true);
+                } else {
+                    httpServletResponse.sendError(404);
+                    log.debug("File not found for checksum URL '{}'", urlString);
+                }
             } else {
                 URL url = new URL(urlString);
                 FileInfo fileInfo = registeredFiles.get(url);
                 if (fileInfo != null) {
-                    httpServletResponse.setStatus(200);
-                    FileUtils.writeFileToStream(fileInfo.file, httpServletResponse.getOutputStream());
+                    serveFile(fileInfo, httpServletRequest.getHeader("Range"), httpServletResponse);
                     request.setHandled(true);
                     log.debug("Served file '{}' with URL '{}'", fileInfo.file.getPath(), url);
                 } else {
@@ -285,6 +454,114 @@ public class HTTPRemoteFileRegistry implements CleanupIF {
                 }
             }
         }
+
+        /**
+         * Serve a registered file or file section, or the requested range of it. The checksum is calculated while
+         * everything is served, if it is not known already.
+         *
+         * @param fileInfo The registered file.
+         * @param rangeHeader The value of the Range header of the request, or null.
+         * @param response The response to write to.
+         * @throws IOException On trouble in communication.
+         */
+        private void serveFile(FileInfo fileInfo, String rangeHeader, HttpServletResponse response)
+                throws IOException {
+            long length = fileInfo.getLength();
+            response.setHeader("Accept-Ranges", "bytes");
+            long[] range = parseRange(rangeHeader, length);
+            if (range == null) {
+                response.setStatus(200);
+                response.setHeader("Content-Length", Long.toString(length));
+                if (fileInfo.checksum == null) {
+                    MessageDigest digest = ChecksumCalculator.getMessageDigest(ChecksumCalculator.MD5);
+                    OutputStream out = new DigestOutputStream(response.getOutputStream(), digest);
+                    writeRangeToStream(fileInfo.file, fileInfo.offset, fileInfo.offset + length, out);
+                    out.flush();
+                    fileInfo.checksum = ChecksumCalculator.toHex(digest.digest());
+                } else {
+                    writeRangeToStream(fileInfo.file, fileInfo.offset, fileInfo.offset + length,
+                            response.getOutputStream());
+                }
+            } else if (range[0] > range[1]) {
+                response.setHeader("Content-Range", "bytes */" + length);
+                response.sendError(416);
+            } else {
+                response.setStatus(206);
+                response.setHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length);
+                response.setHeader("Content-Length", Long.toString(range[1] - range[0] + 1));
+                writeRangeToStream(fileInfo.file, fileInfo.offset + range[0], fileInfo.offset + range[1] + 1,
+                        response.getOutputStream());
+            }
+        }
+    }
+
+    /**
+     * Parse the value of a Range header. Only single byte ranges are supported; requests for several ranges are
+     * answered with the whole file, as allowed by RFC 2616.
+     *
+     * @param rangeHeader The value of the header, or null.
+     * @param length The length of the file.
+     * @return the first and last byte position of the range, with first greater than last if the range cannot be
+     * satisfied, or null if the whole file should be served.
+     */
+    static long[] parseRange(String rangeHeader, long length) {
+        if (rangeHeader == null) {
+            return null;
+        }
+        Matcher m = RANGE_PATTERN.matcher(rangeHeader.trim());
+        if (!m.matches() || (m.group(1).isEmpty() && m.group(2).isEmpty())) {
+            return null;
+        }
+        long first;
+        long last;
+        try {
+            if (m.group(1).isEmpty()) {
+                // Suffix range: the last n bytes
+                first = Math.max(0L, length - Long.parseLong(m.group(2)));
+                last = length - 1;
+            } else {
+                first = Long.parseLong(m.group(1));
+                last = m.group(2).isEmpty() ? length - 1 : Math.min(Long.parseLong(m.group(2)), length - 1);
+                if (last < first && first < length) {
+                    // Syntactically invalid range; must be ignored
+                    return null;
+                }
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (first >= length) {
+            return new long[] {length, length - 1};
+        }
+        return new long[] {first, last};
+    }
+
+    /**
+     * Write part of a file to a stream. The bytes are transferred by the file channel, so the operating system can
+     * avoid copying them through a buffer in the Java heap where the stream allows it.
+     *
+     * @param file The file to read from.
+     * @param start The position of the first byte to write.
+     * @param end The position after the last byte to write.
+     * @param out The stream to write to. It is not closed.
+     * @throws IOException On trouble reading the file or writing to the stream.
+     */
+    static void writeRangeToStream(File file, long start, long end, OutputStream out) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = start;
+            while (position < end) {
+                long transferred = channel.transferTo(position, end - position, target);
+                if (transferred <= 0 && position >= channel.size()) {
+                    throw new IOException("File '" + file + "' ended before position " + end);
+                }
+                position += transferred;
+            }
+        } finally {
+            in.close();
+        }
     }
 
 }
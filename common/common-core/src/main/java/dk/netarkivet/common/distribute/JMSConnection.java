@@ -22,12 +22,27 @@
  */
 package dk.netarkivet.common.distribute;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import javax.jms.BytesMessage;
 import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
 import javax.jms.Destination;
@@ -56,10 +71,11 @@ import dk.netarkivet.common.utils.Settings;
 import dk.netarkivet.common.utils.TimeUtils;
 
 /**
- * Handles the communication with a JMS broker. Note on Thread-safety: the methods and fields of JMSConnection are not
- * accessed by multiple threads (though JMSConnection itself creates threads). Thus no synchronization is needed on
- * methods and fields of JMSConnection. A shutdown hook is also added, which closes the connection. Class JMSConnection
- * is now also a exceptionhandler for the JMS Connections
+ * Handles the communication with a JMS broker. Note on Thread-safety: JMS sessions may not be used by more than one
+ * thread at a time, so the session of the connection is only used for consumers, and a thread that sends a message
+ * borrows a session and its producers from a bounded pool for the duration of the send. Messages can also be sent asynchronously by a small pool of sender threads,
+ * which send messages to the same channel in order, batching them in transactions. A shutdown hook is also added,
+ * which closes the connection. Class JMSConnection is now also a exceptionhandler for the JMS Connections
  */
 public abstract class JMSConnection implements ExceptionListener, CleanupIF {
 
@@ -72,17 +88,49 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
     /** The number to times to (re)try whenever a JMSException is thrown. */
     static final int JMS_MAXTRIES = Settings.getInt(CommonSettings.JMS_BROKER_RETRIES);
 
+    /** The time to wait for asynchronous sends to finish when cleaning up, in seconds. */
+    private static final int ASYNC_SEND_SHUTDOWN_TIMEOUT = 30;
+
     /** The JMS Connection. */
     protected Connection connection;
 
     /**
-     * The Session handling messages sent to / received from the NetarchiveSuite queues and topics.
+     * The Session handling messages received from the NetarchiveSuite queues and topics. Messages are sent using the
+     * sessions borrowed from the pool of sender contexts, see {@link #borrowSenderContext()}.
      */
     protected Session session;
 
-    /** Map for caching message producers. */
-    protected final Map<String, MessageProducer> producers = Collections
-            .synchronizedMap(new HashMap<String, MessageProducer>());
+    /**
+     * The sessions and producers for sending messages that are not in use, most recently used first. Also the lock
+     * guarding the pool.
+     */
+    private final Deque<SenderContext> idleSenderContexts = new ArrayDeque<SenderContext>();
+
+    /** The largest number of sender contexts in the pool, see settings.common.jms.senderSessions. */
+    private final int maxSenderContexts = Math.max(1, Settings.getInt(CommonSettings.JMS_SENDER_SESSIONS));
+
+    /** The number of sender contexts in the pool, both idle and borrowed. Guarded by idleSenderContexts. */
+    private int senderContextCount;
+
+    /**
+     * Incremented each time a connection is established. Sender contexts created for an earlier connection are
+     * discarded.
+     */
+    private volatile int connectionGeneration;
+
+    /** Statistics for the messages sent, by channel name. */
+    private final ConcurrentMap<String, JMSSendStatistics> sendStatistics =
+            new ConcurrentHashMap<String, JMSSendStatistics>();
+
+    /** Messages waiting to be sent asynchronously, by channel name. */
+    private final ConcurrentMap<String, AsyncSendQueue> asyncSendQueues =
+            new ConcurrentHashMap<String, AsyncSendQueue>();
+
+    /** The threads sending messages asynchronously. Created when first needed. */
+    private ExecutorService asyncSendExecutor;
+
+    /** The largest number of asynchronously sent messages to send in one transaction. */
+    private int asyncSendBatchSize = 1;
 
     /** Map for caching message consumers (topic-subscribers and queue-receivers). */
     protected final Map<String, MessageConsumer> consumers = Collections
@@ -92,6 +140,20 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
     protected final Map<String, MessageListener> listeners = Collections
             .synchronizedMap(new HashMap<String, MessageListener>());
 
+    /**
+     * The dispatchers processing messages concurrently on the channels listed in
+     * {@link CommonSettings#JMS_CONSUMER_CHANNELS}, by the consumer key of the listener they wrap.
+     */
+    private final Map<String, ConcurrentMessageDispatcher> dispatchers = Collections
+            .synchronizedMap(new HashMap<String, ConcurrentMessageDispatcher>());
+
+    /**
+     * The sessions of the consumers of the dispatchers, by consumer key. A dispatcher blocks the thread delivering its
+     * messages when its queues are full, and a session delivers all the messages of its consumers in one thread, so
+     * each dispatcher gets a session of its own in order not to hold up the other channels.
+     */
+    private final Map<String, Session> consumerSessions = Collections.synchronizedMap(new HashMap<String, Session>());
+
     /**
      * Lock for the connection. Locked for read on adding/removing listeners and sending messages. Locked for write when
      * connection, releasing and reconnecting.
@@ -189,6 +251,41 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
         sendMessage(msg, msg.getTo());
     }
 
+    /**
+     * Submit an object to the destination queue without waiting for it to be sent. Messages sent this way to the same
+     * channel are sent in the order they were submitted, and several of them may be sent in one transaction. Meant for
+     * status messages, whose senders should not be held up by the broker.
+     *
+     * @param msg The NetarkivetMessage to send to the destination queue (null not allowed)
+     * @param callback Informed when the message has been sent or has failed. May be null, in which case failures are
+     * only logged.
+     * @throws ArgumentNotValid if msg is null.
+     */
+    public void sendAsync(NetarkivetMessage msg, JMSSendCallback callback) {
+        ArgumentNotValid.checkNotNull(msg, "msg");
+        log.trace("Queueing message ({}) for {}", msg.toString(), msg.getTo());
+        String channelName = msg.getTo().getName();
+        AsyncSendQueue queue = asyncSendQueues.get(channelName);
+        if (queue == null) {
+            AsyncSendQueue newQueue = new AsyncSendQueue(msg.getTo());
+            queue = asyncSendQueues.putIfAbsent(channelName, newQueue);
+            if (queue == null) {
+                queue = newQueue;
+            }
+        }
+        queue.pending.add(new PendingSend(msg, callback));
+        queue.schedule();
+    }
+
+    /**
+     * Get the statistics for the messages sent by this connection.
+     *
+     * @return an unmodifiable map from channel names to the statistics for that channel.
+     */
+    public Map<String, JMSSendStatistics> getSendStatistics() {
+        return Collections.<String, JMSSendStatistics>unmodifiableMap(sendStatistics);
+    }
+
     /**
      * Sends a message msg to the channel defined by the parameter to - NOT the channel defined in the message.
      *
@@ -220,7 +317,9 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
     }
 
     /**
-     * Method adds a listener to the given queue or topic.
+     * Method adds a listener to the given queue or topic. On channels listed in
+     * {@link CommonSettings#JMS_CONSUMER_CHANNELS}, messages are handed to the listener by a
+     * {@link ConcurrentMessageDispatcher}, so the listener must be thread-safe.
      *
      * @param mq the messagequeue to listen to
      * @param ml the messagelistener
@@ -229,7 +328,7 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
     public void setListener(ChannelID mq, MessageListener ml) throws IOFailure {
         ArgumentNotValid.checkNotNull(mq, "ChannelID mq");
         ArgumentNotValid.checkNotNull(ml, "MessageListener ml");
-        setListener(mq.getName(), ml);
+        setListener(mq.getName(), getDispatchingListener(mq.getName(), ml));
     }
 
     /**
@@ -242,7 +341,13 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
     public void removeListener(ChannelID mq, MessageListener ml) throws IOFailure {
         ArgumentNotValid.checkNotNull(mq, "ChannelID mq");
         ArgumentNotValid.checkNotNull(ml, "MessageListener ml");
-        removeListener(ml, mq.getName());
+        ConcurrentMessageDispatcher dispatcher = dispatchers.get(getConsumerKey(mq.getName(), ml));
+        if (dispatcher == null) {
+            removeListener(ml, mq.getName());
+        } else {
+            dispatchers.remove(getConsumerKey(mq.getName(), ml));
+            removeDispatcher(dispatcher);
+        }
     }
 
     /**
@@ -271,6 +376,11 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
      * Clean up. Remove close connection, remove shutdown hook and null the instance.
      */
     public void cleanup() {
+        // Let received messages be processed, and their replies sent, before the connection is closed.
+        closeDispatchers();
+        // Let queued messages be sent before the connection is closed. This cannot be done while holding the write
+        // lock, as the sender threads need the read lock.
+        shutdownAsyncSendExecutor();
         connectionLock.writeLock().lock();
         try {
             // Remove shutdown hook
@@ -287,6 +397,10 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
             closeConnection();
             // Clear list of listeners
             listeners.clear();
+            for (JMSSendStatistics statistics : sendStatistics.values()) {
+                log.info("Sent messages to {}", statistics);
+                statistics.unregister();
+            }
             instance = null;
             log.info("Cleanup finished");
         } finally {
@@ -311,19 +425,116 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
         connection = null;
         session = null;
         consumers.clear();
-        producers.clear();
+        // Closed with the connection
+        consumerSessions.clear();
+        // The sessions and producers of the sender contexts were closed with the connection. Borrowed contexts are
+        // discarded when returned, as the connection generation changes when a new connection is established.
+        synchronized (idleSenderContexts) {
+            senderContextCount -= idleSenderContexts.size();
+            idleSenderContexts.clear();
+            idleSenderContexts.notifyAll();
+        }
+    }
+
+    /**
+     * Remove the dispatchers processing messages concurrently, waiting a while for queued messages to be processed and
+     * acknowledged.
+     */
+    private void closeDispatchers() {
+        List<ConcurrentMessageDispatcher> toClose;
+        synchronized (dispatchers) {
+            toClose = new ArrayList<ConcurrentMessageDispatcher>(dispatchers.values());
+            dispatchers.clear();
+        }
+        for (ConcurrentMessageDispatcher dispatcher : toClose) {
+            try {
+                removeDispatcher(dispatcher);
+            } catch (IOFailure e) {
+                log.warn("Could not remove the dispatcher for {}", dispatcher.getChannelName(), e);
+            }
+        }
     }
 
     /**
-     * Unwraps a NetarkivetMessage from an ObjectMessage.
+     * Remove a dispatcher from its channel. The consumer is closed first, so no more messages are delivered. Then the
+     * dispatcher is closed, so the queued messages are processed and acknowledged, and finally the session of the
+     * consumer is closed. The dispatcher is closed without holding the connection lock, as the listener may send
+     * replies.
      *
-     * @param msg a javax.jms.ObjectMessage
+     * @param dispatcher The dispatcher to remove.
+     * @throws IOFailure If the consumer or its session could not be closed. The dispatcher is closed anyway.
+     */
+    private void removeDispatcher(ConcurrentMessageDispatcher dispatcher) throws IOFailure {
+        String channelName = dispatcher.getChannelName();
+        String key = getConsumerKey(channelName, dispatcher);
+        log.info("Removing dispatcher from channel '{}'", channelName);
+        JMSException failure = null;
+        Session consumerSession = null;
+        connectionLock.readLock().lock();
+        try {
+            MessageConsumer consumer = consumers.remove(key);
+            listeners.remove(key);
+            consumerSession = consumerSessions.remove(key);
+            if (consumer != null) {
+                consumer.close();
+            }
+        } catch (JMSException e) {
+            failure = e;
+        } finally {
+            connectionLock.readLock().unlock();
+        }
+        dispatcher.close();
+        if (consumerSession != null) {
+            try {
+                consumerSession.close();
+            } catch (JMSException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw new IOFailure("JMS-error - could not remove dispatcher from queue/topic: " + channelName, failure);
+        }
+    }
+
+    /**
+     * Stop the threads sending messages asynchronously, waiting a while for queued messages to be sent.
+     */
+    private void shutdownAsyncSendExecutor() {
+        ExecutorService executor;
+        synchronized (asyncSendQueues) {
+            executor = asyncSendExecutor;
+            asyncSendExecutor = null;
+        }
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(ASYNC_SEND_SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                log.warn("Asynchronous sends did not finish within {} seconds", ASYNC_SEND_SHUTDOWN_TIMEOUT);
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while waiting for asynchronous sends to finish", e);
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Unwraps a NetarkivetMessage from an ObjectMessage, or from a BytesMessage encoded by one of the codecs in
+     * {@link JMSMessageCodecs}.
+     *
+     * @param msg a javax.jms.ObjectMessage or javax.jms.BytesMessage
      * @return a NetarkivetMessage
      * @throws ArgumentNotValid when msg in valid or format of JMS Object message is invalid
      */
     public static NetarkivetMessage unpack(Message msg) throws ArgumentNotValid {
         ArgumentNotValid.checkNotNull(msg, "msg");
 
+        if (msg instanceof BytesMessage) {
+            return unpackBytesMessage((BytesMessage) msg);
+        }
+
         ObjectMessage objMsg;
         try {
             objMsg = (ObjectMessage) msg;
@@ -357,6 +568,30 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
         return netMsg;
     }
 
+    /**
+     * Decodes a NetarkivetMessage from a BytesMessage.
+     *
+     * @param msg a javax.jms.BytesMessage
+     * @return a NetarkivetMessage
+     * @throws ArgumentNotValid when the message cannot be decoded
+     */
+    private static NetarkivetMessage unpackBytesMessage(BytesMessage msg) throws ArgumentNotValid {
+        NetarkivetMessage netMsg;
+        try {
+            netMsg = JMSMessageCodecs.getInstance().decode(msg);
+            netMsg.updateId(msg.getJMSMessageID());
+        } catch (ArgumentNotValid e) {
+            log.warn("Message invalid. Unable to decode message", e);
+            throw e;
+        } catch (Exception e) {
+            String message = "Message invalid. Unable to decode message";
+            log.warn(message, e);
+            throw new ArgumentNotValid(message, e);
+        }
+        log.trace("Unpacked message '{}'", netMsg);
+        return netMsg;
+    }
+
     /**
      * Submit an ObjectMessage to the destination channel.
      *
@@ -365,6 +600,25 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
      * @throws IOFailure if message failed to be sent.
      */
     protected void sendMessage(NetarkivetMessage nMsg, ChannelID to) throws IOFailure {
+        long start = System.nanoTime();
+        JMSSendStatistics statistics = getSendStatistics(to.getName());
+        try {
+            sendWithRetries(nMsg, to);
+        } catch (IOFailure e) {
+            statistics.recordFailure();
+            throw e;
+        }
+        statistics.recordSent(System.nanoTime() - start);
+    }
+
+    /**
+     * Send a message to the destination channel, retrying and reconnecting if it fails.
+     *
+     * @param nMsg the NetarkivetMessage to be sent
+     * @param to the destination channel
+     * @throws IOFailure if message failed to be sent.
+     */
+    private void sendWithRetries(NetarkivetMessage nMsg, ChannelID to) throws IOFailure {
         Exception lastException = null;
         boolean operationSuccessful = false;
         int tries = 0;
@@ -437,21 +691,117 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
     }
 
     /**
-     * Helper method for getting the right producer for a queue or topic.
+     * Get the statistics for a channel, creating them if necessary.
      *
-     * @param queueName The name of the channel
-     * @return The producer for that channel. A new one is created, if none exists.
-     * @throws JMSException If a new producer cannot be created.
+     * @param channelName The name of the channel.
+     * @return The statistics for that channel.
+     */
+    private JMSSendStatistics getSendStatistics(String channelName) {
+        JMSSendStatistics statistics = sendStatistics.get(channelName);
+        if (statistics == null) {
+            JMSSendStatistics newStatistics = new JMSSendStatistics(channelName);
+            statistics = sendStatistics.putIfAbsent(channelName, newStatistics);
+            if (statistics == null) {
+                statistics = newStatistics;
+                statistics.register();
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Get the producer last used for sending to a channel, if its sender context is idle. Used by tests.
+     *
+     * @param channelName The name of the channel.
+     * @return the producer of the most recently used sender context, or null if that context has not sent anything to
+     * the channel on this connection.
+     */
+    MessageProducer getLastUsedProducer(String channelName) {
+        synchronized (idleSenderContexts) {
+            SenderContext context = idleSenderContexts.peekFirst();
+            if (context == null || context.generation != connectionGeneration) {
+                return null;
+            }
+            return context.producers.get(channelName);
+        }
+    }
+
+    /**
+     * @return the number of sessions currently open for sending messages. Used by tests.
      */
-    private MessageProducer getProducer(String queueName) throws JMSException {
-        // Check if producer is in cache
-        // If it is not, it is created and stored in cache:
-        MessageProducer producer = producers.get(queueName);
-        if (producer == null) {
-            producer = getSession().createProducer(getDestination(queueName));
-            producers.put(queueName, producer);
+    int getSenderSessionCount() {
+        synchronized (idleSenderContexts) {
+            return senderContextCount;
+        }
+    }
+
+    /**
+     * Borrow a session and its producers for sending. Must be called with the read lock held, and the context must be
+     * given back with {@link #returnSenderContext(SenderContext)} when the send is done. If all the contexts allowed
+     * by settings.common.jms.senderSessions are in use, this waits for one to be returned.
+     *
+     * @return An idle sender context of the current connection. A new one is created if none is idle.
+     * @throws JMSException If a new session cannot be created.
+     * @throws IOFailure if no connection is available, and reconnect does not help, or if interrupted while waiting
+     * for a context.
+     */
+    private SenderContext borrowSenderContext() throws JMSException {
+        // Reconnects if necessary
+        getSession();
+        int generation;
+        synchronized (idleSenderContexts) {
+            while (true) {
+                SenderContext context = idleSenderContexts.pollFirst();
+                if (context != null) {
+                    if (context.generation == connectionGeneration) {
+                        return context;
+                    }
+                    --senderContextCount;
+                } else if (senderContextCount < maxSenderContexts) {
+                    ++senderContextCount;
+                    generation = connectionGeneration;
+                    break;
+                } else {
+                    try {
+                        idleSenderContexts.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOFailure("Interrupted while waiting for a JMS session to send with", e);
+                    }
+                }
+            }
+        }
+        boolean created = false;
+        try {
+            SenderContext context = new SenderContext(generation, connection.createSession(false,
+                    Session.AUTO_ACKNOWLEDGE));
+            created = true;
+            return context;
+        } finally {
+            if (!created) {
+                synchronized (idleSenderContexts) {
+                    --senderContextCount;
+                    idleSenderContexts.notify();
+                }
+            }
+        }
+    }
+
+    /**
+     * Give back a sender context borrowed with {@link #borrowSenderContext()}. A context of an earlier connection is
+     * discarded, as its sessions were closed with that connection.
+     *
+     * @param context The sender context.
+     */
+    private void returnSenderContext(SenderContext context) {
+        synchronized (idleSenderContexts) {
+            if (context.generation == connectionGeneration) {
+                idleSenderContexts.addFirst(context);
+            } else {
+                --senderContextCount;
+            }
+            idleSenderContexts.notify();
         }
-        return producer;
     }
 
     /**
@@ -471,7 +821,9 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
     }
 
     /**
-     * Helper method for getting the right consumer for a queue or topic, and message listener.
+     * Helper method for getting the right consumer for a queue or topic, and message listener. The consumer of a
+     * {@link ConcurrentMessageDispatcher} is created in a session of its own, where the dispatcher acknowledges the
+     * messages once they have been processed.
      *
      * @param channelName The name of the channel
      * @param ml The message listener to add as listener to the channel
@@ -482,13 +834,62 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
         String key = getConsumerKey(channelName, ml);
         MessageConsumer consumer = consumers.get(key);
         if (consumer == null) {
-            consumer = getSession().createConsumer(getDestination(channelName));
+            Session consumerSession = getSession();
+            if (ml instanceof ConcurrentMessageDispatcher) {
+                consumerSession = connection.createSession(false, Session.CLIENT_ACKNOWLEDGE);
+                consumerSessions.put(key, consumerSession);
+            }
+            consumer = consumerSession.createConsumer(getDestination(channelName));
             consumers.put(key, consumer);
             listeners.put(key, ml);
         }
         return consumer;
     }
 
+    /**
+     * Get the listener to register on a channel. On channels listed in {@link CommonSettings#JMS_CONSUMER_CHANNELS}
+     * this is a dispatcher handing the messages to the given listener in a number of threads, otherwise it is the
+     * given listener itself.
+     *
+     * @param channelName The name of the channel.
+     * @param ml The listener processing the messages.
+     * @return the listener to register on the channel.
+     */
+    private MessageListener getDispatchingListener(String channelName, MessageListener ml) {
+        String key = getConsumerKey(channelName, ml);
+        synchronized (dispatchers) {
+            ConcurrentMessageDispatcher dispatcher = dispatchers.get(key);
+            if (dispatcher == null) {
+                if (!isConcurrentChannel(channelName)) {
+                    return ml;
+                }
+                dispatcher = new ConcurrentMessageDispatcher(channelName, ml,
+                        Settings.getInt(CommonSettings.JMS_CONSUMER_THREADS),
+                        Settings.getInt(CommonSettings.JMS_CONSUMER_HIGH_WATER_MARK));
+                dispatchers.put(key, dispatcher);
+            }
+            return dispatcher;
+        }
+    }
+
+    /**
+     * Decide whether messages received on a channel are processed concurrently.
+     *
+     * @param channelName The name of the channel.
+     * @return true if the channel matches one of the values of {@link CommonSettings#JMS_CONSUMER_CHANNELS}.
+     */
+    private static boolean isConcurrentChannel(String channelName) {
+        String name = Channels.CHANNEL_PART_SEPARATOR + channelName + Channels.CHANNEL_PART_SEPARATOR;
+        for (String part : Settings.getAll(CommonSettings.JMS_CONSUMER_CHANNELS)) {
+            part = part.trim();
+            if (!part.isEmpty()
+                    && name.contains(Channels.CHANNEL_PART_SEPARATOR + part + Channels.CHANNEL_PART_SEPARATOR)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Generate a consumerkey based on the given channel name and messageListener.
      *
@@ -522,30 +923,38 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
         session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
         connection.setExceptionListener(this);
         connection.start();
+        ++connectionGeneration;
     }
 
     /**
-     * Sends an ObjectMessage on a queue destination.
+     * Sends a message on a queue destination. The message is sent as an ObjectMessage, or as a BytesMessage if a
+     * codec is registered for it and binary encoding is enabled for the destination, see {@link JMSMessageCodecs}.
      *
-     * @param msg the NetarkivetMessage to be wrapped and send as an ObjectMessage.
+     * @param msg the NetarkivetMessage to be wrapped and sent.
      * @param to the destination topic.
      * @throws JMSException if message failed to be sent.
      */
     private void doSend(NetarkivetMessage msg, ChannelID to) throws JMSException {
         connectionLock.readLock().lock();
         try {
-            ObjectMessage message = getSession().createObjectMessage(msg);
-            synchronized (msg) {
-                getProducer(to.getName()).send(message);
-                // Note: Id is only updated if the message does not already have
-                // an id. This ensures that resent messages keep the same ID
-                // TODO Is it always OK for resent messages to keep the same ID
+            SenderContext context = borrowSenderContext();
+            try {
+                Message message = JMSMessageCodecs.getInstance().createMessage(context.session, msg, to.getName());
+                ConcurrentMessageDispatcher.setOrderingKey(message, msg);
+                synchronized (msg) {
+                    context.getProducer(to.getName(), false).send(message);
+                    // Note: Id is only updated if the message does not already have
+                    // an id. This ensures that resent messages keep the same ID
+                    // TODO Is it always OK for resent messages to keep the same ID
 
-                // FIXME Solution for NAS-2043 doesn't work; rolled back
-                // String randomID = UUID.randomUUID().toString();
-                // msg.updateId(randomID);
-                msg.updateId(message.getJMSMessageID());
+                    // FIXME Solution for NAS-2043 doesn't work; rolled back
+                    // String randomID = UUID.randomUUID().toString();
+                    // msg.updateId(randomID);
+                    msg.updateId(message.getJMSMessageID());
 
+                }
+            } finally {
+                returnSenderContext(context);
             }
         } finally {
             connectionLock.readLock().unlock();
@@ -553,6 +962,127 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
         log.trace("Sent message '{}'", msg.toString());
     }
 
+    /**
+     * Sends a batch of messages to one channel in a single transaction, using the transacted session of a borrowed
+     * sender context. If anything fails, the transaction is rolled back, so none of the messages are sent.
+     *
+     * @param batch the messages to send.
+     * @param to the destination channel.
+     * @throws JMSException if the messages failed to be sent.
+     */
+    private void doSendBatch(List<PendingSend> batch, ChannelID to) throws JMSException {
+        connectionLock.readLock().lock();
+        try {
+            SenderContext context = borrowSenderContext();
+            List<String> ids = new ArrayList<String>(batch.size());
+            try {
+                Session batchSession = context.getBatchSession();
+                MessageProducer producer = context.getProducer(to.getName(), true);
+                try {
+                    for (PendingSend pendingSend : batch) {
+                        Message message = JMSMessageCodecs.getInstance().createMessage(batchSession, pendingSend.msg,
+                                to.getName());
+                        ConcurrentMessageDispatcher.setOrderingKey(message, pendingSend.msg);
+                        producer.send(message);
+                        ids.add(message.getJMSMessageID());
+                    }
+                    batchSession.commit();
+                } catch (JMSException e) {
+                    rollback(batchSession);
+                    throw e;
+                } catch (RuntimeException e) {
+                    rollback(batchSession);
+                    throw e;
+                }
+            } finally {
+                returnSenderContext(context);
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).msg.updateId(ids.get(i));
+            }
+        } finally {
+            connectionLock.readLock().unlock();
+        }
+        log.trace("Sent batch of {} messages to {}", batch.size(), to);
+    }
+
+    /**
+     * Roll back a transacted session, logging any trouble.
+     *
+     * @param transactedSession The session.
+     */
+    private static void rollback(Session transactedSession) {
+        try {
+            transactedSession.rollback();
+        } catch (JMSException e) {
+            log.debug("Rollback failed", e);
+        }
+    }
+
+    /**
+     * Send messages that were queued for asynchronous sending. The messages are sent in one transaction if there is
+     * more than one. If that fails, they are sent one at a time with the usual retries, and the callbacks are informed
+     * about the outcome for each message.
+     *
+     * @param to the destination channel.
+     * @param batch the messages to send.
+     */
+    private void sendBatch(ChannelID to, List<PendingSend> batch) {
+        JMSSendStatistics statistics = getSendStatistics(to.getName());
+        if (batch.size() > 1) {
+            try {
+                doSendBatch(batch, to);
+                statistics.recordBatch();
+                long now = System.nanoTime();
+                for (PendingSend pendingSend : batch) {
+                    statistics.recordSent(now - pendingSend.queued);
+                    pendingSend.completed();
+                }
+                return;
+            } catch (Exception e) {
+                log.debug("Sending a batch of {} messages to {} failed. Will send them one at a time", batch.size(),
+                        to, e);
+            }
+        }
+        for (PendingSend pendingSend : batch) {
+            try {
+                sendWithRetries(pendingSend.msg, to);
+            } catch (Exception e) {
+                statistics.recordFailure();
+                pendingSend.failed(e);
+                continue;
+            }
+            statistics.recordSent(System.nanoTime() - pendingSend.queued);
+            pendingSend.completed();
+        }
+    }
+
+    /**
+     * Get the threads sending messages asynchronously, creating them if necessary.
+     *
+     * @return the executor running the asynchronous sends.
+     */
+    private ExecutorService getAsyncSendExecutor() {
+        synchronized (asyncSendQueues) {
+            if (asyncSendExecutor == null) {
+                int threads = Math.max(1, Settings.getInt(CommonSettings.JMS_ASYNC_SEND_THREADS));
+                asyncSendBatchSize = Math.max(1, Settings.getInt(CommonSettings.JMS_ASYNC_SEND_BATCH_SIZE));
+                log.info("Starting {} threads for asynchronous sending of JMS messages", threads);
+                asyncSendExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "JMSConnection-sender-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+            return asyncSendExecutor;
+        }
+    }
+
     /**
      * Method adds a listener to the given queue or topic.
      *
@@ -622,6 +1152,10 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
                 try {
                     MessageConsumer messageConsumer = getConsumer(channelName, ml);
                     messageConsumer.close();
+                    Session consumerSession = consumerSessions.remove(getConsumerKey(channelName, ml));
+                    if (consumerSession != null) {
+                        consumerSession.close();
+                    }
                     consumers.remove(getConsumerKey(channelName, ml));
                     listeners.remove(getConsumerKey(channelName, ml));
                 } finally {
@@ -664,4 +1198,163 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
         log.info("Reconnect successful");
     }
 
+    /**
+     * A session and its producers for sending messages. Only accessed by the thread that has borrowed it from the pool.
+     */
+    private final class SenderContext {
+        /** The connection generation the sessions belong to. */
+        private final int generation;
+        /** The session used for ordinary sends. */
+        private final Session session;
+        /** The transacted session used for sending batches. Created when first needed. */
+        private Session batchSession;
+        /** The producers of the ordinary session, by channel name. */
+        private final Map<String, MessageProducer> producers = new HashMap<String, MessageProducer>();
+        /** The producers of the transacted session, by channel name. */
+        private final Map<String, MessageProducer> batchProducers = new HashMap<String, MessageProducer>();
+
+        /**
+         * @param generation The connection generation the session belongs to.
+         * @param session The session used for ordinary sends.
+         */
+        SenderContext(int generation, Session session) {
+            this.generation = generation;
+            this.session = session;
+        }
+
+        /**
+         * @return the transacted session used for sending batches.
+         * @throws JMSException If the session cannot be created.
+         */
+        Session getBatchSession() throws JMSException {
+            if (batchSession == null) {
+                batchSession = connection.createSession(true, Session.SESSION_TRANSACTED);
+            }
+            return batchSession;
+        }
+
+        /**
+         * Helper method for getting the right producer for a queue or topic.
+         *
+         * @param channelName The name of the channel
+         * @param batch Whether the producer of the transacted session is wanted
+         * @return The producer for that channel. A new one is created, if none exists.
+         * @throws JMSException If a new producer cannot be created.
+         */
+        MessageProducer getProducer(String channelName, boolean batch) throws JMSException {
+            Map<String, MessageProducer> cache = batch ? batchProducers : producers;
+            MessageProducer producer = cache.get(channelName);
+            if (producer == null) {
+                producer = (batch ? getBatchSession() : session).createProducer(getDestination(channelName));
+                cache.put(channelName, producer);
+            }
+            return producer;
+        }
+    }
+
+    /**
+     * A message waiting to be sent asynchronously.
+     */
+    private static final class PendingSend {
+        /** The message. */
+        private final NetarkivetMessage msg;
+        /** The callback to inform about the outcome, or null. */
+        private final JMSSendCallback callback;
+        /** The time the message was queued, from System.nanoTime(). */
+        private final long queued = System.nanoTime();
+
+        /**
+         * @param msg The message.
+         * @param callback The callback to inform about the outcome, or null.
+         */
+        PendingSend(NetarkivetMessage msg, JMSSendCallback callback) {
+            this.msg = msg;
+            this.callback = callback;
+        }
+
+        /** Inform the callback that the message was sent. */
+        void completed() {
+            log.trace("Sent message '{}'", msg);
+            if (callback != null) {
+                try {
+                    callback.onCompletion(msg);
+                } catch (RuntimeException e) {
+                    log.warn("Send callback for message '{}' failed", msg, e);
+                }
+            }
+        }
+
+        /**
+         * Inform the callback that the message could not be sent.
+         *
+         * @param e The cause.
+         */
+        void failed(Exception e) {
+            if (callback == null) {
+                log.warn("Asynchronous send of message '{}' failed", msg, e);
+                return;
+            }
+            try {
+                callback.onFailure(msg, e);
+            } catch (RuntimeException e2) {
+                log.warn("Send callback for message '{}' failed", msg, e2);
+            }
+        }
+    }
+
+    /**
+     * The messages waiting to be sent asynchronously to one channel. At most one sender thread works on a queue at a
+     * time, which keeps the messages in order.
+     */
+    private final class AsyncSendQueue implements Runnable {
+        /** The destination channel. */
+        private final ChannelID to;
+        /** The messages waiting to be sent. */
+        private final ConcurrentLinkedQueue<PendingSend> pending = new ConcurrentLinkedQueue<PendingSend>();
+        /** Whether a sender thread is working on, or has been asked to work on, this queue. */
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        /**
+         * @param to The destination channel.
+         */
+        AsyncSendQueue(ChannelID to) {
+            this.to = to;
+        }
+
+        /**
+         * Make sure a sender thread will work on this queue.
+         */
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    getAsyncSendExecutor().execute(this);
+                } catch (RejectedExecutionException e) {
+                    // The connection is being cleaned up. Send the messages from this thread instead.
+                    log.debug("Asynchronous sending not available. Sending messages to {} directly", to);
+                    run();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                List<PendingSend> batch = new ArrayList<PendingSend>();
+                PendingSend pendingSend;
+                while (batch.size() < asyncSendBatchSize && (pendingSend = pending.poll()) != null) {
+                    batch.add(pendingSend);
+                }
+                if (batch.isEmpty()) {
+                    scheduled.set(false);
+                    // A message may have been queued after the poll, but before the flag was cleared
+                    if (pending.isEmpty() || !scheduled.compareAndSet(false, true)) {
+                        return;
+                    }
+                } else {
+                    sendBatch(to, batch);
+                }
+            }
+        }
+    }
+
 }
@@ -0,0 +1,72 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.distribute;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A codec that encodes one type of {@link NetarkivetMessage} in a form that is more compact and cheaper to produce
+ * than Java serialization. Encoded messages are sent as JMS BytesMessages, see {@link JMSMessageCodecs}. Messages that
+ * have no codec, or are sent on channels that are not configured for binary encoding, are sent as ObjectMessages as
+ * before.
+ * <p>
+ * Implementations must have a public no-argument constructor, and must be stateless, as the same instance is used by
+ * all threads.
+ */
+public interface JMSMessageCodec {
+
+    /**
+     * The name of the codec. It is sent along with each encoded message, and is used by the receiver to find the codec
+     * to decode it with. The name should be changed whenever the encoding changes incompatibly.
+     *
+     * @return the name of the codec.
+     */
+    String getName();
+
+    /**
+     * @return the class of the messages handled by this codec. Only messages of exactly this class are encoded with
+     * it; subclasses are sent using Java serialization.
+     */
+    Class<? extends NetarkivetMessage> getMessageClass();
+
+    /**
+     * Encode a message.
+     *
+     * @param msg The message to encode. It is of the class returned by {@link #getMessageClass()}.
+     * @param out The stream to write the encoded message to.
+     * @throws IOException If the message cannot be encoded.
+     */
+    void encode(NetarkivetMessage msg, DataOutputStream out) throws IOException;
+
+    /**
+     * Decode a message encoded by {@link #encode(NetarkivetMessage, DataOutputStream)}.
+     *
+     * @param in The stream to read the encoded message from.
+     * @return the decoded message.
+     * @throws IOException If the message cannot be decoded.
+     */
+    NetarkivetMessage decode(DataInputStream in) throws IOException;
+
+}
@@ -0,0 +1,342 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.distribute;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.CommonSettings;
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.utils.Settings;
+
+/**
+ * Chooses how a {@link NetarkivetMessage} is put into a JMS message, and takes it out again.
+ * <p>
+ * A message is sent as a BytesMessage if a {@link JMSMessageCodec} is registered for its class and the destination
+ * channel is listed in the setting {@link CommonSettings#JMS_CODEC_CHANNELS}. The name of the codec is sent in the
+ * message property {@link #CODEC_PROPERTY}, and if the encoded message is larger than
+ * {@link CommonSettings#JMS_CODEC_COMPRESSION_THRESHOLD} bytes it is deflated, which is marked by the property
+ * {@link #COMPRESSED_PROPERTY}. All other messages are sent as ObjectMessages, so receivers always understand both
+ * forms, and the binary form can be enabled one channel at a time.
+ */
+public class JMSMessageCodecs {
+
+    /** The log. */
+    private static final Logger log = LoggerFactory.getLogger(JMSMessageCodecs.class);
+
+    /** The message property holding the name of the codec used to encode a BytesMessage. */
+    public static final String CODEC_PROPERTY = "nasCodec";
+
+    /** The message property telling whether the body of a BytesMessage is deflated. */
+    public static final String COMPRESSED_PROPERTY = "nasCompressed";
+
+    /** Value of {@link CommonSettings#JMS_CODEC_CHANNELS} that matches all channels. */
+    private static final String ALL_CHANNELS = "*";
+
+    /** The instance configured from settings. */
+    private static JMSMessageCodecs instance;
+
+    /** The codecs by the class of message they encode. */
+    private final Map<Class<? extends NetarkivetMessage>, JMSMessageCodec> codecsByClass;
+
+    /** The codecs by name. */
+    private final Map<String, JMSMessageCodec> codecsByName;
+
+    /** The channel name parts that enable binary encoding, each surrounded by separators. */
+    private final List<String> binaryChannels;
+
+    /** Whether all channels use binary encoding. */
+    private final boolean allChannelsBinary;
+
+    /** Encoded messages larger than this are compressed. Non-positive values disable compression. */
+    private final int compressionThreshold;
+
+    /** Cache of the decision made for each channel name. */
+    private final Map<String, Boolean> channelDecisions = Collections.synchronizedMap(new HashMap<String, Boolean>());
+
+    /**
+     * Create a set of codecs.
+     *
+     * @param codecs The codecs.
+     * @param channels The channel name parts that enable binary encoding, see
+     * {@link CommonSettings#JMS_CODEC_CHANNELS}.
+     * @param compressionThreshold Encoded messages larger than this number of bytes are compressed. Zero or less
+     * disables compression.
+     * @throws ArgumentNotValid if codecs or channels is null, or two codecs have the same name or message class.
+     */
+    public JMSMessageCodecs(Collection<JMSMessageCodec> codecs, Collection<String> channels, int compressionThreshold) {
+        ArgumentNotValid.checkNotNull(codecs, "Collection<JMSMessageCodec> codecs");
+        ArgumentNotValid.checkNotNull(channels, "Collection<String> channels");
+        Map<Class<? extends NetarkivetMessage>, JMSMessageCodec> byClass;
+        byClass = new HashMap<Class<? extends NetarkivetMessage>, JMSMessageCodec>();
+        Map<String, JMSMessageCodec> byName = new HashMap<String, JMSMessageCodec>();
+        for (JMSMessageCodec codec : codecs) {
+            if (byClass.put(codec.getMessageClass(), codec) != null) {
+                throw new ArgumentNotValid("More than one codec for " + codec.getMessageClass());
+            }
+            if (byName.put(codec.getName(), codec) != null) {
+                throw new ArgumentNotValid("More than one codec named " + codec.getName());
+            }
+        }
+        this.codecsByClass = byClass;
+        this.codecsByName = byName;
+        boolean all = false;
+        List<String> parts = new ArrayList<String>();
+        for (String channel : channels) {
+            String part = channel.trim();
+            if (part.equals(ALL_CHANNELS)) {
+                all = true;
+            } else if (!part.isEmpty()) {
+                parts.add(Channels.CHANNEL_PART_SEPARATOR + part + Channels.CHANNEL_PART_SEPARATOR);
+            }
+        }
+        this.allChannelsBinary = all;
+        this.binaryChannels = parts;
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * Get the codecs configured in settings. Codec classes that cannot be found are skipped, since not all
+     * applications have all modules in their classpath.
+     *
+     * @return the configured codecs.
+     * @throws IOFailure if a codec class exists but cannot be instantiated.
+     */
+    public static synchronized JMSMessageCodecs getInstance() {
+        if (instance == null) {
+            List<JMSMessageCodec> codecs = new ArrayList<JMSMessageCodec>();
+            for (String className : Settings.getAll(CommonSettings.JMS_CODEC_CLASSES)) {
+                className = className.trim();
+                if (className.isEmpty()) {
+                    continue;
+                }
+                try {
+                    codecs.add((JMSMessageCodec) Class.forName(className).newInstance());
+                } catch (ClassNotFoundException e) {
+                    log.debug("Message codec {} is not in the classpath, skipping it", className);
+                } catch (Exception e) {
+                    throw new IOFailure("Unable to instantiate message codec " + className, e);
+                }
+            }
+            instance = new JMSMessageCodecs(codecs, Arrays.asList(Settings.getAll(CommonSettings.JMS_CODEC_CHANNELS)),
+                    Settings.getInt(CommonSettings.JMS_CODEC_COMPRESSION_THRESHOLD));
+            log.info("Loaded {} message codecs: {}", codecs.size(), instance.codecsByName.keySet());
+        }
+        return instance;
+    }
+
+    /**
+     * Forget the instance configured from settings, so it is read again on next use. Used by tests.
+     */
+    static synchronized void reset() {
+        instance = null;
+    }
+
+    /**
+     * Decide whether messages to the given channel are sent in binary form, when a codec exists for them.
+     *
+     * @param channelName The name of a channel.
+     * @return true if binary encoding is enabled for the channel.
+     */
+    public boolean isBinaryChannel(String channelName) {
+        ArgumentNotValid.checkNotNullOrEmpty(channelName, "String channelName");
+        if (allChannelsBinary) {
+            return true;
+        }
+        Boolean decision = channelDecisions.get(channelName);
+        if (decision == null) {
+            decision = Boolean.FALSE;
+            String name = Channels.CHANNEL_PART_SEPARATOR + channelName + Channels.CHANNEL_PART_SEPARATOR;
+            for (String part : binaryChannels) {
+                if (name.contains(part)) {
+                    decision = Boolean.TRUE;
+                    break;
+                }
+            }
+            channelDecisions.put(channelName, decision);
+        }
+        return decision;
+    }
+
+    /**
+     * Find the codec to use for a message sent to a given channel.
+     *
+     * @param msg The message.
+     * @param channelName The name of the channel it is sent to.
+     * @return the codec, or null if the message must be sent using Java serialization.
+     */
+    public JMSMessageCodec getCodec(NetarkivetMessage msg, String channelName) {
+        ArgumentNotValid.checkNotNull(msg, "NetarkivetMessage msg");
+        JMSMessageCodec codec = codecsByClass.get(msg.getClass());
+        if (codec == null || !isBinaryChannel(channelName)) {
+            return null;
+        }
+        return codec;
+    }
+
+    /**
+     * Wrap a message in a JMS message. Messages with a codec on channels with binary encoding enabled are put in a
+     * BytesMessage, all others in an ObjectMessage. If encoding fails, the message is sent as an ObjectMessage.
+     *
+     * @param session The session to create the JMS message with.
+     * @param msg The message.
+     * @param channelName The name of the channel the message is sent to.
+     * @return the JMS message.
+     * @throws JMSException If the JMS message cannot be created.
+     */
+    public Message createMessage(Session session, NetarkivetMessage msg, String channelName) throws JMSException {
+        JMSMessageCodec codec = getCodec(msg, channelName);
+        if (codec != null) {
+            byte[] body;
+            try {
+                body = encode(codec, msg);
+            } catch (Exception e) {
+                log.warn("Unable to encode message '{}' with codec {}. Sending it as an ObjectMessage", msg,
+                        codec.getName(), e);
+                return session.createObjectMessage(msg);
+            }
+            boolean compressed = false;
+            if (compressionThreshold > 0 && body.length > compressionThreshold) {
+                byte[] deflated = deflate(body);
+                if (deflated.length < body.length) {
+                    log.trace("Compressed message of class {} from {} to {} bytes", msg.getClass().getName(),
+                            body.length, deflated.length);
+                    body = deflated;
+                    compressed = true;
+                }
+            }
+            BytesMessage message = session.createBytesMessage();
+            message.setStringProperty(CODEC_PROPERTY, codec.getName());
+            message.setBooleanProperty(COMPRESSED_PROPERTY, compressed);
+            message.writeBytes(body);
+            return message;
+        }
+        return session.createObjectMessage(msg);
+    }
+
+    /**
+     * Decode a message sent as a BytesMessage by {@link #createMessage(Session, NetarkivetMessage, String)}.
+     *
+     * @param message The JMS message.
+     * @return the decoded message.
+     * @throws JMSException If the body or properties of the JMS message cannot be read.
+     * @throws ArgumentNotValid If the message was encoded with an unknown codec, or cannot be decoded.
+     */
+    public NetarkivetMessage decode(BytesMessage message) throws JMSException {
+        ArgumentNotValid.checkNotNull(message, "BytesMessage message");
+        String codecName = message.getStringProperty(CODEC_PROPERTY);
+        long length = message.getBodyLength();
+        if (length > Integer.MAX_VALUE) {
+            throw new ArgumentNotValid("Message body too large: " + length + " bytes");
+        }
+        byte[] body = new byte[(int) length];
+        message.readBytes(body);
+        return decode(codecName, message.getBooleanProperty(COMPRESSED_PROPERTY), body);
+    }
+
+    /**
+     * Encode a message with a codec.
+     *
+     * @param codec The codec.
+     * @param msg The message.
+     * @return the encoded message, uncompressed.
+     * @throws IOException If the codec fails.
+     */
+    byte[] encode(JMSMessageCodec codec, NetarkivetMessage msg) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        codec.encode(msg, out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode the body of a BytesMessage.
+     *
+     * @param codecName The name of the codec used to encode the message.
+     * @param compressed Whether the body is deflated.
+     * @param body The body.
+     * @return the decoded message.
+     * @throws ArgumentNotValid If the codec is unknown, or the message cannot be decoded.
+     */
+    NetarkivetMessage decode(String codecName, boolean compressed, byte[] body) {
+        JMSMessageCodec codec = codecName == null ? null : codecsByName.get(codecName);
+        if (codec == null) {
+            throw new ArgumentNotValid("Message encoded with unknown codec '" + codecName + "'");
+        }
+        InputStream in = new ByteArrayInputStream(body);
+        if (compressed) {
+            in = new InflaterInputStream(in);
+        }
+        try {
+            return codec.decode(new DataInputStream(in));
+        } catch (IOException e) {
+            throw new ArgumentNotValid("Unable to decode message with codec " + codecName, e);
+        }
+    }
+
+    /**
+     * Deflate a byte array, favouring speed over compression ratio.
+     *
+     * @param data The data.
+     * @return the deflated data.
+     */
+    static byte[] deflate(byte[] data) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 4 + 64);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            DeflaterOutputStream out = new DeflaterOutputStream(bytes, deflater);
+            out.write(data);
+            out.close();
+        } catch (IOException e) {
+            throw new IOFailure("Unable to compress message", e);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+}
@@ -0,0 +1,47 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.distribute;
+
+/**
+ * Callback informed about the outcome of a message sent with
+ * {@link JMSConnection#sendAsync(NetarkivetMessage, JMSSendCallback)}. The methods are called from the thread that
+ * sent the message, and should return quickly.
+ */
+public interface JMSSendCallback {
+
+    /**
+     * Called when the message has been handed to the broker.
+     *
+     * @param msg The message, which now has an ID.
+     */
+    void onCompletion(NetarkivetMessage msg);
+
+    /**
+     * Called when the message could not be sent, after all retries have failed.
+     *
+     * @param msg The message.
+     * @param e The exception that caused the last attempt to fail.
+     */
+    void onFailure(NetarkivetMessage msg, Exception e);
+
+}
@@ -0,0 +1,200 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.distribute;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.management.SingleMBeanObject;
+
+/**
+ * Counters for the messages sent to one channel by a {@link JMSConnection}. The latency of a message is the time
+ * from a send is started until the broker has accepted the message, including retries and, for asynchronous sends,
+ * the time spent waiting to be sent. The counters are registered as an MBean in the domain {@link #JMX_DOMAIN}, so
+ * they can be followed in the monitor.
+ */
+public class JMSSendStatistics implements JMSSendStatisticsMBean {
+
+    /** The log. */
+    private static final Logger log = LoggerFactory.getLogger(JMSSendStatistics.class);
+
+    /** The domain of the MBeans exposing the counters. */
+    public static final String JMX_DOMAIN = "dk.netarkivet.common.distribute.jms";
+
+    /** The name property holding the name of the channel. */
+    private static final String JMX_CHANNEL_KEY = "jmschannel";
+
+    /** The name of the channel. */
+    private final String channelName;
+
+    /** The number of messages sent. */
+    private final AtomicLong messageCount = new AtomicLong();
+
+    /** The number of messages that could not be sent. */
+    private final AtomicLong failureCount = new AtomicLong();
+
+    /** The number of transactions used to send batches of asynchronously sent messages. */
+    private final AtomicLong batchCount = new AtomicLong();
+
+    /** The sum of the latencies of the messages sent, in nanoseconds. */
+    private final AtomicLong totalLatency = new AtomicLong();
+
+    /** The largest latency seen, in nanoseconds. */
+    private final AtomicLong maxLatency = new AtomicLong();
+
+    /** The time the counters were created, in milliseconds. */
+    private final long created = System.currentTimeMillis();
+
+    /** The MBean exposing the counters, or null if not registered. */
+    private SingleMBeanObject<JMSSendStatisticsMBean> singleMBeanObject;
+
+    /**
+     * @param channelName The name of the channel.
+     */
+    JMSSendStatistics(String channelName) {
+        this.channelName = channelName;
+    }
+
+    /**
+     * Count a message as sent.
+     *
+     * @param latencyNanos The latency of the message, in nanoseconds.
+     */
+    void recordSent(long latencyNanos) {
+        messageCount.incrementAndGet();
+        totalLatency.addAndGet(latencyNanos);
+        long max = maxLatency.get();
+        while (latencyNanos > max && !maxLatency.compareAndSet(max, latencyNanos)) {
+            max = maxLatency.get();
+        }
+    }
+
+    /** Count a message that could not be sent. */
+    void recordFailure() {
+        failureCount.incrementAndGet();
+    }
+
+    /** Count a transaction holding a batch of messages. */
+    void recordBatch() {
+        batchCount.incrementAndGet();
+    }
+
+    /**
+     * Registers the counters as an MBean. Failing to do so is logged, but does not stop messages from being sent.
+     */
+    synchronized void register() {
+        try {
+            singleMBeanObject = new SingleMBeanObject<JMSSendStatisticsMBean>(JMX_DOMAIN, this,
+                    JMSSendStatisticsMBean.class, ManagementFactory.getPlatformMBeanServer());
+            singleMBeanObject.getNameProperties().put(JMX_CHANNEL_KEY, channelName);
+            singleMBeanObject.register();
+        } catch (RuntimeException e) {
+            log.warn("Unable to register the statistics for messages sent to {} as an MBean", channelName, e);
+            singleMBeanObject = null;
+        }
+    }
+
+    /**
+     * Unregisters the counters as an MBean.
+     */
+    synchronized void unregister() {
+        if (singleMBeanObject != null) {
+            try {
+                singleMBeanObject.unregister();
+            } catch (RuntimeException e) {
+                log.warn("Unable to unregister the statistics for messages sent to {}", channelName, e);
+            }
+            singleMBeanObject = null;
+        }
+    }
+
+    /**
+     * @return the name of the channel.
+     */
+    @Override
+    public String getChannelName() {
+        return channelName;
+    }
+
+    /**
+     * @return the number of messages sent.
+     */
+    @Override
+    public long getMessageCount() {
+        return messageCount.get();
+    }
+
+    /**
+     * @return the number of messages that could not be sent.
+     */
+    @Override
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    /**
+     * @return the number of transactions used to send batches of asynchronously sent messages.
+     */
+    @Override
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * @return the average latency of the messages sent, in milliseconds.
+     */
+    @Override
+    public double getAverageLatencyMillis() {
+        long count = messageCount.get();
+        return count == 0 ? 0 : (double) totalLatency.get() / count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @return the largest latency seen, in milliseconds.
+     */
+    @Override
+    public double getMaxLatencyMillis() {
+        return (double) maxLatency.get() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @return the average number of messages sent per second since the counters were created.
+     */
+    @Override
+    public double getMessagesPerSecond() {
+        long elapsed = Math.max(1, System.currentTimeMillis() - created);
+        return messageCount.get() * 1000.0 / elapsed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d sent (%.2f/s), %d failed, %d batches, latency avg %.2f ms, max %.2f ms",
+                channelName, getMessageCount(), getMessagesPerSecond(), getFailureCount(), getBatchCount(),
+                getAverageLatencyMillis(), getMaxLatencyMillis());
+    }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.distribute;
+
+/**
+ * The counters of a {@link JMSSendStatistics}, as exposed through JMX.
+ */
+public interface JMSSendStatisticsMBean {
+
+    /**
+     * @return the name of the channel.
+     */
+    String getChannelName();
+
+    /**
+     * @return the number of messages sent.
+     */
+    long getMessageCount();
+
+    /**
+     * @return the number of messages that could not be sent.
+     */
+    long getFailureCount();
+
+    /**
+     * @return the number of transactions used to send batches of asynchronously sent messages.
+     */
+    long getBatchCount();
+
+    /**
+     * @return the average latency of the messages sent, in milliseconds.
+     */
+    double getAverageLatencyMillis();
+
+    /**
+     * @return the largest latency seen, in milliseconds.
+     */
+    double getMaxLatencyMillis();
+
+    /**
+     * @return the average number of messages sent per second since the counters were created.
+     */
+    double getMessagesPerSecond();
+
+}
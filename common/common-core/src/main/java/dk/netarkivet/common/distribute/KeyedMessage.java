@@ -0,0 +1,40 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.distribute;
+
+/**
+ * A message that must be processed in order with other messages having the same ordering key, e.g. messages about
+ * the same file or the same job. The key is sent along with the message, so receivers that process messages
+ * concurrently, see {@link ConcurrentMessageDispatcher}, can keep messages with equal keys in order without
+ * deserializing them first.
+ */
+public interface KeyedMessage {
+
+    /**
+     * Get the ordering key of this message.
+     *
+     * @return the key, or null if the message may be processed in any order.
+     */
+    String getOrderingKey();
+
+}
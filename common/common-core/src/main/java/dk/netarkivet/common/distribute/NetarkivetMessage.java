@@ -22,6 +22,9 @@
  */
 package dk.netarkivet.common.distribute;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
@@ -229,6 +232,36 @@ public abstract class NetarkivetMessage implements Serializable {
         }
     }
 
+    /**
+     * Write the fields of this class in the form used by {@link BinaryMessageCodec}.
+     *
+     * @param out The stream to write to.
+     * @throws IOException If writing fails.
+     */
+    synchronized void writeHeader(DataOutput out) throws IOException {
+        BinaryMessageCodec.writeString(out, to.getName());
+        BinaryMessageCodec.writeString(out, replyTo.getName());
+        BinaryMessageCodec.writeString(out, id);
+        BinaryMessageCodec.writeString(out, replyOfId);
+        out.writeBoolean(isOk);
+        BinaryMessageCodec.writeString(out, errMsg);
+    }
+
+    /**
+     * Replace the fields of this class with those written by {@link #writeHeader(DataOutput)}.
+     *
+     * @param in The stream to read from.
+     * @throws IOException If reading fails.
+     */
+    synchronized void readHeader(DataInput in) throws IOException {
+        to = ChannelID.forName(BinaryMessageCodec.readString(in));
+        replyTo = ChannelID.forName(BinaryMessageCodec.readString(in));
+        id = BinaryMessageCodec.readString(in);
+        replyOfId = BinaryMessageCodec.readString(in);
+        isOk = in.readBoolean();
+        errMsg = BinaryMessageCodec.readString(in);
+    }
+
     /**
      * Check, if a given message has been sent yet. If the message has a null id, it hasn't been sent yet.
      *
@@ -54,6 +54,14 @@ public class NullRemoteFile implements RemoteFile {
     public void appendTo(OutputStream out) {
     }
 
+    /**
+     * @throws NotImplementedException always, as there is no data to calculate a checksum of.
+     * @see RemoteFile#copyToWithMd5(File)
+     */
+    public String copyToWithMd5(File destFile) throws NotImplementedException {
+        throw new NotImplementedException("Not implemented!");
+    }
+
     public InputStream getInputStream() {
         return null;
     }
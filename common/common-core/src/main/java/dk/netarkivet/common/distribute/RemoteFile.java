@@ -45,6 +45,18 @@ public interface RemoteFile extends Serializable {
      */
     void copyTo(File destFile);
 
+    /**
+     * Copy remotefile to local disk storage as {@link #copyTo(File)} does, and calculate the MD5 checksum of the copy.
+     * Implementations calculate the checksum while the data is written where possible, so the copy does not have to be
+     * read again.
+     *
+     * @param destFile local File
+     * @return the MD5 checksum of the copy.
+     * @throws IOFailure on communication trouble.
+     * @throws ArgumentNotValid on null parameter or non-writable file
+     */
+    String copyToWithMd5(File destFile);
+
     /**
      * Write the contents of this remote file to an output stream.
      *
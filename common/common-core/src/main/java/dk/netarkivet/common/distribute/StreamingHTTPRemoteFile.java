@@ -0,0 +1,551 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.distribute;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.DigestInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.utils.ChecksumCalculator;
+import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.common.utils.StreamUtils;
+import dk.netarkivet.common.utils.SystemUtils;
+
+/**
+ * A remote file served directly from the producing host by the {@link HTTPRemoteFileRegistry}, without staging it on
+ * an FTP server.
+ * <p>
+ * Unlike {@link HTTPRemoteFile}, the checksum is not calculated when the remote file is made. The registry calculates
+ * it while serving the whole file the first time, and the receiver asks the registry for it when the transfer is done.
+ * Transfers that fail are resumed from where they stopped using HTTP range requests. Large files are copied as several
+ * ranges in parallel. The file may be fetched by several receivers at the same time if multipleDownloads is true.
+ */
+@SuppressWarnings({"serial"})
+public class StreamingHTTPRemoteFile extends AbstractRemoteFile {
+
+    /** The logger for this class. */
+    private static final Logger log = LoggerFactory.getLogger(StreamingHTTPRemoteFile.class);
+
+    /** The default place in classpath where the settings file can be found. */
+    private static String DEFAULT_SETTINGS_CLASSPATH = "dk/netarkivet/common/distribute/StreamingHTTPRemoteFileSettings.xml";
+
+    /*
+     * The static initialiser is called when the class is loaded. It will add default values for all settings defined in
+     * this class, by loading them from a settings.xml file in classpath.
+     */
+    static {
+        Settings.addDefaultClasspathSettings(DEFAULT_SETTINGS_CLASSPATH);
+    }
+
+    /** The size of the buffer used when copying ranges to a file. */
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    // NOTE: The constants defining setting names below are left non-final on
+    // purpose! Otherwise, the static initialiser that loads default values
+    // will not run.
+
+    /**
+     * <b>settings.common.remoteFile.rangeStreams</b>: <br>
+     * The number of parallel range streams used by the receiver to copy a large file. 1 means that files are always
+     * copied as one stream.
+     */
+    public static String STREAMING_HTTPREMOTEFILE_RANGE_STREAMS = "settings.common.remoteFile.rangeStreams";
+
+    /**
+     * <b>settings.common.remoteFile.minRangeSize</b>: <br>
+     * The minimum size in bytes of each range, when a file is copied as several ranges in parallel. Files smaller than
+     * twice this size are copied as one stream.
+     */
+    public static String STREAMING_HTTPREMOTEFILE_MIN_RANGE_SIZE = "settings.common.remoteFile.minRangeSize";
+
+    /**
+     * <b>settings.common.remoteFile.resumeRetries</b>: <br>
+     * The number of times a stream is resumed after failing before the transfer is given up.
+     */
+    public static String STREAMING_HTTPREMOTEFILE_RESUME_RETRIES = "settings.common.remoteFile.resumeRetries";
+
+    /** The name of the host this file originated on. */
+    protected final String hostname;
+    /** The url that exposes this remote file. */
+    protected final URL url;
+    /** The file checksum, once it is known. Only used if useChecksums is true. */
+    private String checksum;
+
+    /**
+     * Initialises a remote file served directly from this host.
+     *
+     * @param file The file to make a remote file for
+     * @param useChecksums Whether communications are checksummed. If true, getChecksum will also return the checksum.
+     * @param fileDeletable if true, the file given to this method is deletable, once it is transferred.
+     * @param multipleDownloads if true, the file may be transferred more than once. Otherwise, all file handles are
+     * attempted to be made invalid after the first transfer, although no guarantees are made.
+     * @throws ArgumentNotValid if file is null, or not a readable file.
+     */
+    protected StreamingHTTPRemoteFile(File file, boolean useChecksums, boolean fileDeletable, boolean multipleDownloads) {
+        super(file, useChecksums, fileDeletable, multipleDownloads);
+        this.hostname = SystemUtils.getLocalHostName();
+        if (filesize > 0) {
+            this.url = getRegistry().registerFile(this.file, this.fileDeletable);
+        } else {
+            this.url = null;
+        }
+    }
+
+    /**
+     * Initialises a remote file served directly from this host.
+     *
+     * @param f The file to make a remote file for
+     * @param useChecksums Whether communications are checksummed. If true, getChecksum will also return the checksum.
+     * @param fileDeletable if true, the file given to this method is deletable, once it is transferred.
+     * @param multipleDownloads if true, the file may be transferred more than once. Otherwise, all file handles are
+     * attempted to be made invalid after the first transfer, although no guarantees are made.
+     * @return the remote file.
+     * @throws ArgumentNotValid if file is null, or not a readable file.
+     */
+    public static RemoteFile getInstance(File f, Boolean useChecksums, Boolean fileDeletable, Boolean multipleDownloads) {
+        return new StreamingHTTPRemoteFile(f, useChecksums, fileDeletable, multipleDownloads);
+    }
+
+    /**
+     * Get the webserver registry for this class of files. Meant to be subclassed for specialised versions of this file.
+     *
+     * @return The registry.
+     */
+    protected HTTPRemoteFileRegistry getRegistry() {
+        return HTTPRemoteFileRegistry.getInstance();
+    }
+
+    /**
+     * Copy this remote file to the given file. If the file resides on the current machine, it is copied locally.
+     * Otherwise, it is transferred over http, as several ranges in parallel if it is large enough. If the file is not
+     * set to be able to be transferred multiple times, it is cleaned up after the transfer.
+     *
+     * @param destFile The file to write the remote file to.
+     * @throws ArgumentNotValid on null destFile, or parent to destfile is not a writeable directory, or destfile exists
+     * and cannot be overwritten.
+     * @throws IOFailure on I/O trouble writing remote file to destination, or if checksums are requested, but do not
+     * match.
+     */
+    public void copyTo(File destFile) {
+        copyTo(destFile, false);
+    }
+
+    /**
+     * Copy this remote file to the given file as {@link #copyTo(File)} does, and calculate the MD5 checksum of the
+     * copy. The checksum is calculated while the file is transferred in one stream. If the file is moved locally or
+     * transferred as parallel ranges, it is calculated by reading the copy once.
+     *
+     * @param destFile The file to write the remote file to.
+     * @return the MD5 checksum of the copy.
+     * @throws ArgumentNotValid on null destFile, or parent to destfile is not a writeable directory, or destfile exists
+     * and cannot be overwritten.
+     * @throws IOFailure on I/O trouble writing remote file to destination, or if checksums are requested, but do not
+     * match.
+     */
+    public String copyToWithMd5(File destFile) {
+        return copyTo(destFile, true);
+    }
+
+    /**
+     * Copy this remote file to the given file, locally, in one stream, or as parallel ranges.
+     *
+     * @param destFile The file to write the remote file to.
+     * @param md5 Whether to calculate the MD5 checksum of the copy.
+     * @return the MD5 checksum of the copy, or null if it was not requested.
+     * @throws ArgumentNotValid on null destFile, or parent to destfile is not a writeable directory, or destfile exists
+     * and cannot be overwritten.
+     * @throws IOFailure on I/O trouble writing remote file to destination, or if checksums are requested, but do not
+     * match.
+     */
+    private String copyTo(File destFile, boolean md5) {
+        ArgumentNotValid.checkNotNull(destFile, "File destFile");
+        destFile = destFile.getAbsoluteFile();
+        if ((!destFile.isFile() || !destFile.canWrite())
+                && (!destFile.getParentFile().isDirectory() || !destFile.getParentFile().canWrite())) {
+            throw new ArgumentNotValid("Destfile '" + destFile + "' does not point to a writable file for "
+                    + "remote file '" + file + "'");
+        }
+        if (isLocal()) {
+            if (fileDeletable && !multipleDownloads && !useChecksums && file.renameTo(destFile)) {
+                cleanup();
+                return md5 ? ChecksumCalculator.calculateMd5(destFile) : null;
+            }
+            // if rename fails we fall back to normal usage.
+            return copyInOneStream(destFile, md5);
+        }
+        long minRangeSize = Math.max(1L, Settings.getLong(STREAMING_HTTPREMOTEFILE_MIN_RANGE_SIZE));
+        int streams = (int) Math.min(Settings.getInt(STREAMING_HTTPREMOTEFILE_RANGE_STREAMS), filesize
+                / minRangeSize);
+        if (streams <= 1) {
+            return copyInOneStream(destFile, md5);
+        }
+        return copyInParallel(destFile, streams, md5);
+    }
+
+    /**
+     * Copy this remote file to the given file in one stream, with the retries of {@link AbstractRemoteFile}.
+     *
+     * @param destFile The file to write to.
+     * @param md5 Whether to calculate the MD5 checksum of the copy while it is written.
+     * @return the MD5 checksum of the copy, or null if it was not requested.
+     * @throws IOFailure on I/O trouble, or if checksums are requested, but do not match.
+     */
+    private String copyInOneStream(File destFile, boolean md5) {
+        if (md5) {
+            return super.copyToWithMd5(destFile);
+        }
+        super.copyTo(destFile);
+        return null;
+    }
+
+    /**
+     * Copy this remote file to the given file as a number of ranges transferred in parallel. The checksum is checked
+     * afterwards by reading the copy.
+     *
+     * @param destFile The file to write to.
+     * @param streams The number of ranges.
+     * @param md5 Whether to calculate the MD5 checksum of the copy.
+     * @return the MD5 checksum of the copy, or null if it was neither requested nor needed to check the transfer.
+     * @throws IOFailure on I/O trouble, or if checksums are requested, but do not match.
+     */
+    private String copyInParallel(File destFile, int streams, boolean md5) {
+        log.debug("Copying '{}' from '{}' as {} parallel ranges", getName(), url, streams);
+        long rangeSize = (filesize + streams - 1) / streams;
+        String newChecksum = null;
+        ExecutorService executor = Executors.newFixedThreadPool(streams);
+        try {
+            RandomAccessFile raf = new RandomAccessFile(destFile, "rw");
+            try {
+                raf.setLength(filesize);
+                final FileChannel channel = raf.getChannel();
+                List<Future<Void>> ranges = new ArrayList<Future<Void>>(streams);
+                for (long start = 0; start < filesize; start += rangeSize) {
+                    final long rangeStart = start;
+                    final long rangeEnd = Math.min(filesize, start + rangeSize);
+                    ranges.add(executor.submit(new Callable<Void>() {
+                        public Void call() throws IOException {
+                            copyRange(rangeStart, rangeEnd, channel);
+                            return null;
+                        }
+                    }));
+                }
+                for (Future<Void> range : ranges) {
+                    range.get();
+                }
+            } finally {
+                raf.close();
+            }
+            if (useChecksums || md5) {
+                newChecksum = ChecksumCalculator.calculateMd5(destFile);
+            }
+            if (useChecksums && !newChecksum.equals(getChecksum())) {
+                throw new IOFailure("Checksum mismatch! Expected '" + getChecksum() + "' but was '" + newChecksum
+                        + "'");
+            }
+        } catch (IOException e) {
+            FileUtils.remove(destFile);
+            throw new IOFailure("Unable to copy '" + file + "' from '" + url + "'", e);
+        } catch (ExecutionException e) {
+            FileUtils.remove(destFile);
+            throw new IOFailure("Unable to copy '" + file + "' from '" + url + "'", e.getCause());
+        } catch (InterruptedException e) {
+            FileUtils.remove(destFile);
+            throw new IOFailure("Interrupted while copying '" + file + "' from '" + url + "'", e);
+        } catch (IOFailure e) {
+            FileUtils.remove(destFile);
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+        if (!multipleDownloads) {
+            cleanup();
+        }
+        return newChecksum;
+    }
+
+    /**
+     * Copy a range of this remote file to the same position in a file.
+     *
+     * @param start The position of the first byte in the range.
+     * @param end The position after the last byte in the range.
+     * @param channel The file to write to.
+     * @throws IOException on I/O trouble that could not be recovered from by resuming.
+     */
+    private void copyRange(long start, long end, FileChannel channel) throws IOException {
+        InputStream in = new RangeInputStream(start, end);
+        try {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            long position = start;
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) > 0) {
+                ByteBuffer bb = ByteBuffer.wrap(buffer, 0, bytesRead);
+                while (bb.hasRemaining()) {
+                    position += channel.write(bb, position);
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Get an input stream representing the remote file. If the file resides on the current machine, the input stream is
+     * to the local file. Otherwise, the remote file is transferred over http, resuming if the transfer fails. The close
+     * method of the input stream will check the checksum if checksums are requested, and clean up this handle if the
+     * file is not set to be able to be transferred multiple times.
+     *
+     * @return An input stream for the remote file.
+     * @throws IOFailure on I/O trouble generating inputstream for remote file. Also, the returned remote file will
+     * throw IOFailure on close, if checksums are requested, but do not match.
+     */
+    public InputStream getInputStream() {
+        if (filesize == 0) {
+            return new ByteArrayInputStream(new byte[] {});
+        }
+        try {
+            InputStream is = null;
+            if (isLocal()) {
+                is = new FileInputStream(file);
+            } else {
+                is = new RangeInputStream(0, filesize);
+            }
+            if (useChecksums) {
+                is = new DigestInputStream(is, ChecksumCalculator.getMessageDigest(ChecksumCalculator.MD5));
+            }
+            return new FilterInputStream(is) {
+                public void close() throws IOException {
+                    in.close();
+                    if (useChecksums) {
+                        String newChecksum = ChecksumCalculator.toHex(((DigestInputStream) in).getMessageDigest()
+                                .digest());
+                        if (!newChecksum.equals(getChecksum())) {
+                            throw new IOFailure("Checksum mismatch! Expected '" + getChecksum() + "' but was '"
+                                    + newChecksum + "'");
+                        }
+                    }
+                    if (!multipleDownloads) {
+                        cleanup();
+                    }
+                }
+            };
+        } catch (IOException e) {
+            throw new IOFailure("Unable to get inputstream for '" + file + "' from '" + url + "'", e);
+        }
+    }
+
+    /**
+     * Invalidate all file handles, by asking the remote registry to remove the url for this remote file from the list
+     * of shared files. Invalidating a file handle may delete the original files, if deletable. This method does not
+     * throw exceptions, but will warn on errors.
+     */
+    public void cleanup() {
+        if (filesize == 0) {
+            return;
+        }
+        try {
+            URLConnection urlConnection = getRegistry().openConnection(getRegistry().getCleanupUrl(url));
+            urlConnection.setUseCaches(false);
+            urlConnection.connect();
+            urlConnection.getInputStream();
+        } catch (IOException e) {
+            log.warn("Unable to cleanup file '{}' with URL'{}'", file.getAbsolutePath(), url, e);
+        }
+    }
+
+    /**
+     * Get checksum for file, or null if checksums were not requested. Unless the file is local, the checksum is fetched
+     * from the registry serving the file, so it must be called before the remote file is cleaned up.
+     *
+     * @return checksum for file, or null if checksums were not requested.
+     * @throws IOFailure if the checksum cannot be calculated or fetched.
+     */
+    public synchronized String getChecksum() {
+        if (!useChecksums) {
+            return null;
+        }
+        if (checksum == null) {
+            if (filesize == 0) {
+                checksum = ChecksumCalculator.calculateMd5(new byte[] {});
+            } else if (isLocal()) {
+                checksum = ChecksumCalculator.calculateMd5(file);
+            } else {
+                try {
+                    URLConnection urlConnection = getRegistry().openConnection(getRegistry().getChecksumUrl(url));
+                    urlConnection.setUseCaches(false);
+                    checksum = StreamUtils.getInputStreamAsString(urlConnection.getInputStream()).trim();
+                } catch (IOException e) {
+                    throw new IOFailure("Unable to get checksum for '" + file + "' from '" + url + "'", e);
+                }
+            }
+        }
+        return checksum;
+    }
+
+    /**
+     * Helper method to determine if file resides on local machine.
+     *
+     * @return true if the file is on the local machine, false otherwise.
+     */
+    protected boolean isLocal() {
+        return SystemUtils.getLocalHostName().equals(hostname) && file.isFile() && file.canRead();
+    }
+
+    /**
+     * Retrieval of the number of attempts to copy the whole file. Failed streams are resumed within each attempt, as
+     * defined by {@link #STREAMING_HTTPREMOTEFILE_RESUME_RETRIES}.
+     *
+     * @return The number of attempts. Currently a constant: 1.
+     */
+    @Override
+    public int getNumberOfRetries() {
+        return 1;
+    }
+
+    /**
+     * A stream of a range of the remote file, which reopens the connection with a range request starting at the
+     * current position if reading fails. A file that is no longer registered is not retried.
+     */
+    private class RangeInputStream extends InputStream {
+        /** The position in the file of the next byte to read. */
+        private long position;
+        /** The position after the last byte of the range. */
+        private final long end;
+        /** The number of times to resume. */
+        private final int retries = Settings.getInt(STREAMING_HTTPREMOTEFILE_RESUME_RETRIES);
+        /** The number of times the stream has been resumed. */
+        private int resumed;
+        /** The stream from the current connection. */
+        private InputStream in;
+
+        /**
+         * Open a stream of a range of the file.
+         *
+         * @param start The position of the first byte in the range.
+         * @param end The position after the last byte in the range.
+         * @throws IOException if the connection cannot be opened.
+         */
+        RangeInputStream(long start, long end) throws IOException {
+            this.position = start;
+            this.end = end;
+            this.in = open();
+        }
+
+        /**
+         * Open a connection for the rest of the range.
+         *
+         * @return a stream of the bytes from the current position to the end of the range.
+         * @throws FileNotFoundException if the file is no longer registered.
+         * @throws IOException on other trouble opening the connection.
+         */
+        private InputStream open() throws IOException {
+            URLConnection urlConnection = getRegistry().openConnection(url);
+            urlConnection.setUseCaches(false);
+            boolean partial = position > 0 || end < filesize;
+            if (partial) {
+                urlConnection.setRequestProperty("Range", "bytes=" + position + "-" + (end - 1));
+            }
+            if (urlConnection instanceof HttpURLConnection) {
+                int responseCode = ((HttpURLConnection) urlConnection).getResponseCode();
+                if (responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
+                    throw new FileNotFoundException("No file registered as '" + url + "'");
+                }
+                if (responseCode != (partial ? HttpURLConnection.HTTP_PARTIAL : HttpURLConnection.HTTP_OK)) {
+                    throw new IOException("Unexpected response " + responseCode + " for bytes " + position + "-"
+                            + (end - 1) + " of '" + url + "'");
+                }
+            }
+            return urlConnection.getInputStream();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : (b[0] & 0xff);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            len = (int) Math.min(len, end - position);
+            while (true) {
+                try {
+                    int bytesRead = in.read(b, off, len);
+                    if (bytesRead < 0) {
+                        throw new EOFException("Stream from '" + url + "' ended at position " + position
+                                + " before position " + end);
+                    }
+                    position += bytesRead;
+                    return bytesRead;
+                } catch (FileNotFoundException e) {
+                    throw e;
+                } catch (IOException e) {
+                    if (resumed >= retries) {
+                        throw e;
+                    }
+                    ++resumed;
+                    log.warn("Transfer of '{}' from '{}' failed at position {}. Resuming, attempt {} of {}.",
+                            getName(), url, position, resumed, retries, e);
+                    try {
+                        in.close();
+                    } catch (IOException closeException) {
+                        // The connection is abandoned anyway
+                    }
+                    in = open();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+}
@@ -137,12 +137,7 @@ public class ARCLookup {
         ArgumentNotValid.checkNotNull(uri, "uri");
         log.debug("Doing lookup of {}", uri);
         boolean containsHeader = true;
-        // the URI.getSchemeSpecificPart() carries out the url-decoding
-        ARCKey key = luceneLookup(uri.getScheme() + ":" + uri.getSchemeSpecificPart());
-        if (key == null) {
-            // the URI.getRawSchemeSpecificPart() returns the uri in non-decoded form
-            key = luceneLookup(uri.getScheme() + ":" + uri.getRawSchemeSpecificPart());
-        }
+        ARCKey key = lookupKey(uri);
 
         if (key == null && tryToLookupUriAsFtp) {
             log.debug("Url not found with the schema '{}'. Now trying with 'ftp' as the schema", uri.getScheme());
@@ -180,6 +175,26 @@ public class ARCLookup {
         }
     }
 
+    /**
+     * Look up where a given URI is stored, without retrieving it. The uri is first checked using url-decoding, then
+     * without, like in {@link #lookup(URI)}. Other schemes are not tried.
+     *
+     * @param uri The URI to find in the archive.
+     * @return The file and offset where that URI can be found, or null if it doesn't exist.
+     * @throws ArgumentNotValid If uri is null.
+     * @throws IOFailure if no index is set or Lucene gives problems.
+     */
+    public ARCKey lookupKey(URI uri) {
+        ArgumentNotValid.checkNotNull(uri, "uri");
+        // the URI.getSchemeSpecificPart() carries out the url-decoding
+        ARCKey key = luceneLookup(uri.getScheme() + ":" + uri.getSchemeSpecificPart());
+        if (key == null) {
+            // the URI.getRawSchemeSpecificPart() returns the uri in non-decoded form
+            key = luceneLookup(uri.getScheme() + ":" + uri.getRawSchemeSpecificPart());
+        }
+        return key;
+    }
+
     /**
      * Looks up a URI in our lucene index and extracts a key.
      *
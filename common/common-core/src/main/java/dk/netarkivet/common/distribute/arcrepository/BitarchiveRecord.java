@@ -141,6 +141,24 @@ public class BitarchiveRecord implements Serializable {
         }
     }
 
+    /**
+     * Creates a BitarchiveRecord whose payload has already been made available as a RemoteFile, for instance as a
+     * section of the archive file served directly by the bitarchive.
+     *
+     * @param filename The filename of the ArchiveFile
+     * @param offset The offset of the record in the ArchiveFile
+     * @param data The payload of the record
+     */
+    public BitarchiveRecord(String filename, long offset, RemoteFile data) {
+        ArgumentNotValid.checkNotNull(filename, "String filename");
+        ArgumentNotValid.checkNotNull(data, "RemoteFile data");
+        this.fileName = filename;
+        this.offset = offset;
+        this.length = data.getSize();
+        this.objectAsRemoteFile = data;
+        this.isStoredAsRemoteFile = true;
+    }
+
     /**
      * Returns the file that this information was loaded from.
      *
@@ -159,6 +177,15 @@ public class BitarchiveRecord implements Serializable {
         return length;
     }
 
+    /**
+     * Tells whether the data is stored in a RemoteFile, which can only be read once, or in memory.
+     *
+     * @return true if the data is stored in a RemoteFile.
+     */
+    public boolean isStoredAsRemoteFile() {
+        return isStoredAsRemoteFile;
+    }
+
     /**
      * Retrieve the data in the record. If data is in RemoteFile, this operation deletes the RemoteFile.
      *
@@ -175,9 +202,12 @@ public class BitarchiveRecord implements Serializable {
             InputStream rfInputStream = objectAsRemoteFile.getInputStream();
             result = new FilterInputStream(rfInputStream) {
                 public void close() throws IOException {
-                    super.close();
-                    objectAsRemoteFile.cleanup();
-                    hasRemoteFileBeenDeleted = true;
+                    try {
+                        super.close();
+                    } finally {
+                        objectAsRemoteFile.cleanup();
+                        hasRemoteFileBeenDeleted = true;
+                    }
                 }
             };
         } else {
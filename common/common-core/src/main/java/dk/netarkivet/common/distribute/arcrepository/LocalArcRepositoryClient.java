@@ -186,7 +186,8 @@ public class LocalArcRepositoryClient implements ArcRepositoryClient {
     }
 
     /**
-     * Runs a batch job on each file in the ArcRepository.
+     * Runs a batch job on each file in the ArcRepository. The progress listener of the job, if any, is given the
+     * progress of the job. Partial results are not made, since the whole result is local anyway.
      *
      * @param job An object that implements the FileBatchJob interface. The initialize() method will be called before
      * processing and the finish() method will be called afterwards. The process() method will be called with each File
@@ -223,7 +224,7 @@ public class LocalArcRepositoryClient implements ArcRepositoryClient {
                 }
             }
             BatchLocalFiles batcher = new BatchLocalFiles(files.toArray(new File[files.size()]));
-            batcher.run(job, os);
+            batcher.run(job, os, job.getProgressListener());
         } catch (IOException e) {
             throw new IOFailure("Cannot perform batch '" + job + "'", e);
         } finally {
@@ -329,6 +330,20 @@ public class LocalArcRepositoryClient implements ArcRepositoryClient {
      */
     @Override
     public File getAllChecksums(String replicaId) throws IOFailure, ArgumentNotValid {
+        return getAllChecksums(replicaId, 0L);
+    }
+
+    /**
+     * Method for retrieving the checksums of the files of the replica, which have been modified since a given time.
+     *
+     * @param replicaId Inherited dummy argument.
+     * @param changedSince The time in milliseconds since the epoch. 0 means all files.
+     * @return A file containing the names and checksum of the files.
+     * @throws ArgumentNotValid If the replicaId is either null or the empty string.
+     * @throws IOFailure If an unexpected IOException is caught.
+     */
+    @Override
+    public File getAllChecksums(String replicaId, long changedSince) throws IOFailure, ArgumentNotValid {
         ArgumentNotValid.checkNotNullOrEmpty(replicaId, "String replicaId");
 
         try {
@@ -337,6 +352,9 @@ public class LocalArcRepositoryClient implements ArcRepositoryClient {
             for (File dir : storageDirs) {
                 // go through all file and calculate the checksum
                 for (File entry : dir.listFiles()) {
+                    if (entry.lastModified() < changedSince) {
+                        continue;
+                    }
                     String checksum = ChecksumCalculator.calculateMd5(entry);
                     String filename = entry.getName();
 
@@ -363,14 +381,30 @@ public class LocalArcRepositoryClient implements ArcRepositoryClient {
      */
     @Override
     public File getAllFilenames(String replicaId) throws IOFailure, ArgumentNotValid {
+        return getAllFilenames(replicaId, 0L);
+    }
+
+    /**
+     * Method for retrieving the names of the files of the replica, which have been modified since a given time.
+     *
+     * @param replicaId Inherited dummy argument.
+     * @param changedSince The time in milliseconds since the epoch. 0 means all files.
+     * @return A file containing the names of the files.
+     * @throws ArgumentNotValid If the replicaId is either null or empty.
+     * @throws IOFailure If an IOException is caught.
+     */
+    @Override
+    public File getAllFilenames(String replicaId, long changedSince) throws IOFailure, ArgumentNotValid {
         ArgumentNotValid.checkNotNullOrEmpty(replicaId, "String replicaId");
 
         List<String> filenames = new ArrayList<String>();
         // go through the different storageDirs and put the name of the files
         // into the resulting list of filenames.
         for (File dir : storageDirs) {
-            for (String name : dir.list()) {
-                filenames.add(name);
+            for (File entry : dir.listFiles()) {
+                if (entry.lastModified() >= changedSince) {
+                    filenames.add(entry.getName());
+                }
             }
         }
 
@@ -120,6 +120,17 @@ public interface PreservationArcRepositoryClient {
      */
     File getAllChecksums(String replicaId);
 
+    /**
+     * Retrieves the checksums of the files stored or corrected in the replica since a given time. The result may
+     * contain more files than these, but never fewer.
+     *
+     * @param replicaId The id of the replica from which the checksums should be retrieved.
+     * @param changedSince The time in milliseconds since the epoch. 0 means all files.
+     * @return A file with the checksums in the same format as the output of a ChecksumJob.
+     * @see dk.netarkivet.archive.checksum.distribute.GetAllChecksumsMessage
+     */
+    File getAllChecksums(String replicaId, long changedSince);
+
     /**
      * Retrieves the checksum of a specific file.
      * <p>
@@ -142,6 +153,17 @@ public interface PreservationArcRepositoryClient {
      */
     File getAllFilenames(String replicaId);
 
+    /**
+     * Retrieves the names of the files stored or corrected in the replica since a given time. The result may contain
+     * more files than these, but never fewer.
+     *
+     * @param replicaId The id of the replica from which the list of filenames should be retrieved.
+     * @param changedSince The time in milliseconds since the epoch. 0 means all files.
+     * @return A file with one filename per line.
+     * @see dk.netarkivet.archive.checksum.distribute.GetAllFilenamesMessage
+     */
+    File getAllFilenames(String replicaId, long changedSince);
+
     /**
      * Method for correcting a file in a replica.
      * <p>
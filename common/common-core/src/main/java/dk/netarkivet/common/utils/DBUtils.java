@@ -438,6 +438,43 @@ public final class DBUtils {
         }
     }
 
+    /**
+     * Execute an SQL query and return its result as a {@link SortedLongSet}, which takes much less memory than
+     * {@link #selectLongSet(Connection, String, Object...)} for large results. The query must return the longs in
+     * increasing order without duplicates, e.g. with an ORDER BY on a key. The result is fetched in chunks, so it is not
+     * held in memory by the JDBC driver as well.
+     * <p>
+     * NB: the provided connection is not closed, but its autocommit is turned off.
+     *
+     * @param connection connection to the database.
+     * @param query the given sql-query (must not be null or empty)
+     * @param args The arguments to insert into this query
+     * @return a sorted set of the longs in the result of the query
+     * @throws IOFailure If this query fails
+     * @throws ArgumentNotValid If the query does not return the longs in increasing order.
+     */
+    public static SortedLongSet selectSortedLongSet(Connection connection, String query, Object... args) {
+        ArgumentNotValid.checkNotNull(connection, "Connection connection");
+        ArgumentNotValid.checkNotNullOrEmpty(query, "String query");
+        ArgumentNotValid.checkNotNull(args, "Object... args");
+        try (PreparedStatement s = prepareStatement(connection, 8192, query, args);) {
+            ResultSet result = s.executeQuery();
+            SortedLongSet results = new SortedLongSet();
+            while (result.next()) {
+                if (result.getLong(1) == 0L && result.wasNull()) {
+                    String warning = "NULL value encountered in query: " + query;
+                    log.warn(warning);
+                }
+                results.add(result.getLong(1));
+            }
+            results.trimToSize();
+            return results;
+        } catch (SQLException e) {
+            throw new IOFailure("Error preparing SQL statement " + query + " args " + Arrays.toString(args) + "\n"
+                    + ExceptionUtils.getSQLExceptionCause(e), e);
+        }
+    }
+
     /**
      * Get the automatically generated key that was created with the just-executed statement.
      *
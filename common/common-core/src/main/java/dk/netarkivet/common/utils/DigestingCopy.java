@@ -0,0 +1,224 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+
+import org.apache.commons.io.IOUtils;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
+
+/**
+ * Copies data while calculating one or more digests of it, so that the copied bytes never have to be read again just
+ * to find their checksum. When no digest is requested, file to file copies are done with
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.
+ * <p>
+ * The digests are returned as hex strings in the order the algorithms were given, e.g.
+ * <code>copy(in, out, ChecksumCalculator.MD5, ChecksumCalculator.SHA1)</code> returns the MD5 and then the SHA-1.
+ */
+public final class DigestingCopy {
+
+    /** The size of the buffers used for copying. */
+    static final int BUFFER_SIZE = 1024 * 1024;
+
+    /** Utility class, do not instantiate. */
+    private DigestingCopy() {
+    }
+
+    /**
+     * Copy an input stream to an output stream, calculating digests of the copied data. Neither stream is closed.
+     *
+     * @param in The stream to copy from.
+     * @param out The stream to copy to.
+     * @param algorithms The digest algorithms to use, e.g. {@link ChecksumCalculator#MD5}.
+     * @return The digests of the copied data as hex strings, in the order of the algorithms.
+     * @throws ArgumentNotValid if any argument is null.
+     * @throws IOFailure if reading or writing fails.
+     */
+    public static String[] copy(InputStream in, OutputStream out, String... algorithms) {
+        ArgumentNotValid.checkNotNull(in, "InputStream in");
+        ArgumentNotValid.checkNotNull(out, "OutputStream out");
+        MessageDigest[] digests = getDigests(algorithms);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int bytesRead;
+        try {
+            while ((bytesRead = in.read(buffer)) != -1) {
+                for (MessageDigest digest : digests) {
+                    digest.update(buffer, 0, bytesRead);
+                }
+                out.write(buffer, 0, bytesRead);
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new IOFailure("Error while copying stream", e);
+        }
+        return toHex(digests);
+    }
+
+    /**
+     * Copy an input stream to a file, calculating digests of the copied data. The input stream is not closed. The file
+     * is overwritten if it exists.
+     *
+     * @param in The stream to copy from.
+     * @param to The file to copy to.
+     * @param algorithms The digest algorithms to use, e.g. {@link ChecksumCalculator#MD5}.
+     * @return The digests of the copied data as hex strings, in the order of the algorithms.
+     * @throws ArgumentNotValid if any argument is null.
+     * @throws IOFailure if reading or writing fails.
+     */
+    public static String[] copy(InputStream in, File to, String... algorithms) {
+        ArgumentNotValid.checkNotNull(in, "InputStream in");
+        ArgumentNotValid.checkNotNull(to, "File to");
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(to);
+            String[] result = copy(in, out, algorithms);
+            out.close();
+            return result;
+        } catch (IOException e) {
+            throw new IOFailure("Error while copying stream to '" + to.getAbsolutePath() + "'", e);
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * Copy a file, calculating digests of the copied data. Without algorithms the copy is done by
+     * {@link FileUtils#copyFile(File, File)}, otherwise the file is read once through a direct buffer that is both
+     * digested and written.
+     *
+     * @param from The file to copy from.
+     * @param to The file to copy to. It is overwritten if it exists.
+     * @param algorithms The digest algorithms to use, e.g. {@link ChecksumCalculator#MD5}.
+     * @return The digests of the copied data as hex strings, in the order of the algorithms.
+     * @throws ArgumentNotValid if any argument is null, or from is not a file.
+     * @throws IOFailure if reading or writing fails.
+     */
+    public static String[] copy(File from, File to, String... algorithms) {
+        ArgumentNotValid.checkNotNull(from, "File from");
+        ArgumentNotValid.checkNotNull(to, "File to");
+        ArgumentNotValid.checkTrue(from.isFile(), "File from '" + from + "' should be a file");
+        MessageDigest[] digests = getDigests(algorithms);
+        if (digests.length == 0) {
+            FileUtils.copyFile(from, to);
+            return new String[0];
+        }
+        FileInputStream inStream = null;
+        FileOutputStream outStream = null;
+        try {
+            inStream = new FileInputStream(from);
+            outStream = new FileOutputStream(to);
+            FileChannel in = inStream.getChannel();
+            FileChannel out = outStream.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                for (MessageDigest digest : digests) {
+                    digest.update(buffer.duplicate());
+                }
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                buffer.clear();
+            }
+            outStream.close();
+        } catch (IOException e) {
+            throw new IOFailure("Error while copying '" + from.getAbsolutePath() + "' to '" + to.getAbsolutePath()
+                    + "'", e);
+        } finally {
+            IOUtils.closeQuietly(inStream);
+            IOUtils.closeQuietly(outStream);
+        }
+        return toHex(digests);
+    }
+
+    /**
+     * Copy an input stream to a file, calculating the MD5 of the copied data. The input stream is not closed.
+     *
+     * @param in The stream to copy from.
+     * @param to The file to copy to.
+     * @return The MD5 of the copied data as a hex string.
+     * @throws ArgumentNotValid if any argument is null.
+     * @throws IOFailure if reading or writing fails.
+     */
+    public static String copyWithMd5(InputStream in, File to) {
+        return copy(in, to, ChecksumCalculator.MD5)[0];
+    }
+
+    /**
+     * Check the MD5 calculated while copying data against the MD5 the sender of the data reported.
+     *
+     * @param expected The MD5 reported by the sender, or null if it reported none.
+     * @param actual The MD5 of the copied data.
+     * @param name The name of the copied data, used in the error message.
+     * @throws ArgumentNotValid if actual is null or empty.
+     * @throws IOFailure if the sender reported an MD5 that differs from the MD5 of the copied data.
+     */
+    public static void checkMd5(String expected, String actual, String name) {
+        ArgumentNotValid.checkNotNullOrEmpty(actual, "String actual");
+        if (expected != null && !expected.equals(actual)) {
+            throw new IOFailure("The MD5 of the received data of '" + name + "' is '" + actual
+                    + "', but the sender reported '" + expected + "'");
+        }
+    }
+
+    /**
+     * Create a fresh message digest for each of the given algorithms.
+     *
+     * @param algorithms The digest algorithms.
+     * @return The message digests, in the order of the algorithms.
+     * @throws ArgumentNotValid if algorithms is null.
+     */
+    private static MessageDigest[] getDigests(String... algorithms) {
+        ArgumentNotValid.checkNotNull(algorithms, "String... algorithms");
+        MessageDigest[] digests = new MessageDigest[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++) {
+            digests[i] = ChecksumCalculator.getMessageDigest(algorithms[i]);
+        }
+        return digests;
+    }
+
+    /**
+     * Finish the given digests.
+     *
+     * @param digests The digests to finish.
+     * @return The digests as hex strings.
+     */
+    private static String[] toHex(MessageDigest[] digests) {
+        String[] result = new String[digests.length];
+        for (int i = 0; i < digests.length; i++) {
+            result[i] = ChecksumCalculator.toHex(digests[i].digest());
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.utils;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+
+/**
+ * An input stream merging the lines of a number of sorted streams into one sorted stream. This is a k-way merge: only
+ * the current line of each stream is kept in memory, so streams of any size can be merged.
+ * <p>
+ * The lines are compared by {@link SortUtils#compareLines(byte[], byte[])}, unless another order is given. Every line
+ * of the merged stream ends with a newline. If a stream is not sorted, its lines are all still output, but the merged stream is not sorted either.
+ */
+public class LineMergingInputStream extends InputStream {
+
+    /** A stream being merged, and its next line. */
+    private static class Source {
+        /** The stream. */
+        final InputStream in;
+        /** The next line of the stream, which has not yet been output. */
+        byte[] line;
+
+        /**
+         * @param in The stream.
+         */
+        Source(InputStream in) {
+            this.in = in;
+        }
+    }
+
+    /** The streams to merge. */
+    private final List<Source> sources;
+    /** Orders sources by their next line. */
+    private final Comparator<Source> byLine;
+    /** The sources with lines left, ordered by their next line. Null until the first read. */
+    private PriorityQueue<Source> queue;
+    /** The line being output, including its newline. */
+    private byte[] current = new byte[0];
+    /** The position in the current line of the next byte to output. */
+    private int pos;
+
+    /**
+     * Create a stream merging the given sorted streams. Nothing is read from them until this stream is read.
+     *
+     * @param inputs The sorted streams. They are closed when this stream is closed.
+     * @throws ArgumentNotValid If inputs is null.
+     */
+    public LineMergingInputStream(List<InputStream> inputs) {
+        this(inputs, SortUtils.LINE_ORDER);
+    }
+
+    /**
+     * Create a stream merging the given streams, which are sorted in the given order. Nothing is read from them until
+     * this stream is read.
+     *
+     * @param inputs The sorted streams. They are closed when this stream is closed.
+     * @param order The order of the lines in the streams.
+     * @throws ArgumentNotValid If inputs or order is null.
+     */
+    public LineMergingInputStream(List<InputStream> inputs, final Comparator<byte[]> order) {
+        ArgumentNotValid.checkNotNull(inputs, "List<InputStream> inputs");
+        ArgumentNotValid.checkNotNull(order, "Comparator<byte[]> order");
+        sources = new ArrayList<Source>(inputs.size());
+        for (InputStream in : inputs) {
+            sources.add(new Source(new BufferedInputStream(in)));
+        }
+        byLine = new Comparator<Source>() {
+            public int compare(Source s1, Source s2) {
+                return order.compare(s1.line, s2.line);
+            }
+        };
+    }
+
+    /**
+     * Make sure there is something left of the current line, taking the next line from the sources if needed.
+     *
+     * @return false if all the sources have been read.
+     * @throws IOException If reading a source fails.
+     */
+    private boolean fill() throws IOException {
+        if (pos < current.length) {
+            return true;
+        }
+        if (queue == null) {
+            queue = new PriorityQueue<Source>(Math.max(1, sources.size()), byLine);
+            for (Source source : sources) {
+                advance(source);
+            }
+        }
+        Source next = queue.poll();
+        if (next == null) {
+            return false;
+        }
+        current = new byte[next.line.length + 1];
+        System.arraycopy(next.line, 0, current, 0, next.line.length);
+        current[next.line.length] = '\n';
+        pos = 0;
+        advance(next);
+        return true;
+    }
+
+    /**
+     * Read the next line of a source, and put it back in the queue if it had one.
+     *
+     * @param source The source to read from.
+     * @throws IOException If reading fails.
+     */
+    private void advance(Source source) throws IOException {
+        source.line = SortUtils.readLine(source.in);
+        if (source.line != null) {
+            queue.add(source);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return current[pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int n = Math.min(len, current.length - pos);
+        System.arraycopy(current, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (Source source : sources) {
+            try {
+                source.in.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
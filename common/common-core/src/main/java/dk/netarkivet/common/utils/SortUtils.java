@@ -0,0 +1,387 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.utils.batch.FileBatchJob;
+
+/**
+ * Utilities for files of sorted lines. The order used throughout is the byte order of the lines, which is the order
+ * the Unix sort command uses with LANG=C, and therefore the order of files sorted by {@link FileUtils#sortFile(File,
+ * File)}. Files can also be sorted in the JVM by {@link #sortFile(File, File, Comparator)}, in byte order or in the
+ * order of crawl logs.
+ */
+public final class SortUtils {
+
+    /** The logger for this class. */
+    private static final Logger log = LoggerFactory.getLogger(SortUtils.class);
+
+    /** The charset used when lines are handed to batch jobs. It maps every byte to a character and back unchanged. */
+    private static final Charset LINE_CHARSET = Charset.forName("ISO-8859-1");
+
+    /**
+     * The number of bytes of lines sorted in memory at a time by {@link #sortFile(File, File, Comparator)}. Larger
+     * files are sorted in parts of this size, which are then merged.
+     */
+    private static final long SORT_CHUNK_SIZE = 32 * 1024 * 1024;
+
+    /** Orders lines in byte order, as by {@link #compareLines(byte[], byte[])}. */
+    public static final Comparator<byte[]> LINE_ORDER = new Comparator<byte[]>() {
+        public int compare(byte[] line1, byte[] line2) {
+            return compareLines(line1, line2);
+        }
+    };
+
+    /**
+     * Orders crawl.log lines by the URL, i.e. by the line from the fourth field on, ignoring the blanks before it.
+     * Lines with the same URL and remainder are ordered by the whole line. This is the order of the Unix sort command
+     * with LANG=C and "-k 4b", as run by {@link ProcessUtils#runUnixSort(File, File, File, boolean)} for crawl logs.
+     */
+    public static final Comparator<byte[]> CRAWL_LOG_ORDER = new Comparator<byte[]>() {
+        public int compare(byte[] line1, byte[] line2) {
+            int start1 = fourthFieldStart(line1);
+            int start2 = fourthFieldStart(line2);
+            int length = Math.min(line1.length - start1, line2.length - start2);
+            for (int i = 0; i < length; i++) {
+                int diff = (line1[start1 + i] & 0xff) - (line2[start2 + i] & 0xff);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            int diff = (line1.length - start1) - (line2.length - start2);
+            if (diff != 0) {
+                return diff;
+            }
+            return compareLines(line1, line2);
+        }
+    };
+
+    /** Utility class, do not initialise. */
+    private SortUtils() {
+    }
+
+    /**
+     * Compares two lines in byte order, that is, comparing the bytes as unsigned values.
+     *
+     * @param line1 The first line.
+     * @param line2 The second line.
+     * @return A negative number, zero, or a positive number as the first line sorts before, equal to, or after the
+     * second line.
+     */
+    public static int compareLines(byte[] line1, byte[] line2) {
+        int length = Math.min(line1.length, line2.length);
+        for (int i = 0; i < length; i++) {
+            int diff = (line1[i] & 0xff) - (line2[i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return line1.length - line2.length;
+    }
+
+    /**
+     * Find where the fourth blank-separated field of a line starts, skipping the blanks in front of it.
+     *
+     * @param line The line.
+     * @return The index of the start of the field, or the length of the line if it has fewer fields.
+     */
+    private static int fourthFieldStart(byte[] line) {
+        int i = 0;
+        for (int field = 0; field < 3; field++) {
+            while (i < line.length && isBlank(line[i])) {
+                i++;
+            }
+            while (i < line.length && !isBlank(line[i])) {
+                i++;
+            }
+        }
+        while (i < line.length && isBlank(line[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @param b A byte of a line.
+     * @return Whether the byte is a blank, i.e. a space or a tab.
+     */
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    /**
+     * Reads a line from a stream.
+     *
+     * @param in The stream to read from.
+     * @return The bytes of the line without the terminating newline, or null at the end of the stream.
+     * @throws IOException If reading fails.
+     */
+    static byte[] readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                return line.toByteArray();
+            }
+            line.write(b);
+        }
+        return line.size() > 0 ? line.toByteArray() : null;
+    }
+
+    /**
+     * Checks whether the lines of a file are sorted. This only reads through the file once, so it is much cheaper than
+     * sorting it.
+     *
+     * @param file The file to check.
+     * @return True if the file is sorted.
+     * @throws IOFailure If the file cannot be read.
+     */
+    public static boolean isSorted(File file) {
+        ArgumentNotValid.checkNotNull(file, "File file");
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(file));
+            byte[] previous = readLine(in);
+            byte[] line;
+            while (previous != null && (line = readLine(in)) != null) {
+                if (compareLines(previous, line) > 0) {
+                    return false;
+                }
+                previous = line;
+            }
+            return true;
+        } catch (IOException e) {
+            throw new IOFailure("Could not read '" + file.getAbsolutePath() + "'", e);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Merges sorted files into one sorted file, without sorting them again.
+     *
+     * @param files The sorted files to merge.
+     * @param toFile The file to write the merged lines to. It is overwritten.
+     * @throws IOFailure If the files cannot be read or the result written.
+     */
+    public static void mergeSortedFiles(List<File> files, File toFile) {
+        mergeSortedFiles(files, toFile, LINE_ORDER);
+    }
+
+    /**
+     * Merges files sorted in the given order into one file sorted in that order, without sorting them again.
+     *
+     * @param files The sorted files to merge.
+     * @param toFile The file to write the merged lines to. It is overwritten.
+     * @param order The order the files are sorted in.
+     * @throws IOFailure If the files cannot be read or the result written.
+     */
+    public static void mergeSortedFiles(List<File> files, File toFile, Comparator<byte[]> order) {
+        ArgumentNotValid.checkNotNull(files, "List<File> files");
+        ArgumentNotValid.checkNotNull(toFile, "File toFile");
+        ArgumentNotValid.checkNotNull(order, "Comparator<byte[]> order");
+        List<InputStream> inputs = new ArrayList<InputStream>(files.size());
+        InputStream merged = null;
+        OutputStream out = null;
+        try {
+            for (File file : files) {
+                inputs.add(new FileInputStream(file));
+            }
+            merged = new LineMergingInputStream(inputs, order);
+            out = new FileOutputStream(toFile);
+            StreamUtils.copyInputStreamToOutputStream(merged, out);
+            out.close();
+            out = null;
+        } catch (IOException e) {
+            throw new IOFailure("Could not merge " + files + " into '" + toFile.getAbsolutePath() + "'", e);
+        } finally {
+            IOUtils.closeQuietly(out);
+            if (merged != null) {
+                IOUtils.closeQuietly(merged);
+            } else {
+                for (InputStream in : inputs) {
+                    IOUtils.closeQuietly(in);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sorts the lines of a file in the JVM, without forking a Unix sort. Up to {@link #SORT_CHUNK_SIZE} bytes of lines
+     * are sorted in memory at a time. If the file is larger, each such part is written sorted to a temporary file next
+     * to the result, and the parts are then merged into the result. Every line of the result ends with a newline.
+     *
+     * @param file The file to sort.
+     * @param toFile The file to write the sorted lines to. It is overwritten.
+     * @param order The order to sort the lines in, e.g. {@link #LINE_ORDER} or {@link #CRAWL_LOG_ORDER}.
+     * @throws IOFailure If the file cannot be read or the result written.
+     */
+    public static void sortFile(File file, File toFile, Comparator<byte[]> order) {
+        ArgumentNotValid.checkNotNull(file, "File file");
+        ArgumentNotValid.checkNotNull(toFile, "File toFile");
+        ArgumentNotValid.checkNotNull(order, "Comparator<byte[]> order");
+        List<File> parts = new ArrayList<File>();
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(file));
+            List<byte[]> lines = new ArrayList<byte[]>();
+            long chunkSize = 0;
+            byte[] line;
+            while ((line = readLine(in)) != null) {
+                lines.add(line);
+                chunkSize += line.length + 1;
+                if (chunkSize >= SORT_CHUNK_SIZE) {
+                    File part = File.createTempFile("sort", ".part", toFile.getAbsoluteFile().getParentFile());
+                    parts.add(part);
+                    writeSorted(lines, order, part);
+                    lines.clear();
+                    chunkSize = 0;
+                }
+            }
+            in.close();
+            in = null;
+            if (parts.isEmpty()) {
+                writeSorted(lines, order, toFile);
+                return;
+            }
+            if (!lines.isEmpty()) {
+                File part = File.createTempFile("sort", ".part", toFile.getAbsoluteFile().getParentFile());
+                parts.add(part);
+                writeSorted(lines, order, part);
+            }
+            lines = null;
+            mergeSortedFiles(parts, toFile, order);
+        } catch (IOException e) {
+            throw new IOFailure("Could not sort '" + file.getAbsolutePath() + "' into '" + toFile.getAbsolutePath()
+                    + "'", e);
+        } finally {
+            IOUtils.closeQuietly(in);
+            for (File part : parts) {
+                FileUtils.remove(part);
+            }
+        }
+        log.debug("Sorted '{}' in {} parts", file.getAbsolutePath(), parts.size());
+    }
+
+    /**
+     * Sort lines in memory and write them to a file.
+     *
+     * @param lines The lines to sort. The list is sorted in place.
+     * @param order The order to sort them in.
+     * @param toFile The file to write them to. It is overwritten.
+     * @throws IOException If the file cannot be written.
+     */
+    private static void writeSorted(List<byte[]> lines, Comparator<byte[]> order, File toFile) throws IOException {
+        Collections.sort(lines, order);
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(toFile));
+        try {
+            for (byte[] line : lines) {
+                out.write(line);
+                out.write('\n');
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Sorts the output of a batch job in the JVM and combines its adjacent lines as decided by the job. The lines are
+     * given to the job as ISO-8859-1 strings, so the bytes of the output are kept unchanged whatever their encoding.
+     *
+     * @param job The batch job that made the output.
+     * @param output The file with the output. It is replaced by the sorted and combined output.
+     * @throws IOFailure If the output cannot be sorted or rewritten.
+     * @see FileBatchJob#hasSortedOutput()
+     * @see FileBatchJob#combine(String, String)
+     */
+    public static void sortAndCombine(FileBatchJob job, File output) {
+        ArgumentNotValid.checkNotNull(job, "FileBatchJob job");
+        ArgumentNotValid.checkNotNull(output, "File output");
+        File sorted = new File(output.getParentFile(), output.getName() + ".sorted");
+        sortFile(output, sorted, LINE_ORDER);
+        BufferedReader in = null;
+        Writer out = null;
+        long linesIn = 0;
+        long linesOut = 0;
+        try {
+            in = new BufferedReader(new InputStreamReader(new FileInputStream(sorted), LINE_CHARSET));
+            out = new BufferedWriter(new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(output)),
+                    LINE_CHARSET));
+            String previous = in.readLine();
+            if (previous != null) {
+                linesIn++;
+                String line;
+                while ((line = in.readLine()) != null) {
+                    linesIn++;
+                    String combined = job.combine(previous, line);
+                    if (combined == null) {
+                        out.write(previous);
+                        out.write('\n');
+                        linesOut++;
+                        previous = line;
+                    } else {
+                        previous = combined;
+                    }
+                }
+                out.write(previous);
+                out.write('\n');
+                linesOut++;
+            }
+            out.close();
+            out = null;
+        } catch (IOException e) {
+            throw new IOFailure("Could not combine the sorted output of " + job + " in '" + output.getAbsolutePath()
+                    + "'", e);
+        } finally {
+            IOUtils.closeQuietly(in);
+            IOUtils.closeQuietly(out);
+            FileUtils.remove(sorted);
+        }
+        log.debug("Sorted the output of {} and combined {} lines into {}", job, linesIn, linesOut);
+    }
+}
@@ -23,21 +23,39 @@
 
 package dk.netarkivet.common.utils;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
 
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import dk.netarkivet.common.CommonSettings;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.IOFailure;
 
@@ -52,6 +70,18 @@ public final class ZipUtils {
     /** The standard suffix for a gzipped file. */
     public static final String GZIP_SUFFIX = ".gz";
 
+    /** The size of the blocks that files are split into to be gzipped in parallel. */
+    private static final int GZIP_BLOCK_SIZE = 1024 * 1024;
+
+    /** The number of compressed blocks per thread that may wait to be written. */
+    private static final int GZIP_BLOCKS_PER_THREAD = 2;
+
+    /** The time the gzip threads may be idle before they stop, in seconds. */
+    private static final long GZIP_THREAD_KEEP_ALIVE = 60;
+
+    /** The threads gzipping and gunzipping files, see {@link #getGzipExecutor()}. Created when first needed. */
+    private static ExecutorService gzipExecutor;
+
     /** Default constructor to avoid initialization. */
     private ZipUtils() {
     }
@@ -142,6 +172,8 @@ public final class ZipUtils {
      * GZip each of the files in fromDir, placing the result in toDir (which will be created) with names having .gz
      * appended. All non-file (directory, link, etc) entries in the source directory will be skipped with a quiet little
      * log message.
+     * <p>
+     * The files are compressed in parallel as by {@link #gzipFiles(List, File)}.
      *
      * @param fromDir An existing directory
      * @param toDir A directory where gzipped files will be placed. This directory must not previously exist. If the
@@ -157,13 +189,15 @@ public final class ZipUtils {
         try {
             tmpDir = FileUtils.createUniqueTempDir(toDir.getAbsoluteFile().getParentFile(), toDir.getName());
             File[] fromFiles = fromDir.listFiles();
+            List<File> files = new ArrayList<File>(fromFiles.length);
             for (File f : fromFiles) {
                 if (f.isFile()) {
-                    gzipFileInto(f, tmpDir);
+                    files.add(f);
                 } else {
                     log.trace("Skipping non-file '{}'", f);
                 }
             }
+            gzipFiles(files, tmpDir);
             if (!tmpDir.renameTo(toDir)) {
                 throw new IOFailure("Failed to rename temp dir '" + tmpDir + "' to desired target '" + toDir + "'");
             }
@@ -179,37 +213,188 @@ public final class ZipUtils {
     }
 
     /**
-     * GZip a file into a given dir. The resulting file will have .gz appended.
+     * GZip a number of files into a given dir. The resulting files will have .gz appended.
+     * <p>
+     * Like the pigz tool, the files are split into blocks of {@link #GZIP_BLOCK_SIZE} bytes, which are compressed in
+     * parallel by the number of threads given by {@link CommonSettings#GZIP_THREADS}. Unlike pigz, each block is
+     * compressed independently into a gzip member of its own, so each file is a valid multi-member gzip file, which is
+     * read by any gunzip and by {@link GZIPInputStream}. The compressed blocks are written in order, and only a few
+     * blocks per thread are held in memory at a time.
      *
-     * @param f A file to gzip. This must be a real file, not a directory or the like.
-     * @param toDir The directory that the gzipped file will be placed in.
+     * @param files The files to gzip. These must be real files, not directories or the like.
+     * @param toDir The directory that the gzipped files will be placed in. It must exist.
+     * @throws IOFailure If any of the files cannot be read or written.
      */
-    private static void gzipFileInto(File f, File toDir) {
+    public static void gzipFiles(List<File> files, File toDir) {
+        ArgumentNotValid.checkNotNull(files, "List<File> files");
+        ArgumentNotValid.checkNotNull(toDir, "File toDir");
+        int threads = getGzipThreads();
+        ExecutorService executor = getGzipExecutor();
+        // The blocks being compressed, in the order they are to be written.
+        Deque<GzipBlock> pending = new ArrayDeque<GzipBlock>();
+        OutputStream out = null;
         try {
-            GZIPOutputStream out = null;
-            try {
-                File outF = new File(toDir, f.getName() + GZIP_SUFFIX);
-                out = new GZIPOutputStream(new FileOutputStream(outF));
-                FileUtils.writeFileToStream(f, out);
-            } finally {
-                if (out != null) {
-                    try {
-                        out.close();
-                    } catch (IOException e) {
-                        // Not really a problem to not be able to close,
-                        // so don't abort
-                        log.debug("Error closing output file for '{}'", f, e);
+            for (File f : files) {
+                long length = f.length();
+                long offset = 0;
+                do {
+                    int blockLength = (int) Math.min(GZIP_BLOCK_SIZE, length - offset);
+                    pending.add(new GzipBlock(f, offset, offset + blockLength >= length, executor.submit(
+                            new GzipBlockCompressor(f, offset, blockLength))));
+                    offset += blockLength;
+                    while (pending.size() >= GZIP_BLOCKS_PER_THREAD * threads) {
+                        out = writeBlock(pending.poll(), out, toDir);
                     }
-                }
+                } while (offset < length);
+            }
+            while (!pending.isEmpty()) {
+                out = writeBlock(pending.poll(), out, toDir);
             }
         } catch (IOException e) {
-            throw new IOFailure("Error while gzipping file '" + f + "'", e);
+            throw new IOFailure("Error while gzipping files into '" + toDir + "'", e);
+        } finally {
+            for (GzipBlock block : pending) {
+                block.compressed.cancel(true);
+            }
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * Write a compressed block to its gzipped file, opening the file at its first block and closing it after its last.
+     *
+     * @param block The block to write.
+     * @param out The stream of the file being written, or null if no file is open.
+     * @param toDir The directory of the gzipped files.
+     * @return The stream of the file being written, or null if the block was the last of its file.
+     * @throws IOException If the block could not be compressed or written.
+     */
+    private static OutputStream writeBlock(GzipBlock block, OutputStream out, File toDir) throws IOException {
+        byte[] compressed;
+        try {
+            compressed = block.compressed.get();
+        } catch (InterruptedException e) {
+            throw new IOFailure("Interrupted while gzipping '" + block.file + "'", e);
+        } catch (ExecutionException e) {
+            throw new IOFailure("Error while gzipping '" + block.file + "' at offset " + block.offset, e.getCause());
+        }
+        if (block.offset == 0) {
+            out = new FileOutputStream(new File(toDir, block.file.getName() + GZIP_SUFFIX));
+        }
+        out.write(compressed);
+        if (block.last) {
+            out.close();
+            return null;
+        }
+        return out;
+    }
+
+    /** A block of a file being gzipped. */
+    private static class GzipBlock {
+        /** The file the block is from. */
+        final File file;
+        /** The offset of the block in the file. */
+        final long offset;
+        /** Whether this is the last block of the file. */
+        final boolean last;
+        /** The block compressed as a gzip member. */
+        final Future<byte[]> compressed;
+
+        /**
+         * @param file The file the block is from.
+         * @param offset The offset of the block in the file.
+         * @param last Whether this is the last block of the file.
+         * @param compressed The block compressed as a gzip member.
+         */
+        GzipBlock(File file, long offset, boolean last, Future<byte[]> compressed) {
+            this.file = file;
+            this.offset = offset;
+            this.last = last;
+            this.compressed = compressed;
+        }
+    }
+
+    /** Compresses a block of a file into a gzip member. */
+    private static class GzipBlockCompressor implements Callable<byte[]> {
+        /** The file the block is from. */
+        private final File file;
+        /** The offset of the block in the file. */
+        private final long offset;
+        /** The length of the block. */
+        private final int length;
+
+        /**
+         * @param file The file the block is from.
+         * @param offset The offset of the block in the file.
+         * @param length The length of the block.
+         */
+        GzipBlockCompressor(File file, long offset, int length) {
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public byte[] call() throws IOException {
+            byte[] data = new byte[length];
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try {
+                in.seek(offset);
+                in.readFully(data);
+            } finally {
+                in.close();
+            }
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+            GZIPOutputStream out = new GZIPOutputStream(compressed);
+            out.write(data);
+            out.close();
+            return compressed.toByteArray();
         }
     }
 
+    /**
+     * Get the number of threads to gzip and gunzip with.
+     *
+     * @return The value of {@link CommonSettings#GZIP_THREADS}, or the number of processors if that is 0.
+     */
+    public static int getGzipThreads() {
+        int threads = Settings.getInt(CommonSettings.GZIP_THREADS);
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        return threads;
+    }
+
+    /**
+     * Get the threads to gzip and gunzip with. They are shared by all callers, so files gzipped or gunzipped at the
+     * same time are handled by {@link #getGzipThreads()} threads in all. The threads stop when they have been idle
+     * for a while. Tasks run by the threads must not wait for other tasks run by them.
+     *
+     * @return The executor running the threads.
+     */
+    public static synchronized ExecutorService getGzipExecutor() {
+        if (gzipExecutor == null) {
+            int threads = getGzipThreads();
+            final AtomicInteger threadCount = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, GZIP_THREAD_KEEP_ALIVE,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "ZipUtils-gzip-" + threadCount.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            gzipExecutor = executor;
+        }
+        return gzipExecutor;
+    }
+
     /**
      * Gunzip all .gz files in a given directory into another. Files in fromDir not ending in .gz or not real files will
-     * be skipped with a log entry.
+     * be skipped with a log entry. The files are gunzipped in parallel by the number of threads given by
+     * {@link CommonSettings#GZIP_THREADS}.
      *
      * @param fromDir The directory containing .gz files
      * @param toDir The directory to place the unzipped files in. This directory must not exist beforehand.
@@ -221,20 +406,42 @@ public final class ZipUtils {
         ArgumentNotValid.checkTrue(fromDir.isDirectory(), "source directory '" + fromDir + "' must exist");
         ArgumentNotValid.checkTrue(!toDir.exists(), "destination directory '" + toDir + "' must not exist");
         File tempDir = FileUtils.createUniqueTempDir(toDir.getAbsoluteFile().getParentFile(), toDir.getName());
+        ExecutorService executor = getGzipExecutor();
+        List<Future<?>> results = new ArrayList<Future<?>>();
         try {
             File[] gzippedFiles = fromDir.listFiles();
-            for (File f : gzippedFiles) {
+            for (final File f : gzippedFiles) {
                 if (f.isFile() && f.getName().endsWith(GZIP_SUFFIX)) {
-                    gunzipInto(f, tempDir);
+                    final File dir = tempDir;
+                    results.add(executor.submit(new Runnable() {
+                        public void run() {
+                            gunzipInto(f, dir);
+                        }
+                    }));
                 } else {
                     log.trace("Non-gzip file '{}' found in gzip dir", f);
                 }
             }
+            for (Future<?> result : results) {
+                try {
+                    result.get();
+                } catch (InterruptedException e) {
+                    throw new IOFailure("Interrupted while gunzipping '" + fromDir + "'", e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOFailure) {
+                        throw (IOFailure) e.getCause();
+                    }
+                    throw new IOFailure("Error while gunzipping '" + fromDir + "'", e.getCause());
+                }
+            }
             if (!tempDir.renameTo(toDir)) {
                 throw new IOFailure("Error renaming temporary directory '" + tempDir + "' to target directory '"
                         + toDir);
             }
         } finally {
+            for (Future<?> result : results) {
+                result.cancel(true);
+            }
             FileUtils.removeRecursively(tempDir);
         }
     }
@@ -22,31 +22,57 @@
  */
 package dk.netarkivet.common.utils.archive;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.apache.commons.io.input.BoundedInputStream;
 import org.archive.io.ArchiveReader;
 import org.archive.io.ArchiveReaderFactory;
 import org.archive.io.ArchiveRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import dk.netarkivet.common.CommonSettings;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
 import dk.netarkivet.common.exceptions.NetarkivetException;
+import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.common.utils.archive.ArchiveRecordRangeSplitter.RecordRange;
 import dk.netarkivet.common.utils.batch.ArchiveBatchFilter;
 
 /**
  * Abstract class defining a batch job to run on a set of ARC/WARC files. Each implementation is required to define
  * initialize() , processRecord() and finish() methods. The bitarchive application then ensures that the batch job runs
  * initialize(), runs processRecord() on each record in each file in the archive, and then runs finish().
+ * <p>
+ * Jobs whose processRecord() and getFilter() are safe to call from several threads at once can override
+ * {@link #supportsParallelRecordProcessing()}. Large compressed archive files are then split into ranges of records,
+ * which are processed in parallel. The output of each range is buffered in a temporary file and written to the output
+ * stream in the original record order, and exceptions are passed to handleException() in record order as well.
  */
 @SuppressWarnings({"serial"})
 public abstract class ArchiveBatchJob extends ArchiveBatchJobBase {
 
     private static final Logger log = LoggerFactory.getLogger(ArchiveBatchJob.class);
 
+    /** The number of record ranges a file is split into per processing thread, to even out the load. */
+    private static final int RANGES_PER_THREAD = 4;
+
     /**
      * Exceptions should be handled with the handleException() method.
      *
@@ -65,6 +91,17 @@ public abstract class ArchiveBatchJob extends ArchiveBatchJobBase {
         return ArchiveBatchFilter.NO_FILTER;
     }
 
+    /**
+     * Tell whether this job can process several records of the same file at the same time. Override this to return
+     * true only if processRecord() and the filter do not change any state of the job, as they will then be called from
+     * several threads at once. Each thread writes to its own output stream.
+     *
+     * @return false; subclasses may override.
+     */
+    protected boolean supportsParallelRecordProcessing() {
+        return false;
+    }
+
     /**
      * Accepts only arc(.gz) and warc(.gz) files. Runs through all records and calls processRecord() on every record
      * that is allowed by getFilter(). Does nothing on a non-(w)arc file.
@@ -81,6 +118,21 @@ public abstract class ArchiveBatchJob extends ArchiveBatchJobBase {
         boolean success = true;
         log.info("Processing archive file: {}", archiveFile.getName());
 
+        int threads = getRecordRangeThreads(archiveFile);
+        if (threads > 1) {
+            List<RecordRange> ranges;
+            try {
+                ranges = ArchiveRecordRangeSplitter.split(archiveFile, threads * RANGES_PER_THREAD);
+            } catch (IOFailure e) {
+                handleException(e, archiveFile, arcFileIndex);
+                return false;
+            }
+            if (ranges.size() > 1) {
+                return processRecordRanges(archiveFile, ranges, Math.min(threads, ranges.size()), os);
+            }
+            log.debug("No record boundaries found in '{}'. Processing it sequentially.", archiveFile.getName());
+        }
+
         try { // This outer try-catch block catches all unexpected exceptions
               // Create an ArchiveReader and retrieve its Iterator:
             ArchiveReader archiveReader = null;
@@ -171,4 +223,250 @@ public abstract class ArchiveBatchJob extends ArchiveBatchJobBase {
         return success;
     }
 
+    /**
+     * Find the number of threads to use for processing the given file.
+     *
+     * @param archiveFile The archive file about to be processed.
+     * @return the number of threads; 1 if the file should be processed sequentially.
+     */
+    private int getRecordRangeThreads(File archiveFile) {
+        if (!supportsParallelRecordProcessing() || !ArchiveRecordRangeSplitter.isSplittable(archiveFile)
+                || archiveFile.length() < Settings.getLong(CommonSettings.BATCH_RECORD_RANGE_MIN_FILE_SIZE)) {
+            return 1;
+        }
+        return Math.max(1, Settings.getInt(CommonSettings.BATCH_RECORD_RANGE_THREADS));
+    }
+
+    /**
+     * Process the ranges of records of a file in parallel. The output of the ranges is written to the output stream in
+     * range order, and the exceptions of each range are handed to handleException() or handleOurException() in the
+     * order they occurred in the file.
+     *
+     * @param archiveFile The archive file being processed.
+     * @param ranges The ranges of records covering the file.
+     * @param threads The number of threads to use.
+     * @param os The OutputStream to which output is to be written.
+     * @return true, if all ranges were processed successfully, otherwise false.
+     */
+    private boolean processRecordRanges(File archiveFile, List<RecordRange> ranges, int threads, OutputStream os) {
+        log.debug("Processing {} record ranges of '{}' using {} threads", ranges.size(), archiveFile.getName(),
+                threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<RangeResult>> futures = new ArrayList<Future<RangeResult>>(ranges.size());
+        boolean success = true;
+        try {
+            for (RecordRange range : ranges) {
+                futures.add(executor.submit(new RangeTask(archiveFile, range)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                RangeResult result;
+                try {
+                    result = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    success = false;
+                    Throwable cause = e.getCause();
+                    handleException(cause instanceof Exception ? (Exception) cause : e, archiveFile,
+                            ranges.get(i).getStart());
+                    continue;
+                }
+                try {
+                    success &= result.replay(archiveFile, os);
+                } finally {
+                    result.cleanup();
+                }
+            }
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while processing record ranges of '{}'", archiveFile.getName(), e);
+            Thread.currentThread().interrupt();
+            success = false;
+        } finally {
+            executor.shutdownNow();
+            for (Future<RangeResult> future : futures) {
+                if (future.isDone() && !future.isCancelled()) {
+                    try {
+                        future.get().cleanup();
+                    } catch (Exception e) {
+                        // Already handled above
+                    }
+                } else {
+                    future.cancel(true);
+                }
+            }
+        }
+        return success;
+    }
+
+    /**
+     * The outcome of processing one range of records: the buffered output, the exceptions in the order they occurred
+     * and the number of records processed.
+     */
+    private final class RangeResult {
+        /** The range of records processed. */
+        private final RecordRange range;
+        /** The temporary file holding the output of the range. */
+        private final File output;
+        /** The exceptions thrown while processing the range. */
+        private final List<Exception> exceptions = new ArrayList<Exception>();
+        /** The offsets in the archive file where the exceptions were thrown. */
+        private final List<Long> exceptionOffsets = new ArrayList<Long>();
+        /** The number of records processed. */
+        private int recordsProcessed;
+        /** Whether all records were processed without exceptions. */
+        private boolean success = true;
+        /** The offset where an unexpected exception stopped the processing of the range, or -1. */
+        private long stoppedAt = -1L;
+
+        /**
+         * @param range The range of records processed.
+         * @param output The temporary file holding the output of the range.
+         */
+        RangeResult(RecordRange range, File output) {
+            this.range = range;
+            this.output = output;
+        }
+
+        /**
+         * Remember an exception.
+         *
+         * @param e The exception.
+         * @param offset The offset in the archive file where it was thrown.
+         */
+        void addException(Exception e, long offset) {
+            success = false;
+            exceptions.add(e);
+            exceptionOffsets.add(offset);
+        }
+
+        /**
+         * Remember an exception that stops the processing of the rest of the range.
+         *
+         * @param e The exception.
+         * @param offset The offset in the archive file where it was thrown.
+         */
+        void stop(Exception e, long offset) {
+            addException(e, offset);
+            stoppedAt = offset;
+        }
+
+        /**
+         * Write the output of the range to the job output stream, and let the job handle the exceptions of the range.
+         *
+         * @param archiveFile The archive file being processed.
+         * @param os The OutputStream to which output is to be written.
+         * @return true if the range was processed without exceptions.
+         */
+        boolean replay(File archiveFile, OutputStream os) {
+            if (stoppedAt >= 0) {
+                log.warn("Processing of the records at offsets {}-{} of '{}' was stopped at offset {} by an unexpected "
+                        + "exception. The output of the file is partial.", range.getStart(),
+                        range.getEnd(), archiveFile.getName(), stoppedAt,
+                        exceptions.get(exceptions.size() - 1));
+            }
+            for (int i = 0; i < exceptions.size(); i++) {
+                Exception e = exceptions.get(i);
+                if (e instanceof NetarkivetException) {
+                    handleOurException((NetarkivetException) e, archiveFile, exceptionOffsets.get(i));
+                } else {
+                    handleException(e, archiveFile, exceptionOffsets.get(i));
+                }
+            }
+            noOfRecordsProcessed += recordsProcessed;
+            try {
+                FileUtils.writeFileToStream(output, os);
+            } catch (IOFailure e) {
+                handleException(e, archiveFile, ExceptionOccurrence.UNKNOWN_OFFSET);
+                return false;
+            }
+            return success;
+        }
+
+        /** Delete the temporary output file. */
+        void cleanup() {
+            FileUtils.remove(output);
+        }
+    }
+
+    /**
+     * Processes one range of records, reading it as a stand-alone archive.
+     */
+    private final class RangeTask implements Callable<RangeResult> {
+        /** The archive file being processed. */
+        private final File archiveFile;
+        /** The range of records to process. */
+        private final RecordRange range;
+
+        /**
+         * @param archiveFile The archive file being processed.
+         * @param range The range of records to process.
+         */
+        RangeTask(File archiveFile, RecordRange range) {
+            this.archiveFile = archiveFile;
+            this.range = range;
+        }
+
+        @Override
+        public RangeResult call() throws IOException {
+            RangeResult result = new RangeResult(range, File.createTempFile("range-" + range.getStart() + "-",
+                    archiveFile.getName() + ".out", FileUtils.getTempDir()));
+            long arcFileIndex = range.getStart();
+            OutputStream os = new BufferedOutputStream(new FileOutputStream(result.output));
+            InputStream in = null;
+            ArchiveReader archiveReader = null;
+            try {
+                in = new FileInputStream(archiveFile);
+                long skipped = 0;
+                while (skipped < range.getStart()) {
+                    long s = in.skip(range.getStart() - skipped);
+                    if (s <= 0) {
+                        throw new IOException("Unable to skip to offset " + range.getStart() + " in " + archiveFile);
+                    }
+                    skipped += s;
+                }
+                // The reader identifier is the file path, as when reading the whole file.
+                archiveReader = ArchiveReaderFactory.get(archiveFile.getAbsolutePath(), new BufferedInputStream(
+                        new BoundedInputStream(in, range.getLength())), range.getStart() == 0);
+                Iterator<? extends ArchiveRecord> it = archiveReader.iterator();
+                while (it.hasNext()) {
+                    ArchiveRecord archiveRecord = (ArchiveRecord) it.next();
+                    ArchiveRecordBase record = ArchiveRecordBase.wrapArchiveRecord(archiveRecord, range.getStart());
+                    try {
+                        if (!getFilter().accept(record)) {
+                            continue;
+                        }
+                        processRecord(record, os);
+                        ++result.recordsProcessed;
+                    } catch (NetarkivetException e) {
+                        result.addException(e, arcFileIndex);
+                    } catch (Exception e) {
+                        result.stop(e, arcFileIndex);
+                        break;
+                    }
+                    try {
+                        long arcRecordOffset = range.getStart() + archiveRecord.getHeader().getContentBegin()
+                                + archiveRecord.getHeader().getLength();
+                        archiveRecord.close();
+                        arcFileIndex = arcRecordOffset;
+                    } catch (IOException ioe) {
+                        result.stop(ioe, arcFileIndex);
+                        break;
+                    }
+                }
+            } catch (Exception e) {
+                result.stop(e, arcFileIndex);
+            } finally {
+                if (archiveReader != null) {
+                    try {
+                        archiveReader.close();
+                    } catch (IOException e) {
+                        result.addException(e, arcFileIndex);
+                    }
+                } else if (in != null) {
+                    in.close();
+                }
+                os.close();
+            }
+            return result;
+        }
+    }
+
 }
@@ -61,4 +61,16 @@ public abstract class ArchiveRecordBase {
         return new HeritrixArchiveRecordWrapper(archiveRecord);
     }
 
+    /**
+     * Factory method for creating a wrapped Heritrix record read from a part of an archive file. The offset reported
+     * by the wrapped header is the offset in the whole archive file.
+     *
+     * @param archiveRecord Heritrix archive record
+     * @param offsetDelta the position in the archive file of the part the record was read from
+     * @return wrapped Heritrix record
+     */
+    public static ArchiveRecordBase wrapArchiveRecord(ArchiveRecord archiveRecord, long offsetDelta) {
+        return new HeritrixArchiveRecordWrapper(archiveRecord, offsetDelta);
+    }
+
 }
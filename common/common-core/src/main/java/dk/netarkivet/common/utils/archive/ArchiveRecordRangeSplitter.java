@@ -0,0 +1,387 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.utils.archive;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
+
+/**
+ * Splits a compressed ARC or WARC file into ranges of whole records, which can be read independently of each other.
+ * <p>
+ * In arc.gz and warc.gz files, each record is written as a separate gzip member. The record boundaries are found by
+ * walking the members from the start of the file, inflating each member to find where it ends, and accepting a member
+ * end as a boundary if the member starting there inflates to the beginning of an archive record. The gzip magic bytes
+ * may also occur inside a member, e.g. in a compressed archive file stored in a record, so a boundary is only accepted
+ * where the preceding member ends. Nothing is parsed while walking, so finding the ranges is cheap compared to reading
+ * the records.
+ */
+public final class ArchiveRecordRangeSplitter {
+
+    /** The logger for this class. */
+    private static final Logger log = LoggerFactory.getLogger(ArchiveRecordRangeSplitter.class);
+
+    /** The number of bytes read and inflated at a time when walking the gzip members. */
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+    /** The length of the trailer after the compressed data of a gzip member: the CRC-32 and the input size. */
+    private static final int GZIP_TRAILER_LENGTH = 8;
+
+    /** The number of compressed bytes given to the inflater when validating a candidate member. */
+    private static final int VALIDATION_INPUT_SIZE = 8 * 1024;
+
+    /** The number of inflated bytes needed to recognize the start of a record. */
+    private static final int VALIDATION_OUTPUT_SIZE = 512;
+
+    /** Gzip header flag: header CRC present. */
+    private static final int FHCRC = 2;
+    /** Gzip header flag: extra field present. */
+    private static final int FEXTRA = 4;
+    /** Gzip header flag: original file name present. */
+    private static final int FNAME = 8;
+    /** Gzip header flag: comment present. */
+    private static final int FCOMMENT = 16;
+    /** Reserved gzip header flags, which must be zero. */
+    private static final int FRESERVED = 0xE0;
+
+    /** Utility class, do not initialise. */
+    private ArchiveRecordRangeSplitter() {
+    }
+
+    /**
+     * A range of whole records in an archive file.
+     */
+    public static final class RecordRange {
+
+        /** The offset of the first record in the range. */
+        private final long start;
+        /** The offset after the last record in the range. */
+        private final long end;
+
+        /**
+         * @param start The offset of the first record in the range.
+         * @param end The offset after the last record in the range.
+         */
+        RecordRange(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * @return the offset of the first record in the range.
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * @return the offset after the last record in the range.
+         */
+        public long getEnd() {
+            return end;
+        }
+
+        /**
+         * @return the number of bytes in the range.
+         */
+        public long getLength() {
+            return end - start;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + start + ", " + end + ")";
+        }
+    }
+
+    /**
+     * Tell whether a file can be split by looking for record boundaries, i.e. whether it is a compressed ARC or WARC
+     * file.
+     *
+     * @param archiveFile An archive file.
+     * @return true if the file can be split with {@link #split(File, int)}.
+     */
+    public static boolean isSplittable(File archiveFile) {
+        ArgumentNotValid.checkNotNull(archiveFile, "File archiveFile");
+        String name = archiveFile.getName().toLowerCase();
+        return name.endsWith(".arc.gz") || name.endsWith(".warc.gz");
+    }
+
+    /**
+     * Split a compressed archive file into at most the given number of ranges of roughly equal size. Fewer ranges are
+     * returned if records span several wanted split points, or if the gzip members cannot be walked, e.g. because the
+     * file is truncated or corrupt. The file is then not split after the last boundary found.
+     *
+     * @param archiveFile A compressed ARC or WARC file.
+     * @param ranges The wanted number of ranges.
+     * @return the ranges in file order. Together they cover the whole file.
+     * @throws ArgumentNotValid If the file is not splittable or the number of ranges is not positive.
+     * @throws IOFailure If the file cannot be read.
+     */
+    public static List<RecordRange> split(File archiveFile, int ranges) throws ArgumentNotValid, IOFailure {
+        ArgumentNotValid.checkExistsNormalFile(archiveFile, "File archiveFile");
+        ArgumentNotValid.checkPositive(ranges, "int ranges");
+        ArgumentNotValid.checkTrue(isSplittable(archiveFile), "File '" + archiveFile + "' is not a compressed archive");
+        boolean warc = archiveFile.getName().toLowerCase().endsWith(".warc.gz");
+        long length = archiveFile.length();
+        List<Long> starts = new ArrayList<Long>();
+        starts.add(0L);
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(archiveFile, "r");
+            long chunk = length / ranges;
+            for (int i = 1; i < ranges; i++) {
+                long previous = starts.get(starts.size() - 1);
+                if (previous >= i * chunk) {
+                    // The previous range already reaches this split point.
+                    continue;
+                }
+                long boundary = findRecordStart(raf, previous, i * chunk, length, warc);
+                if (boundary < 0) {
+                    break;
+                }
+                starts.add(boundary);
+            }
+        } catch (IOException e) {
+            throw new IOFailure("Unable to look for record boundaries in '" + archiveFile + "'", e);
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException e) {
+                    log.debug("Unable to close {}", archiveFile, e);
+                }
+            }
+        }
+        List<RecordRange> result = new ArrayList<RecordRange>(starts.size());
+        for (int i = 0; i < starts.size(); i++) {
+            long end = i + 1 < starts.size() ? starts.get(i + 1) : length;
+            result.add(new RecordRange(starts.get(i), end));
+        }
+        log.debug("Split '{}' into record ranges {}", archiveFile.getName(), result);
+        return result;
+    }
+
+    /**
+     * Find the first record start at or after the given position, by walking the gzip members from a known record
+     * start.
+     *
+     * @param raf The archive file.
+     * @param from The offset of a known record start before the position.
+     * @param target The position to find a record start at or after.
+     * @param length The length of the file.
+     * @param warc True if the file is a WARC file, false if it is an ARC file.
+     * @return the offset of the record, or -1 if none was found before the end of the file, or the members could not
+     * be walked.
+     * @throws IOException If the file cannot be read.
+     */
+    private static long findRecordStart(RandomAccessFile raf, long from, long target, long length, boolean warc)
+            throws IOException {
+        long pos = from;
+        do {
+            pos = memberEnd(raf, pos, length);
+            if (pos < 0 || pos >= length) {
+                return -1;
+            }
+        } while (pos < target || !isRecordStart(raf, pos, warc));
+        return pos;
+    }
+
+    /**
+     * Find where the gzip member starting at the given position ends, by inflating it.
+     *
+     * @param raf The archive file.
+     * @param offset The start of the member.
+     * @param length The length of the file.
+     * @return the offset after the trailer of the member, or -1 if no complete member starts at the position.
+     * @throws IOException If the file cannot be read.
+     */
+    private static long memberEnd(RandomAccessFile raf, long offset, long length) throws IOException {
+        byte[] in = new byte[SCAN_BUFFER_SIZE];
+        raf.seek(offset);
+        int read = raf.read(in);
+        int headerLength = gzipHeaderLength(in, read);
+        if (headerLength < 0) {
+            return -1;
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(in, headerLength, read - headerLength);
+            byte[] out = new byte[SCAN_BUFFER_SIZE];
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    read = raf.read(in);
+                    if (read <= 0) {
+                        return -1;
+                    }
+                    inflater.setInput(in, 0, read);
+                } else if (inflater.inflate(out) == 0 && inflater.needsDictionary()) {
+                    return -1;
+                }
+            }
+            long end = offset + headerLength + inflater.getBytesRead() + GZIP_TRAILER_LENGTH;
+            return end <= length ? end : -1;
+        } catch (DataFormatException e) {
+            return -1;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Check whether a gzip member starts at the given position and inflates to the beginning of an archive record.
+     *
+     * @param raf The archive file.
+     * @param offset The candidate position.
+     * @param warc True if the file is a WARC file, false if it is an ARC file.
+     * @return true if a record starts at the position.
+     * @throws IOException If the file cannot be read.
+     */
+    static boolean isRecordStart(RandomAccessFile raf, long offset, boolean warc) throws IOException {
+        byte[] in = new byte[VALIDATION_INPUT_SIZE];
+        raf.seek(offset);
+        int read = raf.read(in);
+        int headerLength = gzipHeaderLength(in, read);
+        if (headerLength < 0) {
+            return false;
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(in, headerLength, read - headerLength);
+            byte[] out = new byte[VALIDATION_OUTPUT_SIZE];
+            int inflated = 0;
+            while (inflated < out.length && !inflater.finished() && !inflater.needsInput()) {
+                int n = inflater.inflate(out, inflated, out.length - inflated);
+                if (n == 0) {
+                    break;
+                }
+                inflated += n;
+            }
+            return warc ? isWarcRecordStart(out, inflated) : isArcRecordStart(out, inflated);
+        } catch (DataFormatException e) {
+            return false;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Parse a gzip member header.
+     *
+     * @param b The bytes starting with the header.
+     * @param length The number of valid bytes.
+     * @return the length of the header, or -1 if the bytes do not start with a valid gzip header.
+     */
+    private static int gzipHeaderLength(byte[] b, int length) {
+        if (length < 10 || (b[0] & 0xFF) != 0x1f || (b[1] & 0xFF) != 0x8b || b[2] != 8) {
+            return -1;
+        }
+        int flags = b[3] & 0xFF;
+        if ((flags & FRESERVED) != 0) {
+            return -1;
+        }
+        int pos = 10;
+        if ((flags & FEXTRA) != 0) {
+            if (pos + 2 > length) {
+                return -1;
+            }
+            pos += 2 + ((b[pos] & 0xFF) | ((b[pos + 1] & 0xFF) << 8));
+        }
+        if ((flags & FNAME) != 0) {
+            while (pos < length && b[pos] != 0) {
+                ++pos;
+            }
+            ++pos;
+        }
+        if ((flags & FCOMMENT) != 0) {
+            while (pos < length && b[pos] != 0) {
+                ++pos;
+            }
+            ++pos;
+        }
+        if ((flags & FHCRC) != 0) {
+            pos += 2;
+        }
+        return pos < length ? pos : -1;
+    }
+
+    /**
+     * @return true if the bytes start with a WARC version line.
+     */
+    private static boolean isWarcRecordStart(byte[] b, int length) {
+        return length >= 8 && b[0] == 'W' && b[1] == 'A' && b[2] == 'R' && b[3] == 'C' && b[4] == '/';
+    }
+
+    /**
+     * Check for an ARC record header line: a URL with a scheme followed by at least four more space separated fields
+     * on a single line, the last of which is the decimal record length.
+     *
+     * @return true if the bytes start with an ARC record header line.
+     */
+    private static boolean isArcRecordStart(byte[] b, int length) {
+        int eol = 0;
+        while (eol < length && b[eol] != '\n') {
+            ++eol;
+        }
+        if (eol == length || eol == 0) {
+            return false;
+        }
+        int colon = 0;
+        while (colon < eol && b[colon] != ':' && b[colon] != ' ') {
+            ++colon;
+        }
+        if (colon == 0 || colon == eol || b[colon] != ':') {
+            return false;
+        }
+        int fields = 1;
+        for (int i = 0; i < eol; i++) {
+            if (b[i] == ' ') {
+                ++fields;
+            }
+        }
+        int lastSpace = eol - 1;
+        while (lastSpace >= 0 && b[lastSpace] != ' ') {
+            --lastSpace;
+        }
+        if (fields < 5 || lastSpace == eol - 1) {
+            return false;
+        }
+        for (int i = lastSpace + 1; i < eol; i++) {
+            if (b[i] < '0' || b[i] > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
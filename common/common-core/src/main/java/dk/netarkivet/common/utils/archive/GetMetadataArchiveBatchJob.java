@@ -60,6 +60,17 @@ public class GetMetadataArchiveBatchJob extends ArchiveBatchJob {
         batchJobTimeout = Constants.ONE_DAY_IN_MILLIES;
     }
 
+    /**
+     * Records are processed independently of each other, without changing the state of the job, so ranges of records
+     * in large files may be processed in parallel.
+     *
+     * @return true
+     */
+    @Override
+    protected boolean supportsParallelRecordProcessing() {
+        return true;
+    }
+
     /**
      * Initialize method. Run before the arc-records are being processed. Currently does nothing.
      *
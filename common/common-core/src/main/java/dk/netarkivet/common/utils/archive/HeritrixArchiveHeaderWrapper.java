@@ -68,6 +68,9 @@ public class HeritrixArchiveHeaderWrapper extends ArchiveHeaderBase {
      */
     protected Map<String, Object> headerFields = new HashMap<String, Object>();
 
+    /** Added to the offset of the Heritrix header, when the record was read from a part of the archive file. */
+    protected long offsetDelta;
+
     /**
      * Construct a Heritrix record header wrapper object.
      *
@@ -77,11 +80,25 @@ public class HeritrixArchiveHeaderWrapper extends ArchiveHeaderBase {
      */
     public static HeritrixArchiveHeaderWrapper wrapArchiveHeader(HeritrixArchiveRecordWrapper recordWrapper,
             ArchiveRecord record) {
+        return wrapArchiveHeader(recordWrapper, record, 0L);
+    }
+
+    /**
+     * Construct a Heritrix record header wrapper object for a record read from a part of an archive file.
+     *
+     * @param recordWrapper wrapped Heritrix header
+     * @param record original Heritrix record
+     * @param offsetDelta the position in the archive file of the part the record was read from
+     * @return wrapped Heritrix record header
+     */
+    public static HeritrixArchiveHeaderWrapper wrapArchiveHeader(HeritrixArchiveRecordWrapper recordWrapper,
+            ArchiveRecord record, long offsetDelta) {
         // ArgumentNotValid.checkNotNull(recordWrapper, "recordWrapper");
         ArgumentNotValid.checkNotNull(record, "record");
         HeritrixArchiveHeaderWrapper headerWrapper = new HeritrixArchiveHeaderWrapper();
         headerWrapper.recordWrapper = recordWrapper;
         headerWrapper.header = record.getHeader();
+        headerWrapper.offsetDelta = offsetDelta;
         Map<String, Object> heritrixHeaderFields = (Map<String, Object>) headerWrapper.header.getHeaderFields();
         Iterator<Map.Entry<String, Object>> iter = heritrixHeaderFields.entrySet().iterator();
         Map.Entry<String, Object> entry;
@@ -164,7 +181,7 @@ public class HeritrixArchiveHeaderWrapper extends ArchiveHeaderBase {
 
     @Override
     public long getOffset() {
-        return header.getOffset();
+        return header.getOffset() + offsetDelta;
     }
 
     @Override
@@ -49,9 +49,19 @@ public class HeritrixArchiveRecordWrapper extends ArchiveRecordBase {
      * @param record Heritrix record object
      */
     public HeritrixArchiveRecordWrapper(ArchiveRecord record) {
+        this(record, 0L);
+    }
+
+    /**
+     * Construct a Heritrix record wrapper object for a record read from a part of an archive file.
+     *
+     * @param record Heritrix record object
+     * @param offsetDelta the position in the archive file of the part the record was read from
+     */
+    public HeritrixArchiveRecordWrapper(ArchiveRecord record, long offsetDelta) {
         ArgumentNotValid.checkNotNull(record, "record");
         this.record = record;
-        this.header = HeritrixArchiveHeaderWrapper.wrapArchiveHeader(this, record);
+        this.header = HeritrixArchiveHeaderWrapper.wrapArchiveHeader(this, record, offsetDelta);
         if (record instanceof ARCRecord) {
             this.bIsArc = true;
         } else if (record instanceof WARCRecord) {
@@ -25,8 +25,10 @@ package dk.netarkivet.common.utils.batch;
 
 import java.io.File;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -75,6 +77,19 @@ public class BatchLocalFiles {
      * @param os - the OutputStream to which output data is written
      */
     public void run(FileBatchJob job, OutputStream os) {
+        run(job, os, null);
+    }
+
+    /**
+     * Run the given job on the files associated with this object, reporting the progress of the job to the given
+     * listener. The progress is reported between files, every {@link CommonSettings#BATCH_LOGGING_INTERVAL}
+     * milliseconds, after the output stream has been flushed.
+     *
+     * @param job - the job to be executed
+     * @param os - the OutputStream to which output data is written
+     * @param listener - the listener for the progress of the job, or null for none
+     */
+    public void run(FileBatchJob job, OutputStream os, BatchProgressListener listener) {
         ArgumentNotValid.checkNotNull(job, "FileBatchJob job");
         ArgumentNotValid.checkNotNull(os, "OutputStream os");
         // Initialise the job:
@@ -82,27 +97,52 @@ public class BatchLocalFiles {
         job.filesFailed = new HashSet<File>();
         try {
             job.initialize(os);
+            // find the files to process, and their total size (used for progress reports).
+            List<File> filesToProcess = new ArrayList<File>();
+            long bytesTotal = 0L;
+            for (File file : files) {
+                if (job.getFilenamePattern().matcher(file.getName()).matches()
+                        && (job.getFilesChangedSince() == 0L || file.lastModified() >= job.getFilesChangedSince())) {
+                    filesToProcess.add(file);
+                    bytesTotal += file.length();
+                }
+            }
             // count the files (used for logging).
             int fileCount = 0;
+            long bytesProcessed = 0L;
             // the time in milliseconds between the status logging
             long logInterval = Settings.getLong(CommonSettings.BATCH_LOGGING_INTERVAL);
             // get the time for starting the batchjob (used for logging).
             startTime = new Date().getTime();
+            long lastProgressDate = startTime;
             // Process each file:
-            for (File file : files) {
+            for (File file : filesToProcess) {
                 fileCount++;
-                if (job.getFilenamePattern().matcher(file.getName()).matches()) {
-                    long currentTime = new Date().getTime();
-                    // perform logging if necessary.
-                    if (lastLoggingDate + logInterval < currentTime) {
-                        log.info(
-                                "The batchjob '{}' has run for {} seconds and has reached file '{}', which is number {} out of {}",
-                                job.getClass(), (currentTime - startTime) / 1000, file.getName(), fileCount,
-                                files.length);
-                        // set that we have just logged.
-                        lastLoggingDate = currentTime;
+                long currentTime = new Date().getTime();
+                // perform logging if necessary.
+                if (lastLoggingDate + logInterval < currentTime) {
+                    log.info(
+                            "The batchjob '{}' has run for {} seconds and has reached file '{}', which is number {} out of {}",
+                            job.getClass(), (currentTime - startTime) / 1000, file.getName(), fileCount,
+                            filesToProcess.size());
+                    // set that we have just logged.
+                    lastLoggingDate = currentTime;
+                }
+                processFile(job, file, os);
+                bytesProcessed += file.length();
+
+                // report progress if necessary.
+                currentTime = new Date().getTime();
+                if (listener != null && lastProgressDate + logInterval < currentTime) {
+                    lastProgressDate = currentTime;
+                    try {
+                        os.flush();
+                        listener.progress(new BatchProgress(fileCount, filesToProcess.size(), bytesProcessed,
+                                bytesTotal, currentTime - startTime));
+                    } catch (Exception e) {
+                        // A failed progress report should not stop the job
+                        log.warn("Could not report the progress of job {}", job, e);
                     }
-                    processFile(job, file, os);
                 }
 
                 // check whether the batchjob should stop.
@@ -0,0 +1,191 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.utils.batch;
+
+import java.io.Serializable;
+import java.util.Collection;
+
+import dk.netarkivet.common.distribute.RemoteFile;
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+
+/**
+ * The progress of a running batch job: how many of the files and bytes to process have been processed, and for how
+ * long the job has run. Progress from several bitarchives can be added up with {@link #sum(Collection)}.
+ * <p>
+ * A progress report may carry a partial result: the output of the files processed since the previous report. Partial
+ * results are only sent for jobs that ask for them, see {@link FileBatchJob#setPublishPartialResults(boolean)}, and
+ * the final result of the job still contains all the output.
+ */
+@SuppressWarnings({"serial"})
+public class BatchProgress implements Serializable {
+
+    /** The number of files processed so far. */
+    private final int filesProcessed;
+    /** The number of files the job will process in all. */
+    private final int filesTotal;
+    /** The number of bytes in the files processed so far. */
+    private final long bytesProcessed;
+    /** The number of bytes in all the files the job will process. */
+    private final long bytesTotal;
+    /** The time in milliseconds the job has run. */
+    private final long elapsed;
+    /** The output of the files processed since the previous report, or null. */
+    private RemoteFile partialResult;
+
+    /**
+     * Create a progress report.
+     *
+     * @param filesProcessed The number of files processed so far.
+     * @param filesTotal The number of files the job will process in all.
+     * @param bytesProcessed The number of bytes in the files processed so far.
+     * @param bytesTotal The number of bytes in all the files the job will process.
+     * @param elapsed The time in milliseconds the job has run.
+     * @throws ArgumentNotValid If any of the numbers are negative.
+     */
+    public BatchProgress(int filesProcessed, int filesTotal, long bytesProcessed, long bytesTotal, long elapsed) {
+        ArgumentNotValid.checkNotNegative(filesProcessed, "int filesProcessed");
+        ArgumentNotValid.checkNotNegative(filesTotal, "int filesTotal");
+        ArgumentNotValid.checkNotNegative(bytesProcessed, "long bytesProcessed");
+        ArgumentNotValid.checkNotNegative(bytesTotal, "long bytesTotal");
+        ArgumentNotValid.checkNotNegative(elapsed, "long elapsed");
+        this.filesProcessed = filesProcessed;
+        this.filesTotal = filesTotal;
+        this.bytesProcessed = bytesProcessed;
+        this.bytesTotal = bytesTotal;
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * Add up the progress of the parts of a batch job running in parallel, e.g. on each bitarchive of a replica. The
+     * elapsed time of the sum is the longest elapsed time of the parts. Partial results are not carried over.
+     *
+     * @param parts The progress of each part.
+     * @return The progress of the whole job.
+     * @throws ArgumentNotValid If parts is null.
+     */
+    public static BatchProgress sum(Collection<BatchProgress> parts) {
+        ArgumentNotValid.checkNotNull(parts, "Collection<BatchProgress> parts");
+        int filesProcessed = 0;
+        int filesTotal = 0;
+        long bytesProcessed = 0L;
+        long bytesTotal = 0L;
+        long elapsed = 0L;
+        for (BatchProgress part : parts) {
+            filesProcessed += part.filesProcessed;
+            filesTotal += part.filesTotal;
+            bytesProcessed += part.bytesProcessed;
+            bytesTotal += part.bytesTotal;
+            elapsed = Math.max(elapsed, part.elapsed);
+        }
+        return new BatchProgress(filesProcessed, filesTotal, bytesProcessed, bytesTotal, elapsed);
+    }
+
+    /**
+     * @return The number of files processed so far.
+     */
+    public int getFilesProcessed() {
+        return filesProcessed;
+    }
+
+    /**
+     * @return The number of files the job will process in all.
+     */
+    public int getFilesTotal() {
+        return filesTotal;
+    }
+
+    /**
+     * @return The number of bytes in the files processed so far.
+     */
+    public long getBytesProcessed() {
+        return bytesProcessed;
+    }
+
+    /**
+     * @return The number of bytes in all the files the job will process.
+     */
+    public long getBytesTotal() {
+        return bytesTotal;
+    }
+
+    /**
+     * @return The time in milliseconds the job has run.
+     */
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * Get the throughput of the job so far.
+     *
+     * @return The number of bytes processed per second, or 0 if no time has elapsed.
+     */
+    public long getBytesPerSecond() {
+        if (elapsed == 0L) {
+            return 0L;
+        }
+        return bytesProcessed * 1000L / elapsed;
+    }
+
+    /**
+     * Estimate the time left before the job is done, assuming the remaining bytes are processed at the throughput seen
+     * so far.
+     *
+     * @return The estimated time left in milliseconds, or -1 if nothing has been processed yet.
+     */
+    public long getEstimatedTimeLeft() {
+        if (bytesProcessed == 0L) {
+            return -1L;
+        }
+        return (long) ((double) elapsed * (bytesTotal - bytesProcessed) / bytesProcessed);
+    }
+
+    /**
+     * @return The output of the files processed since the previous report, or null if there is none.
+     */
+    public RemoteFile getPartialResult() {
+        return partialResult;
+    }
+
+    /**
+     * Attach the output of the files processed since the previous report.
+     *
+     * @param partialResult The partial result, or null for none.
+     */
+    public void setPartialResult(RemoteFile partialResult) {
+        this.partialResult = partialResult;
+    }
+
+    /**
+     * Human readable version of this object.
+     *
+     * @return A human readable version of this object
+     */
+    public String toString() {
+        long timeLeft = getEstimatedTimeLeft();
+        return filesProcessed + "/" + filesTotal + " files, " + bytesProcessed + "/" + bytesTotal + " bytes in "
+                + (elapsed / 1000) + " seconds (" + getBytesPerSecond() + " bytes/s, "
+                + (timeLeft < 0 ? "unknown time" : (timeLeft / 1000) + " seconds") + " left)"
+                + (partialResult == null ? "" : " with partial result " + partialResult);
+    }
+}
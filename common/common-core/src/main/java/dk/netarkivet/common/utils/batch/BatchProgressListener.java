@@ -0,0 +1,39 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.utils.batch;
+
+/**
+ * Interface for receiving progress reports from a running batch job.
+ */
+public interface BatchProgressListener {
+
+    /**
+     * Called periodically while the batch job runs, with the latest progress. The time between calls is given by the
+     * setting {@link dk.netarkivet.common.CommonSettings#BATCH_LOGGING_INTERVAL}.
+     * <p>
+     * If the progress carries a partial result, the listener is responsible for cleaning it up.
+     *
+     * @param progress The progress of the job.
+     */
+    void progress(BatchProgress progress);
+}
@@ -124,6 +124,28 @@ public class ChecksumJob extends FileBatchJob {
         return new KeyValuePair<String, String>(parts[0], parts[1]);
     }
 
+    /**
+     * The checksum lines are sorted by the bitarchives, so the results can be merged rather than sorted.
+     *
+     * @return true
+     */
+    @Override
+    public boolean hasSortedOutput() {
+        return true;
+    }
+
+    /**
+     * Duplicate lines are kept, since a file found more than once in a bitarchive should be reported as such.
+     *
+     * @param previous The previous line.
+     * @param line The next line.
+     * @return null, so both lines are kept.
+     */
+    @Override
+    public String combine(String previous, String line) {
+        return null;
+    }
+
     /**
      * Write a human-readily description of this ChecksumJob object. Writes out the name of the ChecksumJob, the number
      * of files processed, and the number of files that failed during processing.
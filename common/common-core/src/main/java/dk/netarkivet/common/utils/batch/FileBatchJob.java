@@ -60,6 +60,9 @@ public abstract class FileBatchJob implements Serializable {
      */
     private Pattern filesToProcess = Pattern.compile(EVERYTHING_REGEXP);
 
+    /** Only files modified at or after this time, in milliseconds since the epoch, are processed. */
+    private long filesChangedSince = 0L;
+
     /** The total number of files processed (including any that generated errors). */
     protected int noOfFilesProcessed = 0;
 
@@ -69,6 +72,12 @@ public abstract class FileBatchJob implements Serializable {
      */
     protected long batchJobTimeout = -1;
 
+    /** Whether the output should be sent in parts while the job runs. */
+    private boolean publishPartialResults = false;
+
+    /** The listener for progress of this job where it was submitted. It is not sent along with the job. */
+    private transient BatchProgressListener progressListener;
+
     /** A Set of files which generated errors. */
     protected Set<File> filesFailed = new HashSet<File>();
 
@@ -162,6 +171,27 @@ public abstract class FileBatchJob implements Serializable {
         return filesToProcess;
     }
 
+    /**
+     * Set this job to process only files, which have been modified at or after a given time. This is used for
+     * retrieving only the entries which have changed since an earlier run. The filename pattern still applies.
+     *
+     * @param time The time in milliseconds since the epoch. 0 means all files.
+     * @throws ArgumentNotValid If the time is negative.
+     */
+    public void processOnlyFilesChangedSince(long time) {
+        ArgumentNotValid.checkNotNegative(time, "long time");
+        filesChangedSince = time;
+    }
+
+    /**
+     * Get the time, where files modified before are not processed.
+     *
+     * @return The time in milliseconds since the epoch. 0 means all files.
+     */
+    public long getFilesChangedSince() {
+        return filesChangedSince;
+    }
+
     /**
      * Return the number of files processed in this job.
      *
@@ -204,6 +234,32 @@ public abstract class FileBatchJob implements Serializable {
         return false;
     }
 
+    /**
+     * Tells whether the output of this job is lines that may be sorted. If so, each bitarchive sorts its own output
+     * before replying, in the byte order of the lines (as the Unix sort command does with LANG=C), and combines
+     * adjacent lines with {@link #combine(String, String)}. The results from the bitarchives can then be merged rather
+     * than sorted by the receiver. Override to return true in inherited classes with line based output.
+     *
+     * @return Whether the output of this job is sorted by the bitarchives. False by default.
+     */
+    public boolean hasSortedOutput() {
+        return false;
+    }
+
+    /**
+     * Combines two adjacent lines of the sorted output of a bitarchive. This is only used if {@link #hasSortedOutput()}
+     * returns true. By default identical lines are combined into one, so each bitarchive only reports a line once.
+     * Override to keep duplicates, or to combine lines in a job specific way. A combined line must not sort after the
+     * given line, or the output will no longer be sorted.
+     *
+     * @param previous The previous line, which may be the result of combining earlier lines.
+     * @param line The next line, which does not sort before previous.
+     * @return The line that replaces both lines, or null if both lines should be kept.
+     */
+    public String combine(String previous, String line) {
+        return previous.equals(line) ? previous : null;
+    }
+
     /**
      * Record an exception that occurred during the processFile of this job and that should be returned with the result.
      * If maxExceptionsReached() returns true, this method silently does nothing.
@@ -292,6 +348,42 @@ public abstract class FileBatchJob implements Serializable {
         this.batchJobTimeout = batchJobTimeout;
     }
 
+    /**
+     * Ask for the output of the job to be sent in parts while the job runs, along with the progress reports. Each part
+     * is the output of the files processed since the previous report, before any sorting. The final result still
+     * contains all the output.
+     *
+     * @param publishPartialResults Whether to send partial results.
+     * @see BatchProgress#getPartialResult()
+     */
+    public void setPublishPartialResults(boolean publishPartialResults) {
+        this.publishPartialResults = publishPartialResults;
+    }
+
+    /**
+     * @return Whether the output should be sent in parts while the job runs.
+     */
+    public boolean isPublishPartialResults() {
+        return publishPartialResults;
+    }
+
+    /**
+     * Set a listener for the progress of this job while it runs. The listener stays where the job is submitted; it is
+     * not sent to where the job runs.
+     *
+     * @param progressListener The listener, or null for none.
+     */
+    public void setProgressListener(BatchProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * @return The listener for the progress of this job, or null if there is none.
+     */
+    public BatchProgressListener getProgressListener() {
+        return progressListener;
+    }
+
     /**
      * This class holds the information about exceptions that occurred in a batchjob.
      */
@@ -96,6 +96,28 @@ public class FileListJob extends FileBatchJob {
     public void finish(OutputStream os) {
     }
 
+    /**
+     * The filenames are sorted by the bitarchives.
+     *
+     * @return true
+     */
+    @Override
+    public boolean hasSortedOutput() {
+        return true;
+    }
+
+    /**
+     * Duplicate lines are kept, since a file found more than once in a bitarchive should be listed as such.
+     *
+     * @param previous The previous line.
+     * @param line The next line.
+     * @return null, so both lines are kept.
+     */
+    @Override
+    public String combine(String previous, String line) {
+        return null;
+    }
+
     /**
      * Return a human-readable representation of a FileListJob.
      *
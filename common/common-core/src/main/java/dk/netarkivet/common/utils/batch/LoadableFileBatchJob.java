@@ -198,4 +198,20 @@ public class LoadableFileBatchJob extends FileBatchJob {
         return loadedJob.postProcess(input, output);
     }
 
+    @Override
+    public boolean hasSortedOutput() {
+        if (loadedJob == null) {
+            loadBatchJob();
+        }
+        return loadedJob.hasSortedOutput();
+    }
+
+    @Override
+    public String combine(String previous, String line) {
+        if (loadedJob == null) {
+            loadBatchJob();
+        }
+        return loadedJob.combine(previous, line);
+    }
+
 }
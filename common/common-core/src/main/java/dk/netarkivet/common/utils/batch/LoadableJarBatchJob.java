@@ -217,6 +217,22 @@ public class LoadableJarBatchJob extends FileBatchJob {
         return loadedJob.postProcess(input, output);
     }
 
+    @Override
+    public boolean hasSortedOutput() {
+        if (loadedJob == null) {
+            loadBatchJob();
+        }
+        return loadedJob.hasSortedOutput();
+    }
+
+    @Override
+    public String combine(String previous, String line) {
+        if (loadedJob == null) {
+            loadBatchJob();
+        }
+        return loadedJob.combine(previous, line);
+    }
+
     /**
      * Method for retrieving the name of the loaded class.
      *
@@ -95,6 +95,17 @@ public class ArchiveExtractCDXJob extends ArchiveBatchJob {
         return ArchiveBatchFilter.EXCLUDE_NON_RESPONSE_RECORDS;
     }
 
+    /**
+     * Records are processed independently of each other, without changing the state of the job, so ranges of records
+     * in large files may be processed in parallel.
+     *
+     * @return true
+     */
+    @Override
+    protected boolean supportsParallelRecordProcessing() {
+        return true;
+    }
+
     /**
      * Initialize any data needed (none).
      *
@@ -207,6 +218,16 @@ public class ArchiveExtractCDXJob extends ArchiveBatchJob {
         }
     }
 
+    /**
+     * CDX lines are sorted by the bitarchives, so the results can be merged rather than sorted.
+     *
+     * @return true
+     */
+    @Override
+    public boolean hasSortedOutput() {
+        return true;
+    }
+
     /**
      * @return Humanly readable description of this instance.
      */
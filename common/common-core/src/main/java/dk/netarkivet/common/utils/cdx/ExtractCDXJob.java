@@ -174,6 +174,16 @@ public class ExtractCDXJob extends ARCBatchJob {
         }
     }
 
+    /**
+     * CDX lines are sorted by the bitarchives, so the results can be merged rather than sorted.
+     *
+     * @return true
+     */
+    @Override
+    public boolean hasSortedOutput() {
+        return true;
+    }
+
     /**
      * @return Humanly readable description of this instance.
      */
@@ -191,6 +191,30 @@ public class DigestIndexer {
      */
     public long writeToIndex(CrawlDataIterator dataIt, String mimefilter, boolean blacklist, String defaultOrigin,
             boolean verbose, boolean skipDuplicates) throws IOException {
+        return writeToIndex(dataIt, mimefilter, blacklist, defaultOrigin, verbose, skipDuplicates, true);
+    }
+
+    /**
+     * Writes the contents of a {@link CrawlDataIterator} to this index.
+     * <p>
+     * This method may be invoked multiple times with different CrawlDataIterators until {@link #close} has been called,
+     * also from several threads at once. Threads sharing the index should not commit, but leave it to the owner of the
+     * index to commit when they are all done.
+     *
+     * @param dataIt The CrawlDataIterator that provides the data to index.
+     * @param mimefilter A regular expression that is used as a filter on the mimetypes to include in the index.
+     * @param blacklist If true then the <code>mimefilter</code> is used as a blacklist for mimetypes. If false then the
+     * <code>mimefilter</code> is treated as a whitelist.
+     * @param defaultOrigin If an item is missing an origin, this default value will be assigned to it. Can be null if
+     * no default origin value should be assigned.
+     * @param verbose If true then progress information will be sent to System.out.
+     * @param skipDuplicates Do not add URLs that are marked as duplicates to the index
+     * @param commit Whether to commit the index when all the items have been added.
+     * @return The number of items added to the index.
+     * @throws IOException If an error occurs writing the index.
+     */
+    public long writeToIndex(CrawlDataIterator dataIt, String mimefilter, boolean blacklist, String defaultOrigin,
+            boolean verbose, boolean skipDuplicates, boolean commit) throws IOException {
         int count = 0;
         int skipped = 0;
         while (dataIt.hasNext()) {
@@ -210,7 +234,9 @@ public class DigestIndexer {
                 skipped++;
             }
         }
-        index.commit();
+        if (commit) {
+            index.commit();
+        }
         if (verbose) {
             System.out.println("Indexed " + count + " items (skipped " + skipped + ")");
         }
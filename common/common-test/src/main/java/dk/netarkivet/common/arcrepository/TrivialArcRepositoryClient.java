@@ -237,6 +237,14 @@ public class TrivialArcRepositoryClient implements ArcRepositoryClient {
         throw new NotImplementedException("TODO: Implement me!");
     }
 
+    public File getAllChecksums(String replicaId, long changedSince) {
+        return getAllChecksums(replicaId);
+    }
+
+    public File getAllFilenames(String replicaId, long changedSince) {
+        return getAllFilenames(replicaId);
+    }
+
     public File correct(String replicaId, String checksum, File file, String credentials) {
         // TODO Auto-generated method stub
         throw new NotImplementedException("TODO: Implement me!");
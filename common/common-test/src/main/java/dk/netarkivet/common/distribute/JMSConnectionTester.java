@@ -31,17 +31,27 @@ import static org.junit.Assert.fail;
 import java.io.Serializable;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Map;
-
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
 import javax.jms.Destination;
 import javax.jms.JMSException;
 import javax.jms.MapMessage;
 import javax.jms.Message;
 import javax.jms.MessageConsumer;
 import javax.jms.MessageListener;
-import javax.jms.MessageProducer;
 import javax.jms.ObjectMessage;
+import javax.jms.Session;
 
 import org.junit.After;
 import org.junit.Before;
@@ -268,8 +278,8 @@ public class JMSConnectionTester {
         String sendName = sendChannel.getName();
 
         // Find message producer for queue.
-        JMSConnectionMockupMQ.TestMessageProducer queueSender = (JMSConnectionMockupMQ.TestMessageProducer) con.producers
-                .get(sendName);
+        JMSConnectionMockupMQ.TestMessageProducer queueSender = (JMSConnectionMockupMQ.TestMessageProducer) con
+                .getLastUsedProducer(sendName);
 
         assertNotNull("Should have created a sender for " + sendName, queueSender);
         ObjectMessage sentSerialMsg = queueSender.messages.get(0);
@@ -284,8 +294,6 @@ public class JMSConnectionTester {
         JMSConnection con = JMSConnectionFactory.getInstance();
         con.initConnection();
 
-        Map<String, MessageProducer> publishersMap = con.producers;
-
         ChannelID sendChannel = Channels.getAllBa();
         ChannelID replyChannel = Channels.getTheBamon();
         NetarkivetMessage msg = new TestMessage(sendChannel, replyChannel, "testMSG");
@@ -294,8 +302,8 @@ public class JMSConnectionTester {
 
         String sendName = sendChannel.getName();
 
-        JMSConnectionMockupMQ.TestMessageProducer topicPublisher = (JMSConnectionMockupMQ.TestMessageProducer) publishersMap
-                .get(sendName);
+        JMSConnectionMockupMQ.TestMessageProducer topicPublisher = (JMSConnectionMockupMQ.TestMessageProducer) con
+                .getLastUsedProducer(sendName);
 
         assertNotNull("Should have created a publisher for " + sendName, topicPublisher);
         ObjectMessage sentSerialMsg = topicPublisher.messages.get(0);
@@ -373,19 +381,17 @@ public class JMSConnectionTester {
 
         NetarkivetMessage msg = new TestMessage(Channels.getTheRepos(), Channels.getTheBamon(), "testMSG");
 
-        Map<String, MessageProducer> sendersMap = con.producers;
-
         con.send(msg);
         String sendName = Channels.getTheRepos().getName();
-        JMSConnectionMockupMQ.TestMessageProducer queueSender = (JMSConnectionMockupMQ.TestMessageProducer) sendersMap
-                .get(sendName);
+        JMSConnectionMockupMQ.TestMessageProducer queueSender = (JMSConnectionMockupMQ.TestMessageProducer) con
+                .getLastUsedProducer(sendName);
         ObjectMessage sentSerialMsg = (queueSender.messages.get(0));
         NetarkivetMessage sentMessage = (NetarkivetMessage) sentSerialMsg.getObject();
         sentMessage.setNotOk("Test error");
         con.reply(sentMessage);
 
         String replyName = Channels.getTheBamon().getName();
-        queueSender = (JMSConnectionMockupMQ.TestMessageProducer) sendersMap.get(replyName);
+        queueSender = (JMSConnectionMockupMQ.TestMessageProducer) con.getLastUsedProducer(replyName);
         assertNotNull("Should have a sender for " + replyName, queueSender);
 
         ObjectMessage receivedSerialMsg = queueSender.messages.get(0);
@@ -409,6 +415,117 @@ public class JMSConnectionTester {
         }
     }
 
+    @Test
+    public void testSendAsync() throws InterruptedException {
+        Settings.set(CommonSettings.JMS_BROKER_CLASS, "dk.netarkivet.common.distribute.JMSConnectionMockupMQ");
+        JMSConnection con = JMSConnectionFactory.getInstance();
+
+        final int count = 10;
+        final CountDownLatch latch = new CountDownLatch(count);
+        final List<NetarkivetMessage> completed = Collections.synchronizedList(new ArrayList<NetarkivetMessage>());
+        JMSSendCallback callback = new JMSSendCallback() {
+            public void onCompletion(NetarkivetMessage msg) {
+                completed.add(msg);
+                latch.countDown();
+            }
+
+            public void onFailure(NetarkivetMessage msg, Exception e) {
+                latch.countDown();
+            }
+        };
+        List<NetarkivetMessage> sent = new ArrayList<NetarkivetMessage>();
+        for (int i = 0; i < count; i++) {
+            NetarkivetMessage msg = new TestMessage(Channels.getTheRepos(), Channels.getTheBamon(), "testMSG" + i);
+            sent.add(msg);
+            con.sendAsync(msg, callback);
+        }
+        assertTrue("All messages should be sent", latch.await(10, TimeUnit.SECONDS));
+        assertEquals("Messages should be sent in order", sent, completed);
+        for (NetarkivetMessage msg : sent) {
+            assertTrue("Message should now have an id", msg.hasBeenSent());
+        }
+        JMSSendStatistics statistics = con.getSendStatistics().get(Channels.getTheRepos().getName());
+        assertEquals("Should have counted the messages", count, statistics.getMessageCount());
+        assertEquals("Should have no failures", 0, statistics.getFailureCount());
+    }
+
+    /**
+     * Tests that sending from many short-lived threads reuses a bounded number of sessions.
+     */
+    @Test
+    public void testSendFromShortLivedThreadsBoundsSessions() throws InterruptedException {
+        Settings.set(CommonSettings.JMS_BROKER_CLASS, "dk.netarkivet.common.distribute.JMSConnectionMockupMQ");
+        Settings.set(CommonSettings.JMS_SENDER_SESSIONS, "2");
+        final JMSConnection con = JMSConnectionFactory.getInstance();
+
+        final List<NetarkivetMessage> sent = Collections.synchronizedList(new ArrayList<NetarkivetMessage>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 50; i++) {
+            final NetarkivetMessage msg = new TestMessage(Channels.getTheRepos(), Channels.getTheBamon(), "testMSG" + i);
+            Thread thread = new Thread() {
+                public void run() {
+                    con.send(msg);
+                    sent.add(msg);
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join(10000);
+        }
+        assertEquals("All messages should be sent", 50, sent.size());
+        for (NetarkivetMessage msg : sent) {
+            assertTrue("Message should now have an id", msg.hasBeenSent());
+        }
+        assertTrue("Should not open more sessions than allowed, but had " + con.getSenderSessionCount(),
+                con.getSenderSessionCount() <= 2);
+        assertTrue("Should have kept a session for sending", con.getSenderSessionCount() > 0);
+    }
+
+    /**
+     * Tests that a channel whose dispatcher has a full queue does not hold up the delivery of messages on other
+     * channels.
+     */
+    @Test
+    public void testSaturatedChannelDoesNotBlockOtherChannels() throws InterruptedException {
+        Settings.set(CommonSettings.JMS_BROKER_CLASS, SessionThreadMockupMQ.class.getName());
+        Settings.set(CommonSettings.JMS_CONSUMER_CHANNELS, "THE_REPOS", "THE_BAMON");
+        Settings.set(CommonSettings.JMS_CONSUMER_THREADS, "1");
+        Settings.set(CommonSettings.JMS_CONSUMER_HIGH_WATER_MARK, "1");
+        JMSConnection con = JMSConnectionFactory.getInstance();
+
+        final CountDownLatch release = new CountDownLatch(1);
+        MessageListener slowListener = new MessageListener() {
+            public void onMessage(Message message) {
+                try {
+                    release.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // Go on
+                }
+            }
+        };
+        final CountDownLatch received = new CountDownLatch(1);
+        MessageListener otherListener = new MessageListener() {
+            public void onMessage(Message message) {
+                received.countDown();
+            }
+        };
+        con.setListener(Channels.getTheRepos(), slowListener);
+        con.setListener(Channels.getTheBamon(), otherListener);
+        try {
+            // The delivery of these messages is held up while the first is processed
+            for (int i = 0; i < 3; i++) {
+                con.send(new TestMessage(Channels.getTheRepos(), Channels.getError(), "testMSG" + i));
+            }
+            con.send(new TestMessage(Channels.getTheBamon(), Channels.getError(), "otherMSG"));
+            assertTrue("Messages on other channels should be delivered while a channel is saturated",
+                    received.await(10, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+    }
+
     private void assertMethodIsFinal(Class aClass, String name, Class[] parameterTypes) {
         try {
             Method m = aClass.getMethod(name, parameterTypes);
@@ -693,6 +810,65 @@ public class JMSConnectionTester {
 
     }
 
+    /**
+     * A JMS connection mockup where each session delivers the messages of its consumers in a single thread, like a
+     * real broker.
+     */
+    public static class SessionThreadMockupMQ extends JMSConnectionMockupMQ {
+        public static synchronized JMSConnection getInstance() {
+            if (instance == null) {
+                instance = new SessionThreadMockupMQ();
+                instance.initConnection();
+            }
+            return instance;
+        }
+
+        protected ConnectionFactory getConnectionFactory() throws JMSException {
+            return new TestConnectionFactory() {
+                public Connection createConnection() throws JMSException {
+                    return new TestConnection() {
+                        public Session createSession(boolean b, int i) throws JMSException {
+                            return new SessionThreadSession();
+                        }
+                    };
+                }
+            };
+        }
+    }
+
+    /**
+     * A mockup session delivering the messages of its consumers in a single thread.
+     */
+    private static class SessionThreadSession extends JMSConnectionMockupMQ.TestSession {
+        private final ExecutorService deliveryThread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "SessionThreadSession");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        public MessageConsumer createConsumer(Destination destination) throws JMSException {
+            return new JMSConnectionMockupMQ.TestMessageConsumer(destination) {
+                public void setMessageListener(final MessageListener messageListener) throws JMSException {
+                    super.setMessageListener(new MessageListener() {
+                        public void onMessage(final Message message) {
+                            deliveryThread.execute(new Runnable() {
+                                public void run() {
+                                    messageListener.onMessage(message);
+                                }
+                            });
+                        }
+                    });
+                }
+            };
+        }
+
+        public void close() throws JMSException {
+            deliveryThread.shutdownNow();
+        }
+    }
+
     private static class TestMessage extends NetarkivetMessage {
         private String testID;
 
@@ -63,6 +63,17 @@ public class StringRemoteFile implements RemoteFile {
         FileUtils.writeBinaryFile(destFile, contents.getBytes());
     }
 
+    /**
+     * Copy remotefile to local disk storage, and return the MD5 checksum of the contents.
+     *
+     * @param destFile local File
+     * @return the MD5 checksum of the copy
+     */
+    public String copyToWithMd5(File destFile) {
+        copyTo(destFile);
+        return getChecksum();
+    }
+
     /**
      * Write the contents of this remote file to an output stream.
      *
@@ -66,6 +66,13 @@ public class TestRemoteFile extends HTTPRemoteFile implements RemoteFile {
         super.copyTo(destFile);
     }
 
+    public String copyToWithMd5(File destFile) {
+        if (failsOnCopy) {
+            throw new IOFailure("Expected IO error in copying " + "- you told me so!");
+        }
+        return super.copyToWithMd5(destFile);
+    }
+
     public void appendTo(OutputStream out) {
         if (failsOnCopy) {
             throw new IOFailure("Expected IO error in copying " + "- you told me so!");
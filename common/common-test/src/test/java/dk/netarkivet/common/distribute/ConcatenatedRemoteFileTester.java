@@ -0,0 +1,205 @@
+/*
+ * #%L
+ * Netarchivesuite - common - test
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.distribute;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.utils.StreamUtils;
+
+/** Tests for ConcatenatedRemoteFile. */
+@SuppressWarnings({"serial"})
+public class ConcatenatedRemoteFileTester {
+
+    @Test
+    public void testConcatenation() throws Exception {
+        BytesRemoteFile part1 = new BytesRemoteFile("one", "first\n");
+        BytesRemoteFile part2 = new BytesRemoteFile("two", "");
+        BytesRemoteFile part3 = new BytesRemoteFile("three", "third\n");
+        ConcatenatedRemoteFile rf = new ConcatenatedRemoteFile(Arrays.<RemoteFile>asList(part1, part2, part3));
+
+        assertEquals("Size should be the sum of the parts", 12L, rf.getSize());
+        assertEquals("Name should list the parts", "one,two,three", rf.getName());
+        assertEquals("Parts should be available in order", Arrays.asList(part1, part2, part3), rf.getParts());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        rf.appendTo(out);
+        assertEquals("first\nthird\n", out.toString());
+
+        rf.cleanup();
+        assertTrue("All parts should be cleaned up", part1.cleanedUp && part2.cleanedUp && part3.cleanedUp);
+    }
+
+    @Test
+    public void testInputStreamIsLazy() throws Exception {
+        BytesRemoteFile part1 = new BytesRemoteFile("one", "ab");
+        BytesRemoteFile part2 = new BytesRemoteFile("two", "cd");
+        ConcatenatedRemoteFile rf = new ConcatenatedRemoteFile(Arrays.<RemoteFile>asList(part1, part2));
+
+        ConcatenatedRemoteFile.ConcatenatingInputStream in = rf.getConcatenatedInputStream();
+        assertFalse("Nothing should be opened before reading", in.isStarted());
+        assertEquals(0, part1.opened);
+
+        assertEquals('a', in.read());
+        assertTrue("Reading should have begun", in.isStarted());
+        assertEquals("Only the first part should be opened", 0, part2.opened);
+        byte[] buf = new byte[10];
+        assertEquals("A read should not cross parts", 1, in.read(buf, 0, buf.length));
+        assertEquals('b', buf[0]);
+        assertEquals(2, in.read(buf, 0, buf.length));
+        assertEquals("cd", new String(buf, 0, 2));
+        assertEquals(-1, in.read());
+        assertEquals(-1, in.read(buf, 0, buf.length));
+        assertEquals("Each part should be opened once", 1, part1.opened);
+        assertEquals("Each part should be opened once", 1, part2.opened);
+        assertTrue("Parts read to the end should be closed", part1.closed && part2.closed);
+        in.close();
+    }
+
+    @Test
+    public void testCloseStopsReading() throws Exception {
+        BytesRemoteFile part1 = new BytesRemoteFile("one", "ab");
+        BytesRemoteFile part2 = new BytesRemoteFile("two", "cd");
+        ConcatenatedRemoteFile.ConcatenatingInputStream in = new ConcatenatedRemoteFile(
+                Arrays.<RemoteFile>asList(part1, part2)).getConcatenatedInputStream();
+        in.read();
+        in.close();
+        assertTrue("The open part should be closed", part1.closed);
+        assertEquals("Later parts should never be opened", 0, part2.opened);
+        try {
+            in.read();
+            fail("Reading a closed stream should fail");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSortedPartsAreMerged() throws Exception {
+        BytesRemoteFile part1 = new BytesRemoteFile("one", "a\nc\ne\n");
+        BytesRemoteFile part2 = new BytesRemoteFile("two", "b\nd");
+        ConcatenatedRemoteFile rf = new ConcatenatedRemoteFile(Arrays.<RemoteFile>asList(part1, part2), true);
+        assertTrue(rf.hasSortedParts());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        rf.appendTo(out);
+        assertEquals("Sorted parts should be merged", "a\nb\nc\nd\ne\n", out.toString());
+        assertTrue("Parts should be closed after merging", part1.closed && part2.closed);
+
+        out = new ByteArrayOutputStream();
+        StreamUtils.copyInputStreamToOutputStream(rf.getConcatenatedInputStream(), out);
+        assertEquals("The concatenation should still be available", "a\nc\ne\nb\nd", out.toString());
+    }
+
+    @Test
+    public void testEmptyAndInvalid() throws Exception {
+        ConcatenatedRemoteFile rf = new ConcatenatedRemoteFile(new ArrayList<RemoteFile>());
+        assertEquals(0L, rf.getSize());
+        assertEquals(-1, rf.getInputStream().read());
+        try {
+            new ConcatenatedRemoteFile(null);
+            fail("Should not accept null");
+        } catch (ArgumentNotValid e) {
+            // expected
+        }
+        List<RemoteFile> parts = new ArrayList<RemoteFile>();
+        parts.add(null);
+        try {
+            new ConcatenatedRemoteFile(parts);
+            fail("Should not accept null parts");
+        } catch (ArgumentNotValid e) {
+            // expected
+        }
+    }
+
+    /** A remote file in memory, recording how it is used. */
+    private static class BytesRemoteFile implements RemoteFile {
+        private final String name;
+        private final byte[] data;
+        int opened;
+        boolean closed;
+        boolean cleanedUp;
+
+        BytesRemoteFile(String name, String data) {
+            this.name = name;
+            this.data = data.getBytes();
+        }
+
+        public void copyTo(File destFile) {
+            throw new IOFailure("Not used");
+        }
+
+        public String copyToWithMd5(File destFile) {
+            throw new IOFailure("Not used");
+        }
+
+        public void appendTo(OutputStream out) {
+            try {
+                out.write(data);
+            } catch (IOException e) {
+                throw new IOFailure("Could not write", e);
+            }
+        }
+
+        public InputStream getInputStream() {
+            opened++;
+            return new ByteArrayInputStream(data) {
+                public void close() {
+                    closed = true;
+                }
+            };
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getChecksum() {
+            return null;
+        }
+
+        public void cleanup() {
+            cleanedUp = true;
+        }
+
+        public long getSize() {
+            return data.length;
+        }
+    }
+}
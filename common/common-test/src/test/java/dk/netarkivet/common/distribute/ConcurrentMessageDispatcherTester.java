@@ -0,0 +1,262 @@
+/*
+ * #%L
+ * Netarchivesuite - common - test
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.distribute;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+
+import org.junit.After;
+import org.junit.Test;
+
+import dk.netarkivet.common.distribute.JMSConnectionMockupMQ.TestObjectMessage;
+
+/**
+ * Unit tests for the {@link ConcurrentMessageDispatcher} class.
+ */
+public class ConcurrentMessageDispatcherTester {
+
+    private ConcurrentMessageDispatcher dispatcher;
+
+    @After
+    public void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.close();
+        }
+    }
+
+    @Test
+    public void testMessagesWithSameKeyKeepOrder() throws Exception {
+        final int keys = 5;
+        final int messagesPerKey = 200;
+        final CountDownLatch done = new CountDownLatch(keys * messagesPerKey);
+        final Map<String, List<Integer>> received = Collections.synchronizedMap(new HashMap<String, List<Integer>>());
+        MessageListener listener = new MessageListener() {
+            @Override
+            public void onMessage(Message msg) {
+                try {
+                    String key = msg.getStringProperty(ConcurrentMessageDispatcher.ORDERING_KEY_PROPERTY);
+                    List<Integer> list;
+                    synchronized (received) {
+                        list = received.get(key);
+                        if (list == null) {
+                            list = Collections.synchronizedList(new ArrayList<Integer>());
+                            received.put(key, list);
+                        }
+                    }
+                    list.add((Integer) ((TestObjectMessage) msg).getObject());
+                } catch (JMSException e) {
+                    throw new RuntimeException(e);
+                }
+                done.countDown();
+            }
+        };
+        dispatcher = new ConcurrentMessageDispatcher("TEST_CHANNEL", listener, 3, 10);
+        for (int i = 0; i < messagesPerKey; i++) {
+            for (int k = 0; k < keys; k++) {
+                dispatcher.onMessage(createMessage("file-" + k, i));
+            }
+        }
+        assertTrue("All messages should be processed", done.await(30, TimeUnit.SECONDS));
+        assertEquals(keys, received.size());
+        for (List<Integer> list : received.values()) {
+            assertEquals(messagesPerKey, list.size());
+            for (int i = 0; i < messagesPerKey; i++) {
+                assertEquals("Messages with the same key should be processed in order", Integer.valueOf(i),
+                        list.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testUnrelatedMessagesAreProcessedConcurrently() throws Exception {
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        MessageListener listener = new MessageListener() {
+            @Override
+            public void onMessage(Message msg) {
+                bothStarted.countDown();
+                try {
+                    release.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // Go on
+                }
+            }
+        };
+        dispatcher = new ConcurrentMessageDispatcher("TEST_CHANNEL", listener, 2, 10);
+        String[] keys = findKeysForDifferentWorkers();
+        dispatcher.onMessage(createMessage(keys[0], 1));
+        dispatcher.onMessage(createMessage(keys[1], 2));
+        assertTrue("Messages with different keys should be processed concurrently",
+                bothStarted.await(30, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    public void testBackpressureAtHighWaterMark() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        MessageListener listener = new MessageListener() {
+            @Override
+            public void onMessage(Message msg) {
+                try {
+                    release.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // Go on
+                }
+            }
+        };
+        dispatcher = new ConcurrentMessageDispatcher("TEST_CHANNEL", listener, 1, 2);
+        final CountDownLatch delivered = new CountDownLatch(1);
+        Thread jmsThread = new Thread() {
+            public void run() {
+                // One message being processed, two queued, and the fourth must wait
+                for (int i = 0; i < 4; i++) {
+                    dispatcher.onMessage(createMessage("key", i));
+                }
+                delivered.countDown();
+            }
+        };
+        jmsThread.start();
+        assertFalse("Delivery should block when the queue is full", delivered.await(1, TimeUnit.SECONDS));
+        assertEquals(2, dispatcher.getQueuedMessageCount());
+        release.countDown();
+        assertTrue("Delivery should continue when there is room", delivered.await(30, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testMessagesAreAcknowledgedAfterProcessing() throws Exception {
+        final AtomicInteger processed = new AtomicInteger();
+        MessageListener listener = new MessageListener() {
+            @Override
+            public void onMessage(Message msg) {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    // Go on
+                }
+                processed.incrementAndGet();
+            }
+        };
+        dispatcher = new ConcurrentMessageDispatcher("TEST_CHANNEL", listener, 2, 2);
+        assertEquals(4, dispatcher.getAcknowledgeInterval());
+        List<AcknowledgedMessage> messages = new ArrayList<AcknowledgedMessage>();
+        for (int i = 0; i < 5; i++) {
+            messages.add(new AcknowledgedMessage(i, processed));
+        }
+        for (int i = 0; i < 3; i++) {
+            dispatcher.onMessage(messages.get(i));
+        }
+        for (AcknowledgedMessage message : messages) {
+            assertEquals("No message should be acknowledged before the interval is reached", -1,
+                    message.processedWhenAcknowledged);
+        }
+        dispatcher.onMessage(messages.get(3));
+        assertEquals("The messages received should all be processed when acknowledged", 4,
+                messages.get(3).processedWhenAcknowledged);
+        dispatcher.onMessage(messages.get(4));
+        assertEquals(-1, messages.get(4).processedWhenAcknowledged);
+        dispatcher.close();
+        assertEquals("The remaining messages should be acknowledged when the dispatcher is closed", 5,
+                messages.get(4).processedWhenAcknowledged);
+        for (int i = 0; i < 3; i++) {
+            assertEquals("Earlier messages are acknowledged along with the last one", -1,
+                    messages.get(i).processedWhenAcknowledged);
+        }
+    }
+
+    @Test
+    public void testOrderingKeyIsSentWithKeyedMessages() throws Exception {
+        TestObjectMessage message = new TestObjectMessage(null);
+        ConcurrentMessageDispatcher.setOrderingKey(message, new TestKeyedMessage("file.warc"));
+        assertEquals("file.warc", ConcurrentMessageDispatcher.getOrderingKey(message));
+        message = new TestObjectMessage(null);
+        ConcurrentMessageDispatcher.setOrderingKey(message, new TestKeyedMessage(null));
+        assertEquals(null, ConcurrentMessageDispatcher.getOrderingKey(message));
+    }
+
+    private String[] findKeysForDifferentWorkers() {
+        String first = "key-0";
+        for (int i = 1;; i++) {
+            String other = "key-" + i;
+            if (dispatcher.getWorkerIndex(other) != dispatcher.getWorkerIndex(first)) {
+                return new String[] {first, other};
+            }
+        }
+    }
+
+    private static TestObjectMessage createMessage(String key, int value) {
+        TestObjectMessage message = new TestObjectMessage(Integer.valueOf(value));
+        try {
+            message.setStringProperty(ConcurrentMessageDispatcher.ORDERING_KEY_PROPERTY, key);
+        } catch (JMSException e) {
+            throw new RuntimeException(e);
+        }
+        return message;
+    }
+
+    /** A message remembering how many messages had been processed when it was acknowledged. */
+    @SuppressWarnings("serial")
+    private static class AcknowledgedMessage extends TestObjectMessage {
+        private final AtomicInteger processed;
+        private volatile int processedWhenAcknowledged = -1;
+
+        AcknowledgedMessage(int value, AtomicInteger processed) {
+            super(Integer.valueOf(value));
+            this.processed = processed;
+        }
+
+        @Override
+        public void acknowledge() throws JMSException {
+            processedWhenAcknowledged = processed.get();
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static class TestKeyedMessage extends NetarkivetMessage implements KeyedMessage {
+        private final String key;
+
+        TestKeyedMessage(String key) {
+            super(Channels.getAnyBa(), Channels.getError());
+            this.key = key;
+        }
+
+        @Override
+        public String getOrderingKey() {
+            return key;
+        }
+    }
+
+}
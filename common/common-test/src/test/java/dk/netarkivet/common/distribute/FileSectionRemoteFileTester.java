@@ -0,0 +1,145 @@
+/*
+ * #%L
+ * Netarchivesuite - common - test
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.distribute;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.common.utils.StreamUtils;
+import dk.netarkivet.testutils.preconfigured.MoveTestFiles;
+import dk.netarkivet.testutils.preconfigured.ReloadSettings;
+
+/** Tests for FileSectionRemoteFile and the serving of file sections by the registry. */
+@SuppressWarnings({"serial"})
+public class FileSectionRemoteFileTester {
+    MoveTestFiles mtf = new MoveTestFiles(TestInfo.ORIGINALS_DIR, TestInfo.WORKING_DIR);
+    ReloadSettings rs = new ReloadSettings();
+
+    private static final long OFFSET = 20L;
+    private static final long LENGTH = 50L;
+    private static final long TIME_TO_LIVE = 60000L;
+
+    @Before
+    public void setUp() {
+        rs.setUp();
+        mtf.setUp();
+        HTTPRemoteFileRegistry.getInstance().cleanup();
+    }
+
+    @After
+    public void tearDown() {
+        HTTPRemoteFileRegistry.getInstance().cleanup();
+        mtf.tearDown();
+        rs.tearDown();
+    }
+
+    @Test
+    public void testGetInputStream() throws Exception {
+        byte[] expected = getSection(OFFSET, LENGTH);
+        RemoteFile rf = new ForceRemoteFileSectionRemoteFile(TestInfo.FILE1, OFFSET, LENGTH, TIME_TO_LIVE);
+        assertEquals("Size should be the length of the section", LENGTH, rf.getSize());
+        assertNull("Checksums are not used", rf.getChecksum());
+        InputStream in = rf.getInputStream();
+        assertArrayEquals("Should get the bytes of the section", expected, StreamUtils.inputStreamToBytes(in,
+                (int) LENGTH));
+        in.close();
+        try {
+            rf.getInputStream();
+            fail("The section should be unregistered after the first transfer");
+        } catch (IOFailure e) {
+            // expected
+        }
+        assertTrue("The file itself should never be deleted", TestInfo.FILE1.exists());
+
+        rf = new FileSectionRemoteFile(TestInfo.FILE1, OFFSET, LENGTH, TIME_TO_LIVE);
+        in = rf.getInputStream();
+        assertArrayEquals("Should read the section of a local file directly", expected,
+                StreamUtils.inputStreamToBytes(in, (int) LENGTH));
+        in.close();
+    }
+
+    @Test
+    public void testRangeRequestWithinSection() throws Exception {
+        FileSectionRemoteFile rf = new ForceRemoteFileSectionRemoteFile(TestInfo.FILE1, OFFSET, LENGTH,
+                TIME_TO_LIVE);
+        HttpURLConnection connection = (HttpURLConnection) rf.url.openConnection();
+        connection.setRequestProperty("Range", "bytes=10-19");
+        assertEquals(206, connection.getResponseCode());
+        assertEquals("Range should be relative to the section", "bytes 10-19/" + LENGTH,
+                connection.getHeaderField("Content-Range"));
+        assertArrayEquals(getSection(OFFSET + 10, 10), StreamUtils.inputStreamToBytes(connection.getInputStream(),
+                10));
+    }
+
+    @Test
+    public void testExpiredSectionsAreUnregistered() throws Exception {
+        HTTPRemoteFileRegistry registry = HTTPRemoteFileRegistry.getInstance();
+        URL url = registry.registerFileSection(TestInfo.FILE1, OFFSET, LENGTH, 1L);
+        Thread.sleep(10);
+        registry.registerFileSection(TestInfo.FILE1, OFFSET, LENGTH, TIME_TO_LIVE);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        assertEquals("Expired section should no longer be served", 404, connection.getResponseCode());
+    }
+
+    @Test
+    public void testSectionMustBeWithinFile() {
+        try {
+            HTTPRemoteFileRegistry.getInstance().registerFileSection(TestInfo.FILE1, TestInfo.FILE1.length(), 1L,
+                    TIME_TO_LIVE);
+            fail("Section beyond the end of the file should not be registered");
+        } catch (ArgumentNotValid e) {
+            // expected
+        }
+    }
+
+    private byte[] getSection(long offset, long length) {
+        byte[] section = new byte[(int) length];
+        System.arraycopy(FileUtils.readBinaryFile(TestInfo.FILE1), (int) offset, section, 0, (int) length);
+        return section;
+    }
+
+    private class ForceRemoteFileSectionRemoteFile extends FileSectionRemoteFile {
+        public ForceRemoteFileSectionRemoteFile(File file, long offset, long length, long timeToLive) {
+            super(file, offset, length, timeToLive);
+        }
+
+        protected boolean isLocal() {
+            return false;
+        }
+    }
+}
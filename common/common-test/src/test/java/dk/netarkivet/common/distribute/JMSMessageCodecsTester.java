@@ -0,0 +1,158 @@
+/*
+ * #%L
+ * Netarchivesuite - common - test
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.distribute;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+
+/**
+ * Unit tests for the {@link JMSMessageCodecs} and {@link BinaryMessageCodec} classes.
+ */
+@SuppressWarnings({"serial"})
+public class JMSMessageCodecsTester {
+
+    private static final ChannelID toQ = Channels.getAnyBa();
+    private static final ChannelID replyToQ = Channels.getError();
+
+    @Test
+    public void testBinaryChannels() {
+        JMSMessageCodecs codecs = new JMSMessageCodecs(Collections.<JMSMessageCodec>singletonList(new TestCodec()),
+                Arrays.asList("", "ANY_BA", "MONITOR"), 0);
+        assertTrue(codecs.isBinaryChannel(toQ.getName()));
+        assertFalse(codecs.isBinaryChannel(replyToQ.getName()));
+        assertFalse("Only whole channel name parts should match", codecs.isBinaryChannel("PROD_COMMON_ANY_BAR"));
+        assertTrue(codecs.isBinaryChannel("PROD_COMMON_MONITOR"));
+
+        TestMessage msg = new TestMessage(toQ, replyToQ, "text", null);
+        assertSame(TestCodec.class, codecs.getCodec(msg, toQ.getName()).getClass());
+        assertNull(codecs.getCodec(msg, replyToQ.getName()));
+        assertNull("Subclasses should not be encoded", codecs.getCodec(new TestMessage(toQ, replyToQ, "", null) {
+        }, toQ.getName()));
+
+        codecs = new JMSMessageCodecs(Collections.<JMSMessageCodec>singletonList(new TestCodec()),
+                Collections.singletonList("*"), 0);
+        assertTrue(codecs.isBinaryChannel(replyToQ.getName()));
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        JMSMessageCodecs codecs = new JMSMessageCodecs(Collections.<JMSMessageCodec>singletonList(new TestCodec()),
+                Collections.singletonList("*"), 1000);
+        Set<Long> ids = new HashSet<Long>();
+        for (long i = 1; i < 2000; i += 3) {
+            ids.add(i);
+        }
+        ids.add(Long.MAX_VALUE);
+        TestMessage msg = new TestMessage(toQ, replyToQ, "\u00c6blegr\u00f8d \u2603", ids);
+        JMSConnectionMockupMQ.updateMsgID(msg, "ID:1");
+        msg.setNotOk("first error");
+        msg.setNotOk("second error");
+
+        byte[] encoded = codecs.encode(new TestCodec(), msg);
+        TestMessage decoded = (TestMessage) codecs.decode(new TestCodec().getName(), false, encoded);
+        assertEquals(msg.text, decoded.text);
+        assertEquals(ids, decoded.ids);
+        assertEquals(toQ, decoded.getTo());
+        assertEquals(replyToQ, decoded.getReplyTo());
+        assertEquals("ID:1", decoded.getID());
+        assertFalse(decoded.isOk());
+        assertEquals(msg.getErrMsg(), decoded.getErrMsg());
+        decoded = (TestMessage) codecs.decode(new TestCodec().getName(), true, JMSMessageCodecs.deflate(encoded));
+        assertEquals(ids, decoded.ids);
+        assertTrue("Job IDs should be delta encoded, was " + encoded.length + " bytes", encoded.length < 2 * ids.size()
+                + 100);
+
+        decoded = (TestMessage) codecs.decode(new TestCodec().getName(), false,
+                codecs.encode(new TestCodec(), new TestMessage(toQ, replyToQ, null, null)));
+        assertNull(decoded.text);
+        assertNull(decoded.ids);
+        assertTrue(decoded.isOk());
+        assertFalse(decoded.hasBeenSent());
+    }
+
+    @Test
+    public void testUnknownCodec() {
+        JMSMessageCodecs codecs = new JMSMessageCodecs(Collections.<JMSMessageCodec>emptyList(),
+                Collections.singletonList("*"), 0);
+        try {
+            codecs.decode("NoSuchCodec/1", false, new byte[0]);
+            fail("Should fail on unknown codec");
+        } catch (ArgumentNotValid e) {
+            // Expected
+        }
+        try {
+            new JMSMessageCodecs(Arrays.<JMSMessageCodec>asList(new TestCodec(), new TestCodec()),
+                    Collections.<String>emptyList(), 0);
+            fail("Should fail on two codecs for the same message class");
+        } catch (ArgumentNotValid e) {
+            // Expected
+        }
+    }
+
+    /** A message with a string and a set of IDs. */
+    private static class TestMessage extends NetarkivetMessage {
+        final String text;
+        final Set<Long> ids;
+
+        TestMessage(ChannelID to, ChannelID replyTo, String text, Set<Long> ids) {
+            super(to, replyTo);
+            this.text = text;
+            this.ids = ids;
+        }
+    }
+
+    /** Codec for {@link TestMessage}. */
+    private static class TestCodec extends BinaryMessageCodec<TestMessage> {
+        TestCodec() {
+            super("TestMessage/1", TestMessage.class);
+        }
+
+        @Override
+        protected void writeBody(TestMessage msg, DataOutput out) throws IOException {
+            writeString(out, msg.text);
+            writeIdSet(out, msg.ids);
+        }
+
+        @Override
+        protected TestMessage readBody(DataInput in) throws IOException {
+            return new TestMessage(Channels.getTheRepos(), Channels.getTheBamon(), readString(in), readIdSet(in));
+        }
+    }
+
+}
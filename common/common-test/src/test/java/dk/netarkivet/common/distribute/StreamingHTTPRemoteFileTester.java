@@ -0,0 +1,160 @@
+/*
+ * #%L
+ * Netarchivesuite - common - test
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.distribute;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.utils.ChecksumCalculator;
+import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.common.utils.StreamUtils;
+import dk.netarkivet.testutils.preconfigured.MoveTestFiles;
+import dk.netarkivet.testutils.preconfigured.ReloadSettings;
+import dk.netarkivet.testutils.preconfigured.UseTestRemoteFile;
+
+/** Tests for StreamingHTTPRemoteFile and the range support of the registry. */
+@SuppressWarnings({"serial"})
+public class StreamingHTTPRemoteFileTester {
+    MoveTestFiles mtf = new MoveTestFiles(TestInfo.ORIGINALS_DIR, TestInfo.WORKING_DIR);
+    UseTestRemoteFile utrf = new UseTestRemoteFile();
+    ReloadSettings rs = new ReloadSettings();
+
+    @Before
+    public void setUp() {
+        rs.setUp();
+        utrf.setUp();
+        mtf.setUp();
+        HTTPRemoteFileRegistry.getInstance().cleanup();
+    }
+
+    @After
+    public void tearDown() {
+        HTTPRemoteFileRegistry.getInstance().cleanup();
+        mtf.tearDown();
+        utrf.tearDown();
+        rs.tearDown();
+    }
+
+    @Test
+    public void testCopyToAsOneStream() throws Exception {
+        String contents = FileUtils.readFile(TestInfo.FILE1);
+        StreamingHTTPRemoteFile rf = new ForceRemoteStreamingHTTPRemoteFile(TestInfo.FILE1, true, false, false);
+        File tempFile = File.createTempFile("TEST", "COPYTO", TestInfo.WORKING_DIR);
+        rf.copyTo(tempFile);
+        assertEquals("Files should be equal", contents, FileUtils.readFile(tempFile));
+        assertTrue("Original file should still exist when not deletable", TestInfo.FILE1.exists());
+        try {
+            rf.copyTo(File.createTempFile("TEST", "COPYTO", TestInfo.WORKING_DIR));
+            fail("Multiple copies should not be allowed");
+        } catch (IOFailure e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCopyToAsParallelRanges() throws Exception {
+        Settings.set(StreamingHTTPRemoteFile.STREAMING_HTTPREMOTEFILE_MIN_RANGE_SIZE, "100");
+        Settings.set(StreamingHTTPRemoteFile.STREAMING_HTTPREMOTEFILE_RANGE_STREAMS, "4");
+        String contents = FileUtils.readFile(TestInfo.FILE1);
+        StreamingHTTPRemoteFile rf = new ForceRemoteStreamingHTTPRemoteFile(TestInfo.FILE1, true, false, true);
+        // Two receivers fetching the same file
+        File tempFile = File.createTempFile("TEST", "COPYTO", TestInfo.WORKING_DIR);
+        File tempFile2 = File.createTempFile("TEST", "COPYTO", TestInfo.WORKING_DIR);
+        rf.copyTo(tempFile);
+        rf.copyTo(tempFile2);
+        assertEquals("Files should be equal", contents, FileUtils.readFile(tempFile));
+        assertEquals("Files should be equal", contents, FileUtils.readFile(tempFile2));
+        assertEquals("Should get right checksum", ChecksumCalculator.calculateMd5(TestInfo.FILE1), rf.getChecksum());
+    }
+
+    @Test
+    public void testGetChecksum() throws Exception {
+        StreamingHTTPRemoteFile rf = new ForceRemoteStreamingHTTPRemoteFile(TestInfo.FILE1, false, false, true);
+        assertNull("Should get null (no checksum requested)", rf.getChecksum());
+        rf = new ForceRemoteStreamingHTTPRemoteFile(TestInfo.FILE1, true, false, true);
+        assertEquals("Should get right checksum before transfer", ChecksumCalculator.calculateMd5(TestInfo.FILE1),
+                rf.getChecksum());
+        rf = new ForceRemoteStreamingHTTPRemoteFile(TestInfo.FILE1, true, false, true);
+        InputStream in = rf.getInputStream();
+        StreamUtils.getInputStreamAsString(in);
+        assertEquals("Should get right checksum after transfer", ChecksumCalculator.calculateMd5(TestInfo.FILE1),
+                rf.getChecksum());
+    }
+
+    @Test
+    public void testRangeRequest() throws Exception {
+        byte[] contents = FileUtils.readBinaryFile(TestInfo.FILE1);
+        StreamingHTTPRemoteFile rf = new ForceRemoteStreamingHTTPRemoteFile(TestInfo.FILE1, false, false, true);
+        HttpURLConnection connection = (HttpURLConnection) rf.url.openConnection();
+        connection.setRequestProperty("Range", "bytes=10-19");
+        assertEquals(206, connection.getResponseCode());
+        assertEquals("bytes 10-19/" + contents.length, connection.getHeaderField("Content-Range"));
+        byte[] expected = new byte[10];
+        System.arraycopy(contents, 10, expected, 0, 10);
+        assertArrayEquals(expected, StreamUtils.inputStreamToBytes(connection.getInputStream(), 10));
+
+        connection = (HttpURLConnection) rf.url.openConnection();
+        connection.setRequestProperty("Range", "bytes=" + contents.length + "-");
+        assertEquals("Range beyond the end cannot be satisfied", 416, connection.getResponseCode());
+    }
+
+    @Test
+    public void testParseRange() {
+        assertArrayEquals(new long[] {0, 99}, HTTPRemoteFileRegistry.parseRange("bytes=0-99", 1000));
+        assertArrayEquals(new long[] {500, 999}, HTTPRemoteFileRegistry.parseRange("bytes=500-", 1000));
+        assertArrayEquals(new long[] {900, 999}, HTTPRemoteFileRegistry.parseRange("bytes=-100", 1000));
+        assertArrayEquals("Last position is limited to the file", new long[] {900, 999},
+                HTTPRemoteFileRegistry.parseRange("bytes=900-5000", 1000));
+        long[] unsatisfiable = HTTPRemoteFileRegistry.parseRange("bytes=1000-", 1000);
+        assertTrue(unsatisfiable[0] > unsatisfiable[1]);
+        assertNull(HTTPRemoteFileRegistry.parseRange(null, 1000));
+        assertNull("Several ranges are not supported", HTTPRemoteFileRegistry.parseRange("bytes=0-1,5-6", 1000));
+        assertNull("Invalid range is ignored", HTTPRemoteFileRegistry.parseRange("bytes=20-10", 1000));
+        assertFalse(HTTPRemoteFileRegistry.parseRange("bytes=-2000", 1000)[0] < 0);
+    }
+
+    private class ForceRemoteStreamingHTTPRemoteFile extends StreamingHTTPRemoteFile {
+        public ForceRemoteStreamingHTTPRemoteFile(File f, boolean useChecksums, boolean fileDeletable,
+                boolean multipleDownloads) {
+            super(f, useChecksums, fileDeletable, multipleDownloads);
+        }
+
+        protected boolean isLocal() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * #%L
+ * Netarchivesuite - common - test
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dk.netarkivet.common.exceptions.IOFailure;
+
+/**
+ * Unit tests for the {@link DigestingCopy} class.
+ */
+public class DigestingCopyTester {
+
+    private byte[] data;
+    private File from;
+    private File to;
+
+    @Before
+    public void setUp() throws IOException {
+        // Larger than one buffer, and not a multiple of it
+        data = new byte[DigestingCopy.BUFFER_SIZE * 2 + 4711];
+        new Random(42).nextBytes(data);
+        from = File.createTempFile("digestingcopy-", ".from");
+        to = File.createTempFile("digestingcopy-", ".to");
+        FileOutputStream out = new FileOutputStream(from);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        from.delete();
+        to.delete();
+    }
+
+    @Test
+    public void testCopyStreams() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        String[] digests = DigestingCopy.copy(new ByteArrayInputStream(data), out, ChecksumCalculator.MD5,
+                ChecksumCalculator.SHA1);
+        assertArrayEquals(data, out.toByteArray());
+        assertEquals(2, digests.length);
+        assertEquals(ChecksumCalculator.calculateMd5(data), digests[0]);
+        assertEquals(ChecksumCalculator.calculateSha1(new ByteArrayInputStream(data)), digests[1]);
+    }
+
+    @Test
+    public void testCopyFiles() {
+        String[] digests = DigestingCopy.copy(from, to, ChecksumCalculator.SHA1, ChecksumCalculator.MD5);
+        assertEquals(data.length, to.length());
+        assertEquals(ChecksumCalculator.calculateSha1(from), digests[0]);
+        assertEquals(ChecksumCalculator.calculateMd5(from), digests[1]);
+        assertEquals(ChecksumCalculator.calculateMd5(from), ChecksumCalculator.calculateMd5(to));
+    }
+
+    @Test
+    public void testCopyFilesWithoutDigests() {
+        assertEquals(0, DigestingCopy.copy(from, to).length);
+        assertEquals(ChecksumCalculator.calculateMd5(from), ChecksumCalculator.calculateMd5(to));
+    }
+
+    @Test
+    public void testCopyWithMd5() {
+        assertEquals(ChecksumCalculator.calculateMd5(data),
+                DigestingCopy.copyWithMd5(new ByteArrayInputStream(data), to));
+        assertEquals(data.length, to.length());
+    }
+
+    @Test
+    public void testCheckMd5() {
+        String md5 = DigestingCopy.copyWithMd5(new ByteArrayInputStream(data), to);
+        DigestingCopy.checkMd5(null, md5, "file");
+        DigestingCopy.checkMd5(ChecksumCalculator.calculateMd5(data), md5, "file");
+        try {
+            DigestingCopy.checkMd5(ChecksumCalculator.calculateMd5(new byte[0]), md5, "file");
+            fail("Should fail when the sender reported another checksum");
+        } catch (IOFailure e) {
+            // Expected
+        }
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * #%L
+ * Netarchivesuite - common - test
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dk.netarkivet.common.utils.batch.ChecksumJob;
+import dk.netarkivet.common.utils.batch.FileBatchJob;
+import dk.netarkivet.common.utils.batch.FileListJob;
+import dk.netarkivet.testutils.preconfigured.ReloadSettings;
+
+/**
+ * Unit tests for the SortUtils class.
+ */
+public class SortUtilsTester {
+
+    ReloadSettings rs = new ReloadSettings();
+
+    private static final File WORKING = new File("tests/dk/netarkivet/common/utils/sortutils_working");
+
+    @Before
+    public void setUp() {
+        rs.setUp();
+        FileUtils.removeRecursively(WORKING);
+        FileUtils.createDir(WORKING);
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.removeRecursively(WORKING);
+        rs.tearDown();
+    }
+
+    @Test
+    public void testCompareLines() {
+        assertTrue(SortUtils.compareLines("a".getBytes(), "b".getBytes()) < 0);
+        assertTrue(SortUtils.compareLines("ab".getBytes(), "a".getBytes()) > 0);
+        assertEquals(0, SortUtils.compareLines("abc".getBytes(), "abc".getBytes()));
+        assertTrue("Upper case should sort before lower case as in LANG=C",
+                SortUtils.compareLines("Z".getBytes(), "a".getBytes()) < 0);
+        assertTrue("Bytes should be compared unsigned",
+                SortUtils.compareLines(new byte[] {'z'}, new byte[] {(byte) 0xe6}) < 0);
+    }
+
+    @Test
+    public void testIsSorted() throws IOException {
+        assertTrue(SortUtils.isSorted(makeFile("sorted", "a\nb\nb\nc\n")));
+        assertTrue("A missing final newline should not matter", SortUtils.isSorted(makeFile("nonewline", "a\nb")));
+        assertTrue(SortUtils.isSorted(makeFile("empty", "")));
+        assertFalse(SortUtils.isSorted(makeFile("unsorted", "a\nc\nb\n")));
+    }
+
+    @Test
+    public void testMergeSortedFiles() throws IOException {
+        List<File> files = new ArrayList<File>();
+        files.add(makeFile("one", "a\nd\ng\n"));
+        files.add(makeFile("two", ""));
+        files.add(makeFile("three", "b\nd\nh"));
+        files.add(makeFile("four", "c\n"));
+        File result = new File(WORKING, "merged");
+        SortUtils.mergeSortedFiles(files, result);
+        assertEquals("Files should be merged, keeping all lines", "a\nb\nc\nd\nd\ng\nh\n",
+                FileUtils.readFile(result));
+        assertTrue(SortUtils.isSorted(result));
+    }
+
+    @Test
+    public void testSortAndCombine() throws IOException {
+        File output = makeFile("output", "c\na\nb\na\n");
+        SortUtils.sortAndCombine(new LineJob(), output);
+        assertEquals("Identical lines should be combined by default", Arrays.asList("a", "b", "c"),
+                FileUtils.readListFromFile(output));
+
+        File checksums = makeFile("checksums", "f2##2\nf1##1\nf1##1\n");
+        SortUtils.sortAndCombine(new ChecksumJob(), checksums);
+        assertEquals("Checksum jobs should keep duplicates", Arrays.asList("f1##1", "f1##1", "f2##2"),
+                FileUtils.readListFromFile(checksums));
+
+        File filenames = makeFile("filenames", "f2\nf1\nf1\n");
+        SortUtils.sortAndCombine(new FileListJob(), filenames);
+        assertEquals("File list jobs should keep duplicates", Arrays.asList("f1", "f1", "f2"),
+                FileUtils.readListFromFile(filenames));
+    }
+
+    @Test
+    public void testSortFile() throws IOException {
+        File sorted = new File(WORKING, "sorted");
+        SortUtils.sortFile(makeFile("lines", "c\nB\na\nb\na"), sorted, SortUtils.LINE_ORDER);
+        assertEquals("Lines should be sorted in byte order", "B\na\na\nb\nc\n", FileUtils.readFile(sorted));
+
+        String crawlLog = "2014 200 10 http://b.dk/ - text/html\n" + "2014  404 5   http://a.dk/ L text/html\n"
+                + "2013 200 10 http://b.dk/ - text/html\n";
+        SortUtils.sortFile(makeFile("crawl.log", crawlLog), sorted, SortUtils.CRAWL_LOG_ORDER);
+        assertEquals("Crawl log lines should be sorted on the URL, then on the whole line",
+                Arrays.asList("2014  404 5   http://a.dk/ L text/html", "2013 200 10 http://b.dk/ - text/html",
+                        "2014 200 10 http://b.dk/ - text/html"), FileUtils.readListFromFile(sorted));
+    }
+
+    private static File makeFile(String name, String contents) throws IOException {
+        File file = new File(WORKING, name);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents.getBytes());
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    /** A job with sorted output, using the default combine. */
+    @SuppressWarnings("serial")
+    private static class LineJob extends FileBatchJob {
+        public void initialize(OutputStream os) {
+        }
+
+        public boolean processFile(File file, OutputStream os) {
+            return true;
+        }
+
+        public void finish(OutputStream os) {
+        }
+
+        @Override
+        public boolean hasSortedOutput() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * #%L
+ * Netarchivesuite - common - test
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+
+/**
+ * Unit tests for the SortedLongSet class.
+ */
+public class SortedLongSetTester {
+
+    @Test
+    public void testAddAndRemove() {
+        SortedLongSet set = new SortedLongSet();
+        assertTrue(set.isEmpty());
+        for (long value = 0; value < 5000; value += 2) {
+            set.add(value);
+        }
+        set.trimToSize();
+        assertEquals(2500, set.size());
+        assertTrue(set.contains(4998));
+        assertFalse(set.contains(3));
+
+        assertTrue(set.remove(10));
+        assertFalse("A value should only be removed once", set.remove(10));
+        assertFalse("A value never added cannot be removed", set.remove(11));
+        assertFalse(set.contains(10));
+        assertEquals(2499, set.size());
+    }
+
+    @Test
+    public void testAddOutOfOrder() {
+        SortedLongSet set = new SortedLongSet();
+        set.add(5);
+        try {
+            set.add(5);
+            fail("Adding a value twice should fail");
+        } catch (ArgumentNotValid e) {
+            // expected
+        }
+        try {
+            set.add(4);
+            fail("Adding a smaller value should fail");
+        } catch (ArgumentNotValid e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testGetValues() {
+        SortedLongSet set = new SortedLongSet();
+        for (long value = 1; value <= 7; value++) {
+            set.add(value);
+        }
+        set.remove(2);
+        set.remove(7);
+        assertArrayEquals(new long[] {1, 3, 4}, set.getValues(Long.MIN_VALUE, 3));
+        assertArrayEquals(new long[] {5, 6}, set.getValues(5, 3));
+        assertArrayEquals("A removed value should be skipped", new long[] {3}, set.getValues(2, 1));
+        assertArrayEquals(new long[0], set.getValues(7, 3));
+        assertArrayEquals(new long[] {1, 3, 4, 5, 6}, set.toArray());
+        assertArrayEquals(new long[0], new SortedLongSet().toArray());
+    }
+}
@@ -29,13 +29,16 @@ import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.Random;
 import java.util.Set;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -267,4 +270,37 @@ public class ZipUtilsTester {
         }).length);
     }
 
+    /**
+     * Test that files larger than a block are gzipped into several gzip members, which are read back as one file.
+     */
+    @Test
+    public void testGzipAndGunzipFilesInBlocks() throws Exception {
+        File testInputDir = new File(TestInfo.TEMPDIR, "blocks");
+        FileUtils.createDir(testInputDir);
+        File largeFile = new File(testInputDir, "large");
+        byte[] data = new byte[3 * 1024 * 1024 + 17];
+        new Random(42).nextBytes(data);
+        // Make part of it compressible
+        Arrays.fill(data, 1024 * 1024, 2 * 1024 * 1024, (byte) 'x');
+        FileOutputStream out = new FileOutputStream(largeFile);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        new File(testInputDir, "empty").createNewFile();
+
+        File gzippedDir = new File(TestInfo.TEMPDIR, "blocks-gzipped");
+        ZipUtils.gzipFiles(testInputDir, gzippedDir);
+        File gzippedFile = new File(gzippedDir, "large" + ZipUtils.GZIP_SUFFIX);
+        assertTrue("Should have output file", gzippedFile.exists());
+        assertTrue("Compressible block should make the file smaller", gzippedFile.length() < data.length);
+
+        File gunzippedDir = new File(TestInfo.TEMPDIR, "blocks-gunzipped");
+        ZipUtils.gunzipFiles(gzippedDir, gunzippedDir);
+        assertTrue("Should get the same data back after gunzip",
+                Arrays.equals(data, FileUtils.readBinaryFile(new File(gunzippedDir, "large"))));
+        assertEquals("Should get the empty file back", 0L, new File(gunzippedDir, "empty").length());
+    }
+
 }
@@ -0,0 +1,150 @@
+/*
+ * #%L
+ * Netarchivesuite - common - test
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.utils.archive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dk.netarkivet.common.utils.archive.ArchiveRecordRangeSplitter.RecordRange;
+
+/**
+ * Unit tests for the {@link ArchiveRecordRangeSplitter} class.
+ */
+public class ArchiveRecordRangeSplitterTester {
+
+    private static final int RECORDS = 500;
+
+    private File warcFile;
+    private long[] offsets;
+
+    @Before
+    public void setUp() throws IOException {
+        warcFile = File.createTempFile("splitter-", ".warc.gz");
+        offsets = new long[RECORDS];
+        Random random = new Random(42);
+        FileOutputStream out = new FileOutputStream(warcFile);
+        try {
+            for (int i = 0; i < RECORDS; i++) {
+                offsets[i] = out.getChannel().position();
+                byte[] body = new byte[random.nextInt(4000) + 10];
+                random.nextBytes(body);
+                // Each record is its own gzip member, as written by Heritrix
+                GZIPOutputStream gz = new GZIPOutputStream(out) {
+                    @Override
+                    public void close() throws IOException {
+                        finish();
+                    }
+                };
+                gz.write(("WARC/1.0\r\nWARC-Type: resource\r\nContent-Length: " + body.length + "\r\n\r\n")
+                        .getBytes("US-ASCII"));
+                gz.write(body);
+                gz.write("\r\n\r\n".getBytes("US-ASCII"));
+                gz.close();
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        warcFile.delete();
+    }
+
+    @Test
+    public void testIsSplittable() {
+        assertTrue(ArchiveRecordRangeSplitter.isSplittable(new File("1-2-20150101-00001.warc.gz")));
+        assertTrue(ArchiveRecordRangeSplitter.isSplittable(new File("1-2-20150101-00001.arc.gz")));
+        assertFalse(ArchiveRecordRangeSplitter.isSplittable(new File("1-2-20150101-00001.warc")));
+        assertFalse(ArchiveRecordRangeSplitter.isSplittable(new File("1-metadata-1.cdx.gz")));
+    }
+
+    @Test
+    public void testSplitFindsRecordBoundaries() {
+        List<RecordRange> ranges = ArchiveRecordRangeSplitter.split(warcFile, 8);
+        assertEquals(8, ranges.size());
+        assertContiguous(ranges);
+        Set<Long> recordStarts = new HashSet<Long>();
+        for (long offset : offsets) {
+            recordStarts.add(offset);
+        }
+        for (RecordRange range : ranges) {
+            assertTrue("Range " + range + " should start at a record", recordStarts.contains(range.getStart()));
+        }
+    }
+
+    @Test
+    public void testSplitIgnoresEmbeddedArchives() throws IOException {
+        // A record holding a warc.gz file, stored uncompressed in its gzip member
+        ByteArrayOutputStream embedded = new ByteArrayOutputStream();
+        GZIPOutputStream inner = new GZIPOutputStream(embedded);
+        inner.write("WARC/1.0\r\nWARC-Type: resource\r\nContent-Length: 0\r\n\r\n\r\n\r\n".getBytes("US-ASCII"));
+        inner.close();
+        byte[] record = new byte[20000];
+        for (int i = 0; i + embedded.size() <= record.length; i += embedded.size()) {
+            System.arraycopy(embedded.toByteArray(), 0, record, i, embedded.size());
+        }
+        FileOutputStream out = new FileOutputStream(warcFile);
+        try {
+            GZIPOutputStream gz = new GZIPOutputStream(out) {
+                {
+                    def.setLevel(Deflater.NO_COMPRESSION);
+                }
+            };
+            gz.write("WARC/1.0\r\nWARC-Type: resource\r\nContent-Length: 20000\r\n\r\n".getBytes("US-ASCII"));
+            gz.write(record);
+            gz.write("\r\n\r\n".getBytes("US-ASCII"));
+            gz.close();
+        } finally {
+            out.close();
+        }
+        List<RecordRange> ranges = ArchiveRecordRangeSplitter.split(warcFile, 8);
+        assertEquals("A file with one record should not be split", 1, ranges.size());
+        assertContiguous(ranges);
+    }
+
+    private void assertContiguous(List<RecordRange> ranges) {
+        assertEquals(0L, ranges.get(0).getStart());
+        for (int i = 1; i < ranges.size(); i++) {
+            assertEquals(ranges.get(i - 1).getEnd(), ranges.get(i).getStart());
+        }
+        assertEquals(warcFile.length(), ranges.get(ranges.size() - 1).getEnd());
+    }
+
+}
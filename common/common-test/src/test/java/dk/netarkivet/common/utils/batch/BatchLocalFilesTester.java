@@ -28,13 +28,19 @@ import static org.junit.Assert.assertTrue;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import dk.netarkivet.common.CommonSettings;
+import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.testutils.preconfigured.ReloadSettings;
+
 /**
  * Unit test for BatchLocalFiles.
  */
@@ -188,6 +194,39 @@ public class BatchLocalFilesTester {
         assertEquals(1, finished);
     }
 
+    /**
+     * Verify that the progress is reported between files, counting only the files the job processes.
+     */
+    @Test
+    public void testProgressReported() {
+        ReloadSettings rs = new ReloadSettings();
+        rs.setUp();
+        try {
+            // report after every file
+            Settings.set(CommonSettings.BATCH_LOGGING_INTERVAL, "-1");
+            final List<BatchProgress> reports = new ArrayList<BatchProgress>();
+            TestBatchJob tbj = new TestBatchJob();
+            tbj.processOnlyFilesMatching(TEST_FILE_NAMES[0] + "|" + TEST_FILE_NAMES[2]);
+            blf.run(tbj, new ByteArrayOutputStream(), new BatchProgressListener() {
+                public void progress(BatchProgress progress) {
+                    reports.add(progress);
+                }
+            });
+            long bytesTotal = testFiles[0].length() + testFiles[2].length();
+            assertEquals("Should report after each processed file", 2, reports.size());
+            assertEquals(1, reports.get(0).getFilesProcessed());
+            assertEquals(2, reports.get(0).getFilesTotal());
+            assertEquals(testFiles[0].length(), reports.get(0).getBytesProcessed());
+            assertEquals(bytesTotal, reports.get(0).getBytesTotal());
+            assertEquals(2, reports.get(1).getFilesProcessed());
+            assertEquals(bytesTotal, reports.get(1).getBytesProcessed());
+            assertEquals("Nothing should be left when all bytes are processed", 0L,
+                    reports.get(1).getEstimatedTimeLeft());
+        } finally {
+            rs.tearDown();
+        }
+    }
+
     /**
      * Tests ordinary, non-failing execution of a batch job with a specified filename.
      */
@@ -201,6 +240,28 @@ public class BatchLocalFilesTester {
         assertEquals(1, finished);
     }
 
+    /**
+     * Tests that only the files changed since a given time are processed, when the job is limited to those.
+     */
+    @Test
+    public void testChangedSinceRun() throws Exception {
+        File oldFile = File.createTempFile("old", ".cdx");
+        File newFile = File.createTempFile("new", ".cdx");
+        try {
+            long now = System.currentTimeMillis();
+            assertTrue(oldFile.setLastModified(now - 3600000L));
+            TestBatchJob tbj = new TestBatchJob();
+            tbj.processOnlyFilesChangedSince(now - 60000L);
+            new BatchLocalFiles(new File[] {oldFile, newFile}).run(tbj, new ByteArrayOutputStream());
+            assertEquals(1, initialized);
+            assertEquals(1, processed);
+            assertEquals(1, finished);
+        } finally {
+            oldFile.delete();
+            newFile.delete();
+        }
+    }
+
     /**
      * A very simple FileBatchJob that simply counts relevant method calls in the parents class's designated fields.
      */
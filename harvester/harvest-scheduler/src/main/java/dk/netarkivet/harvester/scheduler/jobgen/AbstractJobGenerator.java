@@ -37,7 +37,6 @@ import dk.netarkivet.harvester.HarvesterSettings;
 import dk.netarkivet.harvester.datamodel.Constants;
 import dk.netarkivet.harvester.datamodel.DomainConfiguration;
 import dk.netarkivet.harvester.datamodel.FullHarvest;
-import dk.netarkivet.harvester.datamodel.GlobalCrawlerTrapListDAO;
 import dk.netarkivet.harvester.datamodel.HarvestChannel;
 import dk.netarkivet.harvester.datamodel.HarvestChannelDAO;
 import dk.netarkivet.harvester.datamodel.HarvestDefinition;
@@ -46,7 +45,6 @@ import dk.netarkivet.harvester.datamodel.HeritrixTemplate;
 import dk.netarkivet.harvester.datamodel.Job;
 import dk.netarkivet.harvester.datamodel.PartialHarvest;
 import dk.netarkivet.harvester.datamodel.Schedule;
-import dk.netarkivet.harvester.datamodel.TemplateDAO;
 import dk.netarkivet.harvester.datamodel.eav.EAV;
 
 /**
@@ -70,10 +68,15 @@ abstract class AbstractJobGenerator implements JobGenerator {
     /** Is deduplication enabled or disabled in the settings* */
     private final boolean DEDUPLICATION_ENABLED = Settings.getBoolean(HarvesterSettings.DEDUPLICATION_ENABLED);
 
+    /** The templates used for new jobs, with global crawler traps added. */
+    private final HeritrixTemplateCache templateCache = new HeritrixTemplateCache();
+
     @Override
     public int generateJobs(HarvestDefinition harvest) {
         log.info("Generating jobs for harvestdefinition #{}", harvest.getOid());
         int jobsMade = 0;
+        // Templates and trap lists may have been changed from the GUI since the last round
+        templateCache.clear();
         final Iterator<DomainConfiguration> domainConfigurations = harvest.getDomainConfigurations();
         harvest.setNumEvents(harvest.getNumEvents() + 1);
         if (harvest.isSnapShot()) {
@@ -141,7 +144,7 @@ abstract class AbstractJobGenerator implements JobGenerator {
             log.info("No channel mapping registered for harvest id {}, will use default.", harvest.getOid());
             channel = harvestChannelDao.getDefaultChannel(harvest.isSnapShot());
         }
-        HeritrixTemplate orderXMLdoc = loadOrderXMLdoc(cfg.getOrderXmlName());
+        HeritrixTemplate orderXMLdoc = templateCache.get(cfg.getOrderXmlName());
         Job newJob;
         if (harvest.isSnapShot()) {
             newJob = new Job(harvest.getOid(), cfg, orderXMLdoc, channel, harvest.getMaxCountObjects(),
@@ -250,10 +253,4 @@ abstract class AbstractJobGenerator implements JobGenerator {
 
         return true;
     }
-
-    private HeritrixTemplate loadOrderXMLdoc(String orderXmlName) {
-    	HeritrixTemplate orderXMLdoc = TemplateDAO.getInstance().read(orderXmlName);
-        GlobalCrawlerTrapListDAO.getInstance().addGlobalCrawlerTraps(orderXMLdoc);
-        return orderXMLdoc;
-    }
 }
@@ -0,0 +1,103 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.scheduler.jobgen;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.harvester.datamodel.GlobalCrawlerTrapListDAO;
+import dk.netarkivet.harvester.datamodel.HeritrixTemplate;
+import dk.netarkivet.harvester.datamodel.TemplateDAO;
+
+/**
+ * A cache of harvest templates with the global crawler traps already added, used when generating jobs.
+ * <p>
+ * Each template is read and merged with the traps once, and every job gets its own copy. A cached template is read
+ * again when the edition of the templates or of the crawler trap lists has changed. The editions only reflect changes
+ * made by this process, so the cache should be cleared before each round of job generation to pick up changes made
+ * from the GUI.
+ */
+class HeritrixTemplateCache {
+
+    /** The logger for this class. */
+    private static final Logger log = LoggerFactory.getLogger(HeritrixTemplateCache.class);
+
+    /** The cached templates, by template name. */
+    private final Map<String, CachedTemplate> templates = new HashMap<String, CachedTemplate>();
+
+    /**
+     * Get a copy of a template with the currently active global crawler traps added.
+     *
+     * @param orderXmlName The name of the template.
+     * @return a copy of the template, which the caller may edit.
+     * @throws ArgumentNotValid if orderXmlName is null or empty.
+     * @throws dk.netarkivet.common.exceptions.UnknownID if there is no template with that name.
+     */
+    public synchronized HeritrixTemplate get(String orderXmlName) {
+        ArgumentNotValid.checkNotNullOrEmpty(orderXmlName, "String orderXmlName");
+        TemplateDAO templateDao = TemplateDAO.getInstance();
+        GlobalCrawlerTrapListDAO trapListDao = GlobalCrawlerTrapListDAO.getInstance();
+        // Read the editions first, so changes made while reading cause the template to be read again next time
+        long templateEdition = templateDao.getEdition();
+        long trapListEdition = trapListDao.getEdition();
+        CachedTemplate cached = templates.get(orderXmlName);
+        if (cached == null || cached.templateEdition != templateEdition || cached.trapListEdition != trapListEdition) {
+            log.debug("Reading template '{}' and adding global crawler traps", orderXmlName);
+            HeritrixTemplate template = templateDao.read(orderXmlName);
+            trapListDao.addGlobalCrawlerTraps(template);
+            cached = new CachedTemplate(template, templateEdition, trapListEdition);
+            templates.put(orderXmlName, cached);
+        }
+        return cached.template.copy();
+    }
+
+    /**
+     * Forget all cached templates.
+     */
+    public synchronized void clear() {
+        templates.clear();
+    }
+
+    /**
+     * A template with crawler traps added, and the editions it was read at.
+     */
+    private static class CachedTemplate {
+        /** The template. Never edited; only copies are handed out. */
+        private final HeritrixTemplate template;
+        /** The edition of the templates when the template was read. */
+        private final long templateEdition;
+        /** The edition of the crawler trap lists when the traps were added. */
+        private final long trapListEdition;
+
+        CachedTemplate(HeritrixTemplate template, long templateEdition, long trapListEdition) {
+            this.template = template;
+            this.templateEdition = templateEdition;
+            this.trapListEdition = trapListEdition;
+        }
+    }
+
+}
@@ -649,8 +649,8 @@ public class HarvesterSettings {
     public static String INDEXSERVER_INDEXING_MAXTHREADS = "settings.harvester.indexserver.maxthreads";
     /**
      * <b>settings.harvester.indexserver.checkinterval</b>: <br>
-     * Setting for the time in milliseconds between each check of the state of sub-indexing. Default: 30 seconds (30000
-     * milliseconds).
+     * Setting for the time in milliseconds between each log of the state of sub-indexing while waiting for the indexing
+     * threads. Default: 30 seconds (30000 milliseconds).
      */
     public static String INDEXSERVER_INDEXING_CHECKINTERVAL = "settings.harvester.indexserver.checkinterval";
 
@@ -666,6 +666,16 @@ public class HarvesterSettings {
      */
     public static String INDEXSERVER_INDEXING_MAX_SEGMENTS = "settings.harvester.indexserver.maxsegments";
 
+    /**
+     * <b>settings.harvester.indexserver.compressIndex</b>: <br>
+     * Setting for whether the files of Lucene indices are gzipped before they are stored in the cache of the
+     * indexserver and sent to the clients. Turning this off saves the time spent compressing and decompressing large
+     * indices, which pays off when the network is faster than the compression, e.g. with
+     * {@link dk.netarkivet.common.distribute.StreamingHTTPRemoteFile}, which sends the files directly from the
+     * indexserver. The clients handle both kinds of files. The default is true.
+     */
+    public static String INDEXSERVER_INDEXING_COMPRESS = "settings.harvester.indexserver.compressIndex";
+
     /**
      * <b>settings.harvester.indexserver.listeningcheckinterval</b>: <br>
      * Setting for the interval between each listening check in milliseconds. The default is 30000 (5 minutes).
@@ -722,6 +732,25 @@ public class HarvesterSettings {
      */
     public static String ALLOW_FILE_DOWNLOADS = "settings.harvester.viewerproxy.allowFileDownloads";
 
+    /**
+     * <b>settings.harvester.viewerproxy.recordCache.maxBytes</b> The number of bytes of records kept in memory by the
+     * Viewerproxy, so records requested again or prefetched are not retrieved from the archive again. Only records
+     * small enough to be transferred in memory are cached. 0 disables both the cache and prefetching.
+     */
+    public static String VIEWERPROXY_RECORD_CACHE_MAX_BYTES = "settings.harvester.viewerproxy.recordCache.maxBytes";
+
+    /**
+     * <b>settings.harvester.viewerproxy.recordCache.prefetchThreads</b> The maximum number of records the Viewerproxy
+     * retrieves from the archive in parallel when prefetching the resources linked from a viewed HTML page.
+     */
+    public static String VIEWERPROXY_PREFETCH_THREADS = "settings.harvester.viewerproxy.recordCache.prefetchThreads";
+
+    /**
+     * <b>settings.harvester.viewerproxy.recordCache.maxPrefetchedLinks</b> The maximum number of links from one viewed
+     * HTML page that are prefetched. 0 disables prefetching.
+     */
+    public static String VIEWERPROXY_MAX_PREFETCHED_LINKS = "settings.harvester.viewerproxy.recordCache.maxPrefetchedLinks";
+
     /**
      * The maximum length (in lines) of crawllog to be displayed in a browser window.
      */
@@ -82,6 +82,26 @@ public abstract class DBSpecifics extends SettingsFactory<DBSpecifics> {
      */
     public abstract void dropJobConfigsTmpTable(Connection c, String tableName);
 
+    /**
+     * Get a temporary table for staging domain names. The table should be disposed of with dropDomainNamesTmpTable. The
+     * table has one column name varchar(Constants.MAX_NAME_SIZE). All rows in the table must be deleted at commit or
+     * rollback.
+     *
+     * @param c The DB connection to use.
+     * @return The name of the created table
+     * @throws SQLException if there is a problem getting the table.
+     */
+    public abstract String getDomainNamesTmpTable(Connection c) throws SQLException;
+
+    /**
+     * Dispose of a temporary table gotten with getDomainNamesTmpTable. This can be expected to be called from within a
+     * finally clause, so it mustn't throw exceptions.
+     *
+     * @param c The DB connection to use.
+     * @param tableName The name of the temporarily created table.
+     */
+    public abstract void dropDomainNamesTmpTable(Connection c, String tableName);
+
     /**
      * Get the name of the JDBC driver class that handles interfacing to this server.
      *
@@ -80,6 +80,21 @@ public abstract class DerbySpecifics extends DBSpecifics {
         }
     }
 
+    @Override
+    public String getDomainNamesTmpTable(Connection c) throws SQLException {
+        ArgumentNotValid.checkNotNull(c, "Connection c");
+        PreparedStatement s = c.prepareStatement("DECLARE GLOBAL TEMPORARY TABLE domainnames " + "( name varchar("
+                + Constants.MAX_NAME_SIZE + ") )" + " ON COMMIT DELETE ROWS NOT LOGGED ON ROLLBACK DELETE ROWS");
+        s.execute();
+        s.close();
+        return "session.domainnames";
+    }
+
+    @Override
+    public void dropDomainNamesTmpTable(Connection c, String tableName) {
+        dropJobConfigsTmpTable(c, tableName);
+    }
+
     @Override
     public String getOrderByLimitAndOffsetSubClause(long limit, long offset) {
         // LIMIT sub-clause supported by Derby 10.5.3
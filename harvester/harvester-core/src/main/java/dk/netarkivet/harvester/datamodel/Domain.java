@@ -153,6 +153,21 @@ public class Domain extends ExtendableEntity implements Named {
         domainOwnerInfos = new ArrayList<DomainOwnerInfo>();
     }
 
+    /**
+     * Get the seed of the default seed list of a domain: http://www.domain, or http://1.2.3.4 for IP-named domains.
+     *
+     * @param domainName The name of the domain
+     * @return the default seed
+     */
+    static String getDefaultSeed(String domainName) {
+        if (Constants.IP_KEY_REGEXP.matcher(domainName).matches()) {
+            // IP domains should not get www
+            return "http://" + domainName;
+        } else {
+            return "http://www." + domainName;
+        }
+    }
+
     /**
      * Get a new domain, initialised with default values.
      *
@@ -168,13 +183,7 @@ public class Domain extends ExtendableEntity implements Named {
         // or http://1.2.3.4 for IP-named domains.
         String defaultSeedListName = Settings.get(HarvesterSettings.DEFAULT_SEEDLIST);
 
-        SeedList seedlist;
-        if (Constants.IP_KEY_REGEXP.matcher(domainName).matches()) {
-            // IP domains should not get www
-            seedlist = new SeedList(defaultSeedListName, "http://" + domainName);
-        } else {
-            seedlist = new SeedList(defaultSeedListName, "http://www." + domainName);
-        }
+        SeedList seedlist = new SeedList(defaultSeedListName, getDefaultSeed(domainName));
         myDomain.addSeedList(seedlist);
 
         List<SeedList> seedlists = Arrays.asList(seedlist);
@@ -0,0 +1,476 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.datamodel;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.utils.DomainUtils;
+
+/**
+ * An in-memory catalogue of domain names, used to answer name searches and TLD statistics without scanning the domains
+ * table.
+ * <p>
+ * The names are kept sorted in a front-coded byte array: names are stored in blocks, where the first name of each
+ * block is stored in full and the following names only store the suffix that differs from the previous name. A second
+ * front-coded array holds the reversed names, so globs with a literal suffix (e.g. "*.gouv.fr") become range scans
+ * too. Names added after the arrays were built are kept in a small sorted overlay until it is merged into the arrays.
+ * <p>
+ * The catalogue only holds valid domain names. Names are never removed, as domains are never deleted. The catalogue
+ * is thread safe.
+ */
+public class DomainCatalogue {
+
+    /** The number of added names kept outside the arrays before they are rebuilt, unless the arrays are bigger. */
+    private static final int MIN_OVERLAY_SIZE = 1024;
+
+    /** Orders UTF-8 encoded names as unsigned bytes. */
+    private static final Comparator<byte[]> BYTE_ORDER = new Comparator<byte[]>() {
+        @Override
+        public int compare(byte[] a, byte[] b) {
+            return compareBytes(a, 0, a.length, b);
+        }
+    };
+
+    /** The names in the arrays, sorted. */
+    private FrontCodedArray names = new FrontCodedArray(Collections.<byte[]>emptyList());
+    /** The reversed names in the arrays, sorted. */
+    private FrontCodedArray reversedNames = names;
+    /** Names added since the arrays were built. */
+    private final TreeSet<String> overlay = new TreeSet<String>();
+    /** The number of subdomains, by TLD, for each TLD level. Index 0 holds the level 1 TLDs. */
+    private final List<Map<String, Integer>> tldCounts = new ArrayList<Map<String, Integer>>();
+
+    /**
+     * Add a domain name to the catalogue. Adding a name twice has no effect.
+     *
+     * @param domainName A domain name.
+     * @return true if the name was added, false if it was already known or is not a valid domain name.
+     */
+    public synchronized boolean add(String domainName) {
+        ArgumentNotValid.checkNotNull(domainName, "String domainName");
+        if (!DomainUtils.isValidDomainName(domainName) || contains(domainName)) {
+            return false;
+        }
+        overlay.add(domainName);
+        countTLDs(domainName);
+        if (overlay.size() > Math.max(MIN_OVERLAY_SIZE, names.size() / 8)) {
+            rebuild();
+        }
+        return true;
+    }
+
+    /**
+     * Add domain names to the catalogue.
+     *
+     * @param domainNames Domain names.
+     * @return the number of names added.
+     * @see #add(String)
+     */
+    public synchronized int addAll(Collection<String> domainNames) {
+        ArgumentNotValid.checkNotNull(domainNames, "Collection<String> domainNames");
+        int added = 0;
+        for (String domainName : domainNames) {
+            if (add(domainName)) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * @param domainName A domain name.
+     * @return true if the name is in the catalogue.
+     */
+    public synchronized boolean contains(String domainName) {
+        ArgumentNotValid.checkNotNull(domainName, "String domainName");
+        if (overlay.contains(domainName)) {
+            return true;
+        }
+        final byte[] key = domainName.getBytes(StandardCharsets.UTF_8);
+        final boolean[] found = new boolean[1];
+        names.scan(key, new NameVisitor() {
+            @Override
+            public boolean visit(byte[] buffer, int length) {
+                found[0] = compareBytes(buffer, 0, length, key) == 0;
+                return false;
+            }
+        });
+        return found[0];
+    }
+
+    /**
+     * @return the number of names in the catalogue.
+     */
+    public synchronized int size() {
+        return names.size() + overlay.size();
+    }
+
+    /**
+     * @return all the names in the catalogue, sorted.
+     */
+    public synchronized List<String> getAllNames() {
+        final List<String> result = new ArrayList<String>(size());
+        names.scan(null, new NameVisitor() {
+            @Override
+            public boolean visit(byte[] buffer, int length) {
+                result.add(new String(buffer, 0, length, StandardCharsets.UTF_8));
+                return true;
+            }
+        });
+        result.addAll(overlay);
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Find the names matching a glob. The glob uses the same wildcards as a SQL LIKE on a glob converted by
+     * {@link dk.netarkivet.common.utils.DBUtils#makeSQLGlob(String)}: '*' and '%' match any number of characters, and
+     * '?' and '_' match one character. Matching is case sensitive.
+     *
+     * @param glob A glob.
+     * @return the matching names, sorted.
+     * @throws ArgumentNotValid if glob is null or empty.
+     */
+    public synchronized List<String> find(String glob) {
+        ArgumentNotValid.checkNotNullOrEmpty(glob, "String glob");
+        final Pattern pattern = toPattern(glob);
+        String prefix = literalPrefix(glob);
+        String suffix = literalPrefix(new StringBuilder(glob).reverse().toString());
+        final List<String> result = new ArrayList<String>();
+        if (prefix.length() >= suffix.length()) {
+            // Also covers the case of no literal prefix or suffix, where all names are scanned
+            final byte[] start = prefix.getBytes(StandardCharsets.UTF_8);
+            names.scan(start, new NameVisitor() {
+                @Override
+                public boolean visit(byte[] buffer, int length) {
+                    if (!startsWith(buffer, length, start)) {
+                        return false;
+                    }
+                    String name = new String(buffer, 0, length, StandardCharsets.UTF_8);
+                    if (pattern.matcher(name).matches()) {
+                        result.add(name);
+                    }
+                    return true;
+                }
+            });
+        } else {
+            final byte[] start = suffix.getBytes(StandardCharsets.UTF_8);
+            reversedNames.scan(start, new NameVisitor() {
+                @Override
+                public boolean visit(byte[] buffer, int length) {
+                    if (!startsWith(buffer, length, start)) {
+                        return false;
+                    }
+                    String name = new StringBuilder(new String(buffer, 0, length, StandardCharsets.UTF_8)).reverse()
+                            .toString();
+                    if (pattern.matcher(name).matches()) {
+                        result.add(name);
+                    }
+                    return true;
+                }
+            });
+        }
+        for (String name : overlay) {
+            if (pattern.matcher(name).matches()) {
+                result.add(name);
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Get the TLDs of the names in the catalogue, as described in {@link DomainDAO#getTLDs(int)}.
+     *
+     * @param level maximum level of TLD
+     * @return the TLDs with their number of subdomains, sorted by TLD name.
+     */
+    public synchronized List<TLDInfo> getTLDs(int level) {
+        List<TLDInfo> result = new ArrayList<TLDInfo>();
+        for (int i = 0; i < level && i < tldCounts.size(); i++) {
+            for (Map.Entry<String, Integer> entry : tldCounts.get(i).entrySet()) {
+                result.add(new TLDInfo(entry.getKey(), entry.getValue()));
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Count a new domain under each of its TLDs.
+     *
+     * @param domainName A valid domain name.
+     */
+    private void countTLDs(String domainName) {
+        int domainTLDLevel = TLDInfo.getTLDLevel(domainName);
+        for (int currentLevel = 1; currentLevel <= domainTLDLevel; currentLevel++) {
+            if (tldCounts.size() < currentLevel) {
+                tldCounts.add(new HashMap<String, Integer>());
+            }
+            Map<String, Integer> counts = tldCounts.get(currentLevel - 1);
+            String tld = TLDInfo.getMultiLevelTLD(domainName, currentLevel);
+            Integer count = counts.get(tld);
+            counts.put(tld, count == null ? 1 : count + 1);
+        }
+    }
+
+    /**
+     * Merge the overlay into the front-coded arrays.
+     */
+    private void rebuild() {
+        final List<byte[]> all = new ArrayList<byte[]>(size());
+        names.scan(null, new NameVisitor() {
+            @Override
+            public boolean visit(byte[] buffer, int length) {
+                byte[] name = new byte[length];
+                System.arraycopy(buffer, 0, name, 0, length);
+                all.add(name);
+                return true;
+            }
+        });
+        for (String name : overlay) {
+            all.add(name.getBytes(StandardCharsets.UTF_8));
+        }
+        Collections.sort(all, BYTE_ORDER);
+        List<byte[]> reversed = new ArrayList<byte[]>(all.size());
+        for (byte[] name : all) {
+            String reversedName = new StringBuilder(new String(name, StandardCharsets.UTF_8)).reverse().toString();
+            reversed.add(reversedName.getBytes(StandardCharsets.UTF_8));
+        }
+        Collections.sort(reversed, BYTE_ORDER);
+        names = new FrontCodedArray(all);
+        reversedNames = new FrontCodedArray(reversed);
+        overlay.clear();
+    }
+
+    /**
+     * @param glob A glob.
+     * @return the characters of the glob before the first wildcard.
+     */
+    private static String literalPrefix(String glob) {
+        int i = 0;
+        while (i < glob.length() && !isWildcard(glob.charAt(i))) {
+            i++;
+        }
+        return glob.substring(0, i);
+    }
+
+    private static boolean isWildcard(char c) {
+        return c == '*' || c == '%' || c == '?' || c == '_';
+    }
+
+    /**
+     * @param glob A glob.
+     * @return a pattern matching the same strings as the glob.
+     */
+    static Pattern toPattern(String glob) {
+        StringBuilder regexp = new StringBuilder();
+        int literalStart = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (isWildcard(c)) {
+                if (i > literalStart) {
+                    regexp.append(Pattern.quote(glob.substring(literalStart, i)));
+                }
+                regexp.append(c == '*' || c == '%' ? ".*" : ".");
+                literalStart = i + 1;
+            }
+        }
+        if (literalStart < glob.length()) {
+            regexp.append(Pattern.quote(glob.substring(literalStart)));
+        }
+        return Pattern.compile(regexp.toString(), Pattern.DOTALL);
+    }
+
+    private static boolean startsWith(byte[] buffer, int length, byte[] prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compare a range of a byte array to another byte array as unsigned bytes.
+     */
+    private static int compareBytes(byte[] a, int offset, int length, byte[] b) {
+        int n = Math.min(length, b.length);
+        for (int i = 0; i < n; i++) {
+            int diff = (a[offset + i] & 0xff) - (b[i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length - b.length;
+    }
+
+    /**
+     * Receives the names found by {@link FrontCodedArray#scan(byte[], NameVisitor)}.
+     */
+    private interface NameVisitor {
+        /**
+         * @param buffer A buffer holding the name, UTF-8 encoded. It is reused for the next name.
+         * @param length The length of the name.
+         * @return true to continue with the next name.
+         */
+        boolean visit(byte[] buffer, int length);
+    }
+
+    /**
+     * An immutable, sorted array of byte strings, front-coded in blocks of {@link #BLOCK_SIZE} entries. Each entry is
+     * stored as the length of the prefix shared with the previous entry, the length of the rest, and the rest. The
+     * first entry of each block shares nothing, so a lookup can binary search the blocks.
+     */
+    private static final class FrontCodedArray {
+        /** The number of entries in a block. */
+        private static final int BLOCK_SIZE = 16;
+
+        private final byte[] data;
+        private final int[] blockOffsets;
+        private final int size;
+
+        /**
+         * @param sorted The entries, sorted by {@link DomainCatalogue#BYTE_ORDER}.
+         */
+        FrontCodedArray(List<byte[]> sorted) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            blockOffsets = new int[(sorted.size() + BLOCK_SIZE - 1) / BLOCK_SIZE];
+            byte[] previous = null;
+            for (int i = 0; i < sorted.size(); i++) {
+                byte[] entry = sorted.get(i);
+                int shared = 0;
+                if (i % BLOCK_SIZE == 0) {
+                    blockOffsets[i / BLOCK_SIZE] = out.size();
+                } else {
+                    int max = Math.min(previous.length, entry.length);
+                    while (shared < max && previous[shared] == entry[shared]) {
+                        shared++;
+                    }
+                }
+                writeVInt(out, shared);
+                writeVInt(out, entry.length - shared);
+                out.write(entry, shared, entry.length - shared);
+                previous = entry;
+            }
+            data = out.toByteArray();
+            size = sorted.size();
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * Visit the entries in order, starting with the first entry not less than the given key.
+         *
+         * @param from The key to start from, or null to start from the first entry.
+         * @param visitor Receives the entries until it returns false.
+         */
+        void scan(byte[] from, NameVisitor visitor) {
+            if (size == 0) {
+                return;
+            }
+            int block = 0;
+            if (from != null) {
+                // Find the last block whose first entry is not greater than the key
+                int low = 0;
+                int high = blockOffsets.length - 1;
+                while (low < high) {
+                    int mid = (low + high + 1) >>> 1;
+                    int[] pos = {blockOffsets[mid]};
+                    readVInt(pos);
+                    int length = readVInt(pos);
+                    if (compareBytes(data, pos[0], length, from) <= 0) {
+                        low = mid;
+                    } else {
+                        high = mid - 1;
+                    }
+                }
+                block = low;
+            }
+            byte[] buffer = new byte[64];
+            int[] pos = {blockOffsets[block]};
+            for (int i = block * BLOCK_SIZE; i < size; i++) {
+                int shared = readVInt(pos);
+                int rest = readVInt(pos);
+                if (shared + rest > buffer.length) {
+                    byte[] larger = new byte[Math.max(shared + rest, buffer.length * 2)];
+                    System.arraycopy(buffer, 0, larger, 0, shared);
+                    buffer = larger;
+                }
+                System.arraycopy(data, pos[0], buffer, shared, rest);
+                pos[0] += rest;
+                int length = shared + rest;
+                if (from != null && compareBytes(buffer, 0, length, from) < 0) {
+                    continue;
+                }
+                from = null;
+                if (!visitor.visit(buffer, length)) {
+                    return;
+                }
+            }
+        }
+
+        private static void writeVInt(ByteArrayOutputStream out, int value) {
+            while ((value & ~0x7f) != 0) {
+                out.write((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+
+        /**
+         * Read a variable length int from the data.
+         *
+         * @param pos Holds the position to read from, and is advanced past the int.
+         * @return the int read.
+         */
+        private int readVInt(int[] pos) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos[0]++];
+                value |= (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+
+}
@@ -23,10 +23,14 @@
 package dk.netarkivet.harvester.datamodel;
 
 import java.sql.Connection;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
 import dk.netarkivet.common.exceptions.UnknownID;
 
 /**
@@ -86,6 +90,37 @@ public abstract class DomainDAO implements DAO, Iterable<Domain> {
         }
     }
 
+    /**
+     * Create domains with default values, as given by {@link Domain#getDefaultDomain(String)}, for those of the given
+     * names that do not already exist. All the domains are created in one transaction, so this is much faster than
+     * creating the domains one at a time when ingesting large domain lists.
+     *
+     * @param domainNames valid domain names, without duplicates.
+     * @return the names of the domains created.
+     * @throws ArgumentNotValid if domainNames is null or contains an invalid domain name.
+     * @throws IOFailure if the domains cannot be created, in which case none of them are.
+     */
+    public abstract List<String> createDefaultDomains(Collection<String> domainNames);
+
+    /**
+     * Add a new configuration with its own seedlist to each of the given domains, creating default domains for those
+     * that do not exist yet. The configuration and the seedlist get the given name, unless the domain already has a
+     * configuration or seedlist of that name, in which case "_" and a timestamp are appended to it. All the domains
+     * are handled in one transaction.
+     *
+     * @param seedsByDomain The seeds to add, by domain name.
+     * @param configName The name of the new configurations and seedlists.
+     * @param templateName The name of an existing harvest template to use for the configurations.
+     * @param maxBytes The max bytes of the configurations.
+     * @param maxObjects The max objects of the configurations.
+     * @return the new configurations, with their IDs set.
+     * @throws ArgumentNotValid if an argument is null or empty, or a domain name is invalid.
+     * @throws UnknownID if the template does not exist.
+     * @throws IOFailure if the configurations cannot be created, in which case none of them are.
+     */
+    public abstract List<DomainConfiguration> createSeedConfigurations(Map<String, Set<String>> seedsByDomain,
+            String configName, String templateName, long maxBytes, int maxObjects);
+
     /**
      * Create a domain in persistent storage.
      *
@@ -33,13 +33,19 @@ import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -51,6 +57,7 @@ import dk.netarkivet.common.exceptions.PermissionDenied;
 import dk.netarkivet.common.exceptions.UnknownID;
 import dk.netarkivet.common.utils.DBUtils;
 import dk.netarkivet.common.utils.DomainUtils;
+import dk.netarkivet.common.utils.ExceptionUtils;
 import dk.netarkivet.common.utils.FilterIterator;
 import dk.netarkivet.common.utils.StringUtils;
 import dk.netarkivet.harvester.datamodel.eav.EAV;
@@ -74,6 +81,22 @@ public class DomainDBDAO extends DomainDAO {
     /** The log. */
     private static final Logger log = LoggerFactory.getLogger(DomainDBDAO.class);
 
+    /** In-memory catalogue of the valid domain names, loaded on first use. */
+    private DomainCatalogue catalogue;
+    /** The highest domain ID read into the catalogue from the database. */
+    private long catalogueMaxId;
+    /**
+     * The domain IDs up to catalogueMaxId that were not found when the catalogue was read. They may belong to
+     * transactions that had not committed yet, so they are read again until they are found, or are more than
+     * CATALOGUE_GAP_WINDOW below the highest ID.
+     */
+    private final TreeSet<Long> catalogueGaps = new TreeSet<Long>();
+    /**
+     * How far below the highest domain ID missing IDs are read again. IDs that are still missing this far below are
+     * considered to be lost by rolled back transactions.
+     */
+    private static final long CATALOGUE_GAP_WINDOW = 10000;
+
     /**
      * Creates a database-based implementation of the DomainDAO. Will check that all schemas have correct versions, and
      * update the ones that haven't.
@@ -193,6 +216,7 @@ public class DomainDBDAO extends DomainDAO {
 
             connection.commit();
             d.setEdition(initialEdition);
+            addToCatalogue(Collections.singletonList(d.getName()));
         } catch (SQLException e) {
             String message = "SQL error creating domain " + d + " in database" + "\n";
             log.warn(message, e);
@@ -202,6 +226,327 @@ public class DomainDBDAO extends DomainDAO {
         }
     }
 
+    @Override
+    public synchronized List<String> createDefaultDomains(Collection<String> domainNames) {
+        ArgumentNotValid.checkNotNull(domainNames, "Collection<String> domainNames");
+        if (domainNames.isEmpty()) {
+            return Collections.emptyList();
+        }
+        for (String name : domainNames) {
+            ArgumentNotValid.checkTrue(DomainUtils.isValidDomainName(name), "Not creating domain with invalid name "
+                    + name);
+        }
+        DBSpecifics specifics = DBSpecifics.getInstance();
+        Connection c = HarvestDBConnection.get();
+        String tmpTable = null;
+        try {
+            c.setAutoCommit(false);
+            tmpTable = specifics.getDomainNamesTmpTable(c);
+            stageDomainNames(c, tmpTable, domainNames);
+            List<String> newNames = insertDefaultDomains(c, tmpTable);
+            specifics.dropDomainNamesTmpTable(c, tmpTable);
+            tmpTable = null;
+            c.commit();
+            addToCatalogue(newNames);
+            log.debug("Created {} of {} domains", newNames.size(), domainNames.size());
+            return newNames;
+        } catch (SQLException e) {
+            String message = "SQL error creating " + domainNames.size() + " domains in database" + "\n";
+            log.warn(message, e);
+            throw new IOFailure(message, e);
+        } finally {
+            DBUtils.rollbackIfNeeded(c, "creating", domainNames.size() + " domains");
+            if (tmpTable != null) {
+                specifics.dropDomainNamesTmpTable(c, tmpTable);
+            }
+            HarvestDBConnection.release(c);
+        }
+    }
+
+    /**
+     * Stage domain names in a temporary table created by {@link DBSpecifics#getDomainNamesTmpTable(Connection)}.
+     *
+     * @param c A connection to the database
+     * @param tmpTable The name of the temporary table
+     * @param domainNames The names to stage. Duplicates are only staged once.
+     * @throws SQLException If some database error occurs.
+     */
+    private void stageDomainNames(Connection c, String tmpTable, Collection<String> domainNames) throws SQLException {
+        PreparedStatement s = c.prepareStatement("INSERT INTO " + tmpTable + " ( name ) VALUES ( ? )");
+        for (String name : new LinkedHashSet<String>(domainNames)) {
+            s.setString(1, name);
+            s.addBatch();
+        }
+        s.executeBatch();
+        s.close();
+    }
+
+    /**
+     * Create default domains for those names staged in the given temporary table that are not already known. The
+     * domains are created in batches, using the connection's current transaction.
+     *
+     * @param c A connection to the database
+     * @param tmpTable A temporary table holding the staged domain names
+     * @return The names of the domains that were created
+     * @throws SQLException If some database error occurs.
+     */
+    private List<String> insertDefaultDomains(Connection c, String tmpTable) throws SQLException {
+        List<String> newNames = DBUtils.selectStringList(c, "SELECT name FROM " + tmpTable
+                + " WHERE name NOT IN ( SELECT name FROM domains )");
+        if (newNames.isEmpty()) {
+            return newNames;
+        }
+
+        // All new domains get the same settings, so read these only once
+        Domain prototype = Domain.getDefaultDomain(newNames.get(0));
+        SeedList prototypeSeedList = prototype.getAllSeedLists().next();
+        DomainConfiguration prototypeConfig = prototype.getDefaultConfiguration();
+        long templateId = DBUtils.selectLongValue(c, "SELECT template_id FROM ordertemplates WHERE name = ?",
+                prototypeConfig.getOrderXmlName());
+
+        PreparedStatement s = c.prepareStatement("INSERT INTO domains "
+                + "(name, comments, defaultconfig, crawlertraps, edition, alias, lastaliasupdate ) "
+                + "VALUES ( ?, ?, -1, ?, 1, NULL, NULL )");
+        for (String name : newNames) {
+            DBUtils.setStringMaxLength(s, 1, name, Constants.MAX_NAME_SIZE, name, "name");
+            DBUtils.setComments(s, 2, prototype, Constants.MAX_COMMENT_SIZE);
+            s.setString(3, "");
+            s.addBatch();
+        }
+        s.executeBatch();
+        s.close();
+
+        Map<String, Long> domainIds = new HashMap<String, Long>();
+        // Until the end of this method, only the domains inserted above have no default configuration
+        s = c.prepareStatement("SELECT domains.name, domains.domain_id FROM domains, " + tmpTable
+                + " WHERE domains.name = " + tmpTable + ".name AND domains.defaultconfig = -1");
+        ResultSet res = s.executeQuery();
+        while (res.next()) {
+            domainIds.put(res.getString(1), res.getLong(2));
+        }
+        s.close();
+
+        s = c.prepareStatement("INSERT INTO seedlists ( name, comments, domain_id, seeds ) "
+                + "VALUES ( ?, ?, ?, ? )");
+        for (String name : newNames) {
+            DBUtils.setName(s, 1, prototypeSeedList, Constants.MAX_NAME_SIZE);
+            DBUtils.setComments(s, 2, prototypeSeedList, Constants.MAX_COMMENT_SIZE);
+            s.setLong(3, domainIds.get(name));
+            DBUtils.setClobMaxLength(s, 4, Domain.getDefaultSeed(name), Constants.MAX_SEED_LIST_SIZE,
+                    prototypeSeedList, "seedlist");
+            s.addBatch();
+        }
+        s.executeBatch();
+        s.close();
+
+        s = c.prepareStatement("INSERT INTO configurations "
+                + "( name, comments, domain_id, template_id, maxobjects, maxrate, maxbytes ) "
+                + "VALUES ( ?, ?, ?, ?, ?, ?, ? )");
+        for (String name : newNames) {
+            DBUtils.setName(s, 1, prototypeConfig, Constants.MAX_NAME_SIZE);
+            DBUtils.setComments(s, 2, prototypeConfig, Constants.MAX_COMMENT_SIZE);
+            s.setLong(3, domainIds.get(name));
+            s.setLong(4, templateId);
+            s.setLong(5, prototypeConfig.getMaxObjects());
+            s.setInt(6, prototypeConfig.getMaxRequestRate());
+            s.setLong(7, prototypeConfig.getMaxBytes());
+            s.addBatch();
+        }
+        s.executeBatch();
+        s.close();
+
+        // Link the configurations to the seedlists, and make them the default configurations
+        s = c.prepareStatement("INSERT INTO config_seedlists ( config_id, seedlist_id ) "
+                + "SELECT configurations.config_id, seedlists.seedlist_id"
+                + "  FROM domains, configurations, seedlists, " + tmpTable
+                + " WHERE domains.name = " + tmpTable + ".name"
+                + "   AND configurations.domain_id = domains.domain_id"
+                + "   AND seedlists.domain_id = domains.domain_id"
+                + "   AND domains.defaultconfig = -1"
+                + "   AND configurations.name = ?" + "   AND seedlists.name = ?");
+        s.setString(1, prototypeConfig.getName());
+        s.setString(2, prototypeSeedList.getName());
+        s.executeUpdate();
+        s.close();
+        s = c.prepareStatement("UPDATE domains SET defaultconfig = (SELECT config_id FROM configurations "
+                + "WHERE configurations.name = ? AND configurations.domain_id = domains.domain_id) "
+                + "WHERE defaultconfig = -1 AND name IN ( SELECT name FROM " + tmpTable + " )");
+        s.setString(1, prototypeConfig.getName());
+        s.executeUpdate();
+        s.close();
+
+        List<ExtendedFieldValue> extendedFieldValues = new ArrayList<ExtendedFieldValue>();
+        for (String name : newNames) {
+            for (ExtendedFieldValue prototypeValue : prototype.getExtendedFieldValues()) {
+                ExtendedFieldValue value = new ExtendedFieldValue();
+                value.setExtendedFieldID(prototypeValue.getExtendedFieldID());
+                value.setContent(prototypeValue.getContent());
+                value.setInstanceID(domainIds.get(name));
+                extendedFieldValues.add(value);
+            }
+        }
+        ((ExtendedFieldValueDBDAO) ExtendedFieldValueDAO.getInstance()).create(c, extendedFieldValues);
+
+        return newNames;
+    }
+
+    @Override
+    public synchronized List<DomainConfiguration> createSeedConfigurations(Map<String, Set<String>> seedsByDomain,
+            String configName, String templateName, long maxBytes, int maxObjects) {
+        ArgumentNotValid.checkNotNull(seedsByDomain, "Map<String, Set<String>> seedsByDomain");
+        ArgumentNotValid.checkNotNullOrEmpty(configName, "String configName");
+        ArgumentNotValid.checkNotNullOrEmpty(templateName, "String templateName");
+        if (seedsByDomain.isEmpty()) {
+            return Collections.emptyList();
+        }
+        for (String name : seedsByDomain.keySet()) {
+            ArgumentNotValid.checkTrue(DomainUtils.isValidDomainName(name), "Not creating domain with invalid name "
+                    + name);
+        }
+        DBSpecifics specifics = DBSpecifics.getInstance();
+        Connection c = HarvestDBConnection.get();
+        String tmpTable = null;
+        try {
+            c.setAutoCommit(false);
+            Long templateId = DBUtils.selectFirstLongValueIfAny(c,
+                    "SELECT template_id FROM ordertemplates WHERE name = ?", templateName);
+            if (templateId == null) {
+                throw new UnknownID("No such template: " + templateName);
+            }
+            tmpTable = specifics.getDomainNamesTmpTable(c);
+            stageDomainNames(c, tmpTable, seedsByDomain.keySet());
+            List<String> newDomains = insertDefaultDomains(c, tmpTable);
+
+            // Domains that already have a configuration or seedlist with this name get a unique name instead.
+            // This will probably happen rarely.
+            String uniqueName = configName + "_" + System.currentTimeMillis();
+            Set<String> conflicting = new HashSet<String>(DBUtils.selectStringList(c, "SELECT domains.name"
+                    + "  FROM domains, " + tmpTable + " WHERE domains.name = " + tmpTable + ".name"
+                    + "   AND ( EXISTS ( SELECT config_id FROM configurations"
+                    + "                   WHERE configurations.domain_id = domains.domain_id"
+                    + "                     AND configurations.name = ? )"
+                    + "      OR EXISTS ( SELECT seedlist_id FROM seedlists"
+                    + "                   WHERE seedlists.domain_id = domains.domain_id"
+                    + "                     AND seedlists.name = ? ) )", configName, configName));
+
+            // Build the new configurations. They have no history yet, as history is kept per configuration name.
+            Map<String, Long> domainIds = new HashMap<String, Long>();
+            Map<String, DomainConfiguration> configs = new LinkedHashMap<String, DomainConfiguration>();
+            PreparedStatement s = c.prepareStatement("SELECT domains.name, domains.domain_id, domains.crawlertraps"
+                    + "  FROM domains, " + tmpTable + " WHERE domains.name = " + tmpTable + ".name");
+            ResultSet res = s.executeQuery();
+            while (res.next()) {
+                String domainName = res.getString(1);
+                domainIds.put(domainName, res.getLong(2));
+                List<String> crawlertraps = new ArrayList<String>();
+                String traps = res.getString(3);
+                if (traps != null) {
+                    for (String trap : traps.split("\n")) {
+                        if (!trap.isEmpty()) {
+                            crawlertraps.add(trap);
+                        }
+                    }
+                }
+                String name = conflicting.contains(domainName) ? uniqueName : configName;
+                List<SeedList> seedlists = new ArrayList<SeedList>();
+                seedlists.add(new SeedList(name, new ArrayList<String>(seedsByDomain.get(domainName))));
+                DomainConfiguration dc = new DomainConfiguration(name, domainName, new DomainHistory(),
+                        crawlertraps, seedlists, new ArrayList<Password>());
+                dc.setOrderXmlName(templateName);
+                dc.setMaxBytes(maxBytes);
+                dc.setMaxObjects(maxObjects);
+                configs.put(domainName, dc);
+            }
+            s.close();
+            if (!conflicting.isEmpty()) {
+                log.info("{} domains already have a configuration or seedlist named '{}'. Using the name '{}' for "
+                        + "those instead", conflicting.size(), configName, uniqueName);
+            }
+
+            s = c.prepareStatement("INSERT INTO seedlists ( name, comments, domain_id, seeds ) "
+                    + "VALUES ( ?, ?, ?, ? )");
+            for (DomainConfiguration dc : configs.values()) {
+                SeedList sl = dc.getSeedLists().next();
+                DBUtils.setName(s, 1, sl, Constants.MAX_NAME_SIZE);
+                DBUtils.setComments(s, 2, sl, Constants.MAX_COMMENT_SIZE);
+                s.setLong(3, domainIds.get(dc.getDomainName()));
+                DBUtils.setClobMaxLength(s, 4, sl.getSeedsAsString(), Constants.MAX_SEED_LIST_SIZE, sl, "seedlist");
+                s.addBatch();
+            }
+            s.executeBatch();
+            s.close();
+
+            s = c.prepareStatement("INSERT INTO configurations "
+                    + "( name, comments, domain_id, template_id, maxobjects, maxrate, maxbytes ) "
+                    + "VALUES ( ?, ?, ?, ?, ?, ?, ? )");
+            for (DomainConfiguration dc : configs.values()) {
+                DBUtils.setName(s, 1, dc, Constants.MAX_NAME_SIZE);
+                DBUtils.setComments(s, 2, dc, Constants.MAX_COMMENT_SIZE);
+                s.setLong(3, domainIds.get(dc.getDomainName()));
+                s.setLong(4, templateId);
+                s.setLong(5, dc.getMaxObjects());
+                s.setInt(6, dc.getMaxRequestRate());
+                s.setLong(7, dc.getMaxBytes());
+                s.addBatch();
+            }
+            s.executeBatch();
+            s.close();
+
+            // Read back the IDs of the new configurations and seedlists, and link them
+            s = c.prepareStatement("SELECT domains.name, configurations.name, configurations.config_id, "
+                    + "seedlists.seedlist_id FROM domains, configurations, seedlists, " + tmpTable
+                    + " WHERE domains.name = " + tmpTable + ".name"
+                    + "   AND configurations.domain_id = domains.domain_id"
+                    + "   AND seedlists.domain_id = domains.domain_id"
+                    + "   AND seedlists.name = configurations.name"
+                    + "   AND ( configurations.name = ? OR configurations.name = ? )");
+            s.setString(1, configName);
+            s.setString(2, uniqueName);
+            res = s.executeQuery();
+            PreparedStatement link = c.prepareStatement("INSERT INTO config_seedlists ( config_id, seedlist_id ) "
+                    + "VALUES ( ?, ? )");
+            while (res.next()) {
+                DomainConfiguration dc = configs.get(res.getString(1));
+                if (!dc.getName().equals(res.getString(2))) {
+                    // An older configuration of a conflicting domain
+                    continue;
+                }
+                dc.setID(res.getLong(3));
+                dc.getSeedLists().next().setID(res.getLong(4));
+                link.setLong(1, res.getLong(3));
+                link.setLong(2, res.getLong(4));
+                link.addBatch();
+            }
+            s.close();
+            link.executeBatch();
+            link.close();
+
+            s = c.prepareStatement("UPDATE domains SET edition = edition + 1 "
+                    + "WHERE name IN ( SELECT name FROM " + tmpTable + " )");
+            s.executeUpdate();
+            s.close();
+
+            specifics.dropDomainNamesTmpTable(c, tmpTable);
+            tmpTable = null;
+            c.commit();
+            addToCatalogue(newDomains);
+            log.info("Created configuration '{}' for {} domains, of which {} were new", configName, configs.size(),
+                    newDomains.size());
+            return new ArrayList<DomainConfiguration>(configs.values());
+        } catch (SQLException e) {
+            String message = "SQL error creating configurations '" + configName + "' for " + seedsByDomain.size()
+                    + " domains in database" + "\n";
+            log.warn(message, e);
+            throw new IOFailure(message, e);
+        } finally {
+            DBUtils.rollbackIfNeeded(c, "creating configurations for", seedsByDomain.size() + " domains");
+            if (tmpTable != null) {
+                specifics.dropDomainNamesTmpTable(c, tmpTable);
+            }
+            HarvestDBConnection.release(c);
+        }
+    }
+
     @Override
     public synchronized void update(Domain d) {
         ArgumentNotValid.checkNotNull(d, "domain");
@@ -1127,12 +1472,9 @@ public class DomainDBDAO extends DomainDAO {
     @Override
     public List<String> getDomains(String glob) {
         ArgumentNotValid.checkNotNullOrEmpty(glob, "glob");
-        // SQL uses % and _ instead of * and ?
-        String sqlGlob = DBUtils.makeSQLGlob(glob);
         Connection c = HarvestDBConnection.get();
         try {
-            List<String> names = DBUtils.selectStringList(c, "SELECT name FROM domains WHERE name LIKE ? ORDER BY name", sqlGlob);
-            return names.stream().filter(DomainUtils::isValidDomainName).collect(Collectors.toList());
+            return getCatalogue(c).find(glob);
         } finally {
             HarvestDBConnection.release(c);
         }
@@ -1257,45 +1599,10 @@ public class DomainDBDAO extends DomainDAO {
      */
     @Override
     public List<TLDInfo> getTLDs(int level) {
-        Map<String, TLDInfo> resultMap = new HashMap<String, TLDInfo>();
         Connection c = HarvestDBConnection.get();
-        PreparedStatement s = null;
         try {
-            s = c.prepareStatement("SELECT name FROM domains");
-            ResultSet res = s.executeQuery();
-            while (res.next()) {
-                String domain = res.getString(1);
-                if (DomainUtils.isValidDomainName(domain)) {
-                    // getting the TLD level of the domain
-                    int domainTLDLevel = TLDInfo.getTLDLevel(domain);
-
-                    // restraining to max level
-                    if (domainTLDLevel > level) {
-                        domainTLDLevel = level;
-                    }
-
-                    // looping from level 1 to level max of the domain
-                    for (int currentLevel = 1; currentLevel <= domainTLDLevel; currentLevel++) {
-                        // getting the tld of the domain by level
-                        String tld = TLDInfo.getMultiLevelTLD(domain, currentLevel);
-                        TLDInfo i = resultMap.get(tld);
-                        if (i == null) {
-                            i = new TLDInfo(tld);
-                            resultMap.put(tld, i);
-                        }
-                        i.addSubdomain(domain);
-                    }
-                }
-            }
-
-            List<TLDInfo> resultSet = new ArrayList<TLDInfo>(resultMap.values());
-            Collections.sort(resultSet);
-            return resultSet;
-
-        } catch (SQLException e) {
-            throw new IOFailure("Failure getting TLD-information" + "\n", e);
+            return getCatalogue(c).getTLDs(level);
         } finally {
-            DBUtils.closeStatementIfOpen(s);
             HarvestDBConnection.release(c);
         }
     }
@@ -1608,6 +1915,9 @@ public class DomainDBDAO extends DomainDAO {
 
         Connection c = HarvestDBConnection.get();
         try {
+            if ("name".equalsIgnoreCase(searchField)) {
+                return getCatalogue(c).find(glob);
+            }
             return DBUtils.selectStringList(c, "SELECT name FROM domains WHERE " + searchField.toLowerCase()
                     + " LIKE ?", sqlGlob).stream().filter(DomainUtils::isValidDomainName).collect(Collectors.toList());
         } finally {
@@ -1650,10 +1960,67 @@ public class DomainDBDAO extends DomainDAO {
     public List<String> getAllDomainNames() {
         Connection c = HarvestDBConnection.get();
         try {
-            return DBUtils.selectStringList(c, "SELECT name FROM domains").stream().filter(DomainUtils::isValidDomainName).collect(
-                    Collectors.toList());
+            return getCatalogue(c).getAllNames();
         } finally {
             HarvestDBConnection.release(c);
         }   
     }
+
+    /**
+     * Get the domain catalogue, first reading the domains created in the database since it was last read. Domains
+     * created through this DAO are also added to the catalogue as they are committed, but reading new IDs picks up
+     * domains created by other applications sharing the database.
+     * <p>
+     * A transaction may commit a domain with a lower ID after domains with higher IDs have been read. The IDs below the
+     * highest one read, which were not found, are therefore read again on later calls, until they are found or are more
+     * than CATALOGUE_GAP_WINDOW below the highest ID.
+     *
+     * @param c A connection to the database
+     * @return the catalogue of all valid domain names.
+     */
+    private synchronized DomainCatalogue getCatalogue(Connection c) {
+        Long maxId = DBUtils.selectLongValue(c, "SELECT MAX(domain_id) FROM domains");
+        long newMaxId = maxId == null ? 0 : maxId;
+        if (catalogue == null || newMaxId < catalogueMaxId) {
+            // First use, or the database has been replaced
+            catalogue = new DomainCatalogue();
+            catalogueMaxId = 0;
+            catalogueGaps.clear();
+        }
+        // Give up the IDs too far below to belong to transactions still running
+        catalogueGaps.headSet(newMaxId - CATALOGUE_GAP_WINDOW, true).clear();
+        long fromId = catalogueGaps.isEmpty() ? catalogueMaxId : catalogueGaps.first() - 1;
+        if (newMaxId > fromId) {
+            String query = "SELECT name, domain_id FROM domains WHERE domain_id > ? AND domain_id <= ?";
+            Map<String, Long> domains;
+            try {
+                domains = DBUtils.selectStringLongMap(c, query, fromId, newMaxId);
+            } catch (SQLException e) {
+                String message = "SQL error reading new domains into the domain catalogue\n"
+                        + ExceptionUtils.getSQLExceptionCause(e);
+                log.warn(message, e);
+                throw new IOFailure(message, e);
+            }
+            int added = catalogue.addAll(domains.keySet());
+            for (long id = Math.max(catalogueMaxId, newMaxId - CATALOGUE_GAP_WINDOW) + 1; id <= newMaxId; id++) {
+                catalogueGaps.add(id);
+            }
+            catalogueGaps.removeAll(domains.values());
+            log.debug("Read {} domains with IDs up to {} into the domain catalogue, {} of them new, {} IDs missing",
+                    domains.size(), newMaxId, added, catalogueGaps.size());
+            catalogueMaxId = newMaxId;
+        }
+        return catalogue;
+    }
+
+    /**
+     * Add newly committed domains to the domain catalogue, if it has been loaded.
+     *
+     * @param domainNames The names of the domains.
+     */
+    private synchronized void addToCatalogue(Collection<String> domainNames) {
+        if (catalogue != null) {
+            catalogue.addAll(domainNames);
+        }
+    }
 }
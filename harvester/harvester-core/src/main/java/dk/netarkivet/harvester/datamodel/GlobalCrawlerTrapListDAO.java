@@ -126,4 +126,12 @@ public abstract class GlobalCrawlerTrapListDAO implements DAO {
      * Reads a list of all active global crawler trap expressions from the database and adds them to the crawl template.
      */
     public abstract void addGlobalCrawlerTraps(HeritrixTemplate orderXmlDoc);
+
+    /**
+     * Get the edition of the crawler trap lists. The edition changes whenever a list is created, updated or deleted by
+     * this process. Changes made by other processes are not reflected.
+     *
+     * @return the current edition of the crawler trap lists.
+     */
+    public abstract long getEdition();
 }
@@ -30,6 +30,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -48,6 +49,9 @@ public class GlobalCrawlerTrapListDBDAO extends GlobalCrawlerTrapListDAO {
     /** The logger for this class. */
     private static final Logger log = LoggerFactory.getLogger(GlobalCrawlerTrapListDBDAO.class);
 
+    /** The edition of the trap lists. Static, so that it keeps increasing if the singleton is reset. */
+    private static final AtomicLong edition = new AtomicLong();
+
     /**
      * protected constructor of this class. Checks if any migration are needed before operation starts.
      */
@@ -170,6 +174,7 @@ public class GlobalCrawlerTrapListDBDAO extends GlobalCrawlerTrapListDAO {
                 stmt.executeUpdate();
             }
             conn.commit();
+            edition.incrementAndGet();
         } catch (SQLException e) {
             String message = "SQL error creating global crawler trap list \n" + ExceptionUtils.getSQLExceptionCause(e);
             log.warn(message, e);
@@ -208,6 +213,7 @@ public class GlobalCrawlerTrapListDBDAO extends GlobalCrawlerTrapListDAO {
             stmt.setInt(1, id);
             stmt.executeUpdate();
             conn.commit();
+            edition.incrementAndGet();
         } catch (SQLException e) {
             String message = "Error deleting trap list: '" + id + "'\n" + ExceptionUtils.getSQLExceptionCause(e);
             log.warn(message, e);
@@ -259,6 +265,7 @@ public class GlobalCrawlerTrapListDBDAO extends GlobalCrawlerTrapListDAO {
                 stmt.close();
             }
             conn.commit();
+            edition.incrementAndGet();
         } catch (SQLException e) {
             String message = "Error updating trap list :'" + trapList.getId() + "'\n"
                     + ExceptionUtils.getSQLExceptionCause(e);
@@ -363,4 +370,9 @@ public class GlobalCrawlerTrapListDBDAO extends GlobalCrawlerTrapListDAO {
         orderXmlDoc.insertCrawlerTraps(Constants.GLOBAL_CRAWLER_TRAPS_ELEMENT_NAME,
         		               dao.getAllActiveTrapExpressions());
     } 
+
+    @Override
+    public long getEdition() {
+        return edition.get();
+    }
 }
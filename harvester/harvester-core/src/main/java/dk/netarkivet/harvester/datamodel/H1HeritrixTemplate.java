@@ -304,6 +304,16 @@ public class H1HeritrixTemplate extends HeritrixTemplate implements Serializable
     	this.template = XmlUtils.documentFromString(templateAsString);
 	}
 
+    @Override
+    public HeritrixTemplate copy() {
+        // The constructor clones the document
+        H1HeritrixTemplate copy = new H1HeritrixTemplate(template, false);
+        copy.template_id = template_id;
+        copy.verified = verified;
+        copy.setIsActive(isActive());
+        return copy;
+    }
+
 	/**
      * return the template.
      *
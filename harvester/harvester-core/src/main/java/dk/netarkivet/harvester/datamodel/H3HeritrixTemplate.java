@@ -117,6 +117,17 @@ public class H3HeritrixTemplate extends HeritrixTemplate implements Serializable
         this.template = template;
     }
     
+    @Override
+    public HeritrixTemplate copy() {
+        // The template string is immutable, so it is shared until one of the templates is edited
+        H3HeritrixTemplate copy = new H3HeritrixTemplate(template_id, template);
+        copy.forceMaxbytesPerDomain = forceMaxbytesPerDomain;
+        copy.forceMaxobjectsPerDomain = forceMaxobjectsPerDomain;
+        copy.verified = verified;
+        copy.setIsActive(isActive());
+        return copy;
+    }
+
 	/**
      * return the template.
      *
@@ -418,7 +429,8 @@ public class H3HeritrixTemplate extends HeritrixTemplate implements Serializable
 	/**
 	 * With H3 template, we insert the crawlertraps into the template at once.
 	 * They are inserted to be part of a org.archive.modules.deciderules.MatchesListRegexDecideRule
-	 * bean.
+	 * bean, or of a dk.netarkivet.harvester.harvesting.CrawlerTrapsDecideRule bean, which takes the same
+	 * properties but is much faster for long lists of crawlertraps.
 	 * 
 	 * @param elementName The elementName is currently not used with H3
 	 * @param crawlertraps A list of crawlertraps to be inserted
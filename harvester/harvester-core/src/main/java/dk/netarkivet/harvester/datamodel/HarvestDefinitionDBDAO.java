@@ -235,8 +235,9 @@ public class HarvestDefinitionDBDAO extends HarvestDefinitionDAO {
                 s.setLong(1, id);
                 s.setString(2, dc.getDomainName());
                 s.setString(3, dc.getName());
-                s.executeUpdate();
+                s.addBatch();
             }
+            s.executeBatch();
         }
     }
 
@@ -270,4 +270,12 @@ public abstract class HeritrixTemplate implements Serializable {
 			String origHarvestdefinitionName, String scheduleName,
 			String performer);
 
+	/**
+	 * Make an independent copy of this template, which can be edited without affecting this template. This is
+	 * cheaper than reading the template again.
+	 *
+	 * @return a copy of this template.
+	 */
+	public abstract HeritrixTemplate copy();
+
 }
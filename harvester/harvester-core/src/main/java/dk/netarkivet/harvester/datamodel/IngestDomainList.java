@@ -30,8 +30,14 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.servlet.jsp.JspWriter;
 
@@ -56,8 +62,8 @@ public class IngestDomainList {
     /** I18n bundle used by this class. */
     private static final I18n I18N = new dk.netarkivet.common.utils.I18n(Constants.TRANSLATIONS_BUNDLE);
 
-    /** How often to log progress. */
-    private static final int PRINT_INTERVAL = 10000;
+    /** How many domains are validated and created together. Progress is reported after each batch. */
+    private static final int BATCH_SIZE = 10000;
 
     /** Connection to the persistent store of Domains. */
     private DomainDAO dao;
@@ -71,8 +77,9 @@ public class IngestDomainList {
 
     /**
      * Adds all new domains from a newline-separated file of domain names. The file is assumed to be in the UTF-8
-     * format. For large files, a line is printed to the log, and to the out variable (if not set to null), every
-     * PRINT_INTERVAL lines.
+     * format. The domains are handled in batches of BATCH_SIZE: the names in a batch are validated in parallel, and the
+     * new domains in it are created in one transaction. After each batch, a line is printed to the log, and to the out
+     * variable (if not set to null).
      *
      * @param domainList the file containing the domain names.
      * @param out a stream to which output can be sent. May be null.
@@ -81,60 +88,35 @@ public class IngestDomainList {
     public void updateDomainInfo(File domainList, JspWriter out, Locale theLocale) {
         ArgumentNotValid.checkNotNull(domainList, "File domainList");
         ArgumentNotValid.checkNotNull(theLocale, "Locale theLocale");
-        Domain myDomain;
         String domainName;
         BufferedReader in = null;
         int countDomains = 0;
         List<String> invalidDomains = new ArrayList<String>();
         int countCreatedDomains = 0;
-        boolean print = (out != null);
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService validators = Executors.newFixedThreadPool(threads);
         try {
             in = new BufferedReader(new InputStreamReader(new FileInputStream(domainList), "UTF-8"));
-
+            List<String> batch = new ArrayList<String>(BATCH_SIZE);
             while ((domainName = in.readLine()) != null) {
-                try {
-                    countDomains++;
-                    if ((countDomains % PRINT_INTERVAL) == 0) {
-                        Date d = new Date();
-                        String msg = "Domain #" + countDomains + ": " + domainName + " added at " + d;
-                        log.info(msg);
-                        if (print) {
-                            out.print(I18N.getString(theLocale, "domain.number.0.1.added.at.2", countDomains,
-                                    domainName, d));
-                            out.print("<br/>");
-                            out.flush();
-                        }
-                    }
-
-                    if (DomainUtils.isValidDomainName(domainName)) {
-                        if (!dao.exists(domainName)) {
-                            myDomain = Domain.getDefaultDomain(domainName);
-                            dao.create(myDomain);
-                            countCreatedDomains++;
-                        }
-                    } else {
-                        log.debug("domain '{}' is not a valid domain Name", domainName);
-                        invalidDomains.add(domainName);
-                        if (print) {
-                            out.print(I18N.getString(theLocale, "errormsg;domain.0.is.not.a.valid" + ".domainname",
-                                    domainName));
-                            out.print("<br/>");
-                            out.flush();
-                        }
-                    }
-                } catch (Exception e) {
-                    log.debug("Could not create domain '{}'", domainName, e);
-                    if (print) {
-                        out.print(I18N.getString(theLocale, "errormsg;unable.to.create" + ".domain.0.due.to.error.1",
-                                domainName, e.getMessage()));
-                        out.print("<br/>\n");
-                        out.flush();
-                    }
+                batch.add(domainName);
+                if (batch.size() == BATCH_SIZE) {
+                    countDomains += batch.size();
+                    countCreatedDomains += ingestBatch(batch, validators, threads, invalidDomains, out, theLocale);
+                    printProgress(countDomains, domainName, out, theLocale);
+                    batch.clear();
                 }
             }
-            log.info("Looked at {} domains, created {} new domains and found {} invalid domains", countDomains, countCreatedDomains, invalidDomains.size());
+            if (!batch.isEmpty()) {
+                countDomains += batch.size();
+                countCreatedDomains += ingestBatch(batch, validators, threads, invalidDomains, out, theLocale);
+                flush(out);
+            }
+            log.info("Looked at {} domains, created {} new domains and found {} invalid domains", countDomains,
+                    countCreatedDomains, invalidDomains.size());
             if (!invalidDomains.isEmpty()) {
-                log.warn("Found the following {} invalid domains during ingest", invalidDomains.size(), StringUtils.conjoin(",", invalidDomains));
+                log.warn("Found the following {} invalid domains during ingest: {}", invalidDomains.size(),
+                        StringUtils.conjoin(",", invalidDomains));
             }
         } catch (FileNotFoundException e) {
             String msg = "File '" + domainList.getAbsolutePath() + "' not found";
@@ -145,6 +127,7 @@ public class IngestDomainList {
             log.debug(msg);
             throw new IOFailure(msg, e);
         } finally {
+            validators.shutdown();
             try {
                 if (in != null) {
                     in.close();
@@ -155,4 +138,138 @@ public class IngestDomainList {
         }
     }
 
+    /**
+     * Validate a batch of domain names, and create the new domains among them.
+     *
+     * @param batch The domain names read.
+     * @param validators The threads validating the names.
+     * @param threads The number of validator threads.
+     * @param invalidDomains List to which invalid domain names are added.
+     * @param out a stream to which output can be sent. May be null.
+     * @param theLocale the given Locale
+     * @return the number of domains created.
+     */
+    private int ingestBatch(List<String> batch, ExecutorService validators, int threads, List<String> invalidDomains,
+            JspWriter out, Locale theLocale) {
+        boolean[] valid = validate(batch, validators, threads);
+        Set<String> validNames = new LinkedHashSet<String>();
+        for (int i = 0; i < batch.size(); i++) {
+            String domainName = batch.get(i);
+            if (valid[i]) {
+                validNames.add(domainName);
+            } else {
+                log.debug("domain '{}' is not a valid domain Name", domainName);
+                invalidDomains.add(domainName);
+                print(out, I18N.getString(theLocale, "errormsg;domain.0.is.not.a.valid" + ".domainname", domainName),
+                        "<br/>");
+            }
+        }
+        try {
+            return dao.createDefaultDomains(validNames).size();
+        } catch (Exception e) {
+            log.info("Could not create {} domains in one transaction. Creating them one at a time", validNames.size(),
+                    e);
+        }
+        int countCreatedDomains = 0;
+        for (String domainName : validNames) {
+            try {
+                if (!dao.exists(domainName)) {
+                    dao.create(Domain.getDefaultDomain(domainName));
+                    countCreatedDomains++;
+                }
+            } catch (Exception e) {
+                log.debug("Could not create domain '{}'", domainName, e);
+                print(out, I18N.getString(theLocale, "errormsg;unable.to.create" + ".domain.0.due.to.error.1",
+                        domainName, e.getMessage()), "<br/>\n");
+            }
+        }
+        return countCreatedDomains;
+    }
+
+    /**
+     * Check which of a number of domain names are valid, splitting the work between a number of threads.
+     *
+     * @param names The domain names.
+     * @param validators The threads validating the names.
+     * @param threads The number of validator threads.
+     * @return an array telling for each name whether it is valid.
+     */
+    private static boolean[] validate(final List<String> names, ExecutorService validators, int threads) {
+        final boolean[] valid = new boolean[names.size()];
+        int sliceSize = (names.size() + threads - 1) / threads;
+        List<Future<?>> slices = new ArrayList<Future<?>>();
+        for (int start = 0; start < names.size(); start += sliceSize) {
+            final int from = start;
+            final int to = Math.min(start + sliceSize, names.size());
+            slices.add(validators.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = from; i < to; i++) {
+                        valid[i] = DomainUtils.isValidDomainName(names.get(i));
+                    }
+                }
+            }));
+        }
+        try {
+            for (Future<?> slice : slices) {
+                slice.get();
+            }
+        } catch (InterruptedException e) {
+            throw new IOFailure("Interrupted while validating domain names", e);
+        } catch (ExecutionException e) {
+            throw new IOFailure("Unable to validate domain names", e.getCause());
+        }
+        return valid;
+    }
+
+    /**
+     * Report progress to the log and to the output.
+     *
+     * @param countDomains The number of domains read so far.
+     * @param domainName The last domain read.
+     * @param out a stream to which output can be sent. May be null.
+     * @param theLocale the given Locale
+     */
+    private static void printProgress(int countDomains, String domainName, JspWriter out, Locale theLocale) {
+        Date d = new Date();
+        log.info("Domain #" + countDomains + ": " + domainName + " added at " + d);
+        print(out, I18N.getString(theLocale, "domain.number.0.1.added.at.2", countDomains, domainName, d), "<br/>");
+        flush(out);
+    }
+
+    /**
+     * Print a message to the output, if any. The output is not flushed.
+     *
+     * @param out a stream to which output can be sent. May be null.
+     * @param message The message.
+     * @param suffix Markup printed after the message.
+     */
+    private static void print(JspWriter out, String message, String suffix) {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.print(message);
+            out.print(suffix);
+        } catch (IOException e) {
+            log.debug("Unable to print '{}'", message, e);
+        }
+    }
+
+    /**
+     * Flush the output, if any.
+     *
+     * @param out a stream to which output can be sent. May be null.
+     */
+    private static void flush(JspWriter out) {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.flush();
+        } catch (IOException e) {
+            log.debug("Unable to flush output", e);
+        }
+    }
+
 }
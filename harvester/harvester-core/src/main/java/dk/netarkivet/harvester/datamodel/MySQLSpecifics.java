@@ -88,6 +88,21 @@ public class MySQLSpecifics extends DBSpecifics {
         }
     }
 
+    @Override
+    public String getDomainNamesTmpTable(Connection c) throws SQLException {
+        ArgumentNotValid.checkNotNull(c, "Connection c");
+        PreparedStatement s = c.prepareStatement("CREATE TEMPORARY TABLE domainnames " + "( name varchar("
+                + Constants.MAX_NAME_SIZE + ") )");
+        s.execute();
+        s.close();
+        return "domainnames";
+    }
+
+    @Override
+    public void dropDomainNamesTmpTable(Connection c, String tableName) {
+        dropJobConfigsTmpTable(c, tableName);
+    }
+
     /**
      * Get the name of the JDBC driver class that handles interfacing to this server.
      *
@@ -28,7 +28,6 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.sql.SQLException;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
@@ -431,77 +430,22 @@ public class PartialHarvest extends HarvestDefinition {
 
         String name = harvestDefName + "_" + templateName + "_" + maxBytesS + "_" + maxObjectsS;
 
-        Set<DomainConfiguration> newDcs = new HashSet<DomainConfiguration>();
-        for (Map.Entry<String, Set<String>> entry : acceptedSeeds.entrySet()) {
-            String domainName = entry.getKey();
-            Domain domain;
-            List<SeedList> seedListList = new ArrayList<SeedList>();
-            SeedList seedlist;
-            // Find or create the domain
-            if (DomainDAO.getInstance().exists(domainName)) {
-                domain = DomainDAO.getInstance().read(domainName);
-                
-                // If a config with this name exists already for the dommain, add a "_" + timestamp to the end of the name to be make it unique.
-                // This will probably happen rarely.
-                // This name is used for both the configuration and corresponding seed
-                if (domain.hasConfiguration(name)) {
-                    String oldName = name;
-                    name = name + "_" + System.currentTimeMillis();
-                    log.info("configuration '{}' for domain '{}' already exists. Change name for config and corresponding seed to ", 
-                            oldName, name, domain.getName());
-                }
-                seedlist =  new SeedList(name, ""); // Assure that the seedname is the same as the configname.
-                seedListList.add(seedlist);
-                domain.addSeedList(seedlist);
-                                
-            } else {
-                seedlist =  new SeedList(name, ""); // Assure that the seedname is the same as the configname.
-                seedListList.add(seedlist);
-                log.info("Creating domain {} in DomainDAO", domainName);
-                domain = Domain.getDefaultDomain(domainName);
-                domain.addSeedList(seedlist);
-                DomainDAO.getInstance().create(domain);
-            }
-            
-            DomainConfiguration dc = new DomainConfiguration(name, domain, seedListList, new ArrayList<Password>());
-            dc.setOrderXmlName(templateName);
-            dc.setMaxBytes(maxBytes);
-            dc.setMaxObjects(maxObjects);
-            domain.addConfiguration(dc);
-            log.info("Adding seeds til new configuration '{}' (id={}) for domain '{}' ", name, dc.getID(), domain.getName());
-
-
-            // Find the SeedList and add this seed to it
-            seedlist = domain.getSeedList(name);
-            List<String> currentSeeds = seedlist.getSeeds();
-            entry.getValue().addAll(currentSeeds);
-
-            List<String> allSeeds = new ArrayList<String>();
-
-            allSeeds.addAll(entry.getValue());
-            domain.updateSeedList(new SeedList(name, allSeeds));
-
-            // Add the configuration to the list of new configs for
-            // this harvest.
-            newDcs.add(dc);
-            DomainDAO.getInstance().update(domain);
-            log.info("Created configuration '{}' for domain {} with ID {}", dc.getName(), dc.getDomainName(), dc.getID());
+        // Find or create the domains, and add a configuration and seedlist with the seeds to each of them
+        List<DomainConfiguration> newDcs = DomainDAO.getInstance().createSeedConfigurations(acceptedSeeds, name,
+                templateName, maxBytes, maxObjects);
+        for (DomainConfiguration dc : newDcs) {
+            log.info("Created configuration '{}' for domain {} with ID {}", dc.getName(), dc.getDomainName(),
+                    dc.getID());
             saveAttributes(dc, attributeValues);
+            addConfiguration(dc);
         }
 
-        boolean thisInDAO = HarvestDefinitionDAO.getInstance().exists(this.harvestDefName);
-        if (thisInDAO) { // We have previously created this harvestdefinition in the HarvestDefinitionDAO.
-            HarvestDefinitionDAO hddao = HarvestDefinitionDAO.getInstance();
-            for (DomainConfiguration dc : newDcs) {
-                addConfiguration(dc);
-                hddao.addDomainConfiguration(this, new SparseDomainConfiguration(dc));
-            }
+        // Both update and create store the links to all the configurations of this harvest definition
+        HarvestDefinitionDAO hddao = HarvestDefinitionDAO.getInstance();
+        if (hddao.exists(this.harvestDefName)) { // We have previously created this harvestdefinition in the HarvestDefinitionDAO.
             hddao.update(this);
         } else { // not yet created in the HarvestDefinitionDAO
-            for (DomainConfiguration dc : newDcs) {
-                addConfiguration(dc);
-            }
-            HarvestDefinitionDAO.getInstance().create(this);
+            hddao.create(this);
         }
     }
 
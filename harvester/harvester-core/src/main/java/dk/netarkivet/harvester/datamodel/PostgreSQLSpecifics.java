@@ -81,6 +81,20 @@ public class PostgreSQLSpecifics extends DBSpecifics {
     public void dropJobConfigsTmpTable(Connection c, String tableName) {
     }
 
+    @Override
+    public String getDomainNamesTmpTable(Connection c) throws SQLException {
+        ArgumentNotValid.checkNotNull(c, "Connection c");
+        PreparedStatement s = c.prepareStatement("CREATE TEMPORARY TABLE domainnames " + "( name varchar("
+                + Constants.MAX_NAME_SIZE + ") )" + " ON COMMIT DROP");
+        s.execute();
+        s.close();
+        return "domainnames";
+    }
+
+    @Override
+    public void dropDomainNamesTmpTable(Connection c, String tableName) {
+    }
+
     /**
      * Get the name of the JDBC driver class that handles interfacing to this server.
      *
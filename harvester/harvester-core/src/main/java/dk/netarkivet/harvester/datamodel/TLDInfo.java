@@ -49,6 +49,18 @@ public class TLDInfo implements Comparable<TLDInfo> {
         tldName = name;
     }
 
+    /**
+     * Create TLD info holder for a TLD with a known number of subdomains.
+     *
+     * @param name The TLD domain name.
+     * @param count The number of subdomains registered under this TLD.
+     */
+    TLDInfo(String name, int count) {
+        this(name);
+        ArgumentNotValid.checkNotNegative(count, "int count");
+        this.count = count;
+    }
+
     /**
      * The name of this TLD (e.g. dk, com or museum). IP addresses are registered under a special "IP address" name.
      *
@@ -115,6 +115,15 @@ public abstract class TemplateDAO implements DAO {
      */
     public abstract void update(String orderXmlName, HeritrixTemplate orderXml);
 
+    /**
+     * Get the edition of the templates. The edition changes whenever a template is created or updated by this process,
+     * so a copy of a template read while the edition was unchanged is still current. Changes made by other processes
+     * are not reflected.
+     *
+     * @return the current edition of the templates.
+     */
+    public abstract long getEdition();
+
     /**
      * Resets the singleton. Only for use from tests.
      */
@@ -32,6 +32,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,6 +55,9 @@ public class TemplateDBDAO extends TemplateDAO {
     /** the log. */
     private static final Logger log = LoggerFactory.getLogger(TemplateDBDAO.class);
 
+    /** The edition of the templates. Static, so that it keeps increasing if the singleton is reset. */
+    private static final AtomicLong edition = new AtomicLong();
+
     /**
      * Default constructor. Only used by TemplateDAO,getInstance().
      */
@@ -187,6 +191,7 @@ public class TemplateDBDAO extends TemplateDAO {
             DBUtils.setClobMaxLength(s, 2, orderXml.getXML(), Constants.MAX_ORDERXML_SIZE, "size", orderXmlName);
             s.setBoolean(3, orderXml.isActive());
             s.executeUpdate();
+            edition.incrementAndGet();
         } catch (SQLException e) {
             throw new IOFailure("SQL error creating template " + orderXmlName + "\n"
                     + ExceptionUtils.getSQLExceptionCause(e), e);
@@ -220,6 +225,7 @@ public class TemplateDBDAO extends TemplateDAO {
             s.setBoolean(2, orderXml.isActive());
             s.setString(3, orderXmlName);
             s.executeUpdate();
+            edition.incrementAndGet();
         } catch (SQLException e) {
             throw new IOFailure("SQL error updating template " + orderXmlName + "\n"
                     + ExceptionUtils.getSQLExceptionCause(e), e);
@@ -228,4 +234,9 @@ public class TemplateDBDAO extends TemplateDAO {
         }
     }
 
+    @Override
+    public long getEdition() {
+        return edition.get();
+    }
+
 }
@@ -26,6 +26,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -96,6 +97,39 @@ public class ExtendedFieldValueDBDAO extends ExtendedFieldValueDAO {
         }
     }
 
+    /**
+     * Create a number of ExtendedFieldValues in persistent storage using one JDBC batch. The values are given
+     * consecutive IDs. The changes are not committed.
+     *
+     * @param aConnection an open connection to the HarvestDatabase, with auto-commit disabled.
+     * @param aExtendedFieldValues The ExtendedFieldValues to create, which must not have IDs yet.
+     * @throws SQLException In case of Database access problems.
+     */
+    public void create(Connection aConnection, List<ExtendedFieldValue> aExtendedFieldValues) throws SQLException {
+        ArgumentNotValid.checkNotNull(aExtendedFieldValues, "List<ExtendedFieldValue> aExtendedFieldValues");
+        if (aExtendedFieldValues.isEmpty()) {
+            return;
+        }
+        long nextID = generateNextID(aConnection);
+        PreparedStatement statement = aConnection.prepareStatement("INSERT INTO extendedfieldvalue ("
+                + "extendedfieldvalue_id, extendedfield_id, content, instance_id) " + "VALUES (?, ?, ?, ?)");
+        try {
+            for (ExtendedFieldValue value : aExtendedFieldValues) {
+                ArgumentNotValid.checkTrue(value.getExtendedFieldValueID() == null, "The extendedFieldValueID for "
+                        + value + " is already set");
+                value.setExtendedFieldValueID(nextID++);
+                statement.setLong(1, value.getExtendedFieldValueID());
+                statement.setLong(2, value.getExtendedFieldID());
+                statement.setString(3, value.getContent());
+                statement.setLong(4, value.getInstanceID());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        } finally {
+            statement.close();
+        }
+    }
+
     @Override
     public void create(ExtendedFieldValue aExtendedFieldValue) {
         Connection connection = HarvestDBConnection.get();
@@ -28,6 +28,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import dk.netarkivet.common.distribute.Channels;
+import dk.netarkivet.common.distribute.KeyedMessage;
 import dk.netarkivet.harvester.distribute.HarvesterMessage;
 import dk.netarkivet.harvester.distribute.HarvesterMessageVisitor;
 import dk.netarkivet.harvester.harvesting.monitor.HarvestMonitor;
@@ -41,7 +42,7 @@ import dk.netarkivet.harvester.harvesting.report.Heritrix1Constants;
  * {@link HarvestMonitor}.
  */
 @SuppressWarnings({"serial"})
-public class CrawlProgressMessage extends HarvesterMessage implements Serializable {
+public class CrawlProgressMessage extends HarvesterMessage implements Serializable, KeyedMessage {
 
 	/** The logger for this class. */
 	
@@ -321,6 +322,16 @@ public class CrawlProgressMessage extends HarvesterMessage implements Serializab
         return jobID;
     }
 
+    /**
+     * Progress reports for the same job are processed in order, and before the job is reported ended.
+     *
+     * @return the job ID.
+     */
+    @Override
+    public String getOrderingKey() {
+        return Long.toString(jobID);
+    }
+
     public String getProgressStatisticsLegend() {
         return progressStatisticsLegend;
     }
@@ -0,0 +1,76 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.harvesting.distribute;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import dk.netarkivet.common.distribute.BinaryMessageCodec;
+import dk.netarkivet.harvester.datamodel.HarvestDefinitionInfo;
+import dk.netarkivet.harvester.datamodel.Job;
+import dk.netarkivet.harvester.distribute.HarvesterChannels;
+import dk.netarkivet.harvester.harvesting.metadata.MetadataEntry;
+
+/**
+ * Codec for {@link DoOneCrawlMessage}. The bulk of these messages is the order.xml and the seed lists of the job, which
+ * are text and compress very well, so the job and its metadata entries are still written using Java serialization,
+ * and the gain comes from the compression applied to large encoded messages by
+ * {@link dk.netarkivet.common.distribute.JMSMessageCodecs}.
+ */
+public class DoOneCrawlMessageCodec extends BinaryMessageCodec<DoOneCrawlMessage> {
+
+    /** Create the codec. */
+    public DoOneCrawlMessageCodec() {
+        super("DoOneCrawlMessage/1", DoOneCrawlMessage.class);
+    }
+
+    @Override
+    protected void writeBody(DoOneCrawlMessage msg, DataOutput out) throws IOException {
+        writeSerializable(out, msg.getJob());
+        HarvestDefinitionInfo harvestInfo = msg.getOrigHarvestInfo();
+        out.writeBoolean(harvestInfo != null);
+        if (harvestInfo != null) {
+            writeString(out, harvestInfo.getOrigHarvestName());
+            writeString(out, harvestInfo.getOrigHarvestDesc());
+            writeString(out, harvestInfo.getScheduleName());
+        }
+        writeSerializable(out, new ArrayList<MetadataEntry>(msg.getMetadata()));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected DoOneCrawlMessage readBody(DataInput in) throws IOException {
+        Job job = readSerializable(in, Job.class);
+        HarvestDefinitionInfo harvestInfo = null;
+        if (in.readBoolean()) {
+            harvestInfo = new HarvestDefinitionInfo(readString(in), readString(in), readString(in));
+        }
+        List<MetadataEntry> metadata = readSerializable(in, ArrayList.class);
+        // The channels are replaced by those of the original message afterwards
+        return new DoOneCrawlMessage(job, HarvesterChannels.getTheSched(), harvestInfo, metadata);
+    }
+
+}
@@ -51,8 +51,20 @@ public class FrontierReportMessage extends HarvesterMessage {
      * @param report the report to wrap.
      */
     public FrontierReportMessage(FrontierReportFilter filter, InMemoryFrontierReport report, Long jobID) {
+        this(filter.getFilterId(), report, jobID);
+    }
+
+    /**
+     * Builds a frontier report wrapper message from the id of the filter that generated the report. Used by
+     * {@link FrontierReportMessageCodec}.
+     *
+     * @param filterId the id of the filter that generated the report.
+     * @param report the report to wrap.
+     * @param jobID the ID of the job.
+     */
+    FrontierReportMessage(String filterId, InMemoryFrontierReport report, Long jobID) {
         super(HarvestMonitor.HARVEST_MONITOR_CHANNEL_ID, Channels.getError());
-        this.filterId = filter.getFilterId();
+        this.filterId = filterId;
         this.report = report;
         this.jobID = jobID;
     }
@@ -0,0 +1,106 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.harvesting.distribute;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import dk.netarkivet.common.distribute.BinaryMessageCodec;
+import dk.netarkivet.harvester.harvesting.frontier.FrontierReportLine;
+import dk.netarkivet.harvester.harvesting.frontier.InMemoryFrontierReport;
+
+/**
+ * Binary codec for {@link FrontierReportMessage}. A frontier report may hold thousands of lines, and Java
+ * serialization writes both the sorted set of lines and the map of lines by domain.
+ */
+public class FrontierReportMessageCodec extends BinaryMessageCodec<FrontierReportMessage> {
+
+    /** Create the codec. */
+    public FrontierReportMessageCodec() {
+        super("FrontierReportMessage/1", FrontierReportMessage.class);
+    }
+
+    @Override
+    protected void writeBody(FrontierReportMessage msg, DataOutput out) throws IOException {
+        writeString(out, msg.getFilterId());
+        writeNullableLong(out, msg.getJobID());
+        InMemoryFrontierReport report = msg.getReport();
+        out.writeBoolean(report != null);
+        if (report == null) {
+            return;
+        }
+        writeString(out, report.getJobName());
+        out.writeLong(report.getTimestamp());
+        FrontierReportLine[] lines = report.getLines();
+        writeVarLong(out, lines.length);
+        for (FrontierReportLine line : lines) {
+            writeString(out, line.getDomainName());
+            out.writeLong(line.getCurrentSize());
+            out.writeLong(line.getPrecedence());
+            out.writeLong(line.getTotalEnqueues());
+            out.writeLong(line.getSessionBalance());
+            out.writeDouble(line.getLastCost());
+            out.writeDouble(line.getAverageCost());
+            writeString(out, line.getLastDequeueTime());
+            writeString(out, line.getWakeTime());
+            out.writeLong(line.getTotalSpend());
+            out.writeLong(line.getTotalBudget());
+            out.writeLong(line.getErrorCount());
+            writeString(out, line.getLastPeekUri());
+            writeString(out, line.getLastQueuedUri());
+        }
+    }
+
+    @Override
+    protected FrontierReportMessage readBody(DataInput in) throws IOException {
+        String filterId = readString(in);
+        Long jobID = readNullableLong(in);
+        InMemoryFrontierReport report = null;
+        if (in.readBoolean()) {
+            report = new InMemoryFrontierReport(readString(in));
+            report.setTimestamp(in.readLong());
+            long lineCount = readVarLong(in);
+            for (long i = 0; i < lineCount; i++) {
+                FrontierReportLine line = new FrontierReportLine();
+                line.setDomainName(readString(in));
+                line.setCurrentSize(in.readLong());
+                line.setPrecedence(in.readLong());
+                line.setTotalEnqueues(in.readLong());
+                line.setSessionBalance(in.readLong());
+                line.setLastCost(in.readDouble());
+                line.setAverageCost(in.readDouble());
+                line.setLastDequeueTime(readString(in));
+                line.setWakeTime(readString(in));
+                line.setTotalSpend(in.readLong());
+                line.setTotalBudget(in.readLong());
+                line.setErrorCount(in.readLong());
+                line.setLastPeekUri(readString(in));
+                line.setLastQueuedUri(readString(in));
+                report.addLine(line);
+            }
+        }
+        return new FrontierReportMessage(filterId, report, jobID);
+    }
+
+}
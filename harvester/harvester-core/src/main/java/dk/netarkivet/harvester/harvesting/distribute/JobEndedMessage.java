@@ -25,6 +25,7 @@ package dk.netarkivet.harvester.harvesting.distribute;
 import java.io.Serializable;
 
 import dk.netarkivet.common.distribute.Channels;
+import dk.netarkivet.common.distribute.KeyedMessage;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.harvester.datamodel.JobStatus;
 import dk.netarkivet.harvester.distribute.HarvesterMessage;
@@ -36,7 +37,7 @@ import dk.netarkivet.harvester.harvesting.monitor.HarvestMonitor;
  * job ended and should not be monitored anymore, and that any resource used to monitor this job should be freed.
  */
 @SuppressWarnings({"serial"})
-public class JobEndedMessage extends HarvesterMessage implements Serializable {
+public class JobEndedMessage extends HarvesterMessage implements Serializable, KeyedMessage {
 
     /** The associated job's ID. */
     private final long jobId;
@@ -68,6 +69,16 @@ public class JobEndedMessage extends HarvesterMessage implements Serializable {
         return jobId;
     }
 
+    /**
+     * Processed after the progress reports for the same job, see {@link CrawlProgressMessage#getOrderingKey()}.
+     *
+     * @return the job ID.
+     */
+    @Override
+    public String getOrderingKey() {
+        return Long.toString(jobId);
+    }
+
     /**
      * @return the job status
      */
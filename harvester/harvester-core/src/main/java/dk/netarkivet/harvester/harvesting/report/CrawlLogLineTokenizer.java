@@ -0,0 +1,334 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.harvesting.report;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+
+/**
+ * A tokenizer for Heritrix crawl.log files that works directly on the bytes read from the log.
+ * <p>
+ * Each call to {@link #next()} reads one line into a reusable buffer and records the start and end offsets of its
+ * whitespace separated fields. At most {@link #MAX_FIELDS} fields are recognized; the last field holds the rest of the
+ * line (the annotations), just as <code>line.split("\\s+", 12)</code> would. No strings are created unless a field is
+ * explicitly asked for with {@link #getField(int)}.
+ * <p>
+ * The tokenizer keeps track of the number of bytes consumed, so that a caller can resume reading a log that is still
+ * being written from the end of the last complete line.
+ */
+public class CrawlLogLineTokenizer {
+
+    /** The maximum number of fields in a crawl.log line. The last field contains the annotations. */
+    public static final int MAX_FIELDS = 12;
+
+    /** The size of the read buffer. */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /** The initial size of the line buffer. It grows if longer lines are met. */
+    private static final int INITIAL_LINE_SIZE = 1024;
+
+    /** The charset of the crawl.log. */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** The stream being tokenized. */
+    private final InputStream in;
+
+    /** Whether a last line not terminated by a newline is returned at end of stream. */
+    private final boolean acceptUnterminatedLastLine;
+
+    /** The read buffer. */
+    private final byte[] buffer = new byte[READ_BUFFER_SIZE];
+    /** The position of the next unread byte in the read buffer. */
+    private int bufferPos;
+    /** The number of valid bytes in the read buffer. */
+    private int bufferLimit;
+
+    /** The bytes of the current line, without the line terminator. */
+    private byte[] line = new byte[INITIAL_LINE_SIZE];
+    /** The length of the current line. */
+    private int lineLength;
+
+    /** The start offsets of the fields in the current line. */
+    private final int[] fieldStart = new int[MAX_FIELDS];
+    /** The end offsets (exclusive) of the fields in the current line. */
+    private final int[] fieldEnd = new int[MAX_FIELDS];
+    /** The number of fields in the current line. */
+    private int fieldCount;
+
+    /** The number of bytes of the stream consumed by the lines returned so far. */
+    private long position;
+
+    /**
+     * Create a tokenizer reading from the given stream. The stream is not closed by the tokenizer.
+     *
+     * @param in The stream to read crawl.log lines from.
+     * @param acceptUnterminatedLastLine If true, a last line without a terminating newline is returned at the end of
+     * the stream. If false it is ignored, which is what you want when reading a log that is still being written.
+     * @throws ArgumentNotValid if the stream is null.
+     */
+    public CrawlLogLineTokenizer(InputStream in, boolean acceptUnterminatedLastLine) {
+        ArgumentNotValid.checkNotNull(in, "InputStream in");
+        this.in = in;
+        this.acceptUnterminatedLastLine = acceptUnterminatedLastLine;
+    }
+
+    /**
+     * Read and tokenize the next line.
+     *
+     * @return true if a line was read, false if the end of the stream has been reached.
+     * @throws IOException If reading from the stream fails.
+     */
+    public boolean next() throws IOException {
+        lineLength = 0;
+        fieldCount = 0;
+        int consumed = 0;
+        while (true) {
+            if (bufferPos == bufferLimit) {
+                int read = in.read(buffer, 0, buffer.length);
+                if (read <= 0) {
+                    if (lineLength > 0 && acceptUnterminatedLastLine) {
+                        position += consumed;
+                        tokenize();
+                        return true;
+                    }
+                    // Forget the partial line; a later reader will pick it up from getPosition().
+                    lineLength = 0;
+                    return false;
+                }
+                bufferPos = 0;
+                bufferLimit = read;
+            }
+            int start = bufferPos;
+            int end = start;
+            while (end < bufferLimit && buffer[end] != '\n') {
+                ++end;
+            }
+            appendToLine(start, end - start);
+            consumed += end - start;
+            if (end < bufferLimit) {
+                // Found the newline
+                bufferPos = end + 1;
+                position += consumed + 1;
+                tokenize();
+                return true;
+            }
+            bufferPos = bufferLimit;
+        }
+    }
+
+    /**
+     * Append a slice of the read buffer to the line buffer, growing it if necessary.
+     *
+     * @param offset The offset in the read buffer.
+     * @param length The number of bytes to append.
+     */
+    private void appendToLine(int offset, int length) {
+        if (lineLength + length > line.length) {
+            byte[] newLine = new byte[Math.max(line.length * 2, lineLength + length)];
+            System.arraycopy(line, 0, newLine, 0, lineLength);
+            line = newLine;
+        }
+        System.arraycopy(buffer, offset, line, lineLength, length);
+        lineLength += length;
+    }
+
+    /** Find the field offsets in the current line. */
+    private void tokenize() {
+        int end = lineLength;
+        while (end > 0 && line[end - 1] == '\r') {
+            --end;
+        }
+        lineLength = end;
+        int i = 0;
+        while (i < end && fieldCount < MAX_FIELDS) {
+            while (i < end && isWhitespace(line[i])) {
+                ++i;
+            }
+            if (i == end) {
+                break;
+            }
+            fieldStart[fieldCount] = i;
+            if (fieldCount == MAX_FIELDS - 1) {
+                // The last field takes the rest of the line
+                i = end;
+            } else {
+                while (i < end && !isWhitespace(line[i])) {
+                    ++i;
+                }
+            }
+            fieldEnd[fieldCount] = i;
+            ++fieldCount;
+        }
+    }
+
+    /**
+     * @param b A byte from the log.
+     * @return true if the byte is a whitespace character as understood by the regular expression \s.
+     */
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B;
+    }
+
+    /**
+     * @return the number of fields in the current line.
+     */
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * @return the number of bytes of the stream consumed by the lines returned so far, including their line
+     * terminators.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return the buffer holding the bytes of the current line. Only valid until the next call to {@link #next()}.
+     */
+    public byte[] getLineBuffer() {
+        return line;
+    }
+
+    /**
+     * @param field The index of a field in the current line.
+     * @return the offset of the first byte of the field in the line buffer.
+     */
+    public int getFieldStart(int field) {
+        checkField(field);
+        return fieldStart[field];
+    }
+
+    /**
+     * @param field The index of a field in the current line.
+     * @return the offset after the last byte of the field in the line buffer.
+     */
+    public int getFieldEnd(int field) {
+        checkField(field);
+        return fieldEnd[field];
+    }
+
+    /**
+     * @param field The index of a field in the current line.
+     * @return the field as a string.
+     */
+    public String getField(int field) {
+        checkField(field);
+        return new String(line, fieldStart[field], fieldEnd[field] - fieldStart[field], UTF8);
+    }
+
+    /**
+     * @return the current line as a string. Meant for log messages.
+     */
+    public String getLine() {
+        return new String(line, 0, lineLength, UTF8);
+    }
+
+    /**
+     * Compare a field with an ASCII string without creating a string for the field.
+     *
+     * @param field The index of a field in the current line.
+     * @param value An ASCII string.
+     * @return true if the field consists of exactly the characters in the given value.
+     */
+    public boolean fieldEquals(int field, String value) {
+        checkField(field);
+        int start = fieldStart[field];
+        int length = fieldEnd[field] - start;
+        if (length != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (line[start + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse a field as a decimal long without creating a string for it.
+     *
+     * @param field The index of a field in the current line.
+     * @return the value of the field.
+     * @throws NumberFormatException If the field is not a decimal number.
+     */
+    public long parseLongField(int field) throws NumberFormatException {
+        checkField(field);
+        return parseLong(line, fieldStart[field], fieldEnd[field]);
+    }
+
+    /**
+     * Parse a slice of a byte array as a decimal long.
+     *
+     * @param bytes The bytes to parse.
+     * @param start The offset of the first byte.
+     * @param end The offset after the last byte.
+     * @return the parsed value.
+     * @throws NumberFormatException If the slice is not a decimal number.
+     */
+    static long parseLong(byte[] bytes, int start, int end) throws NumberFormatException {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            ++i;
+        }
+        if (i == end) {
+            throw new NumberFormatException("Not a number: '" + new String(bytes, start, end - start, UTF8) + "'");
+        }
+        long result = 0;
+        for (; i < end; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9 || result < (Long.MIN_VALUE + digit) / 10) {
+                throw new NumberFormatException("Not a number: '" + new String(bytes, start, end - start, UTF8)
+                        + "'");
+            }
+            // Accumulate negatively to be able to represent Long.MIN_VALUE
+            result = result * 10 - digit;
+        }
+        if (!negative) {
+            if (result == Long.MIN_VALUE) {
+                throw new NumberFormatException("Number too large: '" + new String(bytes, start, end - start, UTF8)
+                        + "'");
+            }
+            return -result;
+        }
+        return result;
+    }
+
+    /**
+     * @param field A field index.
+     * @throws ArgumentNotValid if the current line has no such field.
+     */
+    private void checkField(int field) {
+        if (field < 0 || field >= fieldCount) {
+            throw new ArgumentNotValid("Field " + field + " does not exist in a line with " + fieldCount + " fields");
+        }
+    }
+
+}
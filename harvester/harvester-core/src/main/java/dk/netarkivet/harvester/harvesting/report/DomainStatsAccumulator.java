@@ -0,0 +1,466 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.harvesting.report;
+
+import gnu.inet.encoding.IDNA;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.utils.DomainUtils;
+import dk.netarkivet.harvester.datamodel.StopReason;
+import dk.netarkivet.harvester.harvesting.distribute.DomainStats;
+
+/**
+ * Accumulates per-domain object counts, byte counts and stop reasons from a crawl.log.
+ * <p>
+ * The accumulator can be fed incrementally while the crawl is running using {@link #update(File)}, which only reads
+ * the part of the log written since the last call. When the crawl has ended, {@link #finish(File)} reads the remainder
+ * and {@link #getDomainStatsMap(StopReason)} gives the statistics needed for the harvest report, without reading the
+ * log a second time.
+ * <p>
+ * Each line is assigned to the domain of its seed (field 11) if seed information is present and not disregarded,
+ * otherwise to the domain of the harvested URI (field 4). Only URIs with a non-negative fetch status are counted. The
+ * byte count is taken from the "content-size:" annotation. When the fetch status is
+ * {@link Heritrix1Constants#CRAWLURI_S_BLOCKED_BY_QUOTA}, the quota annotations given to the constructor decide whether
+ * the domain was stopped by the byte limit or the object limit. A domain without any such annotation gets the default
+ * stop reason given when the statistics are extracted.
+ * <p>
+ * Hostnames are extracted from the URIs by the {@link HostnameExtractor} given to the constructor, so they agree with
+ * the URI parsing used by the crawler. They are mapped to domain names through a bounded cache, so the regular
+ * expressions of {@link DomainUtils} are only evaluated once per distinct host.
+ */
+public class DomainStatsAccumulator {
+
+    /** The logger for this class. */
+    private static final Logger log = LoggerFactory.getLogger(DomainStatsAccumulator.class);
+
+    /** The minimum number of fields in a legal crawl.log line. */
+    private static final int MIN_CRAWL_LOG_PARTS = 11;
+    /** The index of the fetch status code field. */
+    private static final int STATUS_PART_INDEX = 1;
+    /** The index of the URI field. */
+    private static final int URI_PART_INDEX = 3;
+    /** The index of the seed field. */
+    private static final int SEED_PART_INDEX = 10;
+    /** The index of the annotations field. */
+    private static final int ANNOTATION_PART_INDEX = 11;
+
+    /** The maximum number of hostnames kept in the hostname to domain cache. */
+    private static final int MAX_CACHED_HOSTS = 50000;
+
+    /** Marker for hostnames in the cache that do not belong to a valid domain. */
+    private static final String NO_DOMAIN = new String("");
+
+    /** Accumulators for crawls in progress, by job ID. */
+    private static final Map<Long, DomainStatsAccumulator> running = new ConcurrentHashMap<Long, DomainStatsAccumulator>();
+
+    /** The annotation written by Heritrix when the byte quota of a domain is exhausted. */
+    private final String byteLimitAnnotation;
+    /** The annotation written by Heritrix when the object quota of a domain is exhausted. */
+    private final String objectLimitAnnotation;
+    /** Whether the seed information in the crawl.log should be ignored. */
+    private final boolean disregardSeedUrls;
+    /** Extracts the hostnames of the URIs in the crawl.log. */
+    private final HostnameExtractor hostnameExtractor;
+
+    /** The counts accumulated so far, by domain name. */
+    private final Map<String, DomainCounts> counts = new HashMap<String, DomainCounts>();
+
+    /** Cache of the domain names of recently seen hosts. */
+    private final Map<String, String> domainCache = new LinkedHashMap<String, String>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_CACHED_HOSTS;
+        }
+    };
+
+    /** The number of bytes of the crawl.log processed so far. */
+    private long position;
+    /** The number of lines processed so far. */
+    private long lineCount;
+    /** The number of lines ignored because they could not be parsed. */
+    private long invalidLineCount;
+
+    /**
+     * Mutable counters for a single domain. The stop reason is null until a quota annotation is seen.
+     */
+    private static class DomainCounts {
+        /** The number of objects harvested. */
+        long objectCount;
+        /** The number of bytes harvested. */
+        long byteCount;
+        /** The stop reason given by a quota annotation, or null. */
+        StopReason stopReason;
+    }
+
+    /**
+     * Extracts the hostname of a URI found in a crawl.log, the way the crawler that wrote the log parses URIs.
+     */
+    public interface HostnameExtractor {
+        /**
+         * @param uri A URI from a crawl.log. For dns: URIs, the hostname is the scheme specific part.
+         * @return the hostname of the URI, or null if it has none or cannot be parsed.
+         */
+        String getHostname(String uri);
+    }
+
+    /**
+     * Create an empty accumulator.
+     *
+     * @param byteLimitAnnotation The annotation meaning that the byte quota of a domain is exhausted.
+     * @param objectLimitAnnotation The annotation meaning that the object quota of a domain is exhausted.
+     * @param disregardSeedUrls If true, lines are always assigned to the domain of the harvested URI.
+     * @param hostnameExtractor Extracts the hostnames of the URIs in the crawl.log.
+     * @throws ArgumentNotValid If either annotation is null or empty, or the hostname extractor is null.
+     */
+    public DomainStatsAccumulator(String byteLimitAnnotation, String objectLimitAnnotation, boolean disregardSeedUrls,
+            HostnameExtractor hostnameExtractor) {
+        ArgumentNotValid.checkNotNullOrEmpty(byteLimitAnnotation, "String byteLimitAnnotation");
+        ArgumentNotValid.checkNotNullOrEmpty(objectLimitAnnotation, "String objectLimitAnnotation");
+        ArgumentNotValid.checkNotNull(hostnameExtractor, "HostnameExtractor hostnameExtractor");
+        this.byteLimitAnnotation = byteLimitAnnotation;
+        this.objectLimitAnnotation = objectLimitAnnotation;
+        this.disregardSeedUrls = disregardSeedUrls;
+        this.hostnameExtractor = hostnameExtractor;
+    }
+
+    /**
+     * Register the accumulator for a running crawl, so the harvest report can be generated from it when the crawl
+     * ends.
+     *
+     * @param jobID The ID of the job being crawled.
+     * @param accumulator The accumulator following the crawl.log of the job.
+     * @throws ArgumentNotValid If the accumulator is null.
+     */
+    public static void register(long jobID, DomainStatsAccumulator accumulator) {
+        ArgumentNotValid.checkNotNull(accumulator, "DomainStatsAccumulator accumulator");
+        running.put(jobID, accumulator);
+    }
+
+    /**
+     * Remove and return the accumulator registered for a job.
+     *
+     * @param jobID The ID of a job.
+     * @return the accumulator registered for the job, or null if there is none.
+     */
+    public static DomainStatsAccumulator unregister(long jobID) {
+        return running.remove(jobID);
+    }
+
+    /**
+     * @param jobID The ID of a job.
+     * @return the accumulator registered for the job, or null if there is none.
+     */
+    public static DomainStatsAccumulator getRegistered(long jobID) {
+        return running.get(jobID);
+    }
+
+    /**
+     * Process the complete lines added to the crawl.log since the last call. A line still being written is left for
+     * the next call. If the log has become shorter than the part already processed, it is assumed to have been
+     * replaced and the statistics are computed again from the start.
+     *
+     * @param crawlLog The crawl.log of the crawl.
+     * @throws IOFailure If the log cannot be read.
+     */
+    public synchronized void update(File crawlLog) throws IOFailure {
+        read(crawlLog, false);
+    }
+
+    /**
+     * Process the rest of a finished crawl.log, including a last line without a line terminator.
+     *
+     * @param crawlLog The crawl.log of the crawl.
+     * @throws IOFailure If the log cannot be read.
+     */
+    public synchronized void finish(File crawlLog) throws IOFailure {
+        read(crawlLog, true);
+    }
+
+    /**
+     * Read the crawl.log from the current position.
+     *
+     * @param crawlLog The crawl.log of the crawl.
+     * @param toEnd Whether an unterminated last line should be processed.
+     * @throws IOFailure If the log cannot be read.
+     */
+    private void read(File crawlLog, boolean toEnd) throws IOFailure {
+        ArgumentNotValid.checkNotNull(crawlLog, "File crawlLog");
+        if (!crawlLog.isFile() || !crawlLog.canRead()) {
+            throw new IOFailure("Not a file or not readable: " + crawlLog.getAbsolutePath());
+        }
+        if (crawlLog.length() < position) {
+            log.warn("The crawl.log '{}' is shorter than the {} bytes already processed. Starting over.",
+                    crawlLog.getAbsolutePath(), position);
+            reset();
+        }
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(crawlLog);
+            long skipped = 0;
+            while (skipped < position) {
+                long s = in.skip(position - skipped);
+                if (s <= 0) {
+                    throw new IOFailure("Unable to skip to position " + position + " in " + crawlLog);
+                }
+                skipped += s;
+            }
+            CrawlLogLineTokenizer tokenizer = new CrawlLogLineTokenizer(in, toEnd);
+            long start = position;
+            while (tokenizer.next()) {
+                ++lineCount;
+                process(tokenizer, crawlLog);
+            }
+            position = start + tokenizer.getPosition();
+        } catch (IOException e) {
+            String msg = "Unable to open/read crawl.log file '" + crawlLog.getAbsolutePath() + "'.";
+            log.warn(msg, e);
+            throw new IOFailure(msg, e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    log.debug("Unable to close {}", crawlLog, e);
+                    // Can't throw here, as would destroy the real exception
+                }
+            }
+        }
+    }
+
+    /** Forget all accumulated statistics. */
+    private void reset() {
+        counts.clear();
+        position = 0;
+        lineCount = 0;
+        invalidLineCount = 0;
+    }
+
+    /**
+     * Process the current line of the tokenizer. Invalid lines are logged and then ignored.
+     *
+     * @param tokenizer A tokenizer positioned on a line.
+     * @param crawlLog The log being read, used for log messages.
+     */
+    private void process(CrawlLogLineTokenizer tokenizer, File crawlLog) {
+        try {
+            processLine(tokenizer);
+        } catch (ArgumentNotValid e) {
+            ++invalidLineCount;
+            if (log.isDebugEnabled()) {
+                log.debug("Invalid line in '{}' line {}: '{}'. Ignoring due to reason: {}",
+                        crawlLog.getAbsolutePath(), lineCount, tokenizer.getLine(), e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Update the counts with a single crawl.log line.
+     *
+     * @param tokenizer A tokenizer positioned on a line.
+     * @throws ArgumentNotValid If the line is not a legal crawl.log line.
+     */
+    void processLine(CrawlLogLineTokenizer tokenizer) throws ArgumentNotValid {
+        int parts = tokenizer.getFieldCount();
+        if (parts < MIN_CRAWL_LOG_PARTS) {
+            throw new ArgumentNotValid("Not enough fields for line in crawl.log. Was only " + parts
+                    + " fields. Should have been at least " + MIN_CRAWL_LOG_PARTS);
+        }
+
+        // If the seed url is "-", it is not written to the log and the information is disregarded.
+        boolean sourceTagEnabled = !disregardSeedUrls && !tokenizer.fieldEquals(SEED_PART_INDEX, "-");
+        String domainName = null;
+        if (sourceTagEnabled) {
+            domainName = getDomainName(tokenizer, SEED_PART_INDEX);
+        }
+        if (domainName == null) {
+            domainName = getDomainName(tokenizer, URI_PART_INDEX);
+        }
+        if (domainName == null) {
+            throw new ArgumentNotValid("Unable to find a domainName in the line");
+        }
+
+        long response;
+        try {
+            response = tokenizer.parseLongField(STATUS_PART_INDEX);
+        } catch (NumberFormatException e) {
+            throw new ArgumentNotValid("Unparsable response code in field 2 of crawl.log: '"
+                    + tokenizer.getField(STATUS_PART_INDEX) + "'.");
+        }
+
+        long byteCounter = 0;
+        StopReason stopReason = null;
+        if (parts > ANNOTATION_PART_INDEX) {
+            byte[] line = tokenizer.getLineBuffer();
+            int end = tokenizer.getFieldEnd(ANNOTATION_PART_INDEX);
+            int start = tokenizer.getFieldStart(ANNOTATION_PART_INDEX);
+            while (start <= end) {
+                int comma = start;
+                while (comma < end && line[comma] != ',') {
+                    ++comma;
+                }
+                int s = start;
+                int e = comma;
+                while (s < e && line[s] <= ' ') {
+                    ++s;
+                }
+                while (e > s && line[e - 1] <= ' ') {
+                    --e;
+                }
+                if (startsWith(line, s, e, Heritrix1Constants.CONTENT_SIZE_ANNOTATION_PREFIX)) {
+                    try {
+                        byteCounter = CrawlLogLineTokenizer.parseLong(line,
+                                s + Heritrix1Constants.CONTENT_SIZE_ANNOTATION_PREFIX.length(), e);
+                    } catch (NumberFormatException ex) {
+                        throw new ArgumentNotValid("Unparsable annotation in field 12 of crawl.log: '"
+                                + tokenizer.getField(ANNOTATION_PART_INDEX) + "'.", ex);
+                    }
+                }
+                if (response == Heritrix1Constants.CRAWLURI_S_BLOCKED_BY_QUOTA) {
+                    if (equalsAscii(line, s, e, byteLimitAnnotation)) {
+                        stopReason = StopReason.SIZE_LIMIT;
+                    } else if (equalsAscii(line, s, e, objectLimitAnnotation)) {
+                        stopReason = StopReason.OBJECT_LIMIT;
+                    }
+                }
+                start = comma + 1;
+            }
+        }
+
+        DomainCounts dc = counts.get(domainName);
+        if (dc == null) {
+            dc = new DomainCounts();
+            counts.put(domainName, dc);
+        }
+        // Only count harvested URIs
+        if (response >= 0) {
+            dc.objectCount++;
+            dc.byteCount += byteCounter;
+        }
+        // Only if reason not set
+        if (dc.stopReason == null) {
+            dc.stopReason = stopReason;
+        }
+    }
+
+    /**
+     * Find the domain of the URI in a field of the current line.
+     *
+     * @param tokenizer A tokenizer positioned on a line.
+     * @param field The index of a field holding a URI.
+     * @return the unicode domain name of the URI, or null if it has none.
+     */
+    private String getDomainName(CrawlLogLineTokenizer tokenizer, int field) {
+        String uri = tokenizer.getField(field);
+        String hostname = hostnameExtractor.getHostname(uri);
+        if (hostname == null) {
+            log.trace("Not possible to extract domainname from URL: {}", uri);
+            return null;
+        }
+        String domain = domainCache.get(hostname);
+        if (domain == null) {
+            domain = DomainUtils.domainNameFromHostname(hostname);
+            if (domain != null) {
+                // Transform any IDNA encoded domain back to Unicode
+                domain = IDNA.toUnicode(domain);
+            } else {
+                domain = NO_DOMAIN;
+            }
+            domainCache.put(hostname, domain);
+        }
+        return domain == NO_DOMAIN ? null : domain;
+    }
+
+    /**
+     * @return true if the slice starts with the given ASCII prefix.
+     */
+    private static boolean startsWith(byte[] b, int start, int end, String prefix) {
+        if (end - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (b[start + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the slice consists of exactly the characters of the given ASCII string.
+     */
+    private static boolean equalsAscii(byte[] b, int start, int end, String s) {
+        return end - start == s.length() && startsWith(b, start, end, s);
+    }
+
+    /**
+     * Get the statistics accumulated so far. The returned map is a snapshot and is not changed by later updates.
+     *
+     * @param defaultStopReason The stop reason of domains for which no quota was reached.
+     * @return a map from domain names to the statistics of the domains.
+     * @throws ArgumentNotValid If the default stop reason is null.
+     */
+    public synchronized Map<String, DomainStats> getDomainStatsMap(StopReason defaultStopReason) {
+        ArgumentNotValid.checkNotNull(defaultStopReason, "StopReason defaultStopReason");
+        Map<String, DomainStats> result = new HashMap<String, DomainStats>(counts.size() * 2);
+        for (Map.Entry<String, DomainCounts> entry : counts.entrySet()) {
+            DomainCounts dc = entry.getValue();
+            result.put(entry.getKey(), new DomainStats(dc.objectCount, dc.byteCount,
+                    dc.stopReason == null ? defaultStopReason : dc.stopReason));
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of domains seen so far.
+     */
+    public synchronized int getDomainCount() {
+        return counts.size();
+    }
+
+    /**
+     * @return the number of crawl.log lines processed so far.
+     */
+    public synchronized long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return the number of crawl.log lines ignored because they could not be parsed.
+     */
+    public synchronized long getInvalidLineCount() {
+        return invalidLineCount;
+    }
+
+}
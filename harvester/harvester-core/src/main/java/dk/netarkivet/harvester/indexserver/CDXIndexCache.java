@@ -29,6 +29,7 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
@@ -37,6 +38,7 @@ import dk.netarkivet.common.distribute.indexserver.JobIndexCache;
 import dk.netarkivet.common.exceptions.IOFailure;
 import dk.netarkivet.common.exceptions.NotImplementedException;
 import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.common.utils.SortUtils;
 
 /**
  * A cache that serves CDX index files for job IDs.
@@ -67,6 +69,11 @@ public class CDXIndexCache extends CombiningMultiFileBasedCache<Long> implements
      */
     protected void combine(Map<Long, File> filesFound) {
         File resultFile = getCacheFile(filesFound.keySet());
+        if (allSorted(filesFound.values())) {
+            // The per-job indexes are already sorted, so merging them is enough
+            SortUtils.mergeSortedFiles(new ArrayList<File>(filesFound.values()), resultFile);
+            return;
+        }
         concatenateFiles(filesFound.values(), resultFile);
         File workFile = new File(resultFile.getAbsolutePath() + WORK_SUFFIX);
         workFile.deleteOnExit();
@@ -78,6 +85,21 @@ public class CDXIndexCache extends CombiningMultiFileBasedCache<Long> implements
         }
     }
 
+    /**
+     * Check whether all the given files are sorted.
+     *
+     * @param files The files to check.
+     * @return true if every file is sorted.
+     */
+    private static boolean allSorted(Collection<File> files) {
+        for (File f : files) {
+            if (!SortUtils.isSorted(f)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Concatenate a set of files into a single file.
      *
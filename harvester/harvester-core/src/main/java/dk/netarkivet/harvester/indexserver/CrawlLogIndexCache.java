@@ -27,21 +27,20 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
-import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.lucene.index.IndexWriter;
-import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.SimpleFSDirectory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,9 +48,11 @@ import dk.netarkivet.common.distribute.indexserver.JobIndexCache;
 import dk.netarkivet.common.exceptions.IOFailure;
 import dk.netarkivet.common.utils.FileUtils;
 import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.common.utils.SortUtils;
 import dk.netarkivet.common.utils.TimeUtils;
 import dk.netarkivet.common.utils.ZipUtils;
 import dk.netarkivet.harvester.HarvesterSettings;
+import is.hi.bok.deduplicator.CrawlDataItem;
 import is.hi.bok.deduplicator.CrawlDataIterator;
 import is.hi.bok.deduplicator.DigestIndexer;
 
@@ -59,7 +60,8 @@ import is.hi.bok.deduplicator.DigestIndexer;
  * A cache that serves Lucene indices of crawl logs for given job IDs. Uses the DigestIndexer in the deduplicator
  * software: http://deduplicator.sourceforge.net/apidocs/is/hi/bok/deduplicator/DigestIndexer.html Upon combination of
  * underlying files, each file in the Lucene index is gzipped and the compressed versions are stored in the directory
- * given by getCacheFile(). The subclass has to determine in its constructor call which mime types are included.
+ * given by getCacheFile(), unless {@link HarvesterSettings#INDEXSERVER_INDEXING_COMPRESS} is false, in which case the
+ * files are stored there uncompressed. The subclass has to determine in its constructor call which mime types are included.
  */
 public abstract class CrawlLogIndexCache extends CombiningMultiFileBasedCache<Long> implements JobIndexCache {
 
@@ -75,7 +77,7 @@ public abstract class CrawlLogIndexCache extends CombiningMultiFileBasedCache<Lo
     /** An regular expression for the mimetypes to include or exclude from the index. See useBlackList. */
     private String mimeFilter;
 
-    /** The time to sleep between each check of completeness. */
+    /** The time to wait for indexing threads between each log of the progress. */
     private final long sleepintervalBetweenCompletenessChecks = Settings
             .getLong(HarvesterSettings.INDEXSERVER_INDEXING_CHECKINTERVAL);
 
@@ -123,6 +125,10 @@ public abstract class CrawlLogIndexCache extends CombiningMultiFileBasedCache<Lo
     /**
      * Combine a number of crawl.log files into one Lucene index. This index is placed as gzip files under the directory
      * returned by getCacheFile().
+     * <p>
+     * The crawl.log files are sorted and indexed in parallel by {@link DigestIndexerWorker}s, which all add their
+     * documents to the same index. The index is merged down to the maximum number of segments once, when all the
+     * workers are done.
      *
      * @param rawfiles The map from job ID into crawl.log contents. No null values are allowed in this map.
      */
@@ -133,7 +139,6 @@ public abstract class CrawlLogIndexCache extends CombiningMultiFileBasedCache<Lo
                 indexingJobCount, datasetSize, Thread.currentThread().getName());
 
         File resultDir = getCacheFile(rawfiles.keySet());
-        Set<File> tmpfiles = new HashSet<File>();
         String indexLocation = resultDir.getAbsolutePath() + ".luceneDir";
         ThreadPoolExecutor executor = null;
         try {
@@ -141,20 +146,17 @@ public abstract class CrawlLogIndexCache extends CombiningMultiFileBasedCache<Lo
             final boolean verboseIndexing = false;
             DigestOptions indexingOptions = new DigestOptions(this.useBlacklist, verboseIndexing, this.mimeFilter);
             long count = 0;
-            Set<IndexingState> outstandingJobs = new HashSet<IndexingState>();
+            Map<Future<Boolean>, Long> outstandingJobs = new HashMap<Future<Boolean>, Long>();
             final int maxThreads = Settings.getInt(HarvesterSettings.INDEXSERVER_INDEXING_MAXTHREADS);
             executor = new ThreadPoolExecutor(maxThreads, maxThreads, 0L, TimeUnit.MILLISECONDS,
                     new LinkedBlockingQueue<Runnable>());
 
             executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+            CompletionService<Boolean> completionService = new ExecutorCompletionService<Boolean>(executor);
 
             for (Map.Entry<Long, File> entry : rawfiles.entrySet()) {
                 Long jobId = entry.getKey();
                 File crawlLog = entry.getValue();
-                // Generate UUID to ensure a unique filedir for the index.
-                File tmpFile = new File(FileUtils.getTempDir(), UUID.randomUUID().toString());
-                tmpfiles.add(tmpFile);
-                String localindexLocation = tmpFile.getAbsolutePath();
                 Long cached = cdxcache.cache(jobId);
                 if (cached == null) {
                     log.warn("Skipping the ingest of logs for job {}. Unable to retrieve cdx-file for job.",
@@ -164,96 +166,67 @@ public abstract class CrawlLogIndexCache extends CombiningMultiFileBasedCache<Lo
                 File cachedCDXFile = cdxcache.getCacheFile(cached);
 
                 // Dispatch this indexing task to a separate thread that
-                // handles the sorting of the logfiles and the generation
-                // of a lucene index for this crawllog and cdxfile.
+                // handles the sorting of the logfiles and the indexing
+                // of this crawllog and cdxfile into the shared index.
                 ++count;
                 String taskID = count + " out of " + datasetSize;
                 log.debug("Making subthread for indexing job " + jobId + " - task " + taskID);
-                Callable<Boolean> task = new DigestIndexerWorker(localindexLocation, jobId, crawlLog, cachedCDXFile,
+                Callable<Boolean> task = new DigestIndexerWorker(indexer, jobId, crawlLog, cachedCDXFile,
                         indexingOptions, taskID);
-                Future<Boolean> result = executor.submit(task);
-                outstandingJobs.add(new IndexingState(jobId, localindexLocation, result));
+                outstandingJobs.put(completionService.submit(task), jobId);
             }
 
-            // wait for all the outstanding subtasks to complete.
-            Set<Directory> subindices = new HashSet<Directory>();
-
             // Deadline for the combine-task
             long combineTimeout = Settings.getLong(HarvesterSettings.INDEXSERVER_INDEXING_TIMEOUT);
             long timeOutTime = System.currentTimeMillis() + combineTimeout;
 
-            // The indexwriter for the totalindex.
-            IndexWriter totalIndex = indexer.getIndex();
-            int subindicesInTotalIndex = 0;
-            // Max number of segments in totalindex.
-            int maxSegments = Settings.getInt(HarvesterSettings.INDEXSERVER_INDEXING_MAX_SEGMENTS);
-
-            final int ACCUMULATED_SUBINDICES_BEFORE_MERGING = 200;
-
+            // wait for all the outstanding subtasks to complete, in the order they complete.
             while (outstandingJobs.size() > 0) {
-                log.info("Outstanding jobs in combine task #{} is now {}", indexingJobCount, outstandingJobs.size());
-                Iterator<IndexingState> iterator = outstandingJobs.iterator();
-                if (timeOutTime < System.currentTimeMillis()) {
+                long timeLeft = timeOutTime - System.currentTimeMillis();
+                if (timeLeft <= 0) {
                     log.warn("Max indexing time exceeded for one index ({}). Indexing stops here, "
-                            + "although missing subindices for {} jobs",
-                            TimeUtils.readableTimeInterval(combineTimeout), outstandingJobs.size());
+                            + "although missing data for {} jobs", TimeUtils.readableTimeInterval(combineTimeout),
+                            outstandingJobs.size());
                     break;
                 }
-                while (iterator.hasNext() && subindices.size() < ACCUMULATED_SUBINDICES_BEFORE_MERGING) {
-                    Future<Boolean> nextResult;
-                    IndexingState next = iterator.next();
-                    if (next.getResultObject().isDone()) {
-                        nextResult = next.getResultObject();
-                        try {
-                            // check, if the indexing failed
-                            if (nextResult.get()) {
-                                subindices.add(new SimpleFSDirectory(new File(next.getIndex())));
-                            } else {
-                                log.warn("Indexing of job {} failed.", next.getJobIdentifier());
-                            }
-
-                        } catch (InterruptedException e) {
-                            log.warn("Unable to get Result back from indexing thread", e);
-                        } catch (ExecutionException e) {
-                            log.warn("Unable to get Result back from indexing thread", e);
-                        }
-                        // remove the done object from the set
-                        iterator.remove();
-                    }
+                Future<Boolean> done;
+                try {
+                    done = completionService.poll(Math.min(timeLeft, sleepintervalBetweenCompletenessChecks),
+                            TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    log.warn("Interrupted while waiting for indexing threads. Indexing stops here, "
+                            + "although missing data for {} jobs", outstandingJobs.size(), e);
+                    break;
                 }
-
-                if (subindices.size() >= ACCUMULATED_SUBINDICES_BEFORE_MERGING) {
-
-                    log.info(
-                            "Adding {} subindices to main index. Forcing index to contain max {} files (related to combine task #{})",
-                            subindices.size(), maxSegments, indexingJobCount);
-                    totalIndex.addIndexes(subindices.toArray(new Directory[0]));
-                    totalIndex.forceMerge(maxSegments);
-                    totalIndex.commit();
-                    for (Directory luceneDir : subindices) {
-                        luceneDir.close();
+                if (done == null) {
+                    log.info("Outstanding jobs in combine task #{} is now {}", indexingJobCount,
+                            outstandingJobs.size());
+                    continue;
+                }
+                Long jobId = outstandingJobs.remove(done);
+                try {
+                    // check, if the indexing failed
+                    if (!done.get()) {
+                        log.warn("Indexing of job {} failed.", jobId);
                     }
-                    subindicesInTotalIndex += subindices.size();
-                    log.info(
-                            "Completed adding {} subindices to main index, now containing {} subindices(related to combine task #{})",
-                            subindices.size(), subindicesInTotalIndex, indexingJobCount);
-                    subindices.clear();
-                } else {
-                    sleepAwhile();
+                } catch (InterruptedException e) {
+                    log.warn("Unable to get Result back from indexing thread", e);
+                } catch (ExecutionException e) {
+                    log.warn("Unable to get Result back from indexing thread", e);
                 }
             }
 
-            log.info("Adding the final {} subindices to main index. "
-                    + "Forcing index to contain max {} files (related to combine task #{})", subindices.size(),
-                    maxSegments, indexingJobCount);
+            // The workers must be stopped before the shared index is closed.
+            stopWorkers(executor, outstandingJobs.size());
 
-            totalIndex.addIndexes(subindices.toArray(new Directory[0]));
+            // The indexwriter for the totalindex.
+            IndexWriter totalIndex = indexer.getIndex();
+            // Max number of segments in totalindex.
+            int maxSegments = Settings.getInt(HarvesterSettings.INDEXSERVER_INDEXING_MAX_SEGMENTS);
+            log.info("Forcing index to contain max {} files (related to combine task #{})", maxSegments,
+                    indexingJobCount);
             totalIndex.forceMerge(maxSegments);
             totalIndex.commit();
-            for (Directory luceneDir : subindices) {
-                luceneDir.close();
-            }
-            subindices.clear();
 
             log.info("Adding operation completed (combine task #{})!", indexingJobCount);
             long docsInIndex = totalIndex.numDocs();
@@ -261,23 +234,54 @@ public abstract class CrawlLogIndexCache extends CombiningMultiFileBasedCache<Lo
             indexer.close();
             log.info("Closed index (related to combine task #{}", indexingJobCount);
 
-            // Now the index is made, gzip it up.
+            // Now the index is made, gzip it up, unless it is to be sent uncompressed.
             File totalIndexDir = new File(indexLocation);
-            log.info("Gzip-compressing the individual {} index files of combine task # {}",
-                    totalIndexDir.list().length, indexingJobCount);
-            ZipUtils.gzipFiles(totalIndexDir, resultDir);
-            log.info(
-                    "Completed combine task #{} that combined a dataset with {} crawl logs (entries in combined index: {}) - compressed index has size {}",
-                    indexingJobCount, datasetSize, docsInIndex, FileUtils.getHumanReadableFileSize(resultDir));
+            boolean compress = Settings.getBoolean(HarvesterSettings.INDEXSERVER_INDEXING_COMPRESS);
+            if (compress) {
+                log.info("Gzip-compressing the individual {} index files of combine task # {}",
+                        totalIndexDir.list().length, indexingJobCount);
+                ZipUtils.gzipFiles(totalIndexDir, resultDir);
+            } else {
+                log.info("Storing the individual {} index files of combine task # {} uncompressed",
+                        totalIndexDir.list().length, indexingJobCount);
+                // The index is made next to the result, so it can just be renamed.
+                if (!totalIndexDir.renameTo(resultDir)) {
+                    throw new IOFailure("Failed to rename index dir '" + totalIndexDir + "' to '" + resultDir + "'");
+                }
+            }
+            log.info("Completed combine task #{} that combined a dataset with {} crawl logs (entries in combined index: "
+                    + "{}) - {} index has size {}", indexingJobCount, datasetSize, docsInIndex,
+                    compress ? "compressed" : "uncompressed", FileUtils.getHumanReadableFileSize(resultDir));
         } catch (IOException e) {
             throw new IOFailure("Error setting up craw.log index framework for " + resultDir.getAbsolutePath(), e);
         } finally {
             // close down Threadpool-executor
             closeDownThreadpoolQuietly(executor);
             FileUtils.removeRecursively(new File(indexLocation));
-            for (File temporaryFile : tmpfiles) {
-                FileUtils.removeRecursively(temporaryFile);
+        }
+    }
+
+    /**
+     * Stop the indexing workers and wait for them to finish, so nothing more is added to the shared index. Workers that
+     * have not finished are interrupted, which makes them stop indexing.
+     *
+     * @param executor The ThreadPoolExecutor running the workers.
+     * @param outstanding The number of workers that have not finished.
+     */
+    private void stopWorkers(ThreadPoolExecutor executor, int outstanding) {
+        if (outstanding > 0) {
+            log.info("Stopping the {} unfinished indexing tasks of combine task #{}", outstanding, indexingJobCount);
+            executor.shutdownNow();
+        } else {
+            executor.shutdown();
+        }
+        try {
+            while (!executor.awaitTermination(sleepintervalBetweenCompletenessChecks, TimeUnit.MILLISECONDS)) {
+                log.info("Waiting for the indexing tasks of combine task #{} to stop", indexingJobCount);
             }
+        } catch (InterruptedException e) {
+            throw new IOFailure("Interrupted while waiting for the indexing tasks of combine task #"
+                    + indexingJobCount + " to stop", e);
         }
     }
 
@@ -296,26 +300,18 @@ public abstract class CrawlLogIndexCache extends CombiningMultiFileBasedCache<Lo
     }
 
     /**
-     * Helper class to sleep a little between completeness checks.
-     */
-    private void sleepAwhile() {
-        try {
-            Thread.sleep(sleepintervalBetweenCompletenessChecks);
-        } catch (InterruptedException e) {
-            log.trace("Was awoken early from sleep: ", e);
-        }
-    }
-
-    /**
-     * Ingest a single crawl.log file using the corresponding CDX file to find offsets.
+     * Ingest a single crawl.log file using the corresponding CDX file to find offsets. The index is not committed, as it
+     * may be shared with other threads ingesting at the same time. If the thread is interrupted, the ingest stops.
      *
      * @param id ID of a job to ingest.
      * @param crawllogfile The file containing the crawl.log data for the job
      * @param cdxfile The file containing the cdx data for the job
      * @param options The digesting options used.
      * @param indexer The indexer to add to.
+     * @return The number of entries added to the index.
+     * @throws IOFailure If the ingest fails or is interrupted.
      */
-    protected static void indexFile(Long id, File crawllogfile, File cdxfile, DigestIndexer indexer,
+    protected static long indexFile(Long id, File crawllogfile, File cdxfile, DigestIndexer indexer,
             DigestOptions options) {
         log.debug("Ingesting the crawl.log file '{}' related to job {}", crawllogfile.getAbsolutePath(), id);
         boolean blacklist = options.getUseBlacklist();
@@ -330,8 +326,11 @@ public abstract class CrawlLogIndexCache extends CombiningMultiFileBasedCache<Lo
             sortedCdxFile = getSortedCDX(cdxfile);
             cdxBuffer = new BufferedReader(new FileReader(sortedCdxFile));
             tmpCrawlLog = getSortedCrawlLog(crawllogfile);
-            crawlLogIterator = new CDXOriginCrawlLogIterator(tmpCrawlLog, cdxBuffer);
-            indexer.writeToIndex(crawlLogIterator, mimefilter, blacklist, "ERROR", verbose);
+            crawlLogIterator = new InterruptibleCrawlDataIterator(new CDXOriginCrawlLogIterator(tmpCrawlLog, cdxBuffer));
+            final boolean skipDuplicates = false;
+            final boolean commit = false;
+            return indexer.writeToIndex(crawlLogIterator, mimefilter, blacklist, "ERROR", verbose, skipDuplicates,
+                    commit);
         } catch (IOException e) {
             throw new IOFailure("Fatal error indexing " + id, e);
         } finally {
@@ -365,7 +364,7 @@ public abstract class CrawlLogIndexCache extends CombiningMultiFileBasedCache<Lo
         try {
             final File tmpFile = File.createTempFile("sorted", "cdx", FileUtils.getTempDir());
             // This throws IOFailure, if the sorting operation fails
-            FileUtils.sortCDX(cdxFile, tmpFile);
+            SortUtils.sortFile(cdxFile, tmpFile, SortUtils.LINE_ORDER);
             tmpFile.deleteOnExit();
             return tmpFile;
         } catch (IOException e) {
@@ -384,7 +383,7 @@ public abstract class CrawlLogIndexCache extends CombiningMultiFileBasedCache<Lo
         try {
             File tmpCrawlLog = File.createTempFile("sorted", "crawllog", FileUtils.getTempDir());
             // This throws IOFailure, if the sorting operation fails
-            FileUtils.sortCrawlLog(file, tmpCrawlLog);
+            SortUtils.sortFile(file, tmpCrawlLog, SortUtils.CRAWL_LOG_ORDER);
             tmpCrawlLog.deleteOnExit();
             return tmpCrawlLog;
         } catch (IOException e) {
@@ -416,4 +415,43 @@ public abstract class CrawlLogIndexCache extends CombiningMultiFileBasedCache<Lo
         return indexer;
     }
 
+    /**
+     * A CrawlDataIterator that stops with an IOException when the thread reading it is interrupted, so that an
+     * indexing thread can be stopped before the index it shares with other threads is closed.
+     */
+    private static class InterruptibleCrawlDataIterator extends CrawlDataIterator {
+        /** The iterator to read from. */
+        private final CrawlDataIterator iterator;
+
+        /**
+         * @param iterator The iterator to read from.
+         */
+        InterruptibleCrawlDataIterator(CrawlDataIterator iterator) {
+            super(null);
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new IOException("Interrupted while reading " + iterator.getSourceType());
+            }
+            return iterator.hasNext();
+        }
+
+        @Override
+        public CrawlDataItem next() throws IOException {
+            return iterator.next();
+        }
+
+        @Override
+        public void close() throws IOException {
+            iterator.close();
+        }
+
+        @Override
+        public String getSourceType() {
+            return iterator.getSourceType();
+        }
+    }
 }
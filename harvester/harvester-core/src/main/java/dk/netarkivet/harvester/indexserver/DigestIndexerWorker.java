@@ -32,15 +32,16 @@ import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import is.hi.bok.deduplicator.DigestIndexer;
 
 /**
- * This worker class handles the indexing of one single crawl-log and associated cdxfile.
+ * This worker class handles the indexing of one single crawl-log and associated cdxfile. The entries are added to an
+ * index shared by all the workers of a combine task, which is committed and closed by the owner of the index.
  */
 public class DigestIndexerWorker implements Callable<Boolean> {
 
     /** The log. */
     private static final Logger log = LoggerFactory.getLogger(DigestIndexerWorker.class);
 
-    /** The full path to the index. */
-    private String indexlocation;
+    /** The indexer for the shared index. */
+    private DigestIndexer indexer;
     /** The ID of the job which logfiles are being indexed. */
     private Long jobId;
     /** The crawllog from the job. */
@@ -57,21 +58,21 @@ public class DigestIndexerWorker implements Callable<Boolean> {
     /**
      * Constructor for the DigestIndexerWorker.
      *
-     * @param indexpath The full path to the index
+     * @param indexer The indexer for the shared index
      * @param jobId The ID of the job which logfiles are being indexed
      * @param crawllogfile The crawllog from the job
      * @param cdxFile The cdxfile from the job
      * @param indexingOptions The options for the indexing process.
      * @param taskID string defining this task
      */
-    public DigestIndexerWorker(String indexpath, Long jobId, File crawllogfile, File cdxFile,
+    public DigestIndexerWorker(DigestIndexer indexer, Long jobId, File crawllogfile, File cdxFile,
             DigestOptions indexingOptions, String taskID) {
-        ArgumentNotValid.checkNotNullOrEmpty(indexpath, "String indexpath");
+        ArgumentNotValid.checkNotNull(indexer, "DigestIndexer indexer");
         ArgumentNotValid.checkNotNull(crawllogfile, "File crawllogfile");
         ArgumentNotValid.checkNotNull(cdxFile, "File cdxFile");
         ArgumentNotValid.checkNotNull(indexingOptions, "DigestOptions indexingOptions");
         ArgumentNotValid.checkNotNullOrEmpty(taskID, "String taskID");
-        this.indexlocation = indexpath;
+        this.indexer = indexer;
         this.jobId = jobId;
         this.crawlLog = crawllogfile;
         this.cdxfile = cdxFile;
@@ -88,13 +89,10 @@ public class DigestIndexerWorker implements Callable<Boolean> {
     public Boolean call() {
         try {
             log.info("Starting subindexing task ({}) of data from job {}", taskID, this.jobId);
-            DigestIndexer localindexer = CrawlLogIndexCache.createStandardIndexer(indexlocation);
-            CrawlLogIndexCache.indexFile(jobId, crawlLog, cdxfile, localindexer, indexingOptions);
+            long entries = CrawlLogIndexCache.indexFile(jobId, crawlLog, cdxfile, indexer, indexingOptions);
 
             log.info("Completed subindexing task ({}) of data from job {} w/ {} index-entries)", taskID, this.jobId,
-                    localindexer.getIndex().numDocs());
-
-            localindexer.close();
+                    entries);
         } catch (Throwable t) {
             successful = false;
             log.warn("Indexing for job w/ id {} failed.", jobId, t);
@@ -24,11 +24,15 @@ package dk.netarkivet.harvester.indexserver.distribute;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,6 +45,7 @@ import dk.netarkivet.common.distribute.NetarkivetMessage;
 import dk.netarkivet.common.distribute.RemoteFile;
 import dk.netarkivet.common.distribute.RemoteFileSettings;
 import dk.netarkivet.common.distribute.Synchronizer;
+import dk.netarkivet.common.distribute.indexserver.Index;
 import dk.netarkivet.common.distribute.indexserver.JobIndexCache;
 import dk.netarkivet.common.distribute.indexserver.RequestType;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
@@ -59,6 +64,12 @@ import dk.netarkivet.harvester.indexserver.MultiFileBasedCache;
  * <p>
  * Allows to request an index of some type over a list of jobs. Factory method will return the index request client of
  * the type wished.
+ * <p>
+ * If the setting {@link #SHARED_CACHE_DIR} is given, the indices are kept in a {@link SharedIndexCache} used by all the
+ * processes on the host, and {@link #getIndex(Set)} takes a reference on the index returned, which should be released
+ * with {@link #releaseIndex(File)} when the index is no longer used. The harvest controllers release the deduplication
+ * index after each harvest, the viewerproxy releases its index when it changes index, and CreateIndex releases the
+ * index it made at once.
  */
 public class IndexRequestClient extends MultiFileBasedCache<Long> implements JobIndexCache {
 
@@ -101,6 +112,27 @@ public class IndexRequestClient extends MultiFileBasedCache<Long> implements Job
      */
     public static final String INDEXREQUEST_USE_LOCAL_FTPSERVER = "settings.common.indexClient.useLocalFtpServer";
 
+    /**
+     * <b>settings.common.indexClient.sharedCache.dir</b>: <br>
+     * The directory of an index cache shared by all the processes on the host using the same directory, e.g. several
+     * harvesters running jobs from the same harvest definition. An index is then only fetched once for the host.
+     * Empty by default, which means that each process keeps its indices in its own cache directory.
+     */
+    public static final String SHARED_CACHE_DIR = "settings.common.indexClient.sharedCache.dir";
+
+    /**
+     * <b>settings.common.indexClient.sharedCache.maxSize</b>: <br>
+     * The number of bytes the indices in the shared index cache may take up. When there are more, the least recently
+     * used indices not in use by any process are deleted. Only used when {@link #SHARED_CACHE_DIR} is given.
+     */
+    public static final String SHARED_CACHE_MAXSIZE = "settings.common.indexClient.sharedCache.maxSize";
+
+    /** The number of times to fetch an index that is deleted from the shared cache before it can be used. */
+    private static final int SHARED_CACHE_ATTEMPTS = 3;
+
+    /** The shared index cache, or null if each process keeps its own indices. */
+    private final SharedIndexCache sharedCache;
+
     /**
      * Initialise this client, handling requests of a given type. Start listening to channel if not done yet.
      *
@@ -109,6 +141,11 @@ public class IndexRequestClient extends MultiFileBasedCache<Long> implements Job
     private IndexRequestClient(RequestType type) {
         super(type.name());
         this.requestType = type;
+        sharedCache = SharedIndexCache.getInstance();
+        if (sharedCache != null) {
+            cacheDir = sharedCache.getCacheDir(type.name());
+            log.info("Index cache for '{}' is shared in directory '{}'", type, cacheDir);
+        }
     }
 
     /**
@@ -141,6 +178,48 @@ public class IndexRequestClient extends MultiFileBasedCache<Long> implements Job
         return client;
     }
 
+    /**
+     * Get an index for the given set of jobs. With a shared index cache, a reference is taken on the index, which
+     * should be released with {@link #releaseIndex(File)} when the index is no longer used.
+     *
+     * @param jobIDs The set of job IDs.
+     * @return An index over the greatest possible subset of the jobs, and the subset.
+     * @throws IOFailure If the index keeps being deleted from the shared cache before it can be used.
+     * @see dk.netarkivet.harvester.indexserver.FileBasedCache#getIndex
+     */
+    @Override
+    public Index<Set<Long>> getIndex(Set<Long> jobIDs) {
+        if (sharedCache == null) {
+            return super.getIndex(jobIDs);
+        }
+        for (int attempt = 0; attempt < SHARED_CACHE_ATTEMPTS; attempt++) {
+            Index<Set<Long>> index = super.getIndex(jobIDs);
+            File indexFile = sharedCache.acquire(index.getIndexFile());
+            if (indexFile != null) {
+                return new Index<Set<Long>>(indexFile, index.getIndexSet());
+            }
+            log.info("The index '{}' was deleted from the shared cache before it could be used. Fetching it again",
+                    index.getIndexFile());
+        }
+        throw new IOFailure("The index of type '" + requestType + "' for the jobs [" + StringUtils.conjoin(",", jobIDs)
+                + "] was deleted from the shared cache " + SHARED_CACHE_ATTEMPTS + " times before it could be used");
+    }
+
+    /**
+     * Release the reference taken on an index by {@link #getIndex(Set)}, allowing it to be deleted from the shared
+     * index cache. Does nothing if no shared index cache is used.
+     *
+     * @param indexFile The index file returned by {@link #getIndex(Set)}.
+     * @throws ArgumentNotValid If indexFile is null.
+     */
+    public static void releaseIndex(File indexFile) {
+        ArgumentNotValid.checkNotNull(indexFile, "File indexFile");
+        SharedIndexCache sharedCache = SharedIndexCache.getInstance();
+        if (sharedCache != null) {
+            sharedCache.release(indexFile);
+        }
+    }
+
     /**
      * This method makes sure the actual caching of underlying data is done using the index server. It will convert
      * calls into an IndexRequestMessage which is sent to the server. The Set&lt;Long&gt; of found jobs, and the side
@@ -191,15 +270,27 @@ public class IndexRequestClient extends MultiFileBasedCache<Long> implements Job
                 log.debug("Successfully received an index of type '{}' for the jobs [{}]", this.requestType,
                         StringUtils.conjoin(",", jobSet));
             }
+            File cacheFile = getCacheFile(jobSet);
+            File receivedFile = cacheFile;
+            if (sharedCache != null) {
+                receivedFile = new File(sharedCache.createStagingDir(cacheFile.getName()), cacheFile.getName());
+            }
             try {
                 if (reply.isIndexIsStoredInDirectory()) {
-                    gunzipToDir(reply.getResultFiles(), getCacheFile(jobSet));
+                    gunzipToDir(reply.getResultFiles(), receivedFile);
                 } else {
-                    unzipAndDeleteRemoteFile(reply.getResultFile(), getCacheFile(jobSet));
+                    unzipAndDeleteRemoteFile(reply.getResultFile(), receivedFile);
+                }
+                if (sharedCache != null) {
+                    sharedCache.store(receivedFile, cacheFile);
                 }
             } catch (IOFailure e) {
                 log.warn("IOFailure during unzipping of index", e);
                 return new HashSet<Long>();
+            } finally {
+                if (sharedCache != null) {
+                    FileUtils.removeRecursively(receivedFile.getParentFile());
+                }
             }
         } else {
             if (log.isDebugEnabled()) {
@@ -213,7 +304,9 @@ public class IndexRequestClient extends MultiFileBasedCache<Long> implements Job
 
     /**
      * Gunzip a list of RemoteFiles into a given directory. The actual unzipping takes place in a temporary directory
-     * which gets renamed, so the directory appears to be created atomically.
+     * which gets renamed, so the directory appears to be created atomically. Files not ending in .gz have been sent
+     * uncompressed, and are just copied. The files are fetched in parallel, by the threads of
+     * {@link ZipUtils#getGzipExecutor()}.
      *
      * @param files List of RemoteFiles to gunzip. The RemoteFiles will be deleted as part of the process.
      * @param toDir The directory that the gunzipped files will eventually be placed in. This directory will be created
@@ -221,24 +314,66 @@ public class IndexRequestClient extends MultiFileBasedCache<Long> implements Job
      * @throws IOFailure If errors occur during unzipping, e.g. disk full.
      */
     private void gunzipToDir(List<RemoteFile> files, File toDir) throws IOFailure {
-        File tmpDir = FileUtils.createUniqueTempDir(toDir.getParentFile(), toDir.getName());
+        final File tmpDir = FileUtils.createUniqueTempDir(toDir.getParentFile(), toDir.getName());
+        ExecutorService executor = ZipUtils.getGzipExecutor();
+        List<Future<?>> results = new ArrayList<Future<?>>(files.size());
         try {
             FileUtils.createDir(tmpDir);
-            for (RemoteFile f : files) {
-                String destFileName = f.getName();
-                destFileName = destFileName.substring(0, destFileName.length() - ZipUtils.GZIP_SUFFIX.length());
-                File destFile = new File(tmpDir, destFileName);
-                unzipAndDeleteRemoteFile(f, destFile);
+            for (final RemoteFile f : files) {
+                results.add(executor.submit(new Runnable() {
+                    public void run() {
+                        String destFileName = f.getName();
+                        if (destFileName.endsWith(ZipUtils.GZIP_SUFFIX)) {
+                            destFileName = destFileName.substring(0,
+                                    destFileName.length() - ZipUtils.GZIP_SUFFIX.length());
+                            unzipAndDeleteRemoteFile(f, new File(tmpDir, destFileName));
+                        } else {
+                            copyAndDeleteRemoteFile(f, new File(tmpDir, destFileName));
+                        }
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                try {
+                    result.get();
+                } catch (InterruptedException e) {
+                    throw new IOFailure("Interrupted while fetching the index files for '" + toDir + "'", e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOFailure) {
+                        throw (IOFailure) e.getCause();
+                    }
+                    throw new IOFailure("Error fetching the index files for '" + toDir + "'", e.getCause());
+                }
             }
             if (!tmpDir.renameTo(toDir)) {
                 throw new IOFailure("Error renaming temp dir '" + tmpDir + "' to target directory '"
                         + toDir.getAbsolutePath() + "'");
             }
         } finally {
+            for (Future<?> result : results) {
+                result.cancel(true);
+            }
             FileUtils.removeRecursively(tmpDir);
         }
     }
 
+    /**
+     * Copy a RemoteFile to a given file, deleting the RemoteFile afterwards. Problems arising while deleting are
+     * logged, but do not cause exceptions.
+     *
+     * @param remoteFile A file to download. This file will be attempted deleted after successful copying.
+     * @param destFile A place to put the file.
+     * @throws IOFailure on any I/O error, e.g. disk full
+     */
+    private void copyAndDeleteRemoteFile(RemoteFile remoteFile, File destFile) throws IOFailure {
+        remoteFile.copyTo(destFile);
+        try {
+            remoteFile.cleanup();
+        } catch (IOFailure e) {
+            log.debug("Trouble deleting file '" + remoteFile.getName() + "' from FTP server after saving it", e);
+        }
+    }
+
     /**
      * Unzip a RemoteFile to a given file, deleting the RemoteFile afterwards. Problems arising while deleting are
      * logged, but do not cause exceptions.
@@ -141,6 +141,15 @@ public class IndexRequestMessage extends HarvesterMessage {
         return this.optionalConnectionSettings;
     }
 
+    /**
+     * Set the settings for connecting to the remote file server. Used by {@link IndexRequestMessageCodec}.
+     *
+     * @param remoteFileSettings the remoteFilesettings, or null
+     */
+    void setRemoteFileSettings(RemoteFileSettings remoteFileSettings) {
+        this.optionalConnectionSettings = remoteFileSettings;
+    }
+
     /**
      * @return the harvestId which will use this index, if available.
      */
@@ -0,0 +1,101 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.indexserver.distribute;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import dk.netarkivet.common.distribute.BinaryMessageCodec;
+import dk.netarkivet.common.distribute.Channels;
+import dk.netarkivet.common.distribute.RemoteFile;
+import dk.netarkivet.common.distribute.RemoteFileSettings;
+import dk.netarkivet.common.distribute.indexserver.RequestType;
+
+/**
+ * Binary codec for {@link IndexRequestMessage}. The requested and found job IDs are written as sorted deltas, which
+ * makes the sets of thousands of job IDs used for deduplication indices a fraction of their serialized size. The
+ * result files and the connection settings may be of any class, and are written using Java serialization.
+ */
+public class IndexRequestMessageCodec extends BinaryMessageCodec<IndexRequestMessage> {
+
+    /** Create the codec. */
+    public IndexRequestMessageCodec() {
+        super("IndexRequestMessage/1", IndexRequestMessage.class);
+    }
+
+    @Override
+    protected void writeBody(IndexRequestMessage msg, DataOutput out) throws IOException {
+        out.writeByte(msg.getRequestType().ordinal());
+        writeIdSet(out, msg.getRequestedJobs());
+        writeIdSet(out, msg.getFoundJobs());
+        out.writeBoolean(msg.mustReturnIndex());
+        writeNullableLong(out, msg.getHarvestId());
+        writeSerializable(out, msg.getRemoteFileSettings());
+        boolean storedInDirectory = msg.isIndexIsStoredInDirectory();
+        out.writeBoolean(storedInDirectory);
+        List<RemoteFile> resultFiles;
+        if (storedInDirectory) {
+            resultFiles = msg.getResultFiles();
+        } else {
+            RemoteFile resultFile = msg.getResultFile();
+            resultFiles = resultFile == null ? null : Collections.singletonList(resultFile);
+        }
+        writeSerializable(out, resultFiles == null ? null : new ArrayList<RemoteFile>(resultFiles));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected IndexRequestMessage readBody(DataInput in) throws IOException {
+        int requestType = in.readUnsignedByte();
+        if (requestType >= RequestType.values().length) {
+            throw new IOException("Unknown request type " + requestType);
+        }
+        Set<Long> requestedJobs = readIdSet(in);
+        Set<Long> foundJobs = readIdSet(in);
+        boolean returnIndex = in.readBoolean();
+        Long harvestId = readNullableLong(in);
+        // The channels are replaced by those of the original message afterwards
+        IndexRequestMessage msg = new IndexRequestMessage(RequestType.values()[requestType], requestedJobs,
+                Channels.getThisIndexClient(), returnIndex, harvestId);
+        if (foundJobs != null) {
+            msg.setFoundJobs(foundJobs);
+        }
+        msg.setRemoteFileSettings(readSerializable(in, RemoteFileSettings.class));
+        boolean storedInDirectory = in.readBoolean();
+        List<RemoteFile> resultFiles = readSerializable(in, ArrayList.class);
+        if (resultFiles != null) {
+            if (storedInDirectory) {
+                msg.setResultFiles(resultFiles);
+            } else {
+                msg.setResultFile(resultFiles.get(0));
+            }
+        }
+        return msg;
+    }
+
+}
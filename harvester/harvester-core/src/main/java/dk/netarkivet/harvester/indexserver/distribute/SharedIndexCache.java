@@ -0,0 +1,460 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.indexserver.distribute;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.utils.ChecksumCalculator;
+import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.common.utils.Settings;
+
+/**
+ * A cache of indices shared by all the processes on a host that use the same cache directory, e.g. several harvesters
+ * running jobs from the same harvest definition.
+ * <p>
+ * The indices are stored by the MD5 checksum of their content in the "content" subdirectory, so an index received
+ * twice, e.g. for different sets of jobs, is only stored once. The cache files of the index caches using this cache
+ * are symbolic links into the content directory. The caches themselves live in subdirectories of the shared directory,
+ * so that the ".working" file lock of {@link dk.netarkivet.harvester.indexserver.FileBasedCache#cache(Object)} makes
+ * concurrent requests for the same index from all processes on the host wait for a single transfer.
+ * <p>
+ * A process using an index holds a reference on it, which is a file in the "refs" subdirectory that the process keeps
+ * locked until the reference is released. The references of a process that dies are thus released with its locks.
+ * When the content takes up more than {@link IndexRequestClient#SHARED_CACHE_MAXSIZE} bytes, the least recently used
+ * indices that nobody holds a reference on are deleted.
+ */
+public class SharedIndexCache {
+
+    /** The logger for this class. */
+    private static final Logger log = LoggerFactory.getLogger(SharedIndexCache.class);
+
+    /** The name of the subdirectory holding the indices. */
+    private static final String CONTENT_DIR = "content";
+    /** The name of the subdirectory holding the references to the indices. */
+    private static final String REFS_DIR = "refs";
+    /** The name of the subdirectory where received indices are put until they are stored. */
+    private static final String STAGING_DIR = "staging";
+    /** The name of the file locked while the cache is changed. */
+    private static final String LOCK_FILE = "cache.lock";
+    /** The suffix of reference files. */
+    private static final String REF_SUFFIX = ".ref";
+
+    /** The shared cache used by this process, if any. */
+    private static SharedIndexCache instance;
+
+    /** The directory shared by all the processes using this cache. */
+    private final File dir;
+    /** The directory holding the indices. */
+    private final File contentDir;
+    /** The directory holding the references to the indices. */
+    private final File refsDir;
+    /** The directory where received indices are put until they are stored. */
+    private final File stagingDir;
+    /** The largest number of bytes the indices may take up, unless they are all in use. */
+    private final long maxSize;
+    /** The file locked while the cache is changed, kept open for the life of the cache. */
+    private final RandomAccessFile lockFile;
+    /** The references held by this process, by the index they refer to. */
+    private final Map<File, Reference> references = new HashMap<File, Reference>();
+
+    /**
+     * Create a shared cache in the given directory, creating the directory if needed.
+     *
+     * @param dir The directory shared by the processes using the cache.
+     * @param maxSize The largest number of bytes the indices may take up, unless they are all in use.
+     * @throws ArgumentNotValid If dir is null or maxSize is not positive.
+     * @throws IOFailure If the lock file of the cache cannot be opened.
+     */
+    public SharedIndexCache(File dir, long maxSize) {
+        ArgumentNotValid.checkNotNull(dir, "File dir");
+        ArgumentNotValid.checkPositive(maxSize, "long maxSize");
+        this.dir = dir.getAbsoluteFile();
+        this.maxSize = maxSize;
+        contentDir = new File(this.dir, CONTENT_DIR);
+        refsDir = new File(this.dir, REFS_DIR);
+        stagingDir = new File(this.dir, STAGING_DIR);
+        FileUtils.createDir(contentDir);
+        FileUtils.createDir(refsDir);
+        FileUtils.createDir(stagingDir);
+        try {
+            lockFile = new RandomAccessFile(new File(this.dir, LOCK_FILE), "rw");
+        } catch (IOException e) {
+            throw new IOFailure("Could not open the lock file of the shared index cache in '" + this.dir + "'", e);
+        }
+        log.info("Using the shared index cache in '{}' with room for {} bytes", this.dir, maxSize);
+    }
+
+    /**
+     * Get the shared cache of this process, creating it from the settings {@link IndexRequestClient#SHARED_CACHE_DIR}
+     * and {@link IndexRequestClient#SHARED_CACHE_MAXSIZE} the first time.
+     *
+     * @return The shared cache, or null if the setting {@link IndexRequestClient#SHARED_CACHE_DIR} is empty.
+     */
+    public static synchronized SharedIndexCache getInstance() {
+        if (instance == null) {
+            String dir = Settings.get(IndexRequestClient.SHARED_CACHE_DIR);
+            if (dir.trim().isEmpty()) {
+                return null;
+            }
+            instance = new SharedIndexCache(new File(dir), Settings.getLong(IndexRequestClient.SHARED_CACHE_MAXSIZE));
+        }
+        return instance;
+    }
+
+    /**
+     * Get the directory of an index cache using this shared cache, creating it if needed.
+     *
+     * @param cacheName The name of the index cache.
+     * @return The directory the index cache should keep its cache files in.
+     */
+    public File getCacheDir(String cacheName) {
+        ArgumentNotValid.checkNotNullOrEmpty(cacheName, "String cacheName");
+        File cacheDir = new File(dir, cacheName);
+        FileUtils.createDir(cacheDir);
+        return cacheDir;
+    }
+
+    /**
+     * Make a new directory for receiving an index into. The received index should be given to
+     * {@link #store(File, File)} afterwards, or deleted if receiving it fails.
+     *
+     * @param prefix The prefix of the name of the directory.
+     * @return A new, empty directory on the same file system as the cache.
+     */
+    public File createStagingDir(String prefix) {
+        return FileUtils.createUniqueTempDir(stagingDir, prefix);
+    }
+
+    /**
+     * Store a received index in the cache, and make a cache file link to it. If the cache already holds an index with
+     * the same content, the received index is deleted and the link points to the stored one.
+     *
+     * @param received The received index, a file or a directory of files, on the same file system as the cache.
+     * @param cacheFile The cache file to link to the stored index. Any earlier cache file is replaced.
+     * @throws ArgumentNotValid If an argument is null or the received index does not exist.
+     * @throws IOFailure If the index cannot be stored or linked to.
+     */
+    public void store(File received, File cacheFile) {
+        ArgumentNotValid.checkNotNull(received, "File received");
+        ArgumentNotValid.checkNotNull(cacheFile, "File cacheFile");
+        ArgumentNotValid.checkTrue(received.exists(), "The received index '" + received + "' must exist");
+        String checksum = checksum(received);
+        synchronized (this) {
+            FileLock lock = lock();
+            try {
+                File content = new File(contentDir, checksum);
+                if (content.exists()) {
+                    log.info("The index received for '{}' is already cached as '{}'", cacheFile.getName(), content);
+                    FileUtils.removeRecursively(received);
+                } else if (!received.renameTo(content)) {
+                    throw new IOFailure("Could not move the received index '" + received + "' to '" + content + "'");
+                }
+                content.setLastModified(System.currentTimeMillis());
+                Files.deleteIfExists(cacheFile.toPath());
+                Files.createSymbolicLink(cacheFile.toPath(), content.toPath());
+            } catch (IOException e) {
+                throw new IOFailure("Could not link the cache file '" + cacheFile + "' to the index with checksum "
+                        + checksum, e);
+            } finally {
+                unlock(lock);
+            }
+        }
+    }
+
+    /**
+     * Take a reference on the index a cache file links to. The index will not be deleted from the cache until the
+     * reference is released with {@link #release(File)}, or this process ends. Taking a reference also marks the index
+     * as the most recently used.
+     *
+     * @param cacheFile A cache file made by {@link #store(File, File)}.
+     * @return The index the cache file links to, or null if the index has been deleted from the cache.
+     * @throws ArgumentNotValid If cacheFile is null.
+     * @throws IOFailure If the reference cannot be taken.
+     */
+    public synchronized File acquire(File cacheFile) {
+        ArgumentNotValid.checkNotNull(cacheFile, "File cacheFile");
+        FileLock lock = lock();
+        try {
+            if (!Files.isSymbolicLink(cacheFile.toPath())) {
+                return null;
+            }
+            File content = Files.readSymbolicLink(cacheFile.toPath()).toFile();
+            if (!content.exists()) {
+                return null;
+            }
+            Reference reference = references.get(content);
+            if (reference == null) {
+                reference = new Reference(content);
+                references.put(content, reference);
+            }
+            reference.count++;
+            content.setLastModified(System.currentTimeMillis());
+            evict();
+            return content;
+        } catch (IOException e) {
+            throw new IOFailure("Could not take a reference on the index of the cache file '" + cacheFile + "'", e);
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    /**
+     * Release a reference taken with {@link #acquire(File)}. When this process holds no more references on the index,
+     * it may be deleted from the cache.
+     *
+     * @param index The index returned by {@link #acquire(File)}.
+     * @throws ArgumentNotValid If index is null.
+     */
+    public synchronized void release(File index) {
+        ArgumentNotValid.checkNotNull(index, "File index");
+        Reference reference = references.get(index.getAbsoluteFile());
+        if (reference == null) {
+            log.debug("No reference held on the index '{}'", index);
+            return;
+        }
+        if (--reference.count > 0) {
+            return;
+        }
+        references.remove(reference.content);
+        reference.close();
+        FileLock lock = lock();
+        try {
+            evict();
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    /**
+     * Delete the least recently used indices nobody holds a reference on until the indices take up no more than the
+     * allowed number of bytes. Must be called with the cache locked.
+     */
+    private void evict() {
+        File[] contents = contentDir.listFiles();
+        if (contents == null) {
+            return;
+        }
+        long total = 0L;
+        final Map<File, Long> sizes = new HashMap<File, Long>();
+        final Map<File, Long> lastUsed = new HashMap<File, Long>();
+        for (File content : contents) {
+            long size = size(content);
+            sizes.put(content, size);
+            lastUsed.put(content, content.lastModified());
+            total += size;
+        }
+        if (total <= maxSize) {
+            return;
+        }
+        Arrays.sort(contents, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                return lastUsed.get(f1).compareTo(lastUsed.get(f2));
+            }
+        });
+        for (File content : contents) {
+            if (total <= maxSize) {
+                break;
+            }
+            if (isReferenced(content)) {
+                continue;
+            }
+            log.info("Deleting the index '{}' of {} bytes from the shared index cache", content, sizes.get(content));
+            FileUtils.removeRecursively(content);
+            total -= sizes.get(content);
+        }
+        if (total > maxSize) {
+            log.warn("The shared index cache in '{}' takes up {} bytes, more than the {} allowed, as the indices are in "
+                    + "use", dir, total, maxSize);
+        }
+    }
+
+    /**
+     * Tells whether any process holds a reference on an index. Reference files of processes that have ended are
+     * deleted on the way. Must be called with the cache locked.
+     *
+     * @param content An index in the cache.
+     * @return true if the index is in use.
+     */
+    private boolean isReferenced(File content) {
+        if (references.containsKey(content)) {
+            return true;
+        }
+        File[] refFiles = refsDir.listFiles();
+        if (refFiles == null) {
+            return false;
+        }
+        boolean referenced = false;
+        for (File refFile : refFiles) {
+            if (!refFile.getName().startsWith(content.getName() + "-")) {
+                continue;
+            }
+            RandomAccessFile raf = null;
+            try {
+                raf = new RandomAccessFile(refFile, "rw");
+                FileLock refLock = raf.getChannel().tryLock();
+                if (refLock == null) {
+                    referenced = true;
+                } else {
+                    // Left behind by a process that has ended.
+                    refLock.release();
+                    raf.close();
+                    raf = null;
+                    FileUtils.remove(refFile);
+                }
+            } catch (OverlappingFileLockException e) {
+                referenced = true;
+            } catch (IOException e) {
+                log.warn("Could not check the reference file '{}', assuming it is in use", refFile, e);
+                referenced = true;
+            } finally {
+                IOUtils.closeQuietly(raf);
+            }
+        }
+        return referenced;
+    }
+
+    /**
+     * Lock the cache against changes from other processes. Threads in this process must synchronize on the cache too.
+     *
+     * @return The lock, to give to {@link #unlock(FileLock)}.
+     * @throws IOFailure If the lock cannot be taken.
+     */
+    private FileLock lock() {
+        try {
+            return lockFile.getChannel().lock();
+        } catch (IOException e) {
+            throw new IOFailure("Could not lock the shared index cache in '" + dir + "'", e);
+        }
+    }
+
+    /**
+     * Release a lock taken with {@link #lock()}. Problems are logged, but do not cause exceptions.
+     *
+     * @param lock The lock.
+     */
+    private void unlock(FileLock lock) {
+        try {
+            lock.release();
+        } catch (IOException e) {
+            log.warn("Could not release the lock on the shared index cache in '{}'", dir, e);
+        }
+    }
+
+    /**
+     * Calculate the checksum of an index. The checksum of a directory covers the names and the checksums of its files.
+     *
+     * @param index A file or a directory of files.
+     * @return The MD5 checksum as a hex string.
+     */
+    private static String checksum(File index) {
+        if (index.isFile()) {
+            return ChecksumCalculator.calculateMd5(index);
+        }
+        File[] files = index.listFiles();
+        if (files == null) {
+            throw new IOFailure("Could not list the files of the index '" + index + "'");
+        }
+        Arrays.sort(files);
+        MessageDigest digest = ChecksumCalculator.getMessageDigest(ChecksumCalculator.MD5);
+        for (File file : files) {
+            digest.update(file.getName().getBytes());
+            digest.update(ChecksumCalculator.digestFile(file, ChecksumCalculator.MD5));
+        }
+        return ChecksumCalculator.toHex(digest.digest());
+    }
+
+    /**
+     * Calculate the number of bytes an index takes up.
+     *
+     * @param index A file or a directory of files.
+     * @return The total length of the files.
+     */
+    private static long size(File index) {
+        File[] files = index.listFiles();
+        if (files == null) {
+            return index.length();
+        }
+        long size = 0L;
+        for (File file : files) {
+            size += size(file);
+        }
+        return size;
+    }
+
+    /**
+     * The references this process holds on an index, marked by a locked reference file.
+     */
+    private class Reference {
+        /** The index referred to. */
+        private final File content;
+        /** The reference file. */
+        private final File refFile;
+        /** The open reference file. */
+        private final RandomAccessFile raf;
+        /** The number of references held. */
+        private int count;
+
+        /**
+         * Create a reference file for an index and lock it.
+         *
+         * @param content The index referred to.
+         * @throws IOException If the reference file cannot be created or locked.
+         */
+        Reference(File content) throws IOException {
+            this.content = content;
+            refFile = File.createTempFile(content.getName() + "-", REF_SUFFIX, refsDir);
+            raf = new RandomAccessFile(refFile, "rw");
+            try {
+                raf.getChannel().lock();
+            } catch (IOException e) {
+                raf.close();
+                FileUtils.remove(refFile);
+                throw e;
+            }
+        }
+
+        /**
+         * Unlock and delete the reference file.
+         */
+        void close() {
+            IOUtils.closeQuietly(raf);
+            FileUtils.remove(refFile);
+        }
+    }
+}
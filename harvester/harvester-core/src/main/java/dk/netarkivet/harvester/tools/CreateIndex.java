@@ -38,6 +38,7 @@ import dk.netarkivet.common.distribute.JMSConnectionFactory;
 import dk.netarkivet.common.distribute.indexserver.Index;
 import dk.netarkivet.common.distribute.indexserver.IndexClientFactory;
 import dk.netarkivet.common.distribute.indexserver.JobIndexCache;
+import dk.netarkivet.harvester.indexserver.distribute.IndexRequestClient;
 
 /**
  * A tool to ask indices from indexserver on demand.
@@ -111,6 +112,8 @@ public class CreateIndex {
 
         System.out.println("Creating " + indexTypeAstring + " index for ids: " + jobIDs);
         Index<Set<Long>> index = cache.getIndex(jobIDs);
+        // The index is only made, not used, so it may be deleted from a shared index cache.
+        IndexRequestClient.releaseIndex(index.getIndexFile());
         JMSConnectionFactory.getInstance().cleanup();
     }
 
@@ -31,6 +31,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -44,6 +51,7 @@ import dk.netarkivet.common.distribute.arcrepository.ViewerArcRepositoryClient;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.IOFailure;
 import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.common.utils.arc.ARCKey;
 import dk.netarkivet.harvester.HarvesterSettings;
 
 /**
@@ -71,9 +79,28 @@ public class ARCArchiveAccess implements URIResolver {
      */
     private static final Pattern HTTP_HEADER_PATTERN = Pattern.compile("^HTTP/1\\.[01] (\\d+) (.*)$");
 
+    /** Matches the links to embedded and linked resources in HTML. Group 2 is the link. */
+    private static final Pattern LINK_PATTERN = Pattern.compile(
+            "(?i)\\b(?:src|href|background)\\s*=\\s*([\"']?)([^\"'\\s>]+)\\1");
+
+    /** The maximum number of served pages waiting to have their links prefetched. */
+    private static final int MAX_QUEUED_PAGES = 20;
+
+    /** The content type of pages whose links are prefetched. */
+    private static final String HTML_CONTENT_TYPE = "text/html";
+
     /** The underlying ARC record lookup object. */
     private ARCLookup lookup;
 
+    /** The client caching and prefetching records, or null if records are not cached. */
+    private final CachingViewerArcRepositoryClient cachingClient;
+
+    /** The maximum number of links prefetched from one HTML page. */
+    private final int maxPrefetchedLinks;
+
+    /** Finds the links of served HTML pages in the archive. Null if records are not cached. */
+    private final ThreadPoolExecutor linkResolver;
+
     /** Logger for this class. */
     private static final Logger log = LoggerFactory.getLogger(ARCArchiveAccess.class);
 
@@ -90,7 +117,28 @@ public class ARCArchiveAccess implements URIResolver {
      */
     public ARCArchiveAccess(ViewerArcRepositoryClient arcRepositoryClient) {
         ArgumentNotValid.checkNotNull(arcRepositoryClient, "ArcRepositoryClient arcRepositoryClient");
-        lookup = new ARCLookup(arcRepositoryClient);
+        long recordCacheBytes = Settings.getLong(HarvesterSettings.VIEWERPROXY_RECORD_CACHE_MAX_BYTES);
+        maxPrefetchedLinks = Settings.getInt(HarvesterSettings.VIEWERPROXY_MAX_PREFETCHED_LINKS);
+        if (recordCacheBytes > 0) {
+            cachingClient = new CachingViewerArcRepositoryClient(arcRepositoryClient, recordCacheBytes,
+                    Settings.getInt(HarvesterSettings.VIEWERPROXY_PREFETCH_THREADS));
+            lookup = new ARCLookup(cachingClient);
+            // A single thread is enough for index lookups, and if it falls behind
+            // the links of the oldest pages are the least interesting.
+            linkResolver = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(MAX_QUEUED_PAGES), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "ARCArchiveAccess-linkResolver");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    }, new ThreadPoolExecutor.DiscardOldestPolicy());
+        } else {
+            cachingClient = null;
+            lookup = new ARCLookup(arcRepositoryClient);
+            linkResolver = null;
+        }
         lookup.setTryToLookupUriAsFtp(tryToLookupUriAsFtp);
         log.info("Constructed instance of ARCArchiveAccess with TryToLookupUriAsFtp: {}", tryToLookupUriAsFtp);
     }
@@ -132,13 +180,17 @@ public class ARCArchiveAccess implements URIResolver {
                 return URIResolver.NOT_FOUND;
             }
             contentStream = content.getInputStream();
+            String contentType = null;
             // First write the original header.
             if (content.containsHeader()) {
             	log.debug("Write first the original header");
-                writeHeader(contentStream, response);
+                contentType = writeHeader(contentStream, response);
             }
             // Now flush the content to the browser.
-            readPage(contentStream, response.getOutputStream());
+            byte[] page = readPage(contentStream, response.getOutputStream());
+            if (contentType != null && contentType.toLowerCase().startsWith(HTML_CONTENT_TYPE)) {
+                prefetchLinks(uri, page);
+            }
         } finally {
             if (contentStream != null) {
                 try {
@@ -191,14 +243,73 @@ public class ARCArchiveAccess implements URIResolver {
         return headercontents;
     }
 
+    /**
+     * Start retrieving the records linked from an HTML page in the background, so they are cached when the browser
+     * requests them. The links are looked up in the index in the background too, so the page is not delayed.
+     *
+     * @param pageUri The URI of the page, used for resolving relative links.
+     * @param page The contents of the page.
+     */
+    private void prefetchLinks(final URI pageUri, final byte[] page) {
+        if (cachingClient == null || maxPrefetchedLinks <= 0) {
+            return;
+        }
+        linkResolver.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    // Links are ASCII, and ISO-8859-1 keeps every byte as one char
+                    Matcher m = LINK_PATTERN.matcher(new String(page, "ISO-8859-1"));
+                    Set<URI> links = new HashSet<URI>();
+                    while (links.size() < maxPrefetchedLinks && m.find()) {
+                        URI link = resolveLink(pageUri, m.group(2));
+                        if (link != null && links.add(link)) {
+                            ARCKey key = lookup.lookupKey(link);
+                            if (key != null) {
+                                cachingClient.prefetch(key.getFile().getName(), key.getOffset());
+                            }
+                        }
+                    }
+                    log.debug("Looked up {} links from '{}' for prefetching", links.size(), pageUri);
+                } catch (Exception e) {
+                    log.debug("Unable to prefetch links from '{}'", pageUri, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Resolve a link found in a page to an absolute http(s) URI without fragment.
+     *
+     * @param pageUri The URI of the page.
+     * @param link The link as found in the page.
+     * @return The absolute URI, or null if the link is malformed or not http(s).
+     */
+    static URI resolveLink(URI pageUri, String link) {
+        try {
+            URI resolved = pageUri.resolve(link.replace("&amp;", "&"));
+            String scheme = resolved.getScheme();
+            if (scheme == null || !(scheme.equalsIgnoreCase("http") || scheme.equalsIgnoreCase("https"))) {
+                return null;
+            }
+            return new URI(resolved.getScheme(), resolved.getSchemeSpecificPart(), null);
+        } catch (IllegalArgumentException e) {
+            return null;
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
     /**
      * Write HTTP header, including status and status reason.
      *
      * @param is A stream to read the header from.
      * @param response A Response to write the header, status and reason to.
+     * @return The value of the Content-Type header, or null if there is none.
      * @throws IOFailure If the underlying reads or writes fail.
      */
-    private void writeHeader(InputStream is, Response response) {
+    private String writeHeader(InputStream is, Response response) {
+        String contentType = null;
         // Reads until the end of the header (indicated by an empty line)
         try {
             for (String line = readLine(is); (line != null) && (line.length() > 0); line = readLine(is)) {
@@ -219,6 +330,9 @@ public class ARCArchiveAccess implements URIResolver {
                         log.debug("Malformed header line '" + line + "'");
                     } else {
                         String name = parts[0];
+                        if (name.trim().equalsIgnoreCase("Content-Type")) {
+                            contentType = parts[1].trim();
+                        }
                         String contents = filterHeader(name, parts[1].trim());
                         if (contents != null) {
                             // filter out unwanted headers
@@ -231,6 +345,7 @@ public class ARCArchiveAccess implements URIResolver {
         } catch (IOException e) {
             throw new IOFailure("Trouble reading from input stream or writing" + " to output stream", e);
         }
+        return contentType;
     }
 
     /**
@@ -238,9 +353,10 @@ public class ARCArchiveAccess implements URIResolver {
      *
      * @param content The stream to read the page from. Not closed afterwards.
      * @param out The stream to write the results to. Not closed afterwards.
+     * @return The contents of the page.
      * @throws IOFailure If the underlying reads or writes fail
      */
-    private void readPage(InputStream content, OutputStream out) {
+    private byte[] readPage(InputStream content, OutputStream out) {
         BufferedInputStream page = new BufferedInputStream(content);
         BufferedOutputStream responseOut = new BufferedOutputStream(out);
         ByteArrayOutputStream baos = new ByteArrayOutputStream(); 
@@ -256,6 +372,7 @@ public class ARCArchiveAccess implements URIResolver {
         } catch (IOException e) {
             throw new IOFailure("Could not read or write data", e);
         }
+        return baos.toByteArray();
     }
 
     /**
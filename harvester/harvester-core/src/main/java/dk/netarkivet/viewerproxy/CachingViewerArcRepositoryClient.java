@@ -0,0 +1,384 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.viewerproxy;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.distribute.arcrepository.BatchStatus;
+import dk.netarkivet.common.distribute.arcrepository.BitarchiveRecord;
+import dk.netarkivet.common.distribute.arcrepository.Replica;
+import dk.netarkivet.common.distribute.arcrepository.ViewerArcRepositoryClient;
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.utils.batch.FileBatchJob;
+
+/**
+ * A ViewerArcRepositoryClient that keeps the most recently retrieved records in memory, and can retrieve records in the
+ * background before they are requested.
+ * <p>
+ * Records are cached by file and offset, in least recently used order, until their total length exceeds a byte budget.
+ * Records too large to be transferred in memory are delivered as RemoteFiles that can only be read once, so these are
+ * never cached. When such a record is prefetched, it is kept until the first get of it.
+ * <p>
+ * Prefetched records are retrieved in parallel by a bounded number of threads, so the requests to the archive are
+ * pipelined rather than sent one at a time. A get of a record that is being prefetched waits for the prefetch instead
+ * of sending another request.
+ */
+public class CachingViewerArcRepositoryClient implements ViewerArcRepositoryClient {
+
+    /** The log. */
+    private static final Logger log = LoggerFactory.getLogger(CachingViewerArcRepositoryClient.class);
+
+    /** The maximum number of prefetches waiting for a thread. Further prefetches are skipped. */
+    private static final int MAX_QUEUED_PREFETCHES = 1000;
+    /** The maximum number of prefetched records stored as RemoteFiles, which have not been requested yet. */
+    private static final int MAX_UNCLAIMED_REMOTE_RECORDS = 100;
+
+    /** The client records are retrieved through. */
+    private final ViewerArcRepositoryClient arcRepositoryClient;
+    /** The maximum total length of the cached records. */
+    private final long maxBytes;
+    /** The cached records by file and offset, in access order. */
+    private final LinkedHashMap<String, BitarchiveRecord> records = new LinkedHashMap<String, BitarchiveRecord>(16,
+            0.75f, true);
+    /** The total length of the cached records. Guarded by records. */
+    private long cachedBytes;
+    /**
+     * The prefetched records stored as RemoteFiles, which have not been requested yet, by file and offset in the order
+     * they were prefetched.
+     */
+    private final LinkedHashMap<String, BitarchiveRecord> remoteRecords = new LinkedHashMap<String, BitarchiveRecord>();
+    /** The prefetches that have not finished yet, by file and offset. */
+    private final ConcurrentMap<String, Future<BitarchiveRecord>> prefetches =
+            new ConcurrentHashMap<String, Future<BitarchiveRecord>>();
+    /** The threads retrieving prefetched records. */
+    private final ThreadPoolExecutor prefetcher;
+
+    /**
+     * Create a caching client.
+     *
+     * @param arcRepositoryClient The client records are retrieved through.
+     * @param maxBytes The maximum total length of the cached records.
+     * @param prefetchThreads The maximum number of records prefetched in parallel.
+     * @throws ArgumentNotValid if arcRepositoryClient is null, maxBytes is negative or prefetchThreads is not positive.
+     */
+    public CachingViewerArcRepositoryClient(ViewerArcRepositoryClient arcRepositoryClient, long maxBytes,
+            int prefetchThreads) {
+        ArgumentNotValid.checkNotNull(arcRepositoryClient, "ViewerArcRepositoryClient arcRepositoryClient");
+        ArgumentNotValid.checkNotNegative(maxBytes, "long maxBytes");
+        ArgumentNotValid.checkPositive(prefetchThreads, "int prefetchThreads");
+        this.arcRepositoryClient = arcRepositoryClient;
+        this.maxBytes = maxBytes;
+        this.prefetcher = new ThreadPoolExecutor(prefetchThreads, prefetchThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(MAX_QUEUED_PREFETCHES), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "RecordPrefetcher-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        this.prefetcher.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Gets a single record, from the cache if possible.
+     *
+     * @param arcfile The name of a file containing the desired record.
+     * @param index The offset of the desired record in the file
+     * @return a BitarchiveRecord-object, or null if request times out or object is not found.
+     * @throws ArgumentNotValid If the get operation failed.
+     */
+    @Override
+    public BitarchiveRecord get(String arcfile, long index) throws ArgumentNotValid {
+        ArgumentNotValid.checkNotNullOrEmpty(arcfile, "String arcfile");
+        String key = getKey(arcfile, index);
+        BitarchiveRecord record = getCached(key);
+        if (record != null) {
+            log.debug("Record {} served from cache", key);
+            return record;
+        }
+        Future<BitarchiveRecord> prefetch = prefetches.get(key);
+        if (prefetch != null) {
+            try {
+                record = prefetch.get();
+                if (record != null && !record.isStoredAsRemoteFile()) {
+                    log.debug("Record {} served from prefetch", key);
+                    return record;
+                }
+            } catch (ExecutionException e) {
+                log.debug("Prefetch of record {} failed, retrieving it again", key, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOFailure("Interrupted while waiting for record " + key, e);
+            }
+        }
+        record = claimRemoteRecord(key);
+        if (record != null) {
+            log.debug("Record {} served from prefetch", key);
+            return record;
+        }
+        record = arcRepositoryClient.get(arcfile, index);
+        cache(key, record);
+        return record;
+    }
+
+    /**
+     * Start retrieving a record in the background, unless it is cached or already being retrieved. If all prefetch
+     * threads are busy and the queue of waiting prefetches is full, the record is not prefetched. A record stored as a
+     * RemoteFile is kept for the first get of it, so it is not retrieved twice.
+     *
+     * @param arcfile The name of a file containing the desired record.
+     * @param index The offset of the desired record in the file
+     * @throws ArgumentNotValid If arcfile is null or empty.
+     */
+    public void prefetch(final String arcfile, final long index) {
+        ArgumentNotValid.checkNotNullOrEmpty(arcfile, "String arcfile");
+        final String key = getKey(arcfile, index);
+        if (maxBytes == 0 || prefetches.containsKey(key) || getCached(key) != null || hasRemoteRecord(key)) {
+            return;
+        }
+        FutureTask<BitarchiveRecord> task = new FutureTask<BitarchiveRecord>(new Callable<BitarchiveRecord>() {
+            @Override
+            public BitarchiveRecord call() {
+                try {
+                    BitarchiveRecord record = arcRepositoryClient.get(arcfile, index);
+                    if (record != null && record.isStoredAsRemoteFile()) {
+                        // Cannot be shared, so keep it for the first get
+                        keepRemoteRecord(key, record);
+                    } else {
+                        cache(key, record);
+                    }
+                    return record;
+                } finally {
+                    prefetches.remove(key);
+                }
+            }
+        });
+        if (prefetches.putIfAbsent(key, task) != null) {
+            return;
+        }
+        try {
+            prefetcher.execute(task);
+        } catch (RejectedExecutionException e) {
+            prefetches.remove(key, task);
+            log.debug("Too many prefetches waiting, not prefetching {}", key);
+        }
+    }
+
+    /**
+     * Retrieves a file from the archive. Files are never cached.
+     *
+     * @param arcfilename Name of the arcfile to retrieve.
+     * @param replica The bitarchive to retrieve the data from.
+     * @param toFile Filename of a place where the file fetched can be put.
+     * @throws IOFailure if there are problems getting a reply or the file could not be found.
+     */
+    @Override
+    public void getFile(String arcfilename, Replica replica, File toFile) {
+        arcRepositoryClient.getFile(arcfilename, replica, toFile);
+    }
+
+    /**
+     * Runs a batch job through the underlying client.
+     *
+     * @param job The batch job.
+     * @param replicaId The archive to execute the job on.
+     * @param args The arguments for the batchjob.
+     * @return The status of the batch job after it ended.
+     */
+    @Override
+    public BatchStatus batch(FileBatchJob job, String replicaId, String... args) {
+        return arcRepositoryClient.batch(job, replicaId, args);
+    }
+
+    /**
+     * Stops prefetching, empties the cache, releases the prefetched records that were never requested and closes the
+     * underlying client.
+     */
+    @Override
+    public void close() {
+        prefetcher.shutdownNow();
+        synchronized (records) {
+            records.clear();
+            cachedBytes = 0;
+        }
+        synchronized (remoteRecords) {
+            for (BitarchiveRecord record : remoteRecords.values()) {
+                discard(record);
+            }
+            remoteRecords.clear();
+        }
+        arcRepositoryClient.close();
+    }
+
+    /**
+     * @return The total length of the cached records.
+     */
+    long getCachedBytes() {
+        synchronized (records) {
+            return cachedBytes;
+        }
+    }
+
+    /**
+     * @return The number of prefetched records stored as RemoteFiles, which have not been requested yet.
+     */
+    int getUnclaimedRemoteRecords() {
+        synchronized (remoteRecords) {
+            return remoteRecords.size();
+        }
+    }
+
+    /**
+     * Get a record from the cache.
+     *
+     * @param key The file and offset of the record.
+     * @return The record, or null if it is not cached.
+     */
+    private BitarchiveRecord getCached(String key) {
+        synchronized (records) {
+            return records.get(key);
+        }
+    }
+
+    /**
+     * Cache a record if it is held in memory and fits in the cache, evicting the least recently used records as
+     * necessary.
+     *
+     * @param key The file and offset of the record.
+     * @param record The record, may be null.
+     */
+    private void cache(String key, BitarchiveRecord record) {
+        if (record == null || record.isStoredAsRemoteFile() || record.getLength() > maxBytes) {
+            return;
+        }
+        synchronized (records) {
+            BitarchiveRecord previous = records.put(key, record);
+            if (previous != null) {
+                cachedBytes -= previous.getLength();
+            }
+            cachedBytes += record.getLength();
+            Iterator<Map.Entry<String, BitarchiveRecord>> eldest = records.entrySet().iterator();
+            while (cachedBytes > maxBytes && eldest.hasNext()) {
+                cachedBytes -= eldest.next().getValue().getLength();
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Keep a prefetched record stored as a RemoteFile until it is requested. If too many records are kept, the one
+     * prefetched first is released. If the client has been closed, the record is released at once.
+     *
+     * @param key The file and offset of the record.
+     * @param record The record.
+     */
+    private void keepRemoteRecord(String key, BitarchiveRecord record) {
+        synchronized (remoteRecords) {
+            if (prefetcher.isShutdown()) {
+                discard(record);
+                return;
+            }
+            BitarchiveRecord previous = remoteRecords.put(key, record);
+            if (previous != null) {
+                discard(previous);
+            }
+            Iterator<BitarchiveRecord> eldest = remoteRecords.values().iterator();
+            while (remoteRecords.size() > MAX_UNCLAIMED_REMOTE_RECORDS && eldest.hasNext()) {
+                discard(eldest.next());
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Take a prefetched record stored as a RemoteFile, so no one else gets it.
+     *
+     * @param key The file and offset of the record.
+     * @return The record, or null if no such record has been prefetched.
+     */
+    private BitarchiveRecord claimRemoteRecord(String key) {
+        synchronized (remoteRecords) {
+            return remoteRecords.remove(key);
+        }
+    }
+
+    /**
+     * Tells whether a record stored as a RemoteFile has been prefetched and not requested yet.
+     *
+     * @param key The file and offset of the record.
+     * @return true if the record is kept for the first get of it.
+     */
+    private boolean hasRemoteRecord(String key) {
+        synchronized (remoteRecords) {
+            return remoteRecords.containsKey(key);
+        }
+    }
+
+    /**
+     * Release the RemoteFile of a record that will not be used.
+     *
+     * @param record The record.
+     */
+    private static void discard(BitarchiveRecord record) {
+        try {
+            record.getData().close();
+        } catch (IOException e) {
+            log.debug("Unable to release data of unused record from '{}'", record.getFile(), e);
+        } catch (IOFailure e) {
+            log.debug("Unable to release data of unused record from '{}'", record.getFile(), e);
+        }
+    }
+
+    /**
+     * @param arcfile The name of a file.
+     * @param index The offset of a record in the file.
+     * @return The cache key of the record.
+     */
+    private static String getKey(String arcfile, long index) {
+        return arcfile + ":" + index;
+    }
+
+}
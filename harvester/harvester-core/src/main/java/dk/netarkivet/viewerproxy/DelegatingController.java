@@ -23,6 +23,7 @@
 
 package dk.netarkivet.viewerproxy;
 
+import java.io.File;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -36,6 +37,7 @@ import dk.netarkivet.common.distribute.indexserver.JobIndexCache;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.utils.I18n;
 import dk.netarkivet.common.utils.StringUtils;
+import dk.netarkivet.harvester.indexserver.distribute.IndexRequestClient;
 
 /**
  * Control of viewer proxy. Delegates URL-methods to a missing URL recorder, and cdx control to a JobIndexCache instance
@@ -68,6 +70,10 @@ public class DelegatingController implements Controller {
      * Remembers the label of the index for status purposes.
      */
     private String indexLabel;
+    /**
+     * The index file currently used, which is released when the index is changed.
+     */
+    private File indexFile;
     /**
      * Internationalisation context.
      */
@@ -122,14 +128,19 @@ public class DelegatingController implements Controller {
 
     /**
      * Change index to use an index based on a list of jobs. Note: Does not check arguments. This is a task for the
-     * mediated classes, ArcArchiveAccess and JobIndexCache.
+     * mediated classes, ArcArchiveAccess and JobIndexCache. The previous index is released once the new one is used,
+     * so it may be deleted from a shared index cache.
      *
      * @param jobSet List of jobs to get an index for.
      * @param label The label this index should be known as
      */
-    public void changeIndex(Set<Long> jobSet, String label) {
+    public synchronized void changeIndex(Set<Long> jobSet, String label) {
         Index<Set<Long>> jobindex = cc.getIndex(jobSet);
         aaa.setIndex(jobindex.getIndexFile());
+        if (indexFile != null) {
+            IndexRequestClient.releaseIndex(indexFile);
+        }
+        indexFile = jobindex.getIndexFile();
         this.availableSet = jobindex.getIndexSet();
         this.jobSet = jobSet;
         this.indexLabel = label;
@@ -0,0 +1,138 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *       the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.harvesting.report;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Map;
+
+import org.junit.Test;
+
+import dk.netarkivet.harvester.datamodel.StopReason;
+import dk.netarkivet.harvester.harvesting.distribute.DomainStats;
+
+/**
+ * Unit tests for the {@link CrawlLogLineTokenizer} and {@link DomainStatsAccumulator} classes.
+ */
+public class DomainStatsAccumulatorTester {
+
+    private static final String LINE1 = "2015-01-01T10:00:00.000Z   200       1234 http://www.netarkivet.dk/ - - text/html "
+            + "#001 20150101100000000+50 sha1:ABCD http://netarkivet.dk/ content-size:1500\n";
+    private static final String LINE2 = "2015-01-01T10:00:01.000Z   200       100 http://images.kb.dk/a.png L "
+            + "http://www.netarkivet.dk/ image/png #002 20150101100000000+50 sha1:ABCD http://netarkivet.dk/ "
+            + "duplicate:digest, content-size:100\n";
+    private static final String LINE3 = "2015-01-01T10:00:02.000Z -5003       - http://www.netarkivet.dk/b L "
+            + "http://www.netarkivet.dk/ - #003 - - http://netarkivet.dk/ Q:groupMaxAllKb\n";
+    private static final String LINE4 = "2015-01-01T10:00:03.000Z   404       10 dns:www.kb.dk P "
+            + "http://www.kb.dk/ text/dns #004 20150101100000000+50 sha1:ABCD - content-size:10\n";
+    private static final String LINE5 = "2015-01-01T10:00:04.000Z   200       10 http://user@www.kb.dk:8080/c - "
+            + "- text/html #005 20150101100000000+50 sha1:ABCD - content-size:5\n";
+
+    /** Extracts hostnames with java.net.URI, standing in for the URI parsing of the crawler. */
+    private static final DomainStatsAccumulator.HostnameExtractor HOSTNAMES =
+            new DomainStatsAccumulator.HostnameExtractor() {
+                @Override
+                public String getHostname(String uri) {
+                    try {
+                        URI parsed = new URI(uri);
+                        if ("dns".equals(parsed.getScheme())) {
+                            return parsed.getSchemeSpecificPart();
+                        }
+                        return parsed.getHost();
+                    } catch (URISyntaxException e) {
+                        return null;
+                    }
+                }
+            };
+
+    @Test
+    public void testTokenizer() throws IOException {
+        CrawlLogLineTokenizer tokenizer = new CrawlLogLineTokenizer(new ByteArrayInputStream((LINE2 + "a  b\r\n"
+                + "incomplete").getBytes("UTF-8")), false);
+        assertTrue(tokenizer.next());
+        assertEquals(12, tokenizer.getFieldCount());
+        assertEquals(200L, tokenizer.parseLongField(1));
+        assertEquals("http://images.kb.dk/a.png", tokenizer.getField(3));
+        assertTrue(tokenizer.fieldEquals(4, "L"));
+        assertEquals("duplicate:digest, content-size:100", tokenizer.getField(11));
+        assertEquals(LINE2.length(), tokenizer.getPosition());
+
+        assertTrue(tokenizer.next());
+        assertEquals(2, tokenizer.getFieldCount());
+        assertEquals("b", tokenizer.getField(1));
+        assertFalse("An unterminated last line should be left for later", tokenizer.next());
+        assertEquals(LINE2.length() + 6, tokenizer.getPosition());
+
+        tokenizer = new CrawlLogLineTokenizer(new ByteArrayInputStream("-5003".getBytes("UTF-8")), true);
+        assertTrue(tokenizer.next());
+        assertEquals(-5003L, tokenizer.parseLongField(0));
+    }
+
+    @Test
+    public void testIncrementalUpdate() throws IOException {
+        File crawlLog = File.createTempFile("crawl", ".log");
+        crawlLog.deleteOnExit();
+        DomainStatsAccumulator accumulator = new DomainStatsAccumulator("Q:groupMaxAllKb",
+                "Q:groupMaxFetchSuccesses", false, HOSTNAMES);
+
+        append(crawlLog, LINE1 + LINE2.substring(0, 20));
+        accumulator.update(crawlLog);
+        assertEquals(1, accumulator.getLineCount());
+        Map<String, DomainStats> stats = accumulator.getDomainStatsMap(StopReason.DOWNLOAD_UNFINISHED);
+        assertEquals(1L, stats.get("netarkivet.dk").getObjectCount());
+        assertEquals(1500L, stats.get("netarkivet.dk").getByteCount());
+
+        append(crawlLog, LINE2.substring(20) + LINE3 + "not a crawl.log line\n" + LINE4 + LINE5);
+        accumulator.finish(crawlLog);
+        assertEquals(6, accumulator.getLineCount());
+        assertEquals(1, accumulator.getInvalidLineCount());
+
+        stats = accumulator.getDomainStatsMap(StopReason.DOWNLOAD_COMPLETE);
+        DomainStats netarkivet = stats.get("netarkivet.dk");
+        assertEquals("Blocked URIs should not be counted", 2L, netarkivet.getObjectCount());
+        assertEquals(1600L, netarkivet.getByteCount());
+        assertEquals(StopReason.SIZE_LIMIT, netarkivet.getStopReason());
+        DomainStats kb = stats.get("kb.dk");
+        assertEquals("The host should be found through the hostname extractor", 2L, kb.getObjectCount());
+        assertEquals(15L, kb.getByteCount());
+        assertEquals(StopReason.DOWNLOAD_COMPLETE, kb.getStopReason());
+    }
+
+    private static void append(File f, String s) throws IOException {
+        FileOutputStream out = new FileOutputStream(f, true);
+        try {
+            out.write(s.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+}
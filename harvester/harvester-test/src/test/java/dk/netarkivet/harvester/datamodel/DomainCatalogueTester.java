@@ -0,0 +1,117 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester - test
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.datamodel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link DomainCatalogue} class.
+ */
+public class DomainCatalogueTester {
+
+    private DomainCatalogue catalogue;
+    private List<String> domains;
+
+    @Before
+    public void setUp() {
+        catalogue = new DomainCatalogue();
+        domains = new ArrayList<String>();
+        // Enough names to be merged into the front-coded arrays
+        for (int i = 0; i < 3000; i++) {
+            domains.add("domain" + i + ".dk");
+        }
+        domains.addAll(Arrays.asList("kb.dk", "netarkivet.dk", "bnf.fr", "culture.gouv.fr", "justice.gouv.fr",
+                "onb.ac.at", "130.225.27.140"));
+        assertEquals(domains.size(), catalogue.addAll(domains));
+    }
+
+    @Test
+    public void testAdd() {
+        assertEquals(domains.size(), catalogue.size());
+        assertFalse("Known names should not be added twice", catalogue.add("kb.dk"));
+        assertFalse("Invalid names should not be added", catalogue.add("not a domain"));
+        assertTrue(catalogue.add("statsbiblioteket.dk"));
+        assertTrue(catalogue.contains("statsbiblioteket.dk"));
+        assertTrue(catalogue.contains("domain2999.dk"));
+        assertFalse(catalogue.contains("domain3000.dk"));
+        assertEquals(domains.size() + 1, catalogue.size());
+
+        List<String> expected = new ArrayList<String>(domains);
+        expected.add("statsbiblioteket.dk");
+        Collections.sort(expected);
+        assertEquals(expected, catalogue.getAllNames());
+    }
+
+    @Test
+    public void testFind() {
+        assertEquals(Arrays.asList("kb.dk"), catalogue.find("kb.dk"));
+        List<String> found = catalogue.find("domain299*");
+        assertEquals(11, found.size());
+        assertEquals(Arrays.asList("domain299.dk", "domain2990.dk"), found.subList(0, 2));
+        assertEquals(Arrays.asList("culture.gouv.fr", "justice.gouv.fr"), catalogue.find("*.gouv.fr"));
+        assertEquals(Arrays.asList("bnf.fr", "culture.gouv.fr", "justice.gouv.fr"), catalogue.find("*.fr"));
+        assertEquals(Arrays.asList("netarkivet.dk"), catalogue.find("*arkiv*"));
+        assertEquals(Arrays.asList("domain1.dk", "domain2.dk"), catalogue.find("domain?.dk").subList(1, 3));
+        assertEquals(Arrays.asList("kb.dk"), catalogue.find("k_.dk"));
+        assertEquals(domains.size(), catalogue.find("*").size());
+        assertTrue(catalogue.find("*.se").isEmpty());
+
+        catalogue.add("justitia.gouv.fr");
+        assertEquals("Names not yet merged should be found", Arrays.asList("justice.gouv.fr", "justitia.gouv.fr"),
+                catalogue.find("justi*.gouv.fr"));
+    }
+
+    @Test
+    public void testGetTLDs() {
+        List<TLDInfo> tlds = catalogue.getTLDs(1);
+        assertEquals(4, tlds.size());
+        assertEquals("IP Address", tlds.get(0).getName());
+        assertEquals(1, tlds.get(0).getCount());
+        assertEquals("at", tlds.get(1).getName());
+        assertEquals("dk", tlds.get(2).getName());
+        assertEquals(3002, tlds.get(2).getCount());
+        assertEquals("fr", tlds.get(3).getName());
+        assertEquals(3, tlds.get(3).getCount());
+
+        tlds = catalogue.getTLDs(2);
+        assertTrue(tlds.contains(new TLDInfo("gouv.fr")));
+        assertEquals(2, tlds.get(tlds.indexOf(new TLDInfo("gouv.fr"))).getCount());
+        assertTrue(tlds.contains(new TLDInfo("ac.at")));
+
+        catalogue.add("senat.gouv.fr");
+        tlds = catalogue.getTLDs(2);
+        assertEquals("Counts should follow added names", 3, tlds.get(tlds.indexOf(new TLDInfo("gouv.fr")))
+                .getCount());
+    }
+
+}
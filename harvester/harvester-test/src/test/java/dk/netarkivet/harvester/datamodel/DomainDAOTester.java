@@ -33,8 +33,12 @@ import java.sql.Connection;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.junit.After;
 import org.junit.Before;
@@ -45,6 +49,7 @@ import org.junit.experimental.categories.Category;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.PermissionDenied;
 import dk.netarkivet.common.exceptions.UnknownID;
+import dk.netarkivet.common.utils.DBUtils;
 import dk.netarkivet.common.utils.IteratorUtils;
 import dk.netarkivet.common.utils.SlowTest;
 import dk.netarkivet.testutils.CollectionAsserts;
@@ -120,6 +125,110 @@ public class DomainDAOTester extends DataModelTestCase {
         }
     }
 
+    /**
+     * Check that domains created in bulk get the same values as domains created one at a time, and that existing
+     * domains are left alone.
+     */
+    @Test
+    @Category(SlowTest.class)
+    public void testCreateDefaultDomains() {
+        DomainDAO dao = DomainDAO.getInstance();
+        List<String> created = dao.createDefaultDomains(Arrays.asList("bulk1.dk", TestInfo.EXISTINGDOMAINNAME,
+                "bulk2.dk", "bulk1.dk"));
+        assertEquals("Only the new domains should be created", 2, created.size());
+        assertTrue(created.contains("bulk1.dk"));
+        assertTrue(created.contains("bulk2.dk"));
+        assertEquals("Must have expected number of domains", NUM_DOMAINS + 2, dao.getCountDomains());
+
+        Domain expected = Domain.getDefaultDomain("bulk1.dk");
+        Domain bulk = dao.read("bulk1.dk");
+        DomainConfiguration expectedCfg = expected.getDefaultConfiguration();
+        DomainConfiguration bulkCfg = bulk.getDefaultConfiguration();
+        assertEquals(expectedCfg.getName(), bulkCfg.getName());
+        assertEquals(expectedCfg.getOrderXmlName(), bulkCfg.getOrderXmlName());
+        assertEquals(expectedCfg.getMaxRequestRate(), bulkCfg.getMaxRequestRate());
+        assertEquals(expectedCfg.getMaxObjects(), bulkCfg.getMaxObjects());
+        SeedList expectedSeeds = expectedCfg.getSeedLists().next();
+        SeedList bulkSeeds = bulkCfg.getSeedLists().next();
+        assertEquals(expectedSeeds.getName(), bulkSeeds.getName());
+        assertEquals(expectedSeeds.getSeedsAsString(), bulkSeeds.getSeedsAsString());
+
+        assertTrue("Nothing should be created the second time",
+                dao.createDefaultDomains(Arrays.asList("bulk1.dk", "bulk2.dk")).isEmpty());
+    }
+
+    /**
+     * Test that seed configurations are added to new and existing domains, and that existing configurations with the
+     * same name are left alone.
+     */
+    @Test
+    @Category(SlowTest.class)
+    public void testCreateSeedConfigurations() {
+        DomainDAO dao = DomainDAO.getInstance();
+        Map<String, Set<String>> seeds = new HashMap<String, Set<String>>();
+        seeds.put("seeds1.dk", new HashSet<String>(Arrays.asList("http://www.seeds1.dk/a", "http://seeds1.dk/b")));
+        seeds.put(TestInfo.EXISTINGDOMAINNAME, new HashSet<String>(Arrays.asList("http://www.dr.dk/c")));
+        List<DomainConfiguration> configs = dao.createSeedConfigurations(seeds, "event_cfg",
+                TestInfo.ORDER_XML_NAME, 1000L, 10);
+        assertEquals("Should get a configuration per domain", 2, configs.size());
+        for (DomainConfiguration dc : configs) {
+            assertNotNull("Configuration should have an ID", dc.getID());
+            assertEquals("event_cfg", dc.getName());
+        }
+        assertEquals("Must have expected number of domains", NUM_DOMAINS + 1, dao.getCountDomains());
+
+        Domain created = dao.read("seeds1.dk");
+        assertTrue("New domain should keep its default configuration",
+                created.hasConfiguration(Domain.getDefaultDomain("seeds1.dk").getDefaultConfiguration().getName()));
+        DomainConfiguration dc = created.getConfiguration("event_cfg");
+        assertEquals(TestInfo.ORDER_XML_NAME, dc.getOrderXmlName());
+        assertEquals(1000L, dc.getMaxBytes());
+        assertEquals(10, dc.getMaxObjects());
+        SeedList seedList = dc.getSeedLists().next();
+        assertEquals("event_cfg", seedList.getName());
+        assertEquals(2, seedList.getSeeds().size());
+        assertEquals("Existing domain should have the new configuration", 1,
+                dao.read(TestInfo.EXISTINGDOMAINNAME).getConfiguration("event_cfg").getSeedLists().next()
+                        .getSeeds().size());
+
+        configs = dao.createSeedConfigurations(seeds, "event_cfg", TestInfo.ORDER_XML_NAME, 1000L, 10);
+        assertEquals(2, configs.size());
+        assertTrue("Name should be made unique", configs.get(0).getName().startsWith("event_cfg_"));
+        assertEquals("Old configuration should be untouched", 2, dao.read("seeds1.dk").getConfiguration("event_cfg")
+                .getSeedLists().next().getSeeds().size());
+    }
+
+    /**
+     * Test that seed configurations need a known template, and that domains without crawler traps get configurations
+     * without crawler traps.
+     */
+    @Test
+    @Category(SlowTest.class)
+    public void testCreateSeedConfigurationsUnknownTemplateAndNoCrawlertraps() {
+        DomainDAO dao = DomainDAO.getInstance();
+        Map<String, Set<String>> seeds = new HashMap<String, Set<String>>();
+        seeds.put(TestInfo.EXISTINGDOMAINNAME, new HashSet<String>(Arrays.asList("http://www.dr.dk/c")));
+        try {
+            dao.createSeedConfigurations(seeds, "event_cfg", "no_such_template", 1000L, 10);
+            fail("Should not create configurations with an unknown template");
+        } catch (UnknownID expected) {
+            // Expected
+        }
+
+        Connection conn = HarvestDBConnection.get();
+        try {
+            DBUtils.executeSQL(conn, "UPDATE domains SET crawlertraps = NULL WHERE name = '"
+                    + TestInfo.EXISTINGDOMAINNAME + "'");
+        } finally {
+            HarvestDBConnection.release(conn);
+        }
+        List<DomainConfiguration> configs = dao.createSeedConfigurations(seeds, "event_cfg",
+                TestInfo.ORDER_XML_NAME, 1000L, 10);
+        assertEquals(1, configs.size());
+        assertTrue("A domain without crawler traps should give a configuration without crawler traps", configs.get(0)
+                .getCrawlertraps().isEmpty());
+    }
+
     /** Check check updating of an existing entry. */
     @Category(SlowTest.class)
     @Test
@@ -43,6 +43,7 @@ import org.junit.Test;
 
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.common.utils.SortUtils;
 import dk.netarkivet.testutils.StringAsserts;
 import dk.netarkivet.testutils.TestFileUtils;
 import is.hi.bok.deduplicator.CrawlDataItem;
@@ -216,7 +217,7 @@ public class CDXOriginCrawlLogIteratorTester {
         File unsortedCDXFile = new File(TestInfo.CDXDATACACHE_DIR, "cdxdata-680");
         File sortedCDXFile = new File(TestInfo.CDXDATACACHE_DIR, "cdxdata-sorted-680");
 
-        FileUtils.sortCrawlLog(unsortedCrawlLogFile, sortedCrawlLogFile);
+        SortUtils.sortFile(unsortedCrawlLogFile, sortedCrawlLogFile, SortUtils.CRAWL_LOG_ORDER);
         FileUtils.sortCDX(unsortedCDXFile, sortedCDXFile);
 
         BufferedReader cdx = new BufferedReader(new FileReader(sortedCDXFile));
@@ -245,7 +246,7 @@ public class CDXOriginCrawlLogIteratorTester {
         unsortedCDXFile = new File(TestInfo.CDXDATACACHE_DIR, "cdxdata-9-cache");
         sortedCDXFile = new File(TestInfo.CDXDATACACHE_DIR, "cdxdata-9-sorted-cache");
 
-        FileUtils.sortCrawlLog(unsortedCrawlLogFile, sortedCrawlLogFile);
+        SortUtils.sortFile(unsortedCrawlLogFile, sortedCrawlLogFile, SortUtils.CRAWL_LOG_ORDER);
         FileUtils.sortCDX(unsortedCDXFile, sortedCDXFile);
 
         cdx = new BufferedReader(new FileReader(sortedCDXFile));
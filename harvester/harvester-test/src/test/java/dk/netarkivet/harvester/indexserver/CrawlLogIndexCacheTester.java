@@ -22,6 +22,7 @@
  */
 package dk.netarkivet.harvester.indexserver;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
 import java.io.File;
@@ -34,6 +35,8 @@ import org.junit.Before;
 import org.junit.Test;
 
 import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.common.utils.ProcessUtils;
+import dk.netarkivet.common.utils.SortUtils;
 import dk.netarkivet.testutils.LogbackRecorder;
 import dk.netarkivet.testutils.ReflectUtils;
 
@@ -53,18 +56,38 @@ public class CrawlLogIndexCacheTester extends CacheTestCase {
     }
 
     /**
-     * Test of private method sortCrawlLog.
+     * Test that crawl logs are sorted by URL.
      *
      * @throws Exception
      */
     @Test
     public void testSortCrawlLog() throws Exception {
         File sortedFile = new File(TestInfo.CRAWL_LOG_1.getAbsolutePath() + ".sorted");
-        FileUtils.sortCrawlLog(TestInfo.CRAWL_LOG_1, sortedFile);
+        SortUtils.sortFile(TestInfo.CRAWL_LOG_1, sortedFile, SortUtils.CRAWL_LOG_ORDER);
 
         assertIsSortedCrawlLog("Should be sorted", sortedFile);
     }
 
+    /**
+     * Test that crawl logs sorted in the JVM are sorted exactly as by the Unix sort.
+     */
+    @Test
+    public void testGetSortedCrawlLog() throws Exception {
+        File sortedFile = CrawlLogIndexCache.getSortedCrawlLog(TestInfo.CRAWL_LOG_1);
+        File unixSortedFile = new File(FileUtils.getTempDir(), TestInfo.CRAWL_LOG_1.getName() + ".sorted");
+        try {
+            assertIsSortedCrawlLog("Should be sorted", sortedFile);
+
+            assertEquals("The Unix sort should succeed", 0,
+                    ProcessUtils.runUnixSort(TestInfo.CRAWL_LOG_1, unixSortedFile, null, true));
+            assertEquals("Should be sorted like the Unix sort", FileUtils.readListFromFile(unixSortedFile),
+                    FileUtils.readListFromFile(sortedFile));
+        } finally {
+            FileUtils.remove(sortedFile);
+            FileUtils.remove(unixSortedFile);
+        }
+    }
+
     private void assertIsSortedCrawlLog(String msg, File f) {
         int urlField = 3;
         String prev = null;
@@ -0,0 +1,112 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester - test
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.indexserver.distribute;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dk.netarkivet.common.utils.FileUtils;
+
+/**
+ * Unit tests for the SharedIndexCache class.
+ */
+public class SharedIndexCacheTester {
+
+    /** The directory of the shared cache. */
+    private static final File CACHE_DIR = new File(TestInfo.WORKING_DIR, "sharedcache");
+
+    /** A cache with room for a single index of 8 bytes. */
+    private SharedIndexCache cache;
+    /** The directory of the cache files. */
+    private File keyDir;
+
+    @Before
+    public void setUp() {
+        FileUtils.removeRecursively(CACHE_DIR);
+        cache = new SharedIndexCache(CACHE_DIR, 10L);
+        keyDir = cache.getCacheDir("DEDUP_CRAWL_LOG");
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.removeRecursively(CACHE_DIR);
+    }
+
+    @Test
+    public void testStoreDeduplicatesContent() throws IOException {
+        File keyA = new File(keyDir, "1-2-cache");
+        File keyB = new File(keyDir, "1-2-3-cache");
+        cache.store(receive("1-2-cache", "12345678"), keyA);
+        cache.store(receive("1-2-3-cache", "12345678"), keyB);
+        assertEquals("Equal indices should only be stored once", 1, new File(CACHE_DIR, "content").list().length);
+
+        File indexA = cache.acquire(keyA);
+        File indexB = cache.acquire(keyB);
+        assertNotNull(indexA);
+        assertEquals("Both cache files should give the same index", indexA, indexB);
+        assertEquals("12345678", FileUtils.readFile(new File(indexA, "_0.cfs")));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedUnreferenced() {
+        File keyA = new File(keyDir, "1-cache");
+        File keyB = new File(keyDir, "2-cache");
+        cache.store(receive("1-cache", "12345678"), keyA);
+        File indexA = cache.acquire(keyA);
+        cache.store(receive("2-cache", "abcdefgh"), keyB);
+        File indexB = cache.acquire(keyB);
+        assertTrue("A referenced index should not be deleted", indexA.exists());
+
+        cache.release(indexA);
+        assertFalse("The unreferenced index should be deleted when the cache is too full", indexA.exists());
+        assertTrue(indexB.exists());
+        assertNull("A cache file of a deleted index should give no index", cache.acquire(keyA));
+
+        cache.store(receive("1-cache", "12345678"), keyA);
+        assertNotNull("A deleted index should be stored again", cache.acquire(keyA));
+    }
+
+    /**
+     * Make a received index of one file.
+     *
+     * @param name The name of the index.
+     * @param content The content of the file.
+     * @return The directory of the index, in the staging area of the cache.
+     */
+    private File receive(String name, String content) {
+        File index = new File(cache.createStagingDir(name), name);
+        FileUtils.createDir(index);
+        FileUtils.writeBinaryFile(new File(index, "_0.cfs"), content.getBytes());
+        return index;
+    }
+}
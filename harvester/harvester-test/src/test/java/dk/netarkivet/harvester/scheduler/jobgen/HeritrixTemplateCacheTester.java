@@ -0,0 +1,86 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester - test
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.scheduler.jobgen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.common.utils.SlowTest;
+import dk.netarkivet.harvester.HarvesterSettings;
+import dk.netarkivet.harvester.datamodel.DataModelTestCase;
+import dk.netarkivet.harvester.datamodel.GlobalCrawlerTrapList;
+import dk.netarkivet.harvester.datamodel.GlobalCrawlerTrapListDAO;
+import dk.netarkivet.harvester.datamodel.HeritrixTemplate;
+import dk.netarkivet.harvester.datamodel.TemplateDAO;
+
+/**
+ * Unit tests for the {@link HeritrixTemplateCache} class.
+ */
+public class HeritrixTemplateCacheTester extends DataModelTestCase {
+
+    @Category(SlowTest.class)
+    @Test
+    public void testGetReturnsIndependentCopies() {
+        String name = Settings.get(HarvesterSettings.DOMAIN_DEFAULT_ORDERXML);
+        HeritrixTemplateCache cache = new HeritrixTemplateCache();
+        HeritrixTemplate first = cache.get(name);
+        String xml = first.getXML();
+        first.insertCrawlerTraps("cachetest", Collections.singletonList("http://copy\\.trap\\.dk/.*"));
+        assertFalse("The copy should have been edited", xml.equals(first.getXML()));
+        HeritrixTemplate second = cache.get(name);
+        assertNotSame(first, second);
+        assertEquals("Editing a copy should not affect the cached template", xml, second.getXML());
+        assertEquals(first.template_id, second.template_id);
+    }
+
+    @Category(SlowTest.class)
+    @Test
+    public void testGetSeesChanges() throws Exception {
+        String name = Settings.get(HarvesterSettings.DOMAIN_DEFAULT_ORDERXML);
+        HeritrixTemplateCache cache = new HeritrixTemplateCache();
+        boolean active = cache.get(name).isActive();
+
+        TemplateDAO templateDao = TemplateDAO.getInstance();
+        HeritrixTemplate template = templateDao.read(name);
+        template.setIsActive(!active);
+        templateDao.update(name, template);
+        assertEquals("An updated template should be read again", !active, cache.get(name).isActive());
+
+        String trap = "http://cache\\.trap\\.dk/.*";
+        assertFalse(cache.get(name).getXML().contains(trap));
+        GlobalCrawlerTrapListDAO.getInstance().create(
+                new GlobalCrawlerTrapList(new ByteArrayInputStream(trap.getBytes("UTF-8")), "cachetraps",
+                        "Traps for the template cache test", true));
+        assertTrue("A new trap list should be added to the template", cache.get(name).getXML().contains(trap));
+    }
+
+}
@@ -235,6 +235,16 @@ public class ARCArchiveAccessTester {
         lr.stopRecorder();
     }
 
+    @Test
+    public void testResolveLink() throws Exception {
+        URI page = new URI("http://netarkivet.dk/dir/index.html");
+        assertEquals(new URI("http://netarkivet.dk/dir/image.gif"), ARCArchiveAccess.resolveLink(page, "image.gif"));
+        assertEquals(new URI("http://netarkivet.dk/a?b=1&c=2"), ARCArchiveAccess.resolveLink(page, "/a?b=1&amp;c=2"));
+        assertEquals(new URI("http://example.com/"), ARCArchiveAccess.resolveLink(page, "http://example.com/#top"));
+        assertEquals(null, ARCArchiveAccess.resolveLink(page, "mailto:test@netarkivet.dk"));
+        assertEquals(null, ARCArchiveAccess.resolveLink(page, "javascript:void(0)"));
+    }
+
     /**
      * Fake arc repository client which on get returns a fake record which is ok.
      */
@@ -0,0 +1,213 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester - test
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.viewerproxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.archive.io.arc.ARCConstants;
+import org.archive.io.arc.ARCRecord;
+import org.archive.io.arc.ARCRecordMetaData;
+import org.junit.Test;
+
+import dk.netarkivet.common.distribute.NullRemoteFile;
+import dk.netarkivet.common.distribute.arcrepository.BatchStatus;
+import dk.netarkivet.common.distribute.arcrepository.BitarchiveRecord;
+import dk.netarkivet.common.distribute.arcrepository.Replica;
+import dk.netarkivet.common.distribute.arcrepository.ViewerArcRepositoryClient;
+import dk.netarkivet.common.utils.batch.FileBatchJob;
+
+/**
+ * Unit tests for the {@link CachingViewerArcRepositoryClient} class.
+ */
+@SuppressWarnings({"unchecked"})
+public class CachingViewerArcRepositoryClientTester {
+
+    /** The length of the records returned by the counting client. */
+    private static final int RECORD_LENGTH = 100;
+
+    @Test
+    public void testGetIsCached() {
+        CountingClient counting = new CountingClient();
+        CachingViewerArcRepositoryClient client = new CachingViewerArcRepositoryClient(counting, 10000, 2);
+        BitarchiveRecord first = client.get("file.arc", 42);
+        assertSame(first, client.get("file.arc", 42));
+        assertEquals(1, counting.gets.get());
+        client.get("file.arc", 43);
+        assertEquals(2, counting.gets.get());
+        assertEquals(2 * RECORD_LENGTH, client.getCachedBytes());
+        client.close();
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        CountingClient counting = new CountingClient();
+        CachingViewerArcRepositoryClient client = new CachingViewerArcRepositoryClient(counting, 2 * RECORD_LENGTH,
+                2);
+        client.get("file.arc", 1);
+        client.get("file.arc", 2);
+        client.get("file.arc", 1);
+        client.get("file.arc", 3);
+        assertEquals(3, counting.gets.get());
+        assertEquals(2 * RECORD_LENGTH, client.getCachedBytes());
+        client.get("file.arc", 1);
+        assertEquals("Recently used record should still be cached", 3, counting.gets.get());
+        client.get("file.arc", 2);
+        assertEquals("Least recently used record should be evicted", 4, counting.gets.get());
+        client.close();
+    }
+
+    @Test
+    public void testPrefetchedRecordIsNotRetrievedAgain() {
+        CountingClient counting = new CountingClient();
+        CachingViewerArcRepositoryClient client = new CachingViewerArcRepositoryClient(counting, 10000, 2);
+        for (int i = 0; i < 10; i++) {
+            client.prefetch("file.arc", i);
+            client.prefetch("file.arc", i);
+        }
+        for (int i = 0; i < 10; i++) {
+            client.get("file.arc", i);
+        }
+        assertEquals(10, counting.gets.get());
+        client.close();
+    }
+
+    @Test
+    public void testMissingRecordIsNotCached() {
+        CountingClient counting = new CountingClient();
+        counting.missing = true;
+        CachingViewerArcRepositoryClient client = new CachingViewerArcRepositoryClient(counting, 10000, 2);
+        assertNull(client.get("file.arc", 42));
+        assertNull(client.get("file.arc", 42));
+        assertEquals(2, counting.gets.get());
+        assertEquals(0, client.getCachedBytes());
+        client.close();
+    }
+
+    @Test
+    public void testPrefetchedRemoteRecordIsNotRetrievedAgain() throws Exception {
+        CountingClient counting = new CountingClient();
+        counting.remote = true;
+        CachingViewerArcRepositoryClient client = new CachingViewerArcRepositoryClient(counting, 10000, 2);
+        client.prefetch("file.arc", 42);
+        BitarchiveRecord record = client.get("file.arc", 42);
+        assertTrue(record.isStoredAsRemoteFile());
+        assertEquals("The prefetched record should be used", 1, counting.gets.get());
+        record.getData().close();
+        assertEquals(1, counting.cleanups.get());
+
+        client.get("file.arc", 42);
+        assertEquals("A record stored as a RemoteFile can only be used once", 2, counting.gets.get());
+        client.close();
+    }
+
+    @Test
+    public void testUnclaimedRemoteRecordIsReleasedWhenCloseFails() throws Exception {
+        CountingClient counting = new CountingClient();
+        counting.remote = true;
+        counting.failingClose = true;
+        CachingViewerArcRepositoryClient client = new CachingViewerArcRepositoryClient(counting, 10000, 2);
+        client.prefetch("file.arc", 42);
+        for (int i = 0; i < 100 && client.getUnclaimedRemoteRecords() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, client.getUnclaimedRemoteRecords());
+        client.close();
+        assertEquals("The RemoteFile should be cleaned up, even if closing it fails", 1, counting.cleanups.get());
+        assertEquals(0, client.getUnclaimedRemoteRecords());
+    }
+
+    /**
+     * A client counting the records retrieved, all of length RECORD_LENGTH, or stored as RemoteFiles counting their
+     * cleanups.
+     */
+    private static class CountingClient implements ViewerArcRepositoryClient {
+        final AtomicInteger gets = new AtomicInteger();
+        final AtomicInteger cleanups = new AtomicInteger();
+        volatile boolean missing;
+        volatile boolean remote;
+        volatile boolean failingClose;
+
+        public BitarchiveRecord get(String arcfile, long index) {
+            gets.incrementAndGet();
+            if (missing) {
+                return null;
+            }
+            if (remote) {
+                return new BitarchiveRecord(arcfile, index, new NullRemoteFile() {
+                    @Override
+                    public InputStream getInputStream() {
+                        return new ByteArrayInputStream(new byte[RECORD_LENGTH]) {
+                            @Override
+                            public void close() throws IOException {
+                                if (failingClose) {
+                                    throw new IOException("Failing close");
+                                }
+                            }
+                        };
+                    }
+
+                    @Override
+                    public void cleanup() {
+                        cleanups.incrementAndGet();
+                    }
+                });
+            }
+            Map<String, Object> metadata = new HashMap<String, Object>();
+            for (String headerField : (List<String>) ARCConstants.REQUIRED_VERSION_1_HEADER_FIELDS) {
+                metadata.put(headerField, "");
+            }
+            byte[] data = new byte[RECORD_LENGTH];
+            metadata.put(ARCConstants.LENGTH_FIELD_KEY, Integer.toString(data.length));
+            metadata.put(ARCConstants.ABSOLUTE_OFFSET_KEY, Long.valueOf(index));
+            try {
+                ARCRecordMetaData meta = new ARCRecordMetaData(arcfile, metadata);
+                return new BitarchiveRecord(new ARCRecord(new ByteArrayInputStream(data), meta), arcfile);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        public void getFile(String arcfilename, Replica replica, File toFile) {
+        }
+
+        public BatchStatus batch(FileBatchJob job, String replicaId, String... args) {
+            return null;
+        }
+
+        public void close() {
+        }
+    }
+
+}
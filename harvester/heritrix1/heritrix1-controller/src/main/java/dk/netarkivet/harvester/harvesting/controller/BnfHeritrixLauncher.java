@@ -74,7 +74,8 @@ public class BnfHeritrixLauncher extends HeritrixLauncher {
                 return;
             }
 
-            JMSConnectionFactory.getInstance().send(cpm);
+            // Progress reports are frequent and only informative, so crawl control need not wait for the broker
+            JMSConnectionFactory.getInstance().sendAsync(cpm, null);
 
             HeritrixFiles files = getHeritrixFiles();
             if (cpm.crawlIsFinished()) {
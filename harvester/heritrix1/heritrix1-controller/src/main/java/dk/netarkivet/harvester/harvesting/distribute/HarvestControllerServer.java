@@ -62,6 +62,7 @@ import dk.netarkivet.harvester.harvesting.PersistentJobData;
 import dk.netarkivet.harvester.harvesting.SeedUriDomainnameQueueAssignmentPolicy;
 import dk.netarkivet.harvester.harvesting.metadata.MetadataEntry;
 import dk.netarkivet.harvester.harvesting.report.HarvestReport;
+import dk.netarkivet.harvester.indexserver.distribute.IndexRequestClient;
 
 /**
  * This class responds to JMS doOneCrawl messages from the HarvestScheduler and launches a Heritrix crawl with the
@@ -646,6 +647,9 @@ public class HarvestControllerServer extends HarvesterMessageHandler implements
                     crawlException = e;
                     throw new IOFailure(msg, e);
                 } finally {
+                    if (files.getIndexDir() != null) {
+                        IndexRequestClient.releaseIndex(files.getIndexDir());
+                    }
                     // This handles some message sending, so it must live
                     // in HCS for now, but the meat of it should be in
                     // HarvestController
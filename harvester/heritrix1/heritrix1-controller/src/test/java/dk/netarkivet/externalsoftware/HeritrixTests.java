@@ -73,6 +73,7 @@ import dk.netarkivet.common.utils.DomainUtils;
 import dk.netarkivet.common.utils.ExceptionUtils;
 import dk.netarkivet.common.utils.FileUtils;
 import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.common.utils.SortUtils;
 import dk.netarkivet.common.utils.StringUtils;
 import dk.netarkivet.common.utils.XmlUtils;
 import dk.netarkivet.common.utils.cdx.CDXUtils;
@@ -775,7 +776,7 @@ public class HeritrixTests {
         File orgCrawlog = new File(TestInfo.TEST_LAUNCH_HARVEST_DIR, "logs/crawl.log");
         assertTrue("File does not exist", orgCrawlog.exists());
         File sortedCrawlLog = new File(scratchpadDir, "sorted-crawl.log");
-        FileUtils.sortCrawlLog(orgCrawlog, sortedCrawlLog);
+        SortUtils.sortFile(orgCrawlog, sortedCrawlLog, SortUtils.CRAWL_LOG_ORDER);
 
         // File arcsDir = new File(TestInfo.HERITRIX_TEMP_DIR, "arcs");
         File arcsDir = new File(TestInfo.TEST_LAUNCH_HARVEST_DIR, "arcs");
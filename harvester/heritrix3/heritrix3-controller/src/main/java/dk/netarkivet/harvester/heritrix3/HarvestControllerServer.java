@@ -58,6 +58,8 @@ import dk.netarkivet.harvester.harvesting.distribute.HarvesterReadyMessage;
 import dk.netarkivet.harvester.harvesting.distribute.HarvesterRegistrationRequest;
 import dk.netarkivet.harvester.harvesting.distribute.HarvesterRegistrationResponse;
 import dk.netarkivet.harvester.harvesting.metadata.MetadataEntry;
+import dk.netarkivet.harvester.harvesting.report.DomainStatsAccumulator;
+import dk.netarkivet.harvester.indexserver.distribute.IndexRequestClient;
 
 /**
  * This class responds to JMS doOneCrawl messages from the HarvestScheduler and launches a Heritrix crawl with the
@@ -454,6 +456,9 @@ public class HarvestControllerServer extends HarvesterMessageHandler implements
                     crawlException = e;
                     throw new IOFailure(msg, e);
                 } finally {
+                    if (files.getIndexDir() != null) {
+                        IndexRequestClient.releaseIndex(files.getIndexDir());
+                    }
                 	postProcessing.doPostProcessing(files.getCrawlDir(), crawlException);
                 }
             } catch (Throwable t) {
@@ -461,6 +466,8 @@ public class HarvestControllerServer extends HarvesterMessageHandler implements
                 log.error(msg, t);
                 NotificationsFactory.getInstance().notify(msg, NotificationType.ERROR, t);
             } finally {
+                // The statistics of a crawl that failed before its harvest report was made are not needed anymore
+                DomainStatsAccumulator.unregister(job.getJobID());
                 log.info("Ending crawl of job : {}", job.getJobID());
                 // process serverdir for files not yet uploaded.
                 postProcessing.processOldJobs();
@@ -33,9 +33,11 @@ import dk.netarkivet.common.utils.Settings;
 import dk.netarkivet.harvester.HarvesterSettings;
 import dk.netarkivet.harvester.harvesting.distribute.CrawlProgressMessage;
 import dk.netarkivet.harvester.harvesting.monitor.HarvestMonitor;
+import dk.netarkivet.harvester.harvesting.report.DomainStatsAccumulator;
 import dk.netarkivet.harvester.heritrix3.Heritrix3Files;
 import dk.netarkivet.harvester.heritrix3.Heritrix3Settings;
 import dk.netarkivet.harvester.heritrix3.HeritrixLauncherAbstract;
+import dk.netarkivet.harvester.heritrix3.report.HarvestReportGenerator;
 
 /**
  * BnF specific Heritrix3 launcher, that forces the use of {@link HeritrixController}. Every turn of the crawl control
@@ -59,6 +61,9 @@ public class HeritrixLauncher extends HeritrixLauncherAbstract {
     /** Is the heritrix3 crawl finished. */
     private boolean crawlIsOver = false;
 
+    /** Follows the crawl.log while crawling, so the harvest report is ready when the crawl ends. */
+    private DomainStatsAccumulator domainStatsAccumulator;
+
     /**
      * Private constructor for this class.
      *
@@ -88,6 +93,7 @@ public class HeritrixLauncher extends HeritrixLauncherAbstract {
      * <li>Waits the amount of time configured in {@link HarvesterSettings#CRAWL_LOOP_WAIT_TIME}.</li>
      * <li>Obtains crawl progress information as a {@link CrawlProgressMessage} from the Heritrix controller</li>
      * <li>Sends a progress message via JMS</li>
+     * <li>Updates the per-domain statistics with the crawl.log lines written since the last iteration</li>
      * <li>If the crawl is reported as finished, end loop.</li>
      * </ol>
      */
@@ -100,6 +106,8 @@ public class HeritrixLauncher extends HeritrixLauncherAbstract {
             heritrixController.initialize();
             log.debug("Setup and start new h3 crawl");
             heritrixController.requestCrawlStart();
+            domainStatsAccumulator = HarvestReportGenerator.createDomainStatsAccumulator();
+            DomainStatsAccumulator.register(getHeritrixFiles().getJobID(), domainStatsAccumulator);
                 
             log.info("Starting periodic CrawlControl with CRAWL_CONTROL_WAIT_PERIOD={} seconds", CRAWL_CONTROL_WAIT_PERIOD);            
           
@@ -152,9 +160,11 @@ public class HeritrixLauncher extends HeritrixLauncherAbstract {
                 crawlIsOver = true;
                 return;
             }
-            JMSConnectionFactory.getInstance().send(cpm);
+            // Progress reports are frequent and only informative, so crawl control need not wait for the broker
+            JMSConnectionFactory.getInstance().sendAsync(cpm, null);
 
             Heritrix3Files files = getHeritrixFiles();
+            updateDomainStats(files);
             if (cpm.crawlIsFinished()) {
                 log.info("Job ID {}: crawl is finished.", files.getJobID());
                 crawlIsOver = true;
@@ -166,6 +176,25 @@ public class HeritrixLauncher extends HeritrixLauncherAbstract {
                     + cpm.getJobStatus().getProgressStatistics());
         }
 
+        /**
+         * Feed the crawl.log lines written since the last call to the domain statistics accumulator. Failures are
+         * only logged, as the remaining lines will be read when the harvest report is generated.
+         *
+         * @param files The files of the running crawl.
+         */
+        private void updateDomainStats(Heritrix3Files files) {
+            if (domainStatsAccumulator == null || !files.getCrawlLog().isFile()) {
+                return;
+            }
+            try {
+                domainStatsAccumulator.update(files.getCrawlLog());
+                log.debug("Job ID {}: {} crawl.log lines processed, {} domains seen so far", files.getJobID(),
+                        domainStatsAccumulator.getLineCount(), domainStatsAccumulator.getDomainCount());
+            } catch (IOFailure e) {
+                log.warn("Unable to update domain statistics from the crawl.log of job {}", files.getJobID(), e);
+            }
+        }
+
     }
 
 }
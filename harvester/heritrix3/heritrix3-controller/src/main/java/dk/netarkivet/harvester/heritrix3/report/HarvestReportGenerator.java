@@ -22,12 +22,7 @@
  */
 package dk.netarkivet.harvester.heritrix3.report;
 
-import gnu.inet.encoding.IDNA;
-
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -38,7 +33,6 @@ import org.slf4j.LoggerFactory;
 
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.IOFailure;
-import dk.netarkivet.common.utils.DomainUtils;
 import dk.netarkivet.common.utils.FileUtils;
 import dk.netarkivet.common.utils.FixedUURI;
 import dk.netarkivet.common.utils.Settings;
@@ -46,8 +40,8 @@ import dk.netarkivet.common.utils.StringUtils;
 import dk.netarkivet.harvester.HarvesterSettings;
 import dk.netarkivet.harvester.datamodel.StopReason;
 import dk.netarkivet.harvester.harvesting.distribute.DomainStats;
+import dk.netarkivet.harvester.harvesting.report.DomainStatsAccumulator;
 import dk.netarkivet.harvester.harvesting.report.DomainStatsReport;
-import dk.netarkivet.harvester.harvesting.report.Heritrix1Constants;
 import dk.netarkivet.harvester.heritrix3.Heritrix3Files;
 
 /**
@@ -63,6 +57,21 @@ public class HarvestReportGenerator {
     private static final String BYTE_LIMIT_REACHED_ANNOTATION = "Q:groupMaxAllKb";
     private static final String OBJECT_LIMIT_REACHED_ANNOTATION = "Q:groupMaxFetchSuccesses";
 
+    /** Extracts hostnames from the crawl.log with the URI parsing of Heritrix 3. */
+    private static final DomainStatsAccumulator.HostnameExtractor HOSTNAME_EXTRACTOR =
+            new DomainStatsAccumulator.HostnameExtractor() {
+                @Override
+                public String getHostname(String uri) {
+                    try {
+                        UsableURI uuri = new FixedUURI(uri, false);
+                        return uuri.getReferencedHost();
+                    } catch (URIException e) {
+                        log.debug("Unable to extract a hostname from the URI '{}'", uri, e);
+                        return null;
+                    }
+                }
+            };
+
     /**
      * Strings found in the progress-statistics.log, used to devise the default stop reason for domains.
      */
@@ -142,7 +151,7 @@ public class HarvestReportGenerator {
             String errorMsg = "Not a file or not readable: " + crawlLog.getAbsolutePath();
             throw new IOFailure(errorMsg);
         }
-        parseCrawlLog(files.getCrawlLog());
+        parseCrawlLog(files.getCrawlLog(), files.getJobID());
 
         if (log.isInfoEnabled()) {
             long time = System.currentTimeMillis() - startTime;
@@ -196,191 +205,42 @@ public class HarvestReportGenerator {
 
     /**
      * Computes the domain-name/byte-count and domain-name/object-count and domain-name/stopreason maps for a crawl.log.
+     * If the crawl.log has been followed by a {@link DomainStatsAccumulator} registered for the job while the crawl
+     * was running, only the part of the log not yet seen by the accumulator is read.
      *
      * @param file the local file to be processed
+     * @param jobID the ID of the job that wrote the crawl.log
      * @throws IOFailure if there is problem reading the file
      */
-    private void parseCrawlLog(File file) throws IOFailure {
-        // read whether or not to disregard the SeedURL information
-        // in the crawl.log
-        boolean disregardSeedUrls = Settings.getBoolean(HarvesterSettings.DISREGARD_SEEDURL_INFORMATION_IN_CRAWLLOG);
-        log.info("DISREGARD_SEEDURL_INFORMATION_IN_CRAWLLOG: " + disregardSeedUrls); 
-        BufferedReader in = null;
-
-        try {
-            in = new BufferedReader(new FileReader(file));
-            String line;
-            int lineCnt = 0;
-            while ((line = in.readLine()) != null) {
-                ++lineCnt;
-                try {
-                    processHarvestLine(line, disregardSeedUrls);
-                } catch (ArgumentNotValid e) {
-                    log.debug("Invalid line in '{}' line {}: '{}'. Ignoring due to reason: {}", file.getAbsolutePath(),
-                            lineCnt, line, e.getMessage(), e);
-                }
-            }
-        } catch (IOException e) {
-            String msg = "Unable to open/read crawl.log file '" + file.getAbsolutePath() + "'.";
-            log.warn(msg, e);
-            throw new IOFailure(msg, e);
-        } finally {
-        	
-            if (in != null) {
-                try {
-                    in.close();
-                } catch (IOException e) {
-                    log.debug("Unable to close {}", file, e);
-                    // Can't throw here, as would destroy the real exception
-                }
-            }
+    private void parseCrawlLog(File file, Long jobID) throws IOFailure {
+        DomainStatsAccumulator accumulator = null;
+        if (jobID != null) {
+            accumulator = DomainStatsAccumulator.unregister(jobID);
         }
-    }
-
-    /**
-     * Processes a harvest-line, updating the object and byte maps.
-     *
-     * @param line the line to process.
-     * @param disregardSeedUrlInfo Boolean saying whether or not to disregard SeedURL Information
-     */
-    private void processHarvestLine(final String line, boolean disregardSeedUrlInfo) {
-        // A legal crawl log line has at least 11 parts, + optional annotations
-
-        final int MIN_CRAWL_LOG_PARTS = 11;
-        final int MAX_PARTS = 12;
-        final int ANNOTATION_PART_INDEX = 11;
-        String[] parts = line.split("\\s+", MAX_PARTS);
-        if (parts.length < MIN_CRAWL_LOG_PARTS) {
-            throw new ArgumentNotValid("Not enough fields for line in crawl.log: '" + line + "'. Was only "
-                    + parts.length + " fields. Should have been at least " + MIN_CRAWL_LOG_PARTS);
-        }
-
-        // Check the seed url (part 11 of the crawl-log-line).
-        // If equal to "-", the seed url is not written to the log,
-        // and this information is disregarded
-        // Note This information is disregarded if setting disregard_seed_url_information
-        // is enabled.
-
-        String seedURL = parts[10];
-
-        boolean sourceTagEnabled = true;
-        if (seedURL.equals("-") || disregardSeedUrlInfo) {
-            sourceTagEnabled = false;
-        }
-        String seedDomain = null;
-
-        if (sourceTagEnabled) {
-            try {
-                seedDomain = getDomainNameFromURIString(seedURL);
-                if (seedDomain != null) {
-                    // Transform any IDNA encoded seedDomain back to Unicode
-                    seedDomain = IDNA.toUnicode(seedDomain);
-                }
-            } catch (URIException e) {
-                log.debug("Unable to extract a domain from the seedURL found in field 11 of crawl.log: '{}'.", seedURL,
-                        e);
-            }
-        }
-
-        // Get the object domain name from the URL in the fourth field
-        String objectDomain = null;
-        String objectUrl = parts[3];
-
-        try {
-            objectDomain = getDomainNameFromURIString(objectUrl);
-            if (objectDomain != null) {
-                // Transform the any IDNA encoded domain back to Unicode
-                objectDomain = IDNA.toUnicode(objectDomain);
-            }
-        } catch (URIException e) {
-            log.debug("Unable to extract a domain from the object URL found in field 4 of crawl.log: '{}'.", objectUrl,
-                    e);
-        }
-
-        if (objectDomain == null && seedDomain == null) {
-            throw new ArgumentNotValid("Unable to find a domainName in the line: '" + line + "'.");
-        }
-
-        String domainName = null;
-
-        if (sourceTagEnabled && seedDomain != null) {
-            domainName = seedDomain;
-        } else if (objectDomain != null) {
-            domainName = objectDomain;
+        if (accumulator == null) {
+            accumulator = createDomainStatsAccumulator();
         } else {
-            throw new ArgumentNotValid("Unable to find valid domainname");
-        }
-
-        // Get the response code for the URL in the second field
-        long response;
-        try {
-            response = Long.parseLong(parts[1]);
-        } catch (NumberFormatException e) {
-            throw new ArgumentNotValid("Unparsable response code in field 2 of crawl.log: '" + parts[1] + "'.");
-        }
-
-        // Get the byte count from annotation field "content-size"
-        // and the stop reason from annotation field if status code is -5003
-        StopReason stopReason = getDefaultStopReason();
-        long byteCounter = 0;
-        if (parts.length > MIN_CRAWL_LOG_PARTS) {
-            // test if any annotations exist
-            String[] annotations = parts[ANNOTATION_PART_INDEX].split(",");
-            for (String annotation : annotations) {
-                // ContentSizeAnnotationPostProcessor.CONTENT_SIZE_ANNOTATION_PREFIX
-                if (annotation.trim().startsWith(Heritrix1Constants.CONTENT_SIZE_ANNOTATION_PREFIX)) {
-                    try {
-                        // ContentSizeAnnotationPostProcessor.CONTENT_SIZE_ANNOTATION_PREFIX
-                        byteCounter = Long.parseLong(annotation
-                                .substring(Heritrix1Constants.CONTENT_SIZE_ANNOTATION_PREFIX.length()));
-                    } catch (NumberFormatException e) {
-                        throw new ArgumentNotValid("Unparsable annotation in field 12 of crawl.log: '"
-                                + parts[ANNOTATION_PART_INDEX] + "'.", e);
-                    }
-                }
-                if (response == Heritrix1Constants.CRAWLURI_S_BLOCKED_BY_QUOTA) {
-                    if (annotation.trim().equals(BYTE_LIMIT_REACHED_ANNOTATION)) {
-                        stopReason = StopReason.SIZE_LIMIT;
-                    } else if (annotation.trim().equals(OBJECT_LIMIT_REACHED_ANNOTATION)) {
-                        stopReason = StopReason.OBJECT_LIMIT;
-                    }
-                }
-            }
-        }
-
-        // Update stats for domain
-        DomainStats dhi = getOrCreateDomainStats(domainName);
-
-        // Only count harvested URIs
-        if (response >= 0) {
-            long oldObjectCount = dhi.getObjectCount();
-            dhi.setObjectCount(oldObjectCount + 1);
-            long oldByteCount = dhi.getByteCount();
-            dhi.setByteCount(oldByteCount + byteCounter);
-        }
-        // Only if reason not set
-        if (dhi.getStopReason() == defaultStopReason) {
-            dhi.setStopReason(stopReason);
+            log.debug("Reusing the {} crawl.log lines already processed during the crawl",
+                    accumulator.getLineCount());
         }
+        accumulator.finish(file);
+        domainstats.putAll(accumulator.getDomainStatsMap(defaultStopReason));
     }
 
-	/**
-     * Extract DomainName from URI string. Does not handle Danish characters in URI.
+    /**
+     * Create an accumulator for crawl.log statistics matching the annotations written by this version of Heritrix.
      *
-     * @param uriAsString a given URI as string.
-     * @return the domainName if possible or null, if not possible
-     * @throws URIException If unable to create valid URI from the given string
+     * @return an empty DomainStatsAccumulator.
      */
-    private String getDomainNameFromURIString(String uriAsString) throws URIException {
-        UsableURI uuri = new FixedUURI(uriAsString, false);
-        String hostName = uuri.getReferencedHost();
-        if (hostName == null) {
-            log.debug("Not possible to extract domainname from URL: {}", uriAsString);
-            return null;
-        }
-        return DomainUtils.domainNameFromHostname(hostName);
+    public static DomainStatsAccumulator createDomainStatsAccumulator() {
+        // read whether or not to disregard the SeedURL information
+        // in the crawl.log
+        boolean disregardSeedUrls = Settings.getBoolean(HarvesterSettings.DISREGARD_SEEDURL_INFORMATION_IN_CRAWLLOG);
+        log.info("DISREGARD_SEEDURL_INFORMATION_IN_CRAWLLOG: " + disregardSeedUrls);
+        return new DomainStatsAccumulator(BYTE_LIMIT_REACHED_ANNOTATION, OBJECT_LIMIT_REACHED_ANNOTATION,
+                disregardSeedUrls, HOSTNAME_EXTRACTOR);
     }
-    
+
     /**
      * @return the default stop reason. 
      */
@@ -0,0 +1,172 @@
+/*
+ * #%L
+ * Netarchivesuite - Heritrix 3 extensions
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.harvesting;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+
+/**
+ * An Aho-Corasick automaton finding which of a set of keywords occur in a string, in one pass over the string. Each
+ * keyword has an id, and a keyword may be given more than once with different ids. The automaton is immutable, and may
+ * be used by several threads at once.
+ */
+class AhoCorasick {
+
+    /** The characters labelling the transitions of each node, sorted. */
+    private final char[][] labels;
+    /** The targets of the transitions of each node, in the same order as the labels. */
+    private final int[][] targets;
+    /** The node to continue from when a node has no transition for the next character. */
+    private final int[] failure;
+    /** The ids of the keywords ending at each node, including those ending at its failure nodes. */
+    private final int[][] output;
+
+    /**
+     * Build an automaton.
+     *
+     * @param keywords The keywords to find, indexed by their ids. Null or empty entries are ignored.
+     */
+    AhoCorasick(List<String> keywords) {
+        ArgumentNotValid.checkNotNull(keywords, "List<String> keywords");
+        // Build the trie
+        List<Map<Character, Integer>> trie = new ArrayList<Map<Character, Integer>>();
+        List<List<Integer>> ends = new ArrayList<List<Integer>>();
+        trie.add(new TreeMap<Character, Integer>());
+        ends.add(new ArrayList<Integer>());
+        for (int id = 0; id < keywords.size(); id++) {
+            String keyword = keywords.get(id);
+            if (keyword == null || keyword.isEmpty()) {
+                continue;
+            }
+            int node = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                Integer next = trie.get(node).get(keyword.charAt(i));
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<Character, Integer>());
+                    ends.add(new ArrayList<Integer>());
+                    trie.get(node).put(keyword.charAt(i), next);
+                }
+                node = next;
+            }
+            ends.get(node).add(id);
+        }
+
+        int nodes = trie.size();
+        labels = new char[nodes][];
+        targets = new int[nodes][];
+        for (int node = 0; node < nodes; node++) {
+            Map<Character, Integer> transitions = trie.get(node);
+            labels[node] = new char[transitions.size()];
+            targets[node] = new int[transitions.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> transition : transitions.entrySet()) {
+                labels[node][i] = transition.getKey();
+                targets[node][i] = transition.getValue();
+                i++;
+            }
+        }
+
+        // Compute failure links and outputs breadth first, so the failure node of a node is done before the node
+        failure = new int[nodes];
+        output = new int[nodes][];
+        output[0] = toArray(ends.get(0));
+        LinkedList<Integer> queue = new LinkedList<Integer>();
+        for (int child : targets[0]) {
+            failure[child] = 0;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.removeFirst();
+            List<Integer> nodeOutput = ends.get(node);
+            for (int id : output[failure[node]]) {
+                nodeOutput.add(id);
+            }
+            output[node] = toArray(nodeOutput);
+            for (int i = 0; i < labels[node].length; i++) {
+                int child = targets[node][i];
+                int fallback = failure[node];
+                int next = transition(fallback, labels[node][i]);
+                while (next < 0 && fallback != 0) {
+                    fallback = failure[fallback];
+                    next = transition(fallback, labels[node][i]);
+                }
+                failure[child] = next < 0 ? 0 : next;
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * Find the keywords occurring in a string.
+     *
+     * @param text The string to search.
+     * @param found The ids of the keywords found are set in this.
+     */
+    void findAll(CharSequence text, BitSet found) {
+        int node = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int next = transition(node, c);
+            while (next < 0 && node != 0) {
+                node = failure[node];
+                next = transition(node, c);
+            }
+            node = next < 0 ? 0 : next;
+            for (int id : output[node]) {
+                found.set(id);
+            }
+        }
+    }
+
+    /**
+     * @return the number of nodes in the automaton.
+     */
+    int size() {
+        return labels.length;
+    }
+
+    /**
+     * @return the node reached from the given node by the given character, or -1 if there is no such transition.
+     */
+    private int transition(int node, char c) {
+        int i = Arrays.binarySearch(labels[node], c);
+        return i < 0 ? -1 : targets[node][i];
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] result = new int[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i);
+        }
+        return result;
+    }
+
+}
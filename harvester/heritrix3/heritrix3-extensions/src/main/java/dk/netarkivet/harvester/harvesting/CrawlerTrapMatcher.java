@@ -0,0 +1,539 @@
+/*
+ * #%L
+ * Netarchivesuite - Heritrix 3 extensions
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.harvesting;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+
+/**
+ * Matches URIs against a list of crawler trap regular expressions, giving the same result as trying each expression
+ * in turn, but without running most of the expressions on most URIs.
+ * <p>
+ * The expressions are compiled into three groups:
+ * <ul>
+ * <li>Expressions that can only match URIs on one host, like <code>^https?://(www\.)?example\.dk/.*calendar.*</code>,
+ * are looked up by the host of the URI. Expressions with alternatives at the top level are never limited to a host.
+ * </li>
+ * <li>For the other expressions, the longest literal string that any match must contain is found, and all these
+ * literals are searched for in one pass over the URI with an {@link AhoCorasick} automaton. Only the expressions whose
+ * literal occurs in the URI are tried. The literals of case insensitive expressions are searched for in the URI
+ * converted to lower case.</li>
+ * <li>Expressions without a usable literal are always tried.</li>
+ * </ul>
+ * The candidate expressions are tried in the order of the original list, so the first matching expression is the
+ * same as with a plain loop over the list. The number of URIs matched by each expression is counted.
+ */
+public class CrawlerTrapMatcher {
+
+    /** Literals shorter than this are not worth filtering on. */
+    static final int MIN_LITERAL_LENGTH = 3;
+
+    /**
+     * Matches an expression that only matches URIs on a given host, capturing the optional www prefix and the escaped
+     * host name.
+     */
+    private static final Pattern HOST_PATTERN = Pattern.compile("\\^?(?:https?|https\\?|http\\(s\\)\\?|http\\[s\\]\\?)"
+            + "(?::|\\\\:)(?://|\\\\/\\\\/)(\\(www\\\\\\.\\)\\?)?((?:[a-z0-9-]+\\\\\\.)+[a-z0-9-]+)(?:/|\\\\/|\\$|$)");
+
+    /** Matches inline flags changing case sensitivity or allowing comments. */
+    private static final Pattern INLINE_FLAGS = Pattern.compile("\\(\\?[a-zA-Z-]*[ixu]");
+
+    /** The expressions, in the original order. */
+    private final Pattern[] patterns;
+    /** The ids of the expressions to try for URIs on a given host. */
+    private final Map<String, BitSet> byHost = new HashMap<String, BitSet>();
+    /** The ids of the expressions that must always be tried. */
+    private final BitSet unfiltered = new BitSet();
+    /** Finds the case sensitive expressions whose literal occurs in a URI. */
+    private final AhoCorasick literals;
+    /** Finds the case insensitive expressions whose literal occurs in a URI, or null if there are none. */
+    private final AhoCorasick lowerCaseLiterals;
+    /** The number of URIs matched by each expression. */
+    private final AtomicLongArray hits;
+
+    /**
+     * Compile a list of expressions.
+     *
+     * @param regexList The crawler trap expressions.
+     * @throws ArgumentNotValid if regexList is null or contains null.
+     */
+    public CrawlerTrapMatcher(List<Pattern> regexList) {
+        ArgumentNotValid.checkNotNull(regexList, "List<Pattern> regexList");
+        patterns = regexList.toArray(new Pattern[regexList.size()]);
+        hits = new AtomicLongArray(patterns.length);
+        List<String> keywords = new ArrayList<String>(patterns.length);
+        List<String> lowerCaseKeywords = new ArrayList<String>(patterns.length);
+        boolean anyCaseInsensitive = false;
+        for (int id = 0; id < patterns.length; id++) {
+            ArgumentNotValid.checkNotNull(patterns[id], "Pattern in regexList");
+            String keyword = null;
+            String lowerCaseKeyword = null;
+            List<String> hosts = getHosts(patterns[id]);
+            if (hosts != null) {
+                for (String host : hosts) {
+                    BitSet ids = byHost.get(host);
+                    if (ids == null) {
+                        ids = new BitSet();
+                        byHost.put(host, ids);
+                    }
+                    ids.set(id);
+                }
+            } else {
+                keyword = getRequiredLiteral(patterns[id]);
+                if (keyword == null) {
+                    unfiltered.set(id);
+                } else if (isCaseInsensitive(patterns[id])) {
+                    lowerCaseKeyword = toLowerCase(keyword);
+                    keyword = null;
+                    anyCaseInsensitive = true;
+                }
+            }
+            keywords.add(keyword);
+            lowerCaseKeywords.add(lowerCaseKeyword);
+        }
+        literals = new AhoCorasick(keywords);
+        lowerCaseLiterals = anyCaseInsensitive ? new AhoCorasick(lowerCaseKeywords) : null;
+    }
+
+    /**
+     * Find the first expression matching the whole URI.
+     *
+     * @param uri A URI.
+     * @return the index of the first matching expression in the list, or -1 if none of them match.
+     */
+    public int findMatch(String uri) {
+        BitSet candidates = (BitSet) unfiltered.clone();
+        literals.findAll(uri, candidates);
+        if (lowerCaseLiterals != null) {
+            lowerCaseLiterals.findAll(toLowerCase(uri), candidates);
+        }
+        BitSet hostCandidates = byHost.get(getHost(uri));
+        if (hostCandidates != null) {
+            candidates.or(hostCandidates);
+        }
+        for (int id = candidates.nextSetBit(0); id >= 0; id = candidates.nextSetBit(id + 1)) {
+            if (patterns[id].matcher(uri).matches()) {
+                hits.incrementAndGet(id);
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the number of expressions.
+     */
+    public int size() {
+        return patterns.length;
+    }
+
+    /**
+     * @return the number of expressions that are tried on every URI.
+     */
+    public int getUnfilteredCount() {
+        return unfiltered.cardinality();
+    }
+
+    /**
+     * @return the number of expressions looked up by host.
+     */
+    public int getHostCount() {
+        BitSet all = new BitSet();
+        for (BitSet ids : byHost.values()) {
+            all.or(ids);
+        }
+        return all.cardinality();
+    }
+
+    /**
+     * Get the number of URIs each expression was the first to match.
+     *
+     * @return the hit counts, by expression, for the expressions with hits.
+     */
+    public Map<String, Long> getHitCounts() {
+        Map<String, Long> result = new HashMap<String, Long>();
+        for (int id = 0; id < patterns.length; id++) {
+            long count = hits.get(id);
+            if (count > 0) {
+                String key = patterns[id].pattern();
+                Long previous = result.get(key);
+                result.put(key, previous == null ? count : previous + count);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the host part of a URI.
+     *
+     * @param uri A URI.
+     * @return the host, or the empty string if the URI has no host.
+     */
+    static String getHost(String uri) {
+        int start = uri.indexOf("://");
+        if (start < 0) {
+            return "";
+        }
+        start += 3;
+        int end = start;
+        while (end < uri.length() && "/?#".indexOf(uri.charAt(end)) < 0) {
+            end++;
+        }
+        String authority = uri.substring(start, end);
+        authority = authority.substring(authority.lastIndexOf('@') + 1);
+        int port = authority.indexOf(':');
+        return port < 0 ? authority : authority.substring(0, port);
+    }
+
+    /**
+     * Get the hosts an expression is limited to.
+     *
+     * @param pattern An expression.
+     * @return the hosts of the URIs the expression can match, or null if it is not limited to specific hosts.
+     */
+    static List<String> getHosts(Pattern pattern) {
+        if (pattern.flags() != 0 || INLINE_FLAGS.matcher(pattern.pattern()).find()
+                || hasTopLevelAlternatives(pattern.pattern())) {
+            return null;
+        }
+        Matcher m = HOST_PATTERN.matcher(pattern.pattern());
+        if (!m.lookingAt()) {
+            return null;
+        }
+        List<String> hosts = new ArrayList<String>();
+        String host = m.group(2).replace("\\.", ".");
+        hosts.add(host);
+        if (m.group(1) != null) {
+            hosts.add("www." + host);
+        }
+        return hosts;
+    }
+
+    /**
+     * Decide whether an expression has alternatives at the top level, like <code>^http://a\.dk/.*|.*calendar.*</code>.
+     * The host or literal found at the start of such an expression only limits the first alternative.
+     *
+     * @param regex An expression.
+     * @return true if the expression has top level alternatives, or cannot be examined.
+     */
+    static boolean hasTopLevelAlternatives(String regex) {
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 >= regex.length()) {
+                    return true;
+                }
+                char n = regex.charAt(i + 1);
+                i += 2;
+                if (n == 'Q') {
+                    int end = regex.indexOf("\\E", i);
+                    i = end < 0 ? regex.length() : end + 2;
+                } else if (Character.isLetterOrDigit(n)) {
+                    i = skipEscapeArguments(regex, i, n);
+                }
+            } else if (c == '[') {
+                i = skipCharacterClass(regex, i);
+            } else if (c == '(') {
+                i = skipGroup(regex, i);
+            } else if (c == '|' || c == ')') {
+                return true;
+            } else {
+                i++;
+            }
+            if (i < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param pattern An expression.
+     * @return true if the expression is case insensitive.
+     */
+    static boolean isCaseInsensitive(Pattern pattern) {
+        return (pattern.flags() & Pattern.CASE_INSENSITIVE) != 0 || pattern.pattern().startsWith("(?i)");
+    }
+
+    /**
+     * Convert the ASCII letters of a string to lower case. Case insensitive expressions only ignore the case of ASCII
+     * letters, unless they are also Unicode case insensitive.
+     *
+     * @param s A string.
+     * @return the string with ASCII letters in lower case.
+     */
+    static String toLowerCase(String s) {
+        char[] chars = null;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                if (chars == null) {
+                    chars = s.toCharArray();
+                }
+                chars[i] = (char) (c + ('a' - 'A'));
+            }
+        }
+        return chars == null ? s : new String(chars);
+    }
+
+    /**
+     * Find the longest literal string that any string matched by an expression must contain. Only the top level of the
+     * expression is examined: groups, character classes and other constructs just end the current literal. For a case
+     * insensitive expression, the literal must be found ignoring case.
+     *
+     * @param pattern An expression.
+     * @return the literal, or null if there is no literal of at least {@link #MIN_LITERAL_LENGTH} characters, or the
+     * expression uses Unicode case folding, comments, or inline flags other than a leading (?i).
+     */
+    static String getRequiredLiteral(Pattern pattern) {
+        String regex = pattern.pattern();
+        if ((pattern.flags() & Pattern.LITERAL) != 0) {
+            return regex.length() >= MIN_LITERAL_LENGTH ? regex : null;
+        }
+        if ((pattern.flags() & (Pattern.UNICODE_CASE | Pattern.COMMENTS)) != 0
+                || INLINE_FLAGS.matcher(regex.startsWith("(?i)") ? regex.substring(4) : regex).find()) {
+            return null;
+        }
+        String best = "";
+        StringBuilder current = new StringBuilder();
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            // The literal character at this position, if any
+            int literal = -1;
+            String quoted = null;
+            if (c == '\\') {
+                if (i + 1 >= regex.length()) {
+                    return null;
+                }
+                char n = regex.charAt(i + 1);
+                i += 2;
+                if (n == 'Q') {
+                    int end = regex.indexOf("\\E", i);
+                    quoted = end < 0 ? regex.substring(i) : regex.substring(i, end);
+                    i = end < 0 ? regex.length() : end + 2;
+                } else if (Character.isLetterOrDigit(n)) {
+                    i = skipEscapeArguments(regex, i, n);
+                } else {
+                    literal = n;
+                }
+            } else if (c == '[') {
+                i = skipCharacterClass(regex, i);
+            } else if (c == '(') {
+                i = skipGroup(regex, i);
+            } else if (c == '|' || c == ')') {
+                // Alternatives at the top level have no common literal
+                return null;
+            } else if (c == '.' || c == '^' || c == '$') {
+                i++;
+            } else {
+                literal = c;
+                i++;
+            }
+            if (i < 0) {
+                return null;
+            }
+
+            // A quantifier applies to the last character of a quoted string, or the literal character
+            boolean optional = false;
+            boolean repeated = false;
+            if (i < regex.length()) {
+                char q = regex.charAt(i);
+                if (q == '*' || q == '?') {
+                    optional = true;
+                    i++;
+                } else if (q == '+') {
+                    repeated = true;
+                    i++;
+                } else if (q == '{') {
+                    int end = regex.indexOf('}', i);
+                    if (end < 0) {
+                        return null;
+                    }
+                    String min = regex.substring(i + 1, end).split(",", -1)[0].trim();
+                    optional = min.isEmpty() || Integer.parseInt(min) == 0;
+                    repeated = !optional;
+                    i = end + 1;
+                }
+                if ((optional || repeated) && i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+                    // Reluctant or possessive quantifier
+                    i++;
+                }
+            }
+
+            if (quoted != null && !quoted.isEmpty()) {
+                if (optional) {
+                    current.append(quoted, 0, quoted.length() - 1);
+                } else {
+                    current.append(quoted);
+                }
+                if (optional || repeated) {
+                    best = longest(best, current);
+                    current.setLength(0);
+                }
+            } else if (literal >= 0 && !optional) {
+                current.append((char) literal);
+                if (repeated) {
+                    best = longest(best, current);
+                    current.setLength(0);
+                }
+            } else if (quoted == null) {
+                // Not a literal, or an optional one
+                best = longest(best, current);
+                current.setLength(0);
+            }
+        }
+        best = longest(best, current);
+        return best.length() >= MIN_LITERAL_LENGTH ? best : null;
+    }
+
+    private static String longest(String best, StringBuilder current) {
+        return current.length() > best.length() ? current.toString() : best;
+    }
+
+    /**
+     * Skip the arguments of an escape sequence like \p{Alpha} or \x41.
+     *
+     * @param regex An expression.
+     * @param i The position after the escaped letter.
+     * @param escape The escaped letter.
+     * @return the position after the escape sequence.
+     */
+    private static int skipEscapeArguments(String regex, int i, char escape) {
+        switch (escape) {
+        case 'p':
+        case 'P':
+        case 'x':
+            if (i < regex.length() && regex.charAt(i) == '{') {
+                int end = regex.indexOf('}', i);
+                return end < 0 ? -1 : end + 1;
+            }
+            return escape == 'x' ? i + 2 : i + 1;
+        case 'u':
+            return i + 4;
+        case 'c':
+            return i + 1;
+        case 'k':
+            int end = regex.indexOf('>', i);
+            return end < 0 ? -1 : end + 1;
+        case '0':
+            int digits = 0;
+            while (digits < 3 && i < regex.length() && regex.charAt(i) >= '0' && regex.charAt(i) <= '7') {
+                i++;
+                digits++;
+            }
+            return i;
+        default:
+            return i;
+        }
+    }
+
+    /**
+     * @param regex An expression.
+     * @param start The position of the '[' starting a character class.
+     * @return the position after the character class, or -1 if it does not end.
+     */
+    private static int skipCharacterClass(String regex, int start) {
+        int depth = 0;
+        int i = start;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                depth++;
+                i++;
+                // A ']' first in a class is a literal
+                if (i < regex.length() && regex.charAt(i) == '^') {
+                    i++;
+                }
+                if (i < regex.length() && regex.charAt(i) == ']') {
+                    i++;
+                }
+                continue;
+            }
+            if (c == ']') {
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * @param regex An expression.
+     * @param start The position of the '(' starting a group.
+     * @return the position after the group, or -1 if it does not end.
+     */
+    private static int skipGroup(String regex, int start) {
+        int depth = 0;
+        int i = start;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == 'Q') {
+                    int end = regex.indexOf("\\E", i + 2);
+                    if (end < 0) {
+                        return -1;
+                    }
+                    i = end + 2;
+                } else {
+                    i += 2;
+                }
+                continue;
+            }
+            if (c == '[') {
+                i = skipCharacterClass(regex, i);
+                if (i < 0) {
+                    return -1;
+                }
+                continue;
+            }
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            }
+            i++;
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * #%L
+ * Netarchivesuite - Heritrix 3 extensions
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.harvesting;
+
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import org.archive.modules.CrawlURI;
+import org.archive.modules.deciderules.MatchesListRegexDecideRule;
+
+/**
+ * A drop-in replacement for {@link MatchesListRegexDecideRule} for long lists of crawler traps. It takes the same
+ * properties, and makes the same decisions, but compiles the list into a {@link CrawlerTrapMatcher} so each URI is
+ * only tried against the few expressions that could match it.
+ * <p>
+ * To use it, replace the class of the crawler trap rule in the Heritrix 3 template:
+ *
+ * <pre>
+ * &lt;bean class="dk.netarkivet.harvester.harvesting.CrawlerTrapsDecideRule"&gt;
+ *   &lt;property name="listLogicalOr" value="true" /&gt;
+ *   &lt;property name="regexList"&gt; ... &lt;/property&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ *
+ * The number of URIs matched by each crawler trap is available through {@link #getHitCounts()}, e.g. from the
+ * scripting console of the job.
+ */
+@SuppressWarnings({"serial"})
+public class CrawlerTrapsDecideRule extends MatchesListRegexDecideRule {
+
+    /** Logger instance. */
+    private static final Logger logger = Logger.getLogger(CrawlerTrapsDecideRule.class.getName());
+
+    /** The list the current matcher was compiled from. */
+    private transient volatile List<Pattern> compiledList;
+    /** The matcher compiled from the current list. */
+    private transient volatile CrawlerTrapMatcher matcher;
+
+    /**
+     * Decide whether the URI is matched by one of the expressions. If the list is combined with logical AND, all the
+     * expressions are tried, as by {@link MatchesListRegexDecideRule}.
+     *
+     * @param uri The URI to check.
+     * @return true if the URI is matched.
+     */
+    @Override
+    protected boolean evaluate(CrawlURI uri) {
+        if (!getListLogicalOr()) {
+            return super.evaluate(uri);
+        }
+        CrawlerTrapMatcher m = getMatcher();
+        if (m.size() == 0) {
+            return false;
+        }
+        return m.findMatch(uri.toString()) >= 0;
+    }
+
+    /**
+     * @return the number of URIs each crawler trap was the first to match, by crawler trap.
+     */
+    public Map<String, Long> getHitCounts() {
+        return getMatcher().getHitCounts();
+    }
+
+    /**
+     * Get the matcher for the current list of expressions, compiling it if the list has changed.
+     *
+     * @return the matcher.
+     */
+    private CrawlerTrapMatcher getMatcher() {
+        List<Pattern> regexList = getRegexList();
+        if (regexList != compiledList) {
+            synchronized (this) {
+                if (regexList != compiledList) {
+                    long start = System.currentTimeMillis();
+                    CrawlerTrapMatcher newMatcher = new CrawlerTrapMatcher(regexList);
+                    logger.info("Compiled " + newMatcher.size() + " crawler traps in "
+                            + (System.currentTimeMillis() - start) + " ms: " + newMatcher.getHostCount()
+                            + " looked up by host, " + newMatcher.getUnfilteredCount() + " tried on all URIs");
+                    matcher = newMatcher;
+                    compiledList = regexList;
+                }
+            }
+        }
+        return matcher;
+    }
+
+}
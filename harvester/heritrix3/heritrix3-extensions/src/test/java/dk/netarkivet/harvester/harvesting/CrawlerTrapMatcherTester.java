@@ -0,0 +1,145 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester - test
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.harvesting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link CrawlerTrapMatcher} class.
+ */
+public class CrawlerTrapMatcherTester {
+
+    /** Crawler traps of the kinds found in the global crawler trap lists. */
+    static final String[] TRAPS = {
+            ".*/calendar/.*", "^https?://(www\\.)?example\\.dk/.*\\?month=.*", "http://shop\\.test\\.fr/basket.*",
+            ".*[?&]sessionid=.*", ".*(/[^/]+)\\1\\1.*", "(?i).*/PRINT/.*", ".*/Print\\.html.*", ".*\\.(jpg|gif)\\?w=\\d+.*",
+            ".*/index\\.php\\?page=\\d+&sort=.*", ".*foo|.*bar/baz.*", "\\Qhttp://quoted.dk/\\E.*",
+            "https://secure\\.example\\.dk:8443/.*", ".*/a+b/.*", ".*x{0,2}yz/.*",
+            "^http://example\\.dk/.*|.*/archive/.*"};
+
+    @Test
+    public void testGetRequiredLiteral() {
+        assertEquals("/calendar/", literal(".*/calendar/.*"));
+        assertEquals("/index.php?page=", literal(".*/index\\.php\\?page=\\d+&sort=.*"));
+        assertEquals("&sort=", literal(".*\\d+&sort=.*"));
+        assertEquals("http://quoted.dk/", literal("\\Qhttp://quoted.dk/\\E.*"));
+        assertEquals("sessionid=", literal(".*[?&]sessionid=.*"));
+        assertEquals("/aa", literal(".*/aab?c/.*"));
+        assertEquals("yz/", literal(".*x{0,2}yz/.*"));
+        assertEquals("/PRINT/", literal("(?i).*/PRINT/.*"));
+        assertTrue(CrawlerTrapMatcher.isCaseInsensitive(Pattern.compile("(?i).*/PRINT/.*")));
+        assertNull("Unicode case folding is not supported", CrawlerTrapMatcher.getRequiredLiteral(Pattern.compile(
+                ".*/print/.*", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE)));
+        assertNull("Only a leading (?i) is supported", literal(".*/print(?i)/page.*"));
+        assertNull("Top level alternatives have no common literal", literal(".*foo|.*bar/baz.*"));
+        assertNull("Too short", literal(".*/a.*"));
+    }
+
+    @Test
+    public void testGetHosts() {
+        assertEquals(Arrays.asList("example.dk", "www.example.dk"),
+                CrawlerTrapMatcher.getHosts(Pattern.compile("^https?://(www\\.)?example\\.dk/.*\\?month=.*")));
+        assertEquals(Arrays.asList("shop.test.fr"),
+                CrawlerTrapMatcher.getHosts(Pattern.compile("http://shop\\.test\\.fr/basket.*")));
+        assertNull("The host may continue", CrawlerTrapMatcher.getHosts(Pattern.compile("http://shop\\.test\\.fr.*")));
+        assertNull(CrawlerTrapMatcher.getHosts(Pattern.compile(".*://shop\\.test\\.fr/.*")));
+        assertNull("A port may be user info", CrawlerTrapMatcher.getHosts(Pattern.compile("http://a\\.dk:80/.*")));
+        assertNull("Top level alternatives are not limited to the host",
+                CrawlerTrapMatcher.getHosts(Pattern.compile("^http://example\\.dk/.*|.*calendar.*")));
+        assertEquals(Arrays.asList("example.dk"),
+                CrawlerTrapMatcher.getHosts(Pattern.compile("^http://example\\.dk/(calendar|archive)/.*")));
+        assertEquals("example.dk", CrawlerTrapMatcher.getHost("http://user@example.dk:8080/path?q=http://x.dk/"));
+        assertEquals("", CrawlerTrapMatcher.getHost("dns:example.dk"));
+    }
+
+    /**
+     * Test that an expression limited to a host in its first alternative only still matches URIs on other hosts.
+     */
+    @Test
+    public void testAlternationTrapMatchesOtherHosts() {
+        CrawlerTrapMatcher matcher = new CrawlerTrapMatcher(Arrays.asList(Pattern
+                .compile("^http://example\\.dk/.*|.*calendar.*")));
+        assertEquals(0, matcher.getHostCount());
+        assertEquals(0, matcher.findMatch("http://example.dk/index.html"));
+        assertEquals(0, matcher.findMatch("http://other.dk/calendar/2015"));
+        assertEquals(-1, matcher.findMatch("http://other.dk/index.html"));
+    }
+
+    /**
+     * Test that the matcher finds the same first matching trap as trying the traps one after another.
+     */
+    @Test
+    public void testSameMatchesAsPlainList() {
+        List<Pattern> patterns = new ArrayList<Pattern>();
+        for (String trap : TRAPS) {
+            patterns.add(Pattern.compile(trap));
+        }
+        CrawlerTrapMatcher matcher = new CrawlerTrapMatcher(patterns);
+        assertEquals(TRAPS.length, matcher.size());
+        assertEquals(2, matcher.getHostCount());
+
+        String[] parts = {"http://", "https://", "www.", "example.dk", "shop.test.fr", "quoted.dk", "/", "calendar",
+                "?month=1", "basket", "&sessionid=2", "/PRINT", "/print", "x.jpg", "?w=100", "index.php", "?page=3",
+                "&sort=a", "bar/baz", "foo", "secure.example.dk", ":8443", "aab", "xyz", "a", "archive"};
+        Random random = new Random(42);
+        int matches = 0;
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder uri = new StringBuilder(parts[random.nextInt(2)]);
+            int length = random.nextInt(8);
+            for (int j = 0; j < length; j++) {
+                uri.append(parts[random.nextInt(parts.length)]);
+            }
+            int expected = -1;
+            for (int id = 0; id < patterns.size() && expected < 0; id++) {
+                if (patterns.get(id).matcher(uri).matches()) {
+                    expected = id;
+                }
+            }
+            assertEquals("First match for " + uri, expected, matcher.findMatch(uri.toString()));
+            if (expected >= 0) {
+                matches++;
+            }
+        }
+        long hits = 0;
+        for (Map.Entry<String, Long> entry : matcher.getHitCounts().entrySet()) {
+            hits += entry.getValue();
+        }
+        assertEquals("Every match should be counted", matches, hits);
+    }
+
+    private static String literal(String regex) {
+        return CrawlerTrapMatcher.getRequiredLiteral(Pattern.compile(regex));
+    }
+
+}
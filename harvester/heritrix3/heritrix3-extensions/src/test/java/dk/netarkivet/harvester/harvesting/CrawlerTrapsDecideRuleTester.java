@@ -0,0 +1,157 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester - test
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.harvesting;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.archive.modules.CrawlURI;
+import org.archive.modules.deciderules.DecideResult;
+import org.archive.modules.deciderules.MatchesListRegexDecideRule;
+import org.archive.net.UURIFactory;
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link CrawlerTrapsDecideRule} class.
+ */
+public class CrawlerTrapsDecideRuleTester {
+
+    /**
+     * Test that the rule decides like {@link MatchesListRegexDecideRule} on a list of generated crawler traps like
+     * those in the global crawler trap lists.
+     */
+    @Test
+    public void testSameDecisionsAsMatchesListRegexDecideRule() throws Exception {
+        int trapCount = 1000;
+        Random random = new Random(42);
+        List<Pattern> traps = createTraps(trapCount);
+
+        MatchesListRegexDecideRule stock = new MatchesListRegexDecideRule();
+        stock.setDecision(DecideResult.REJECT);
+        stock.setRegexList(traps);
+        CrawlerTrapsDecideRule compiled = new CrawlerTrapsDecideRule();
+        compiled.setDecision(DecideResult.REJECT);
+        compiled.setRegexList(traps);
+
+        int rejected = 0;
+        for (int i = 0; i < 5000; i++) {
+            CrawlURI uri = createUri(trapCount, random);
+            DecideResult expected = stock.decisionFor(uri);
+            assertEquals("Decision for " + uri, expected, compiled.decisionFor(uri));
+            if (expected == DecideResult.REJECT) {
+                rejected++;
+            }
+        }
+        long hits = 0;
+        for (Map.Entry<String, Long> entry : compiled.getHitCounts().entrySet()) {
+            hits += entry.getValue();
+        }
+        assertEquals("Every rejected URI should be counted", rejected, hits);
+    }
+
+    /**
+     * Test that the rule uses the new list when the list is replaced.
+     */
+    @Test
+    public void testNewListIsUsed() throws Exception {
+        CrawlURI uri = new CrawlURI(UURIFactory.getInstance("http://www.example.dk/calendar?month=1"));
+        CrawlerTrapsDecideRule rule = new CrawlerTrapsDecideRule();
+        rule.setDecision(DecideResult.REJECT);
+        rule.setRegexList(Arrays.asList(Pattern.compile(".*/basket.*")));
+        assertEquals(DecideResult.NONE, rule.decisionFor(uri));
+        rule.setRegexList(Arrays.asList(Pattern.compile(".*/basket.*"), Pattern.compile(".*calendar.*")));
+        assertEquals(DecideResult.REJECT, rule.decisionFor(uri));
+    }
+
+    /**
+     * Test that a list combined with logical AND only matches URIs matched by all the expressions.
+     */
+    @Test
+    public void testListLogicalAnd() throws Exception {
+        CrawlerTrapsDecideRule rule = new CrawlerTrapsDecideRule();
+        rule.setDecision(DecideResult.REJECT);
+        rule.setListLogicalOr(false);
+        rule.setRegexList(Arrays.asList(Pattern.compile(".*calendar.*"), Pattern.compile(".*month=.*")));
+        assertEquals(DecideResult.REJECT,
+                rule.decisionFor(new CrawlURI(UURIFactory.getInstance("http://www.example.dk/calendar?month=1"))));
+        assertEquals(DecideResult.NONE,
+                rule.decisionFor(new CrawlURI(UURIFactory.getInstance("http://www.example.dk/calendar?day=1"))));
+    }
+
+    /**
+     * Create traps like those in the global crawler trap lists: some for a specific site, most for a path or query
+     * pattern anywhere, and a few case insensitive ones.
+     */
+    private static List<Pattern> createTraps(int count) {
+        List<Pattern> traps = new ArrayList<Pattern>(count);
+        for (int i = 0; i < count; i++) {
+            switch (i % 10) {
+            case 0:
+            case 1:
+            case 2:
+                traps.add(Pattern.compile("^https?://(www\\.)?site" + i + "\\.dk/.*\\?(month|day)=\\d+.*"));
+                break;
+            case 3:
+                traps.add(Pattern.compile("(?i).*/print" + i + "/.*"));
+                break;
+            default:
+                traps.add(Pattern.compile(".*/path" + i + "/[^/]+/cal\\?p=\\d+.*"));
+                break;
+            }
+        }
+        return traps;
+    }
+
+    /**
+     * Create a URI, often matching one of the traps.
+     */
+    private static CrawlURI createUri(int trapCount, Random random) throws Exception {
+        int n = random.nextInt(trapCount);
+        StringBuilder uri = new StringBuilder("http://www.site" + random.nextInt(trapCount) + ".dk/");
+        for (int i = random.nextInt(5); i >= 0; i--) {
+            uri.append("segment").append(random.nextInt(100)).append('/');
+        }
+        switch (random.nextInt(5)) {
+        case 0:
+            uri.append("path" + n + "/x/cal?p=1");
+            break;
+        case 1:
+            uri.append("?month=" + n);
+            break;
+        case 2:
+            uri.append("PRINT" + n + "/index.html");
+            break;
+        default:
+            uri.append("index.html?id=" + n);
+            break;
+        }
+        return new CrawlURI(UURIFactory.getInstance(uri.toString()));
+    }
+
+}
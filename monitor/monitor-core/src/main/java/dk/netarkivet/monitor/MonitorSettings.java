@@ -87,4 +87,24 @@ public class MonitorSettings {
      */
     public static String JMX_ABSOLUTE_MAX_LOG_LENGTH = "settings.monitor.absoluteMaxJMXLogLength";
 
+    /**
+     * <b>settings.monitor.statusCollector.interval</b>: <br>
+     * The number of milliseconds between the end of one collection of log records for the Status GUI site section and
+     * the start of the next. (default 10000)
+     */
+    public static String STATUS_COLLECTOR_INTERVAL = "settings.monitor.statusCollector.interval";
+
+    /**
+     * <b>settings.monitor.statusCollector.threads</b>: <br>
+     * The number of hosts the log records are collected from in parallel. (default 10)
+     */
+    public static String STATUS_COLLECTOR_THREADS = "settings.monitor.statusCollector.threads";
+
+    /**
+     * <b>settings.monitor.statusCollector.hostTimeout</b>: <br>
+     * The number of milliseconds a collection waits for the log records of a host. Hosts answering slower are shown
+     * with their previously collected log records, marked as stale. (default 5000)
+     */
+    public static String STATUS_COLLECTOR_HOST_TIMEOUT = "settings.monitor.statusCollector.hostTimeout";
+
 }
@@ -0,0 +1,391 @@
+/*
+ * #%L
+ * Netarchivesuite - monitor
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.monitor.webinterface;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.monitor.MonitorSettings;
+import dk.netarkivet.monitor.jmx.HostForwarding;
+import dk.netarkivet.monitor.logging.SingleLogRecord;
+
+/**
+ * Collects the log records of all monitored applications in the background, so the status pages can be rendered from
+ * memory instead of calling every remote application while the page is generated.
+ * <p>
+ * Each collection reads the log record mbeans of all hosts in parallel on a bounded pool of threads. A host that does
+ * not answer within the host timeout keeps its records from the previous collection, marked as stale. A host is not
+ * asked again while a previous request to it is still hanging, so a dead host can occupy at most one thread.
+ */
+public class JMXStatusCollector {
+
+    /** The log. */
+    private static final Logger log = LoggerFactory.getLogger(JMXStatusCollector.class);
+
+    /** JMX Attribute containing the logmessage itself. */
+    static final String LOG_MESSAGE_ATTRIBUTE = "RecordString";
+
+    /** The collector used by the status pages, or null if not started. */
+    private static JMXStatusCollector instance;
+
+    /** The MBean server holding the proxies for the remote log record mbeans. */
+    private final MBeanServer mBeanServer;
+    /** The query for the log record mbeans. */
+    private final String query;
+    /** The number of milliseconds to wait for the records of one host in each collection. */
+    private final long hostTimeout;
+    /** The threads reading the records from the hosts. */
+    private final ExecutorService hostExecutor;
+    /** The thread running the collections, or null if the collections are not scheduled. */
+    private ScheduledExecutorService scheduler;
+    /** The requests that have been sent to each host, by host name. */
+    private final Map<String, Future<Map<ObjectName, LogRecordSnapshot>>> hostRequests =
+            new HashMap<String, Future<Map<ObjectName, LogRecordSnapshot>>>();
+    /** The records of the latest collection. */
+    private volatile Map<ObjectName, LogRecordSnapshot> snapshot = Collections.emptyMap();
+    /** Released when the first collection has finished. */
+    private final CountDownLatch firstCollection = new CountDownLatch(1);
+
+    /**
+     * Create a collector. The collections are not scheduled until {@link #start(long)} is called.
+     *
+     * @param mBeanServer The MBean server holding the proxies for the remote log record mbeans.
+     * @param query The query for the log record mbeans.
+     * @param threads The number of threads reading records from the hosts.
+     * @param hostTimeout The number of milliseconds to wait for the records of one host in each collection.
+     * @throws ArgumentNotValid if mBeanServer or query is null, or threads is not positive.
+     */
+    JMXStatusCollector(MBeanServer mBeanServer, String query, int threads, long hostTimeout) {
+        ArgumentNotValid.checkNotNull(mBeanServer, "MBeanServer mBeanServer");
+        ArgumentNotValid.checkNotNullOrEmpty(query, "String query");
+        ArgumentNotValid.checkPositive(threads, "int threads");
+        this.mBeanServer = mBeanServer;
+        this.query = query;
+        this.hostTimeout = hostTimeout;
+        this.hostExecutor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("JMXStatusCollector-host-"));
+    }
+
+    /**
+     * Get the collector for the log records matching the given query, starting it if necessary.
+     *
+     * @param mBeanServer The MBean server holding the proxies for the remote log record mbeans.
+     * @param query The query for the log record mbeans.
+     * @return The started collector.
+     */
+    public static synchronized JMXStatusCollector getInstance(MBeanServer mBeanServer, String query) {
+        if (instance == null) {
+            instance = new JMXStatusCollector(mBeanServer, query,
+                    Settings.getInt(MonitorSettings.STATUS_COLLECTOR_THREADS),
+                    Settings.getLong(MonitorSettings.STATUS_COLLECTOR_HOST_TIMEOUT));
+            instance.start(Settings.getLong(MonitorSettings.STATUS_COLLECTOR_INTERVAL));
+        }
+        return instance;
+    }
+
+    /**
+     * Stop the collector used by the status pages, if it has been started.
+     */
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.stop();
+            instance = null;
+        }
+    }
+
+    /**
+     * Schedule collections, starting with one right away.
+     *
+     * @param interval The number of milliseconds between the end of one collection and the start of the next.
+     */
+    synchronized void start(long interval) {
+        ArgumentNotValid.checkPositive(interval, "long interval");
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("JMXStatusCollector-"));
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    collect();
+                } catch (Throwable t) {
+                    log.warn("Failed to collect log records matching '{}'", query, t);
+                }
+            }
+        }, 0, interval, TimeUnit.MILLISECONDS);
+        log.info("Collecting log records matching '{}' every {} ms", query, interval);
+    }
+
+    /**
+     * Stop collecting. Requests hanging on remote hosts are abandoned.
+     */
+    synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        hostExecutor.shutdownNow();
+    }
+
+    /**
+     * Make sure the log record mbeans of all registered hosts are proxied in the MBean server.
+     */
+    protected void updateForwarding() {
+        HostForwarding.getInstance(SingleLogRecord.class, mBeanServer, query);
+    }
+
+    /**
+     * Collect the log records of all hosts once, and replace the snapshot with the result.
+     *
+     * @throws MalformedObjectNameException if the query is malformed.
+     */
+    void collect() throws MalformedObjectNameException {
+        updateForwarding();
+        Map<String, List<ObjectName>> namesByHost = new HashMap<String, List<ObjectName>>();
+        for (ObjectName name : mBeanServer.queryNames(new ObjectName(query), null)) {
+            String host = name.getKeyProperty(JMXSummaryUtils.JMXMachineNameProperty);
+            if (host == null) {
+                host = "";
+            }
+            List<ObjectName> names = namesByHost.get(host);
+            if (names == null) {
+                names = new ArrayList<ObjectName>();
+                namesByHost.put(host, names);
+            }
+            names.add(name);
+        }
+
+        long deadline = System.currentTimeMillis() + hostTimeout;
+        Map<String, Future<Map<ObjectName, LogRecordSnapshot>>> requests =
+                new HashMap<String, Future<Map<ObjectName, LogRecordSnapshot>>>();
+        synchronized (hostRequests) {
+            hostRequests.keySet().retainAll(namesByHost.keySet());
+            for (Map.Entry<String, List<ObjectName>> entry : namesByHost.entrySet()) {
+                Future<Map<ObjectName, LogRecordSnapshot>> previous = hostRequests.get(entry.getKey());
+                if (previous != null && !previous.isDone()) {
+                    log.debug("Host '{}' has still not answered the previous collection", entry.getKey());
+                    continue;
+                }
+                Future<Map<ObjectName, LogRecordSnapshot>> request = hostExecutor.submit(new HostRequest(entry
+                        .getValue()));
+                hostRequests.put(entry.getKey(), request);
+                requests.put(entry.getKey(), request);
+            }
+        }
+
+        Map<ObjectName, LogRecordSnapshot> previousSnapshot = snapshot;
+        Map<ObjectName, LogRecordSnapshot> newSnapshot = new HashMap<ObjectName, LogRecordSnapshot>();
+        for (Map.Entry<String, List<ObjectName>> entry : namesByHost.entrySet()) {
+            Map<ObjectName, LogRecordSnapshot> records = null;
+            Future<Map<ObjectName, LogRecordSnapshot>> request = requests.get(entry.getKey());
+            if (request != null) {
+                try {
+                    records = request.get(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    log.debug("Host '{}' did not answer within {} ms", entry.getKey(), hostTimeout);
+                } catch (ExecutionException e) {
+                    log.warn("Failed to collect log records from host '{}'", entry.getKey(), e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (records != null) {
+                newSnapshot.putAll(records);
+            } else {
+                for (ObjectName name : entry.getValue()) {
+                    LogRecordSnapshot previous = previousSnapshot.get(name);
+                    if (previous != null) {
+                        newSnapshot.put(name, previous.asStale());
+                    }
+                }
+            }
+        }
+        snapshot = Collections.unmodifiableMap(newSnapshot);
+        firstCollection.countDown();
+        log.debug("Collected {} log records from {} hosts", newSnapshot.size(), namesByHost.size());
+    }
+
+    /**
+     * Get the latest collected record of a log record mbean.
+     *
+     * @param name The name of the log record mbean.
+     * @return The latest collected record, or null if the mbean has not been collected.
+     */
+    public LogRecordSnapshot getRecord(ObjectName name) {
+        return snapshot.get(name);
+    }
+
+    /**
+     * Wait for the first collection to finish, but at most for the host timeout.
+     *
+     * @return true if the first collection has finished.
+     */
+    public boolean awaitFirstCollection() {
+        try {
+            return firstCollection.await(hostTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Reads the log records of one host.
+     */
+    private class HostRequest implements Callable<Map<ObjectName, LogRecordSnapshot>> {
+        /** The log record mbeans of the host. */
+        private final List<ObjectName> names;
+
+        /**
+         * @param names The log record mbeans of the host.
+         */
+        HostRequest(List<ObjectName> names) {
+            this.names = names;
+        }
+
+        @Override
+        public Map<ObjectName, LogRecordSnapshot> call() {
+            Map<ObjectName, LogRecordSnapshot> records = new HashMap<ObjectName, LogRecordSnapshot>();
+            for (ObjectName name : names) {
+                try {
+                    String message = (String) mBeanServer.getAttribute(name, LOG_MESSAGE_ATTRIBUTE);
+                    records.put(name, new LogRecordSnapshot(message, null, System.currentTimeMillis(), false));
+                } catch (Exception e) {
+                    records.put(name, new LogRecordSnapshot(null, e, System.currentTimeMillis(), false));
+                }
+            }
+            return records;
+        }
+    }
+
+    /**
+     * The result of reading one log record mbean.
+     */
+    public static final class LogRecordSnapshot {
+        /** The log message, or null if the remote host returned none or failed. */
+        private final String message;
+        /** The exception thrown when reading the log message, or null. */
+        private final Exception failure;
+        /** The time the log message was read. */
+        private final long collected;
+        /** Whether the latest collection failed to read the log message again. */
+        private final boolean stale;
+
+        /**
+         * @param message The log message, or null.
+         * @param failure The exception thrown when reading the log message, or null.
+         * @param collected The time the log message was read.
+         * @param stale Whether the latest collection failed to read the log message again.
+         */
+        LogRecordSnapshot(String message, Exception failure, long collected, boolean stale) {
+            this.message = message;
+            this.failure = failure;
+            this.collected = collected;
+            this.stale = stale;
+        }
+
+        /**
+         * @return The log message, or null if the remote host returned none or failed.
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * @return The exception thrown when reading the log message, or null.
+         */
+        public Exception getFailure() {
+            return failure;
+        }
+
+        /**
+         * @return The time the log message was read, in milliseconds since the epoch.
+         */
+        public long getCollected() {
+            return collected;
+        }
+
+        /**
+         * @return Whether the latest collection failed to read the log message again.
+         */
+        public boolean isStale() {
+            return stale;
+        }
+
+        /**
+         * @return This record, marked as stale.
+         */
+        LogRecordSnapshot asStale() {
+            return stale ? this : new LogRecordSnapshot(message, failure, collected, true);
+        }
+    }
+
+    /**
+     * Creates named daemon threads, so the collector never keeps the web server from stopping.
+     */
+    private static class DaemonThreadFactory implements ThreadFactory {
+        /** The prefix of the thread names. */
+        private final String prefix;
+        /** The number of threads created. */
+        private final AtomicInteger count = new AtomicInteger();
+
+        /**
+         * @param prefix The prefix of the thread names.
+         */
+        DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
@@ -45,8 +45,6 @@ import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.utils.ExceptionUtils;
 import dk.netarkivet.common.utils.I18n;
 import dk.netarkivet.common.webinterface.HTMLUtils;
-import dk.netarkivet.monitor.jmx.HostForwarding;
-import dk.netarkivet.monitor.logging.SingleLogRecord;
 
 /**
  * Implementation of StatusEntry, that receives its data from the MBeanServer (JMX).
@@ -60,8 +58,6 @@ public class JMXStatusEntry implements StatusEntry {
     private ObjectName mBeanName;
     /** JMX Query to retrieve the logmessage associated with this Entry. */
     private static final String LOGGING_QUERY = "dk.netarkivet.common.logging:*";
-    /** JMX Attribute containing the logmessage itself. */
-    private static final String JMXLogMessageAttribute = "RecordString";
     /** MBeanserver used by this class. */
     private static final MBeanServer mBeanServer = MBeanServerFactory.createMBeanServer();
 
@@ -135,39 +131,48 @@ public class JMXStatusEntry implements StatusEntry {
     }
 
     /**
-     * Gets the log message from this status entry. This implementation actually talks to an MBeanServer to get the log
-     * message. Will return an explanation if remote host does not respond, throws exception or returns null.
+     * Gets the log message from this status entry. The log message is taken from the latest collection by the
+     * {@link JMXStatusCollector}, so this never waits for the remote host. Will return an explanation if remote host
+     * did not respond, threw an exception or returned null, and marks the message if it is stale.
      *
      * @param l the current Locale
-     * @return A log message.
+     * @return A log message, or the empty string if the log message has not been collected yet.
      * @throws ArgumentNotValid if the current Locale is null
      */
     public String getLogMessage(Locale l) {
         ArgumentNotValid.checkNotNull(l, "l");
-        // Make sure mbeans are forwarded
-        HostForwarding.getInstance(SingleLogRecord.class, mBeanServer, LOGGING_QUERY);
-        try {
-            String logMessage = (String) mBeanServer.getAttribute(mBeanName, JMXLogMessageAttribute);
-            if (logMessage == null) {
-                return HTMLUtils.escapeHtmlValues(getLogDate()
-                        + I18N.getString(l, "errormsg;remote.host.returned.null.log.record"));
-            } else {
-                return logMessage;
-            }
-        } catch (RuntimeMBeanException e) {
-            return HTMLUtils.escapeHtmlValues(getLogDate()
+        JMXStatusCollector.LogRecordSnapshot record = JMXStatusCollector.getInstance(mBeanServer, LOGGING_QUERY)
+                .getRecord(mBeanName);
+        if (record == null) {
+            return "";
+        }
+        String logMessage;
+        Exception failure = record.getFailure();
+        if (failure instanceof RuntimeMBeanException) {
+            logMessage = HTMLUtils.escapeHtmlValues(getLogDate(record)
                     + I18N.getString(l, "errormsg;jmx.error.while.getting.log.record") + "\n"
                     + I18N.getString(l, "errormsg;probably.host.is.not.responding") + "\n"
-                    + ExceptionUtils.getStackTrace(e));
-        } catch (Exception e) {
-            return HTMLUtils.escapeHtmlValues(getLogDate()
+                    + ExceptionUtils.getStackTrace(failure));
+        } else if (failure != null) {
+            logMessage = HTMLUtils.escapeHtmlValues(getLogDate(record)
                     + I18N.getString(l, "errormsg;remote.jmx.bean.generated.exception") + "\n"
-                    + ExceptionUtils.getStackTrace(e));
+                    + ExceptionUtils.getStackTrace(failure));
+        } else if (record.getMessage() == null) {
+            logMessage = HTMLUtils.escapeHtmlValues(getLogDate(record)
+                    + I18N.getString(l, "errormsg;remote.host.returned.null.log.record"));
+        } else {
+            logMessage = record.getMessage();
+        }
+        if (record.isStale() && logMessage.trim().length() > 0) {
+            logMessage = HTMLUtils.escapeHtmlValues(I18N.getString(l,
+                    "errormsg;log.record.is.stale.last.collected.at.0", new Date(record.getCollected())))
+                    + "\n" + logMessage;
         }
+        return logMessage;
     }
 
-    private String getLogDate() {
-        return "[" + new Date() + "] ";
+    private String getLogDate(JMXStatusCollector.LogRecordSnapshot record) {
+        return "[" + new Date(record.getCollected()) + "] ";
     }
 
     /**
@@ -296,8 +301,9 @@ public class JMXStatusEntry implements StatusEntry {
 
         List<StatusEntry> entries = new ArrayList<StatusEntry>();
 
-        // Make sure mbeans are forwarded
-        HostForwarding.getInstance(SingleLogRecord.class, mBeanServer, LOGGING_QUERY);
+        // Mbeans are forwarded by the collector. Give it a chance to finish its
+        // first collection, so the first page shown is not empty.
+        JMXStatusCollector.getInstance(mBeanServer, LOGGING_QUERY).awaitFirstCollection();
         // The "null" in this case is used to indicate no further filters on the
         // query.
         log.debug("Querying mbean server {} with {}.", mBeanServer.toString(), LOGGING_QUERY);
@@ -50,12 +50,13 @@ public class StatusSiteSection extends SiteSection {
     }
 
     /**
-     * Shut down monitor server when undeploying.
+     * Shut down monitor server and status collection when undeploying.
      */
     public void close() {
         if (monitorListener != null) {
             monitorListener.cleanup();
         }
         monitorListener = null;
+        JMXStatusCollector.shutdown();
     }
 }
@@ -0,0 +1,164 @@
+/*
+ * #%L
+ * Netarchivesuite - monitor - test
+ * %%
+ * Copyright (C) 2005 - 2014 The Royal Danish Library, the Danish State and University Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.monitor.webinterface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Hashtable;
+import java.util.concurrent.CountDownLatch;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dk.netarkivet.monitor.logging.SingleLogRecord;
+
+/**
+ * Unit tests for the {@link JMXStatusCollector} class.
+ */
+public class JMXStatusCollectorTester {
+
+    private static final String QUERY = "dk.netarkivet.common.logging:*";
+    private static final long HOST_TIMEOUT = 200;
+
+    private MBeanServer mBeanServer;
+    private JMXStatusCollector collector;
+    private TestLogRecord slowRecord;
+    private ObjectName fastName;
+    private ObjectName slowName;
+
+    @Before
+    public void setUp() throws Exception {
+        mBeanServer = MBeanServerFactory.newMBeanServer();
+        fastName = register("fast", new TestLogRecord("fast message"));
+        slowRecord = new TestLogRecord("slow message");
+        slowName = register("slow", slowRecord);
+        collector = new JMXStatusCollector(mBeanServer, QUERY, 2, HOST_TIMEOUT) {
+            @Override
+            protected void updateForwarding() {
+                // The mbeans are registered directly in the test
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        slowRecord.release();
+        collector.stop();
+    }
+
+    @Test
+    public void testCollectsAllHosts() throws Exception {
+        collector.collect();
+        assertEquals("fast message", collector.getRecord(fastName).getMessage());
+        assertEquals("slow message", collector.getRecord(slowName).getMessage());
+        assertFalse(collector.getRecord(slowName).isStale());
+        assertTrue(collector.awaitFirstCollection());
+    }
+
+    @Test
+    public void testSlowHostDoesNotDelayCollection() throws Exception {
+        collector.collect();
+        slowRecord.block();
+        for (int i = 0; i < 3; i++) {
+            long start = System.currentTimeMillis();
+            collector.collect();
+            assertTrue("Collection should not wait for the slow host",
+                    System.currentTimeMillis() - start < HOST_TIMEOUT * 5);
+            JMXStatusCollector.LogRecordSnapshot slow = collector.getRecord(slowName);
+            assertNotNull(slow);
+            assertTrue(slow.isStale());
+            assertEquals("slow message", slow.getMessage());
+            assertFalse(collector.getRecord(fastName).isStale());
+        }
+        // The hanging request is not repeated by the following collections
+        assertEquals(2, slowRecord.calls);
+    }
+
+    @Test
+    public void testFailureIsRecorded() throws Exception {
+        mBeanServer.unregisterMBean(fastName);
+        ObjectName failingName = register("failing", new SingleLogRecord() {
+            @Override
+            public String getRecordString() {
+                throw new IllegalStateException("Remote failure");
+            }
+        });
+        collector.collect();
+        assertNotNull(collector.getRecord(failingName).getFailure());
+        assertNull(collector.getRecord(fastName));
+    }
+
+    private ObjectName register(String host, SingleLogRecord record) throws Exception {
+        Hashtable<String, String> properties = new Hashtable<String, String>();
+        properties.put(JMXSummaryUtils.JMXMachineNameProperty, host);
+        properties.put(JMXSummaryUtils.JMXIndexProperty, "0");
+        ObjectName name = ObjectName.getInstance("dk.netarkivet.common.logging", properties);
+        mBeanServer.registerMBean(new StandardMBean(record, SingleLogRecord.class), name);
+        return name;
+    }
+
+    /** A log record that can be made to hang like an unresponsive host. */
+    private static class TestLogRecord implements SingleLogRecord {
+        private final String message;
+        private volatile CountDownLatch latch;
+        private volatile int calls;
+
+        TestLogRecord(String message) {
+            this.message = message;
+        }
+
+        void block() {
+            latch = new CountDownLatch(1);
+        }
+
+        void release() {
+            if (latch != null) {
+                latch.countDown();
+            }
+        }
+
+        @Override
+        public String getRecordString() {
+            calls++;
+            if (latch != null) {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return message;
+        }
+    }
+
+}
@@ -37,6 +37,7 @@ import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.utils.CleanupIF;
 import dk.netarkivet.common.utils.FileUtils;
 import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.common.utils.SortUtils;
 import dk.netarkivet.wayback.WaybackSettings;
 
 /**
@@ -168,9 +169,17 @@ public class AggregationWorker implements CleanupIF {
             }
         }
 
-        aggregator.sortAndMergeFiles(filesToProcess, TEMP_FILE_INDEX);
-        if (log.isDebugEnabled()) {
-            log.debug("Sorted raw indexes into temporary index file ");
+        if (allSorted(filesToProcess)) {
+            // Raw indexes from batch jobs with sorted output only need merging
+            aggregator.mergeFiles(filesToProcess, TEMP_FILE_INDEX);
+            if (log.isDebugEnabled()) {
+                log.debug("Merged sorted raw indexes into temporary index file ");
+            }
+        } else {
+            aggregator.sortAndMergeFiles(filesToProcess, TEMP_FILE_INDEX);
+            if (log.isDebugEnabled()) {
+                log.debug("Sorted raw indexes into temporary index file ");
+            }
         }
 
         // If no Intermediate Index file exist we just promote the temp index
@@ -199,6 +208,21 @@ public class AggregationWorker implements CleanupIF {
 
     }
 
+    /**
+     * Checks whether all the given raw index files are already sorted.
+     *
+     * @param files The raw index files.
+     * @return true if every file is sorted.
+     */
+    private static boolean allSorted(File[] files) {
+        for (File file : files) {
+            if (!SortUtils.isSorted(file)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Call the handleFinalIndexFileMerge is case of a exceeded
      * WaybackSettings.WAYBACK_AGGREGATOR_MAX_INTERMEDIATE_INDEX_FILE_SIZE and ?.
@@ -133,4 +133,13 @@ public class WaybackCDXExtractionARCBatchJob extends ARCBatchJob {
         }
     }
 
+    /**
+     * Wayback CDX lines are sorted by the bitarchives, so the results can be merged rather than sorted by the aggregator.
+     *
+     * @return true
+     */
+    @Override
+    public boolean hasSortedOutput() {
+        return true;
+    }
 }
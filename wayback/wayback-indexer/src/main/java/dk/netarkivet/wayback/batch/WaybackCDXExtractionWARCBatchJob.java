@@ -131,4 +131,13 @@ public class WaybackCDXExtractionWARCBatchJob extends WARCBatchJob {
         }
     }
 
+    /**
+     * Wayback CDX lines are sorted by the bitarchives, so the results can be merged rather than sorted by the aggregator.
+     *
+     * @return true
+     */
+    @Override
+    public boolean hasSortedOutput() {
+        return true;
+    }
 }